@@ -0,0 +1,66 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import core.bars.BarEngine;
+
+/**
+ * Per-trade cost of {@link BarEngine} with 1, 4 and 8 series: 1 minute bars alone; then 1s/1m/5m time
+ * bars and tick bars; then 1s/5s/1m/5m/15m time bars and tick, volume and range bars.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BarEngineBenchmark {
+
+    private static final int TRADES = 1 << 14;
+
+    @Param({"1", "4", "8"})
+    public int series;
+
+    private final double[] prices = new double[TRADES];
+    private final int[] sizes = new int[TRADES];
+    private final long[] gaps = new long[TRADES];
+    private BarEngine engine;
+    private long timestamp = 1_700_000_000_000_000_000L;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        double price = 20_000;
+        for (int i = 0; i < TRADES; i++) {
+            price += random.nextInt(3) - 1;
+            prices[i] = price;
+            sizes[i] = 1 + random.nextInt(10);
+            gaps[i] = random.nextInt(50_000_000);
+        }
+        engine = new BarEngine();
+        engine.timeBars(1, TimeUnit.MINUTES);
+        if (series >= 4) {
+            engine.timeBars(1, TimeUnit.SECONDS);
+            engine.timeBars(5, TimeUnit.MINUTES);
+            engine.tickBars(500);
+        }
+        if (series >= 8) {
+            engine.timeBars(5, TimeUnit.SECONDS);
+            engine.timeBars(15, TimeUnit.MINUTES);
+            engine.volumeBars(5_000);
+            engine.rangeBars(8);
+        }
+    }
+
+    @Benchmark
+    public void trade() {
+        int index = cursor++ & (TRADES - 1);
+        timestamp += gaps[index];
+        engine.onTimestamp(timestamp);
+        engine.onTrade(prices[index], sizes[index], (index & 1) == 0);
+    }
+}
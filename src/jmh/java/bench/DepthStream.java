@@ -0,0 +1,143 @@
+package bench;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import core.book.TickBook;
+import core.io.BinaryCaptureReader;
+import velox.api.layer1.simplified.DepthDataListener;
+
+/**
+ * Pre-generated depth events replayed by the benchmarks, so generating them is not measured.
+ * <p>
+ * The synthetic stream keeps roughly {@code depth} levels per side around a fixed mid: each event
+ * resizes a random level, and about one in five removes it. With {@code -Dbench.capture=<session>}
+ * the depth records of a binary capture are used instead; the depth parameter then only sets the
+ * prefill.
+ */
+public final class DepthStream {
+
+    public static final int MID_PRICE = 17_000;
+    private static final int MAX_EVENTS = 1 << 20;
+
+    private final boolean[] isBid;
+    private final int[] prices;
+    private final int[] sizes;
+    private final int mask;
+    private final int depth;
+    private int cursor = 0;
+
+    private DepthStream(boolean[] isBid, int[] prices, int[] sizes, int depth) {
+        this.isBid = isBid;
+        this.prices = prices;
+        this.sizes = sizes;
+        this.mask = prices.length - 1;
+        this.depth = depth;
+    }
+
+    public static DepthStream create(int depth) throws IOException {
+        String capture = System.getProperty("bench.capture");
+        return capture != null ? recorded(capture, depth) : synthetic(depth, 1 << 16, 42);
+    }
+
+    /**
+     * @param events number of events, a power of two
+     */
+    public static DepthStream synthetic(int depth, int events, long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        boolean[] isBid = new boolean[events];
+        int[] prices = new int[events];
+        int[] sizes = new int[events];
+        for (int i = 0; i < events; i++) {
+            isBid[i] = random.nextBoolean();
+            int offset = random.nextInt(depth);
+            prices[i] = isBid[i] ? MID_PRICE - offset : MID_PRICE + 1 + offset;
+            sizes[i] = random.nextInt(5) == 0 ? 0 : 1 + random.nextInt(500);
+        }
+        return new DepthStream(isBid, prices, sizes, depth);
+    }
+
+    public static DepthStream recorded(String session, int depth) throws IOException {
+        boolean[] isBid = new boolean[MAX_EVENTS];
+        int[] prices = new int[MAX_EVENTS];
+        int[] sizes = new int[MAX_EVENTS];
+        int[] count = {0};
+        try (BinaryCaptureReader reader = new BinaryCaptureReader(Paths.get(session))) {
+            BinaryCaptureReader.Listener collector = new BinaryCaptureReader.Listener() {
+                @Override
+                public void onTimestamp(long nanoseconds) {
+                }
+
+                @Override
+                public void onDepth(boolean bid, int price, int size) {
+                    if (count[0] < MAX_EVENTS) {
+                        isBid[count[0]] = bid;
+                        prices[count[0]] = price;
+                        sizes[count[0]] = size;
+                        count[0]++;
+                    }
+                }
+
+                @Override
+                public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) {
+                }
+
+                @Override
+                public void onSnapshot(int levels) {
+                }
+            };
+            while (count[0] < MAX_EVENTS && reader.next(collector)) {
+                // Collecting depth records only
+            }
+        }
+        // Round down to a power of two so the cursor can wrap with a mask
+        int events = Integer.highestOneBit(Math.max(1, count[0]));
+        return new DepthStream(Arrays.copyOf(isBid, events), Arrays.copyOf(prices, events),
+                Arrays.copyOf(sizes, events), depth);
+    }
+
+    /**
+     * Fills {@code depth} levels per side so the first measured events already see a full book.
+     */
+    public void prefill(DepthDataListener listener) {
+        for (int offset = 0; offset < depth; offset++) {
+            listener.onDepth(true, MID_PRICE - offset, 100 + offset);
+            listener.onDepth(false, MID_PRICE + 1 + offset, 100 + offset);
+        }
+    }
+
+    /**
+     * Delivers the next event to {@code listener}, wrapping at the end of the stream.
+     */
+    public void next(DepthDataListener listener) {
+        int i = cursor++ & mask;
+        listener.onDepth(isBid[i], prices[i], sizes[i]);
+    }
+
+    public void next(TickBook book) {
+        int i = cursor++ & mask;
+        book.onDepth(isBid[i], prices[i], sizes[i]);
+    }
+
+    /**
+     * Sends {@code System.out} and {@code System.err} (and so the modules' console logging) nowhere.
+     *
+     * @return the original streams, to be restored with {@link #restoreOutput(PrintStream[])}
+     */
+    public static PrintStream[] muteOutput() {
+        PrintStream[] original = {System.out, System.err};
+        PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+        System.setOut(nowhere);
+        System.setErr(nowhere);
+        return original;
+    }
+
+    public static void restoreOutput(PrintStream[] original) {
+        System.setOut(original[0]);
+        System.setErr(original[1]);
+    }
+}
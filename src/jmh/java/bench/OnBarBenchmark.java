@@ -0,0 +1,132 @@
+package bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import core.indicators.ATR;
+import core.indicators.EMA;
+import core.indicators.RollingExtreme;
+import core.indicators.RollingStdDev;
+import core.indicators.SMA;
+import core.indicators.SessionAnchor;
+import core.indicators.VWAP;
+import core.indicators.WMA;
+
+/**
+ * Per-bar cost of the streaming indicators behind the onBar strategies, and per-trade cost of the
+ * session VWAP. {@code onBarSmaPattern} reproduces what OnBarSMA and SMAStrategy do for each bar: one
+ * update and three reads of the value.
+ * <p>
+ * Reports throughput next to the average time. Both use the output unit, so throughput is in ops/ns;
+ * add {@code -tu s} to {@code -PjmhArgs} for bars per second.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OnBarBenchmark {
+
+    private static final int CLOSES = 1 << 12;
+
+    @Param({"14", "50", "200"})
+    public int period;
+
+    private final double[] closes = new double[CLOSES];
+    private SMA sma;
+    private EMA ema;
+    private WMA wma;
+    private RollingStdDev stdDev;
+    private RollingExtreme max;
+    private ATR atr;
+    private VWAP vwap;
+    private int cursor = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        double close = 17_000;
+        for (int i = 0; i < CLOSES; i++) {
+            close += random.nextInt(9) - 4;
+            closes[i] = close;
+        }
+        sma = new SMA(period);
+        ema = new EMA(period);
+        wma = new WMA(period);
+        stdDev = new RollingStdDev(period);
+        max = RollingExtreme.max(period);
+        atr = new ATR(period);
+        vwap = new VWAP(SessionAnchor.rthOpen());
+        for (int i = 0; i < period; i++) {
+            sma.update(closes[i]);
+            ema.update(closes[i]);
+            wma.update(closes[i]);
+            stdDev.update(closes[i]);
+            max.update(closes[i]);
+            atr.update(closes[i] + 2, closes[i] - 2, closes[i]);
+        }
+    }
+
+    private double nextClose() {
+        return closes[cursor++ & (CLOSES - 1)];
+    }
+
+    @Benchmark
+    public double sma() {
+        sma.update(nextClose());
+        return sma.value();
+    }
+
+    @Benchmark
+    public void onBarSmaPattern(Blackhole blackhole) {
+        sma.update(nextClose());
+        blackhole.consume(sma.value());
+        blackhole.consume(sma.value());
+        blackhole.consume(sma.value());
+    }
+
+    @Benchmark
+    public double ema() {
+        ema.update(nextClose());
+        return ema.value();
+    }
+
+    @Benchmark
+    public double wma() {
+        wma.update(nextClose());
+        return wma.value();
+    }
+
+    @Benchmark
+    public double stdDev() {
+        stdDev.update(nextClose());
+        return stdDev.value();
+    }
+
+    @Benchmark
+    public double rollingMax() {
+        max.update(nextClose());
+        return max.value();
+    }
+
+    @Benchmark
+    public double atr() {
+        double close = nextClose();
+        atr.update(close + 2, close - 2, close);
+        return atr.value();
+    }
+
+    /**
+     * One trade into the session VWAP and a read of the +2 sigma band.
+     */
+    @Benchmark
+    public double vwapTrade() {
+        int index = cursor++;
+        vwap.onTrade(closes[index & (CLOSES - 1)], 1 + (index & 7));
+        return vwap.getBand(2);
+    }
+}
@@ -0,0 +1,121 @@
+package bench;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import core.book.IndexedTickBook;
+import core.book.StackedImbalanceBook;
+import core.book.TickBook;
+import core.replay.ReplayApi;
+import day1.DOM;
+import day1.MarketDepthAnalyzer;
+import day3.StackedImbalance;
+import day4.ConcurrentDom;
+import day4.OrderFlows;
+import velox.api.layer1.data.InstrumentInfo;
+
+/**
+ * Per-event cost of each module's {@code onDepth} at different book depths. Modules are set up without
+ * their files (initialize is skipped where it only opens files) and without their windows; console
+ * logging still runs, into a null stream, since formatting it is part of the per-event cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OnDepthBenchmark {
+
+    @Param({"10", "100", "1000"})
+    public int depth;
+
+    private DepthStream stream;
+    private PrintStream[] output;
+
+    private TickBook tickBook;
+    private IndexedTickBook indexedTickBook;
+    private StackedImbalanceBook stackedImbalanceBook;
+    private DOM dom;
+    private MarketDepthAnalyzer marketDepthAnalyzer;
+    private StackedImbalance stackedImbalance;
+    private ConcurrentDom concurrentDom;
+    private OrderFlows orderFlows;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        output = DepthStream.muteOutput();
+        stream = DepthStream.create(depth);
+
+        tickBook = new TickBook();
+        indexedTickBook = new IndexedTickBook();
+        stackedImbalanceBook = new StackedImbalanceBook();
+        stackedImbalanceBook.configure(300, 30, 3, false);
+        for (TickBook book : new TickBook[]{tickBook, indexedTickBook, stackedImbalanceBook}) {
+            stream.prefill(book::onDepth);
+        }
+
+        dom = new DOM();
+        marketDepthAnalyzer = new MarketDepthAnalyzer();
+        orderFlows = new OrderFlows();
+        stackedImbalance = new StackedImbalance();
+        InstrumentInfo info = new InstrumentInfo("BENCH", "", "", 0.25, 1, "BENCH", true);
+        stackedImbalance.initialize("BENCH", info, new ReplayApi("BENCH", info.pips, new TickBook()).asApi(), null);
+        // The window is never opened; onDepth updates the book and marks the next frame dirty
+        concurrentDom = new ConcurrentDom();
+
+        stream.prefill(dom);
+        stream.prefill(marketDepthAnalyzer);
+        stream.prefill(orderFlows);
+        stream.prefill(stackedImbalance);
+        stream.prefill(concurrentDom);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        DepthStream.restoreOutput(output);
+    }
+
+    @Benchmark
+    public void tickBook() {
+        stream.next(tickBook);
+    }
+
+    @Benchmark
+    public void indexedTickBook() {
+        stream.next(indexedTickBook);
+    }
+
+    @Benchmark
+    public void stackedImbalanceBook() {
+        stream.next(stackedImbalanceBook);
+    }
+
+    @Benchmark
+    public void dom() {
+        stream.next(dom);
+    }
+
+    @Benchmark
+    public void marketDepthAnalyzer() {
+        stream.next(marketDepthAnalyzer);
+    }
+
+    @Benchmark
+    public void stackedImbalance() {
+        stream.next(stackedImbalance);
+    }
+
+    @Benchmark
+    public void concurrentDom() {
+        stream.next(concurrentDom);
+    }
+
+    @Benchmark
+    public void orderFlows() {
+        stream.next(orderFlows);
+    }
+}
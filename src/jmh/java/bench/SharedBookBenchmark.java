@@ -0,0 +1,64 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import core.book.TickBook;
+import core.io.SharedBookPublisher;
+import core.io.SharedBookReader;
+
+/**
+ * Cost of one seqlock publish of the top {@code levels} prices and of one consistent read, without
+ * contention. Cross-process publish-to-read latency is measured with {@code SharedBookPublisher} and
+ * {@code SharedBookReader latency} running in two JVMs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SharedBookBenchmark {
+
+    @Param({"10", "50"})
+    public int levels;
+
+    private Path file;
+    private TickBook book;
+    private SharedBookPublisher publisher;
+    private SharedBookReader reader;
+    private SharedBookReader.Snapshot snapshot;
+    private long timestamp = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = Files.createTempFile("shared-book", ".book");
+        book = new TickBook();
+        DepthStream.create(100).prefill(book::onDepth);
+        publisher = new SharedBookPublisher(file, "BENCH", 0.25, levels);
+        publisher.publish(book, 0);
+        reader = new SharedBookReader(file);
+        snapshot = reader.newSnapshot();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        reader.close();
+        publisher.close();
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void publish() {
+        publisher.publish(book, ++timestamp);
+    }
+
+    @Benchmark
+    public long read() {
+        return reader.read(snapshot);
+    }
+}
@@ -0,0 +1,118 @@
+package core.bars;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds any number of {@link BarSeries} from one trade stream, so a module can follow several
+ * timeframes and bar types without a second instance. Feed it from {@code onTimestamp} and
+ * {@code onTrade}:
+ * <pre>
+ * BarEngine bars = new BarEngine();
+ * bars.timeBars(1, TimeUnit.MINUTES).addListener(series -&gt; ... series.getClose(0) ...);
+ * bars.volumeBars(5_000).addListener(...);
+ *
+ * public void onTimestamp(long t) { bars.onTimestamp(t); }
+ * public void onTrade(double price, int size, TradeInfo tradeInfo) { bars.onTrade(price, size, tradeInfo.isBidAggressor); }
+ * </pre>
+ * Each series costs O(1) per trade and nothing is allocated after the series are created. A timestamp
+ * that crosses no time-bar boundary costs one comparison. Time bars without trades are not emitted.
+ * Not thread safe; call it from the feed thread.
+ */
+public final class BarEngine {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private BarSeries[] series = new BarSeries[0];
+    private BarSeries[] timeSeries = new BarSeries[0];
+    private int capacity = DEFAULT_CAPACITY;
+    private long timestamp = 0;
+    private long nextBoundary = Long.MAX_VALUE;
+
+    /**
+     * @param capacity completed bars kept per series created after this call
+     */
+    public BarEngine withCapacity(int capacity) {
+        this.capacity = capacity;
+        return this;
+    }
+
+    public BarSeries timeBars(long interval, TimeUnit unit) {
+        return timeBars(unit.toNanos(interval));
+    }
+
+    /**
+     * @param intervalNanos bar length, e.g. {@code Intervals.INTERVAL_1_MINUTE}
+     */
+    public BarSeries timeBars(long intervalNanos) {
+        if (intervalNanos <= 0) {
+            throw new IllegalArgumentException("interval must be positive: " + intervalNanos);
+        }
+        BarSeries created = add(new BarSeries(BarSeries.Type.TIME, intervalNanos, 0, capacity));
+        timeSeries = Arrays.copyOf(timeSeries, timeSeries.length + 1);
+        timeSeries[timeSeries.length - 1] = created;
+        return created;
+    }
+
+    public BarSeries tickBars(int trades) {
+        if (trades <= 0) {
+            throw new IllegalArgumentException("trades must be positive: " + trades);
+        }
+        return add(new BarSeries(BarSeries.Type.TICK, trades, 0, capacity));
+    }
+
+    public BarSeries volumeBars(long volume) {
+        if (volume <= 0) {
+            throw new IllegalArgumentException("volume must be positive: " + volume);
+        }
+        return add(new BarSeries(BarSeries.Type.VOLUME, volume, 0, capacity));
+    }
+
+    /**
+     * @param range largest high-low range of a bar, in the unit of the traded prices
+     */
+    public BarSeries rangeBars(double range) {
+        if (!(range > 0)) {
+            throw new IllegalArgumentException("range must be positive: " + range);
+        }
+        return add(new BarSeries(BarSeries.Type.RANGE, 0, range, capacity));
+    }
+
+    private BarSeries add(BarSeries created) {
+        series = Arrays.copyOf(series, series.length + 1);
+        series[series.length - 1] = created;
+        return created;
+    }
+
+    public void onTimestamp(long nanos) {
+        timestamp = nanos;
+        if (nanos >= nextBoundary) {
+            long next = Long.MAX_VALUE;
+            for (BarSeries time : timeSeries) {
+                time.onTimestamp(nanos);
+                next = Math.min(next, time.nextBoundary);
+            }
+            nextBoundary = next;
+        }
+    }
+
+    public void onTrade(double price, int size, boolean isBuy) {
+        for (BarSeries each : series) {
+            each.onTrade(price, size, isBuy, timestamp);
+        }
+        // A trade can only open time bars, so the earliest boundary can only move closer
+        for (BarSeries time : timeSeries) {
+            if (time.nextBoundary < nextBoundary) {
+                nextBoundary = time.nextBoundary;
+            }
+        }
+    }
+
+    public BarSeries[] getSeries() {
+        return series.clone();
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
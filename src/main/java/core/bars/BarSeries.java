@@ -0,0 +1,278 @@
+package core.bars;
+
+import java.util.Arrays;
+
+/**
+ * One series of bars built by a {@link BarEngine}: time, tick, volume or range bars. Completed bars are
+ * kept in preallocated primitive rings of the last {@code capacity} bars, read with an {@code ago} index
+ * where 0 is the latest completed bar. The bar still forming is readable through the {@code getCurrent}
+ * getters. Listeners are called on the feed thread as each bar completes.
+ */
+public final class BarSeries {
+
+    public enum Type {
+        /** Aligned to multiples of the interval since the epoch; closes when a timestamp crosses the end. */
+        TIME,
+        /** Closes on the trade that makes it {@code size} trades long. */
+        TICK,
+        /** Closes on the trade that brings its volume to at least {@code size}; trades are not split. */
+        VOLUME,
+        /** Closes before a trade that would stretch its high-low range beyond the range size. */
+        RANGE
+    }
+
+    public interface Listener {
+        /**
+         * Called once per completed bar; it is {@code series.getClose(0)} and so on.
+         */
+        void onBar(BarSeries series);
+    }
+
+    private static final Listener[] NO_LISTENERS = {};
+
+    private final Type type;
+    private final long size;
+    private final double range;
+    private final int capacity;
+
+    private final double[] opens;
+    private final double[] highs;
+    private final double[] lows;
+    private final double[] closes;
+    private final long[] volumes;
+    private final long[] buyVolumes;
+    private final int[] tradeCounts;
+    private final long[] startTimes;
+    private final long[] endTimes;
+    private long count = 0;
+
+    private boolean forming = false;
+    private double open;
+    private double high;
+    private double low;
+    private double close;
+    private long volume;
+    private long buyVolume;
+    private int trades;
+    private long startTime;
+    private long endTime;
+    long nextBoundary = Long.MAX_VALUE;
+
+    private Listener[] listeners = NO_LISTENERS;
+
+    BarSeries(Type type, long size, double range, int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.type = type;
+        this.size = size;
+        this.range = range;
+        this.capacity = capacity;
+        opens = new double[capacity];
+        highs = new double[capacity];
+        lows = new double[capacity];
+        closes = new double[capacity];
+        volumes = new long[capacity];
+        buyVolumes = new long[capacity];
+        tradeCounts = new int[capacity];
+        startTimes = new long[capacity];
+        endTimes = new long[capacity];
+    }
+
+    public void addListener(Listener listener) {
+        listeners = Arrays.copyOf(listeners, listeners.length + 1);
+        listeners[listeners.length - 1] = listener;
+    }
+
+    void onTimestamp(long nanos) {
+        if (forming && nanos >= nextBoundary) {
+            complete(nextBoundary);
+        }
+    }
+
+    void onTrade(double price, int tradeSize, boolean isBuy, long nanos) {
+        if (type == Type.RANGE && forming && Math.max(high, price) - Math.min(low, price) > range) {
+            complete(nanos);
+        }
+        if (!forming) {
+            forming = true;
+            open = price;
+            high = price;
+            low = price;
+            volume = 0;
+            buyVolume = 0;
+            trades = 0;
+            if (type == Type.TIME) {
+                startTime = Math.floorDiv(nanos, size) * size;
+                nextBoundary = startTime + size;
+            } else {
+                startTime = nanos;
+            }
+        } else {
+            if (price > high) {
+                high = price;
+            }
+            if (price < low) {
+                low = price;
+            }
+        }
+        close = price;
+        volume += tradeSize;
+        if (isBuy) {
+            buyVolume += tradeSize;
+        }
+        trades++;
+        endTime = nanos;
+
+        if ((type == Type.TICK && trades >= size) || (type == Type.VOLUME && volume >= size)) {
+            complete(nanos);
+        }
+    }
+
+    private void complete(long end) {
+        int slot = (int) (count % capacity);
+        opens[slot] = open;
+        highs[slot] = high;
+        lows[slot] = low;
+        closes[slot] = close;
+        volumes[slot] = volume;
+        buyVolumes[slot] = buyVolume;
+        tradeCounts[slot] = trades;
+        startTimes[slot] = startTime;
+        endTimes[slot] = type == Type.TIME ? end : endTime;
+        count++;
+        forming = false;
+        nextBoundary = Long.MAX_VALUE;
+        for (Listener listener : listeners) {
+            listener.onBar(this);
+        }
+    }
+
+    private int slot(int ago) {
+        if (ago < 0 || ago >= size()) {
+            throw new IndexOutOfBoundsException("ago " + ago + ", " + size() + " bars retained");
+        }
+        return (int) ((count - 1 - ago) % capacity);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return interval in nanoseconds, trades or volume per bar; 0 for range bars
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public double getRange() {
+        return range;
+    }
+
+    /**
+     * @return bars completed since the series was created
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return completed bars that can still be read, at most the capacity
+     */
+    public int size() {
+        return (int) Math.min(count, capacity);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public double getOpen(int ago) {
+        return opens[slot(ago)];
+    }
+
+    public double getHigh(int ago) {
+        return highs[slot(ago)];
+    }
+
+    public double getLow(int ago) {
+        return lows[slot(ago)];
+    }
+
+    public double getClose(int ago) {
+        return closes[slot(ago)];
+    }
+
+    public long getVolume(int ago) {
+        return volumes[slot(ago)];
+    }
+
+    public long getBuyVolume(int ago) {
+        return buyVolumes[slot(ago)];
+    }
+
+    public long getSellVolume(int ago) {
+        int slot = slot(ago);
+        return volumes[slot] - buyVolumes[slot];
+    }
+
+    public int getTradeCount(int ago) {
+        return tradeCounts[slot(ago)];
+    }
+
+    public long getStartTime(int ago) {
+        return startTimes[slot(ago)];
+    }
+
+    /**
+     * @return the interval end for time bars, the last trade's timestamp otherwise
+     */
+    public long getEndTime(int ago) {
+        return endTimes[slot(ago)];
+    }
+
+    /**
+     * @return true while a bar has trades but is not complete
+     */
+    public boolean isForming() {
+        return forming;
+    }
+
+    public double getCurrentOpen() {
+        return forming ? open : Double.NaN;
+    }
+
+    public double getCurrentHigh() {
+        return forming ? high : Double.NaN;
+    }
+
+    public double getCurrentLow() {
+        return forming ? low : Double.NaN;
+    }
+
+    public double getCurrentClose() {
+        return forming ? close : Double.NaN;
+    }
+
+    public long getCurrentVolume() {
+        return forming ? volume : 0;
+    }
+
+    public long getCurrentBuyVolume() {
+        return forming ? buyVolume : 0;
+    }
+
+    public int getCurrentTradeCount() {
+        return forming ? trades : 0;
+    }
+
+    public long getCurrentStartTime() {
+        return forming ? startTime : 0;
+    }
+
+    @Override
+    public String toString() {
+        return type == Type.RANGE ? type + " " + range : type + " " + size;
+    }
+}
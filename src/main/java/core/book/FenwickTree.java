@@ -0,0 +1,84 @@
+package core.book;
+
+import java.util.Arrays;
+
+/**
+ * Binary indexed tree over non-negative {@code long} values. Point updates and prefix sums are O(log n)
+ * and allocation free. Indices are zero based.
+ */
+public class FenwickTree {
+
+    private final long[] tree;
+    private final int size;
+    private final int highestPowerOfTwo;
+
+    public FenwickTree(int size) {
+        this.size = size;
+        this.tree = new long[size + 1];
+        this.highestPowerOfTwo = Integer.highestOneBit(Math.max(size, 1));
+    }
+
+    public void add(int index, long delta) {
+        for (int i = index + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * @return the sum of values at indices {@code 0..index} inclusive; 0 when {@code index < 0}
+     */
+    public long prefixSum(int index) {
+        long sum = 0;
+        for (int i = Math.min(index, size - 1) + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * @return the sum of values at indices {@code from..to} inclusive
+     */
+    public long rangeSum(int from, int to) {
+        if (to < from) {
+            return 0;
+        }
+        return prefixSum(to) - prefixSum(from - 1);
+    }
+
+    /**
+     * @return the smallest index whose prefix sum is at least {@code target}, or {@code size} if none is
+     */
+    public int lowerBound(long target) {
+        if (target <= 0) {
+            return 0;
+        }
+        int position = 0;
+        long remaining = target;
+        for (int step = highestPowerOfTwo; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next <= size && tree[next] < remaining) {
+                position = next;
+                remaining -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Rebuilds the tree from raw values in O(n).
+     */
+    public void rebuild(int[] values) {
+        Arrays.fill(tree, 0);
+        for (int i = 1; i <= size; i++) {
+            tree[i] += values[i - 1];
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
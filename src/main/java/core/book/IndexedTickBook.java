@@ -0,0 +1,131 @@
+package core.book;
+
+/**
+ * {@link TickBook} that also maintains Fenwick trees of size and level count per side, so cumulative
+ * depth queries ("top N levels", "within X ticks of the touch", "between two prices") cost O(log n)
+ * and allocate nothing. The trees are updated incrementally on every level change and rebuilt in O(n)
+ * only when the window re-centers.
+ */
+public class IndexedTickBook extends TickBook {
+
+    private final FenwickTree bidVolume;
+    private final FenwickTree askVolume;
+    private final FenwickTree bidCount;
+    private final FenwickTree askCount;
+    private final int[] rebuildScratch;
+
+    public IndexedTickBook() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public IndexedTickBook(int capacity) {
+        super(capacity);
+        bidVolume = new FenwickTree(capacity);
+        askVolume = new FenwickTree(capacity);
+        bidCount = new FenwickTree(capacity);
+        askCount = new FenwickTree(capacity);
+        rebuildScratch = new int[capacity];
+    }
+
+    @Override
+    protected void onLevelChanged(boolean isBid, int index, int previousSize, int size) {
+        (isBid ? bidVolume : askVolume).add(index, size - previousSize);
+        if (previousSize == 0) {
+            (isBid ? bidCount : askCount).add(index, 1);
+        } else if (size == 0) {
+            (isBid ? bidCount : askCount).add(index, -1);
+        }
+    }
+
+    @Override
+    protected void onRebuild() {
+        rebuildSide(true, bidVolume, bidCount);
+        rebuildSide(false, askVolume, askCount);
+    }
+
+    private void rebuildSide(boolean isBid, FenwickTree volume, FenwickTree count) {
+        int basePrice = getBasePrice();
+        for (int i = 0; i < rebuildScratch.length; i++) {
+            rebuildScratch[i] = getSize(isBid, basePrice + i);
+        }
+        volume.rebuild(rebuildScratch);
+        for (int i = 0; i < rebuildScratch.length; i++) {
+            rebuildScratch[i] = rebuildScratch[i] != 0 ? 1 : 0;
+        }
+        count.rebuild(rebuildScratch);
+    }
+
+    /**
+     * @return the total size of the best {@code levels} non-empty levels of one side
+     */
+    public long getTopLevelsVolume(boolean isBid, int levels) {
+        int totalLevels = getLevelCount(isBid);
+        if (levels <= 0 || totalLevels == 0) {
+            return 0;
+        }
+        int lastIndex = getCapacity() - 1;
+        if (isBid) {
+            int bestIndex = getBestBid() - getBasePrice();
+            if (levels >= totalLevels) {
+                return bidVolume.prefixSum(bestIndex);
+            }
+            int fromIndex = bidCount.lowerBound(totalLevels - levels + 1);
+            return bidVolume.rangeSum(fromIndex, bestIndex);
+        }
+        if (levels >= totalLevels) {
+            return askVolume.prefixSum(lastIndex);
+        }
+        return askVolume.prefixSum(askCount.lowerBound(levels));
+    }
+
+    /**
+     * @return the total size of one side from its best price up to {@code ticks} ticks away, inclusive
+     */
+    public long getVolumeWithinTicks(boolean isBid, int ticks) {
+        if (isEmpty(isBid) || ticks < 0) {
+            return 0;
+        }
+        if (isBid) {
+            int bestIndex = getBestBid() - getBasePrice();
+            return bidVolume.rangeSum(Math.max(bestIndex - ticks, 0), bestIndex);
+        }
+        int bestIndex = getBestAsk() - getBasePrice();
+        return askVolume.rangeSum(bestIndex, (int) Math.min((long) bestIndex + ticks, getCapacity() - 1));
+    }
+
+    /**
+     * @return the total size of one side at prices {@code fromPrice..toPrice} inclusive
+     */
+    public long getVolumeBetween(boolean isBid, int fromPrice, int toPrice) {
+        int lastIndex = getCapacity() - 1;
+        long fromIndex = Math.max((long) fromPrice - getBasePrice(), 0);
+        long toIndex = Math.min((long) toPrice - getBasePrice(), lastIndex);
+        if (fromIndex > toIndex) {
+            return 0;
+        }
+        return (isBid ? bidVolume : askVolume).rangeSum((int) fromIndex, (int) toIndex);
+    }
+
+    public long getTotalVolume(boolean isBid) {
+        return (isBid ? bidVolume : askVolume).prefixSum(getCapacity() - 1);
+    }
+
+    /**
+     * @return {@code (bid - ask) / (bid + ask)} over the top {@code levels} levels, or 0 for an empty book
+     */
+    public double getImbalance(int levels) {
+        long bidVolume = getTopLevelsVolume(true, levels);
+        long askVolume = getTopLevelsVolume(false, levels);
+        long total = bidVolume + askVolume;
+        return total == 0 ? 0.0 : (double) (bidVolume - askVolume) / total;
+    }
+
+    /**
+     * Writes {@link #getImbalance(int)} for every entry of {@code levels} into {@code imbalances}.
+     */
+    public void fillImbalances(int[] levels, double[] imbalances) {
+        for (int i = 0; i < levels.length; i++) {
+            imbalances[i] = getImbalance(levels[i]);
+        }
+    }
+}
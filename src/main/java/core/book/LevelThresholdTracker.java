@@ -0,0 +1,203 @@
+package core.book;
+
+/**
+ * Per-price values for both sides of a book, with an event when a level crosses a threshold. A level
+ * enters at {@code enterThreshold} and only exits once it falls below {@code exitThreshold}, so a value
+ * hovering around the threshold does not flap.
+ * <p>
+ * Values are either set ({@link #set}) or accumulated ({@link #add}). Accumulated values decay
+ * exponentially with {@code halfLifeNanos} of exchange time, applied lazily when a level is touched;
+ * levels that are in the entered state are also decayed by {@link #onTimestamp(long)} at most every
+ * {@code sweepIntervalNanos}, so they exit even if the price is never updated again.
+ * <p>
+ * Each side has {@code capacity} slots addressed by {@code price & (capacity - 1)}. A slot that is reused
+ * for another price starts from zero, and an entered level that loses its slot exits first. Updates are
+ * O(1), the sweep is O(entered levels), and nothing is allocated after construction.
+ */
+public class LevelThresholdTracker {
+
+    public interface Listener {
+        /**
+         * @param entered true when the level crossed the enter threshold, false when it fell below the exit threshold
+         */
+        void onCrossing(boolean isBid, int price, double value, boolean entered);
+    }
+
+    public static final int DEFAULT_CAPACITY = 8192;
+    private static final double LN2 = Math.log(2);
+
+    private final double enterThreshold;
+    private final double exitThreshold;
+    private final double decayPerNano;
+    private final long sweepIntervalNanos;
+    private final int mask;
+
+    // Slots of both sides in one array: bids at [0, capacity), asks at [capacity, 2 * capacity)
+    private final int capacity;
+    private final int[] prices;
+    private final boolean[] used;
+    private final double[] values;
+    private final long[] updatedAt;
+    // Entered slots, with each slot's position in the list for O(1) removal
+    private final int[] entered;
+    private final int[] enteredPosition;
+    private int enteredCount = 0;
+
+    private long now = 0;
+    private long nextSweep = 0;
+    private Listener listener;
+
+    /**
+     * @param halfLifeNanos half-life of accumulated values, or 0 for values that do not decay
+     */
+    public LevelThresholdTracker(double enterThreshold, double exitThreshold, long halfLifeNanos,
+                                 long sweepIntervalNanos) {
+        this(enterThreshold, exitThreshold, halfLifeNanos, sweepIntervalNanos, DEFAULT_CAPACITY);
+    }
+
+    public LevelThresholdTracker(double enterThreshold, double exitThreshold, long halfLifeNanos,
+                                 long sweepIntervalNanos, int capacity) {
+        if (exitThreshold > enterThreshold) {
+            throw new IllegalArgumentException("exit threshold " + exitThreshold + " is above enter threshold " + enterThreshold);
+        }
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity must be a power of two: " + capacity);
+        }
+        this.enterThreshold = enterThreshold;
+        this.exitThreshold = exitThreshold;
+        this.decayPerNano = halfLifeNanos > 0 ? LN2 / halfLifeNanos : 0;
+        this.sweepIntervalNanos = sweepIntervalNanos;
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        prices = new int[2 * capacity];
+        used = new boolean[2 * capacity];
+        values = new double[2 * capacity];
+        updatedAt = new long[2 * capacity];
+        entered = new int[2 * capacity];
+        enteredPosition = new int[2 * capacity];
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Advances exchange time and, once per sweep interval, lets decayed levels exit.
+     */
+    public void onTimestamp(long nanoseconds) {
+        now = nanoseconds;
+        if (decayPerNano == 0 || nanoseconds < nextSweep) {
+            return;
+        }
+        nextSweep = nanoseconds + sweepIntervalNanos;
+        // Walk backwards so removing the current entry does not skip one
+        for (int i = enteredCount - 1; i >= 0; i--) {
+            int slot = entered[i];
+            decay(slot);
+            update(slot);
+        }
+    }
+
+    /**
+     * Adds {@code amount} to the decayed value of a level.
+     */
+    public void add(boolean isBid, int price, double amount) {
+        int slot = slot(isBid, price);
+        decay(slot);
+        values[slot] += amount;
+        update(slot);
+    }
+
+    /**
+     * Replaces the value of a level, e.g. with its resting size.
+     */
+    public void set(boolean isBid, int price, double value) {
+        int slot = slot(isBid, price);
+        values[slot] = value;
+        updatedAt[slot] = now;
+        update(slot);
+    }
+
+    public double getValue(boolean isBid, int price) {
+        int slot = (isBid ? 0 : capacity) + (price & mask);
+        if (!used[slot] || prices[slot] != price) {
+            return 0;
+        }
+        return values[slot] * decayFactor(now - updatedAt[slot]);
+    }
+
+    public boolean isEntered(boolean isBid, int price) {
+        int slot = (isBid ? 0 : capacity) + (price & mask);
+        return used[slot] && prices[slot] == price && isListed(slot);
+    }
+
+    public int getEnteredCount() {
+        return enteredCount;
+    }
+
+    public void clear() {
+        for (int i = 0; i < used.length; i++) {
+            used[i] = false;
+            values[i] = 0;
+        }
+        enteredCount = 0;
+    }
+
+    private int slot(boolean isBid, int price) {
+        int slot = (isBid ? 0 : capacity) + (price & mask);
+        if (!used[slot] || prices[slot] != price) {
+            if (used[slot] && isListed(slot)) {
+                // The slot goes to another price: the old level exits with the value it had
+                decay(slot);
+                unlist(slot);
+                fire(slot, false);
+            }
+            used[slot] = true;
+            prices[slot] = price;
+            values[slot] = 0;
+        }
+        return slot;
+    }
+
+    private void decay(int slot) {
+        long elapsed = now - updatedAt[slot];
+        if (elapsed > 0 && decayPerNano > 0) {
+            values[slot] *= decayFactor(elapsed);
+        }
+        updatedAt[slot] = now;
+    }
+
+    private double decayFactor(long elapsed) {
+        return elapsed > 0 && decayPerNano > 0 ? Math.exp(-decayPerNano * elapsed) : 1;
+    }
+
+    private void update(int slot) {
+        boolean listed = isListed(slot);
+        if (!listed && values[slot] >= enterThreshold) {
+            enteredPosition[slot] = enteredCount;
+            entered[enteredCount++] = slot;
+            fire(slot, true);
+        } else if (listed && values[slot] < exitThreshold) {
+            unlist(slot);
+            fire(slot, false);
+        }
+    }
+
+    private boolean isListed(int slot) {
+        int position = enteredPosition[slot];
+        return position < enteredCount && entered[position] == slot;
+    }
+
+    private void unlist(int slot) {
+        int position = enteredPosition[slot];
+        int last = entered[--enteredCount];
+        entered[position] = last;
+        enteredPosition[last] = position;
+    }
+
+    private void fire(int slot, boolean isEntered) {
+        if (listener != null) {
+            listener.onCrossing(slot < capacity, prices[slot], values[slot], isEntered);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package core.book;
+
+import java.util.Arrays;
+
+/**
+ * Rolling added and pulled liquidity over several exchange-time windows, with a callback when the flow
+ * at one price band crosses a window's threshold.
+ * <p>
+ * Every size change of a level is stored as one signed delta in a preallocated ring, stamped with the
+ * latest {@link #onTimestamp(long)}. Each window keeps a tail into that ring and running totals per side
+ * and per price band; as time advances, deltas older than the window are subtracted again. Both updates
+ * are O(1) per event (eviction is amortized), independent of book depth, and nothing is allocated.
+ * <p>
+ * A size increase counts as added liquidity and a decrease as pulled; the depth feed does not say
+ * whether a decrease was a cancel or an execution. Bands are {@code bandTicks} wide and share
+ * {@value #BAND_SLOTS} slots, so two bands only collide when they are that many bands apart within one
+ * window. When more deltas arrive within the longest window than the ring holds, the oldest are evicted
+ * early and counted in {@link #getOverflowCount()}.
+ * <p>
+ * Callbacks are edge triggered: a band fires once when its added or pulled total rises to the threshold,
+ * and is re-armed when that total falls back below it.
+ */
+public class LiquidityFlowDetector {
+
+    public interface Listener {
+        /**
+         * @param window index of the window, in the order passed to the constructor
+         * @param price lowest price of the band
+         * @param isAdded true for added liquidity, false for pulled
+         * @param size rolling size added or pulled in the band over the window
+         */
+        void onLargeFlow(int window, boolean isBid, int price, boolean isAdded, long size);
+    }
+
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+    static final int BAND_SLOTS = 4096;
+    private static final int BAND_MASK = BAND_SLOTS - 1;
+
+    private final long[] windowNanos;
+    private final long[] thresholds;
+    private final int bandTicks;
+    private final int mask;
+
+    private final long[] times;
+    private final int[] bands;
+    private final int[] deltas;
+    private final boolean[] sides;
+    private long head = 0;
+    private final long[] tails;
+
+    // Per window: [0] added bid, [1] pulled bid, [2] added ask, [3] pulled ask
+    private final long[][] totals;
+    // Per window: added and pulled per (side, band slot), and whether that slot already fired
+    private final long[][] bandAdded;
+    private final long[][] bandPulled;
+    private final boolean[][] addedFired;
+    private final boolean[][] pulledFired;
+    private final long[] alerts;
+
+    private long now = 0;
+    private long overflowCount = 0;
+    private Listener listener;
+
+    public LiquidityFlowDetector(long[] windowNanos, long[] thresholds) {
+        this(windowNanos, thresholds, 1, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param windowNanos window lengths in nanoseconds of exchange time
+     * @param thresholds rolling size per band that triggers the listener, one per window
+     * @param bandTicks width of a price band; 1 watches single prices
+     * @param capacity number of deltas the ring holds, rounded up to a power of two
+     */
+    public LiquidityFlowDetector(long[] windowNanos, long[] thresholds, int bandTicks, int capacity) {
+        if (windowNanos.length == 0 || windowNanos.length != thresholds.length) {
+            throw new IllegalArgumentException("need one threshold per window");
+        }
+        if (bandTicks < 1) {
+            throw new IllegalArgumentException("bandTicks must be at least 1: " + bandTicks);
+        }
+        this.windowNanos = windowNanos.clone();
+        this.thresholds = thresholds.clone();
+        this.bandTicks = bandTicks;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        times = new long[size];
+        bands = new int[size];
+        deltas = new int[size];
+        sides = new boolean[size];
+
+        int windows = windowNanos.length;
+        tails = new long[windows];
+        totals = new long[windows][4];
+        bandAdded = new long[windows][2 * BAND_SLOTS];
+        bandPulled = new long[windows][2 * BAND_SLOTS];
+        addedFired = new boolean[windows][2 * BAND_SLOTS];
+        pulledFired = new boolean[windows][2 * BAND_SLOTS];
+        alerts = new long[windows];
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Advances exchange time and drops deltas that left each window.
+     */
+    public void onTimestamp(long nanoseconds) {
+        now = nanoseconds;
+        for (int window = 0; window < windowNanos.length; window++) {
+            long cutoff = nanoseconds - windowNanos[window];
+            while (tails[window] < head && times[(int) tails[window] & mask] <= cutoff) {
+                evict(window);
+            }
+        }
+    }
+
+    /**
+     * Records the change of one level from {@code previousSize} to {@code size}.
+     */
+    public void onDepth(boolean isBid, int price, int previousSize, int size) {
+        int delta = size - previousSize;
+        if (delta == 0) {
+            return;
+        }
+        // A full ring evicts the oldest delta from every window that still holds it
+        boolean overflow = false;
+        for (int window = 0; window < windowNanos.length; window++) {
+            if (head - tails[window] > mask) {
+                evict(window);
+                overflow = true;
+            }
+        }
+        if (overflow) {
+            overflowCount++;
+        }
+        int band = Math.floorDiv(price, bandTicks);
+        int cell = (int) head & mask;
+        times[cell] = now;
+        bands[cell] = band;
+        deltas[cell] = delta;
+        sides[cell] = isBid;
+        head++;
+
+        int slot = (isBid ? 0 : BAND_SLOTS) + (band & BAND_MASK);
+        int side = isBid ? 0 : 2;
+        for (int window = 0; window < windowNanos.length; window++) {
+            if (delta > 0) {
+                totals[window][side] += delta;
+                long added = bandAdded[window][slot] += delta;
+                if (added >= thresholds[window] && !addedFired[window][slot]) {
+                    addedFired[window][slot] = true;
+                    fire(window, isBid, band, true, added);
+                }
+            } else {
+                totals[window][side + 1] -= delta;
+                long pulled = bandPulled[window][slot] -= delta;
+                if (pulled >= thresholds[window] && !pulledFired[window][slot]) {
+                    pulledFired[window][slot] = true;
+                    fire(window, isBid, band, false, pulled);
+                }
+            }
+        }
+    }
+
+    private void evict(int window) {
+        int cell = (int) tails[window]++ & mask;
+        int delta = deltas[cell];
+        boolean isBid = sides[cell];
+        int slot = (isBid ? 0 : BAND_SLOTS) + (bands[cell] & BAND_MASK);
+        int side = isBid ? 0 : 2;
+        if (delta > 0) {
+            totals[window][side] -= delta;
+            if ((bandAdded[window][slot] -= delta) < thresholds[window]) {
+                addedFired[window][slot] = false;
+            }
+        } else {
+            totals[window][side + 1] += delta;
+            if ((bandPulled[window][slot] += delta) < thresholds[window]) {
+                pulledFired[window][slot] = false;
+            }
+        }
+    }
+
+    private void fire(int window, boolean isBid, int band, boolean isAdded, long size) {
+        alerts[window]++;
+        if (listener != null) {
+            listener.onLargeFlow(window, isBid, band * bandTicks, isAdded, size);
+        }
+    }
+
+    public void clear() {
+        head = 0;
+        Arrays.fill(tails, 0);
+        for (int window = 0; window < windowNanos.length; window++) {
+            Arrays.fill(totals[window], 0);
+            Arrays.fill(bandAdded[window], 0);
+            Arrays.fill(bandPulled[window], 0);
+            Arrays.fill(addedFired[window], false);
+            Arrays.fill(pulledFired[window], false);
+        }
+    }
+
+    public int getWindowCount() {
+        return windowNanos.length;
+    }
+
+    public long getWindowNanos(int window) {
+        return windowNanos[window];
+    }
+
+    public long getAdded(int window, boolean isBid) {
+        return totals[window][isBid ? 0 : 2];
+    }
+
+    public long getPulled(int window, boolean isBid) {
+        return totals[window][isBid ? 1 : 3];
+    }
+
+    /**
+     * @return added minus pulled size on one side over the window
+     */
+    public long getNetFlow(int window, boolean isBid) {
+        return getAdded(window, isBid) - getPulled(window, isBid);
+    }
+
+    public long getAddedAt(int window, boolean isBid, int price) {
+        return bandAdded[window][(isBid ? 0 : BAND_SLOTS) + (Math.floorDiv(price, bandTicks) & BAND_MASK)];
+    }
+
+    public long getPulledAt(int window, boolean isBid, int price) {
+        return bandPulled[window][(isBid ? 0 : BAND_SLOTS) + (Math.floorDiv(price, bandTicks) & BAND_MASK)];
+    }
+
+    /**
+     * @return number of deltas currently inside the window
+     */
+    public int getEventCount(int window) {
+        return (int) (head - tails[window]);
+    }
+
+    /**
+     * @return number of times the listener fired for the window since construction
+     */
+    public long getAlertCount(int window) {
+        return alerts[window];
+    }
+
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+}
@@ -0,0 +1,190 @@
+package core.book;
+
+/**
+ * {@link TickBook} that keeps per-level imbalance state for a stacked imbalance indicator.
+ * <p>
+ * An ask level is imbalanced when its size exceeds {@code ratioPercent}% of the bid it is compared with
+ * and is above {@code minVolume}; bid levels mirror that. The comparison is either at the same price or
+ * diagonal, i.e. ask(p) against bid(p - 1) and bid(p) against ask(p + 1). Each level's contribution
+ * ({@code size - opposite}) is stored, so a depth update re-evaluates only the level it touched and the
+ * one opposite level that compares against it, and the running totals are adjusted by the difference.
+ * <p>
+ * Runs of at least {@code stackSize} consecutive imbalanced levels are counted incrementally: flipping one
+ * level only looks at up to {@code stackSize} neighbours on each side, so per-event cost does not depend
+ * on book depth.
+ */
+public class StackedImbalanceBook extends TickBook {
+
+    private final int[] askContribution;
+    private final int[] bidContribution;
+    private long askImbalance = 0;
+    private long bidImbalance = 0;
+    private int askStacks = 0;
+    private int bidStacks = 0;
+
+    private int ratioPercent = 300;
+    private int minVolume = 30;
+    private int stackSize = 3;
+    private boolean diagonal = false;
+
+    public StackedImbalanceBook() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public StackedImbalanceBook(int capacity) {
+        super(capacity);
+        askContribution = new int[capacity];
+        bidContribution = new int[capacity];
+    }
+
+    /**
+     * Changes the thresholds and re-evaluates the whole window. Ratios below 100% are raised to 100%.
+     */
+    public void configure(int ratioPercent, int minVolume, int stackSize, boolean diagonal) {
+        this.ratioPercent = Math.max(ratioPercent, 100);
+        this.minVolume = minVolume;
+        this.stackSize = Math.max(stackSize, 1);
+        this.diagonal = diagonal;
+        onRebuild();
+    }
+
+    @Override
+    protected void onLevelChanged(boolean isBid, int index, int previousSize, int size) {
+        if (isBid) {
+            evaluateBid(index);
+            evaluateAsk(diagonal ? index + 1 : index);
+        } else {
+            evaluateAsk(index);
+            evaluateBid(diagonal ? index - 1 : index);
+        }
+    }
+
+    @Override
+    protected void onRebuild() {
+        askImbalance = 0;
+        bidImbalance = 0;
+        for (int i = 0; i < getCapacity(); i++) {
+            askContribution[i] = askContributionAt(i);
+            bidContribution[i] = bidContributionAt(i);
+            askImbalance += askContribution[i];
+            bidImbalance += bidContribution[i];
+        }
+        askStacks = countStacks(askContribution);
+        bidStacks = countStacks(bidContribution);
+    }
+
+    private void evaluateAsk(int index) {
+        if (index < 0 || index >= getCapacity()) {
+            return;
+        }
+        int contribution = askContributionAt(index);
+        int previous = askContribution[index];
+        if (contribution == previous) {
+            return;
+        }
+        askContribution[index] = contribution;
+        askImbalance += contribution - previous;
+        if ((previous > 0) != (contribution > 0)) {
+            askStacks += stackDelta(askContribution, index, contribution > 0);
+        }
+    }
+
+    private void evaluateBid(int index) {
+        if (index < 0 || index >= getCapacity()) {
+            return;
+        }
+        int contribution = bidContributionAt(index);
+        int previous = bidContribution[index];
+        if (contribution == previous) {
+            return;
+        }
+        bidContribution[index] = contribution;
+        bidImbalance += contribution - previous;
+        if ((previous > 0) != (contribution > 0)) {
+            bidStacks += stackDelta(bidContribution, index, contribution > 0);
+        }
+    }
+
+    private int askContributionAt(int index) {
+        int price = getBasePrice() + index;
+        int askSize = getSize(false, price);
+        int bidSize = getSize(true, diagonal ? price - 1 : price);
+        return isImbalanced(askSize, bidSize) ? askSize - bidSize : 0;
+    }
+
+    private int bidContributionAt(int index) {
+        int price = getBasePrice() + index;
+        int bidSize = getSize(true, price);
+        int askSize = getSize(false, diagonal ? price + 1 : price);
+        return isImbalanced(bidSize, askSize) ? bidSize - askSize : 0;
+    }
+
+    private boolean isImbalanced(int size, int oppositeSize) {
+        return size > minVolume && size > (long) oppositeSize * ratioPercent / 100;
+    }
+
+    /**
+     * @return the change in the number of stacks after the flag at {@code index} was set or cleared
+     */
+    private int stackDelta(int[] contribution, int index, boolean turnedOn) {
+        int left = 0;
+        for (int i = index - 1; i >= 0 && left < stackSize && contribution[i] > 0; i--) {
+            left++;
+        }
+        int right = 0;
+        for (int i = index + 1; i < contribution.length && right < stackSize && contribution[i] > 0; i++) {
+            right++;
+        }
+        int merged = left + 1 + right >= stackSize ? 1 : 0;
+        int split = (left >= stackSize ? 1 : 0) + (right >= stackSize ? 1 : 0);
+        return turnedOn ? merged - split : split - merged;
+    }
+
+    private int countStacks(int[] contribution) {
+        int stacks = 0;
+        int run = 0;
+        for (int value : contribution) {
+            if (value > 0) {
+                if (++run == stackSize) {
+                    stacks++;
+                }
+            } else {
+                run = 0;
+            }
+        }
+        return stacks;
+    }
+
+    public boolean isImbalanced(boolean isBid, int price) {
+        int index = price - getBasePrice();
+        if (index < 0 || index >= getCapacity()) {
+            return false;
+        }
+        return (isBid ? bidContribution : askContribution)[index] > 0;
+    }
+
+    /**
+     * @return the sum of {@code ask - bid} over all imbalanced ask levels
+     */
+    public long getAskImbalance() {
+        return askImbalance;
+    }
+
+    /**
+     * @return the sum of {@code bid - ask} over all imbalanced bid levels
+     */
+    public long getBidImbalance() {
+        return bidImbalance;
+    }
+
+    /**
+     * @return the number of runs of at least {@code stackSize} consecutive imbalanced levels on one side
+     */
+    public int getStackCount(boolean isBid) {
+        return isBid ? bidStacks : askStacks;
+    }
+
+    public int getStackSize() {
+        return stackSize;
+    }
+}
@@ -0,0 +1,350 @@
+package core.book;
+
+import java.util.Arrays;
+
+/**
+ * Bid and ask ladder for one instrument, stored in two {@code int[]} arrays indexed by the tick offset
+ * from a movable base price. Prices are the integer tick prices Bookmap passes to {@code onDepth}.
+ * <p>
+ * Best and worst prices of both sides are cached, so {@link #onDepth(boolean, int, int)} only scans when
+ * the level that held one of them is removed. When an update lands outside the window the arrays are
+ * shifted to re-center on the touch; levels that fall off the far end are dropped (see
+ * {@link #getDroppedLevels()}). An update too far from the touch to fit a window centred on it is ignored
+ * and counted in {@link #getOutOfRangeUpdates()}; the window only follows the update price while the book
+ * is empty. Nothing is allocated after construction.
+ * <p>
+ * The class is not thread safe. Modules that read it from another thread synchronize on the instance.
+ */
+public class TickBook {
+
+    public static final int NO_PRICE = Integer.MIN_VALUE;
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    private final int capacity;
+    private final int[] bidSizes;
+    private final int[] askSizes;
+    private int basePrice;
+    private boolean anchored = false;
+
+    private int bestBid = NO_PRICE;
+    private int lowestBid = NO_PRICE;
+    private int bestAsk = NO_PRICE;
+    private int highestAsk = NO_PRICE;
+    private int bidLevels = 0;
+    private int askLevels = 0;
+
+    private int recenterCount = 0;
+    private long droppedLevels = 0;
+    private long outOfRangeUpdates = 0;
+
+    public TickBook() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public TickBook(int capacity) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be at least 2 ticks: " + capacity);
+        }
+        this.capacity = capacity;
+        this.bidSizes = new int[capacity];
+        this.askSizes = new int[capacity];
+    }
+
+    /**
+     * Applies one depth update; {@code size == 0} removes the level.
+     */
+    public void onDepth(boolean isBid, int price, int size) {
+        if (!anchored) {
+            basePrice = price - capacity / 2;
+            anchored = true;
+        }
+        int index = price - basePrice;
+        if (index < 0 || index >= capacity) {
+            if (size == 0 || !recenter(price)) {
+                return; // Nothing is stored outside the window
+            }
+            index = price - basePrice;
+        }
+
+        if (isBid) {
+            updateBid(index, price, size);
+        } else {
+            updateAsk(index, price, size);
+        }
+    }
+
+    private void updateBid(int index, int price, int size) {
+        int previous = bidSizes[index];
+        bidSizes[index] = size;
+        if (previous != size) {
+            onLevelChanged(true, index, previous, size);
+        }
+        if (previous == 0 && size != 0) {
+            bidLevels++;
+            if (bestBid == NO_PRICE || price > bestBid) {
+                bestBid = price;
+            }
+            if (lowestBid == NO_PRICE || price < lowestBid) {
+                lowestBid = price;
+            }
+        } else if (previous != 0 && size == 0) {
+            if (--bidLevels == 0) {
+                bestBid = NO_PRICE;
+                lowestBid = NO_PRICE;
+                return;
+            }
+            if (price == bestBid) {
+                bestBid = scanDown(bidSizes, index - 1);
+            }
+            if (price == lowestBid) {
+                lowestBid = scanUp(bidSizes, index + 1);
+            }
+        }
+    }
+
+    private void updateAsk(int index, int price, int size) {
+        int previous = askSizes[index];
+        askSizes[index] = size;
+        if (previous != size) {
+            onLevelChanged(false, index, previous, size);
+        }
+        if (previous == 0 && size != 0) {
+            askLevels++;
+            if (bestAsk == NO_PRICE || price < bestAsk) {
+                bestAsk = price;
+            }
+            if (highestAsk == NO_PRICE || price > highestAsk) {
+                highestAsk = price;
+            }
+        } else if (previous != 0 && size == 0) {
+            if (--askLevels == 0) {
+                bestAsk = NO_PRICE;
+                highestAsk = NO_PRICE;
+                return;
+            }
+            if (price == bestAsk) {
+                bestAsk = scanUp(askSizes, index + 1);
+            }
+            if (price == highestAsk) {
+                highestAsk = scanDown(askSizes, index - 1);
+            }
+        }
+    }
+
+    private int scanDown(int[] sizes, int fromIndex) {
+        for (int i = Math.min(fromIndex, capacity - 1); i >= 0; i--) {
+            if (sizes[i] != 0) {
+                return basePrice + i;
+            }
+        }
+        return NO_PRICE;
+    }
+
+    private int scanUp(int[] sizes, int fromIndex) {
+        for (int i = Math.max(fromIndex, 0); i < capacity; i++) {
+            if (sizes[i] != 0) {
+                return basePrice + i;
+            }
+        }
+        return NO_PRICE;
+    }
+
+    /**
+     * Moves the window so that {@code price} fits while keeping the touch in the middle.
+     *
+     * @return false if the price does not fit a window centred on the touch, the update is then dropped
+     */
+    private boolean recenter(int price) {
+        int center;
+        if (bestBid != NO_PRICE && bestAsk != NO_PRICE) {
+            center = (int) (((long) bestBid + bestAsk) / 2);
+        } else if (bestBid != NO_PRICE) {
+            center = bestBid;
+        } else if (bestAsk != NO_PRICE) {
+            center = bestAsk;
+        } else {
+            center = price;
+        }
+        int newBase = center - capacity / 2;
+        if (price < newBase || price >= newBase + capacity) {
+            outOfRangeUpdates++;
+            return false;
+        }
+        shiftTo(newBase);
+        return true;
+    }
+
+    private void shiftTo(int newBase) {
+        long shift = (long) newBase - basePrice;
+        int levelsBefore = bidLevels + askLevels;
+        if (Math.abs(shift) >= capacity) {
+            Arrays.fill(bidSizes, 0);
+            Arrays.fill(askSizes, 0);
+        } else {
+            int offset = (int) shift;
+            shiftArray(bidSizes, offset);
+            shiftArray(askSizes, offset);
+        }
+        basePrice = newBase;
+        recenterCount++;
+        rebuildCache();
+        droppedLevels += levelsBefore - (bidLevels + askLevels);
+        onRebuild();
+    }
+
+    private void shiftArray(int[] sizes, int offset) {
+        if (offset > 0) {
+            System.arraycopy(sizes, offset, sizes, 0, capacity - offset);
+            Arrays.fill(sizes, capacity - offset, capacity, 0);
+        } else if (offset < 0) {
+            System.arraycopy(sizes, 0, sizes, -offset, capacity + offset);
+            Arrays.fill(sizes, 0, -offset, 0);
+        }
+    }
+
+    private void rebuildCache() {
+        bidLevels = 0;
+        askLevels = 0;
+        for (int i = 0; i < capacity; i++) {
+            if (bidSizes[i] != 0) {
+                bidLevels++;
+            }
+            if (askSizes[i] != 0) {
+                askLevels++;
+            }
+        }
+        bestBid = scanDown(bidSizes, capacity - 1);
+        lowestBid = scanUp(bidSizes, 0);
+        bestAsk = scanUp(askSizes, 0);
+        highestAsk = scanDown(askSizes, capacity - 1);
+    }
+
+    /**
+     * Called for every level whose size changed; {@code index} is the offset from {@link #getBasePrice()}.
+     */
+    protected void onLevelChanged(boolean isBid, int index, int previousSize, int size) {
+    }
+
+    /**
+     * Called after the window moved or the book was cleared, when every index may have changed.
+     */
+    protected void onRebuild() {
+    }
+
+    public void clear() {
+        Arrays.fill(bidSizes, 0);
+        Arrays.fill(askSizes, 0);
+        anchored = false;
+        rebuildCache();
+        onRebuild();
+    }
+
+    public int getSize(boolean isBid, int price) {
+        int index = price - basePrice;
+        if (!anchored || index < 0 || index >= capacity) {
+            return 0;
+        }
+        return isBid ? bidSizes[index] : askSizes[index];
+    }
+
+    /**
+     * @return the next non-empty bid below {@code price}, or {@link #NO_PRICE}
+     */
+    public int nextBid(int price) {
+        if (bidLevels == 0 || price <= lowestBid) {
+            return NO_PRICE;
+        }
+        int lowestIndex = lowestBid - basePrice;
+        for (int i = Math.min(price - basePrice, capacity) - 1; i >= lowestIndex; i--) {
+            if (bidSizes[i] != 0) {
+                return basePrice + i;
+            }
+        }
+        return NO_PRICE;
+    }
+
+    /**
+     * @return the next non-empty ask above {@code price}, or {@link #NO_PRICE}
+     */
+    public int nextAsk(int price) {
+        if (askLevels == 0 || price >= highestAsk) {
+            return NO_PRICE;
+        }
+        int highestIndex = highestAsk - basePrice;
+        for (int i = Math.max(price - basePrice, -1) + 1; i <= highestIndex; i++) {
+            if (askSizes[i] != 0) {
+                return basePrice + i;
+            }
+        }
+        return NO_PRICE;
+    }
+
+    public int getBestBid() {
+        return bestBid;
+    }
+
+    public int getBestAsk() {
+        return bestAsk;
+    }
+
+    public int getBestBidSize() {
+        return bestBid == NO_PRICE ? 0 : bidSizes[bestBid - basePrice];
+    }
+
+    public int getBestAskSize() {
+        return bestAsk == NO_PRICE ? 0 : askSizes[bestAsk - basePrice];
+    }
+
+    public int getLowestBid() {
+        return lowestBid;
+    }
+
+    public int getHighestAsk() {
+        return highestAsk;
+    }
+
+    /**
+     * @return the highest price holding size on either side, or {@link #NO_PRICE} for an empty book
+     */
+    public int getHighestPrice() {
+        return Math.max(highestAsk, bestBid);
+    }
+
+    /**
+     * @return the lowest price holding size on either side, or {@link #NO_PRICE} for an empty book
+     */
+    public int getLowestPrice() {
+        if (lowestBid == NO_PRICE) {
+            return bestAsk;
+        }
+        return bestAsk == NO_PRICE ? lowestBid : Math.min(lowestBid, bestAsk);
+    }
+
+    public int getLevelCount(boolean isBid) {
+        return isBid ? bidLevels : askLevels;
+    }
+
+    public boolean isEmpty(boolean isBid) {
+        return (isBid ? bidLevels : askLevels) == 0;
+    }
+
+    public int getBasePrice() {
+        return basePrice;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getRecenterCount() {
+        return recenterCount;
+    }
+
+    public long getDroppedLevels() {
+        return droppedLevels;
+    }
+
+    public long getOutOfRangeUpdates() {
+        return outOfRangeUpdates;
+    }
+}
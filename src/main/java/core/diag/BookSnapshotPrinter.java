@@ -0,0 +1,106 @@
+package core.diag;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import core.book.TickBook;
+import velox.api.layer1.common.Log;
+
+/**
+ * Logs the top levels of a book periodically from its own thread, instead of printing the whole book
+ * on every update.
+ * <p>
+ * The feed thread calls {@link #offer(TickBook)} after each update. That is a single volatile read
+ * except when the printer has asked for a snapshot: then the top {@code levels} per side are copied
+ * into arrays the printer owns until its next tick. Nothing is formatted or allocated on the feed
+ * thread, and the book needs no lock. A book that did not change is not printed again.
+ */
+public class BookSnapshotPrinter {
+
+    private final String title;
+    private final int levels;
+    private final long periodMillis;
+    private final int[] bidPrices;
+    private final int[] bidSizes;
+    private final int[] askPrices;
+    private final int[] askSizes;
+    private int bidCount;
+    private int askCount;
+    // true: the printer waits for a snapshot and the feed thread owns the arrays; false: the printer owns them
+    private volatile boolean requested = false;
+    private boolean awaitingSnapshot = false;
+    private ScheduledExecutorService scheduler;
+
+    public BookSnapshotPrinter(String title, int levels, long period, TimeUnit unit) {
+        this.title = title;
+        this.levels = levels;
+        this.periodMillis = unit.toMillis(period);
+        bidPrices = new int[levels];
+        bidSizes = new int[levels];
+        askPrices = new int[levels];
+        askSizes = new int[levels];
+    }
+
+    public synchronized void start() {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "book-snapshot-" + title);
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(this::tick, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    /**
+     * Called on the feed thread after the book changed; copies the top of the book if a snapshot is due.
+     */
+    public void offer(TickBook book) {
+        if (!requested) {
+            return;
+        }
+        bidCount = 0;
+        for (int price = book.getBestBid(); price != TickBook.NO_PRICE && bidCount < levels; price = book.nextBid(price)) {
+            bidPrices[bidCount] = price;
+            bidSizes[bidCount++] = book.getSize(true, price);
+        }
+        askCount = 0;
+        for (int price = book.getBestAsk(); price != TickBook.NO_PRICE && askCount < levels; price = book.nextAsk(price)) {
+            askPrices[askCount] = price;
+            askSizes[askCount++] = book.getSize(false, price);
+        }
+        requested = false;
+    }
+
+    private void tick() {
+        if (awaitingSnapshot && !requested) {
+            print();
+            awaitingSnapshot = false;
+        }
+        if (!awaitingSnapshot) {
+            awaitingSnapshot = true;
+            requested = true;
+        }
+    }
+
+    private void print() {
+        StringBuilder builder = new StringBuilder(64 + 24 * (bidCount + askCount));
+        builder.append(title).append(" top ").append(levels).append(" levels\nPrice\tBid Size\tAsk Size");
+        for (int i = askCount - 1; i >= 0; i--) {
+            builder.append('\n').append(askPrices[i]).append("\t\t").append(askSizes[i]);
+        }
+        for (int i = 0; i < bidCount; i++) {
+            builder.append('\n').append(bidPrices[i]).append('\t').append(bidSizes[i]).append('\t');
+        }
+        Log.info(builder.toString());
+    }
+}
@@ -0,0 +1,149 @@
+package core.diag;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * One rate-limited or sampled log statement, held in a {@code static final} field at the call site:
+ * <pre>
+ * private static final LogSite TOP_LEVELS_LOG = LogSite.every("OrderFlows.topLevels", 250, TimeUnit.MILLISECONDS);
+ * ...
+ * TOP_LEVELS_LOG.info("Sum of top 5 Bids: {}, Asks: {}", bids, asks);
+ * </pre>
+ * A suppressed call costs a counter increment and a clock read; it allocates nothing and formats
+ * nothing, since the primitive overloads only box and build the message once a line is emitted. Each
+ * emitted line ends with the number of calls suppressed since the previous one. For messages the
+ * overloads do not cover, guard the formatting with {@link #shouldLog()} and pass the result to
+ * {@link #emit(String)}.
+ * <p>
+ * Call counts are not synchronized: with several feed threads sharing a site they are approximate,
+ * while the rate limit itself holds.
+ */
+public final class LogSite {
+
+    private final String name;
+    private final long intervalNanos;
+    private final int sampleEvery;
+    private final AtomicLong nextAllowed = new AtomicLong(System.nanoTime());
+    private long calls = 0;
+    private long emittedCalls = 0;
+
+    private LogSite(String name, long intervalNanos, int sampleEvery) {
+        this.name = name;
+        this.intervalNanos = intervalNanos;
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * @return a site that logs at most once per {@code interval}
+     */
+    public static LogSite every(String name, long interval, TimeUnit unit) {
+        return new LogSite(name, unit.toNanos(interval), 1);
+    }
+
+    /**
+     * @return a site that logs one call in {@code everyN}
+     */
+    public static LogSite sampled(String name, int everyN) {
+        return new LogSite(name, 0, everyN);
+    }
+
+    /**
+     * Counts the call and decides whether it may log. A {@code true} result must be followed by
+     * {@link #emit(String)}.
+     */
+    public boolean shouldLog() {
+        long call = ++calls;
+        if (sampleEvery > 1 && call % sampleEvery != 0) {
+            return false;
+        }
+        if (intervalNanos <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        long next = nextAllowed.get();
+        return now - next >= 0 && nextAllowed.compareAndSet(next, now + intervalNanos);
+    }
+
+    /**
+     * Logs {@code message} unconditionally, with the number of calls suppressed since the last line.
+     */
+    public void emit(String message) {
+        long suppressed = calls - emittedCalls - 1;
+        emittedCalls = calls;
+        Log.info(suppressed > 0 ? message + " [" + name + ": " + suppressed + " suppressed]" : message);
+    }
+
+    public void info(String message) {
+        if (shouldLog()) {
+            emit(message);
+        }
+    }
+
+    public void info(String pattern, long a) {
+        if (shouldLog()) {
+            emit(format(pattern, a));
+        }
+    }
+
+    public void info(String pattern, long a, long b) {
+        if (shouldLog()) {
+            emit(format(pattern, a, b));
+        }
+    }
+
+    public void info(String pattern, long a, long b, long c, long d) {
+        if (shouldLog()) {
+            emit(format(pattern, a, b, c, d));
+        }
+    }
+
+    public void info(String pattern, double a) {
+        if (shouldLog()) {
+            emit(format(pattern, a));
+        }
+    }
+
+    public void info(String pattern, double a, double b) {
+        if (shouldLog()) {
+            emit(format(pattern, a, b));
+        }
+    }
+
+    public void info(String pattern, Object a) {
+        if (shouldLog()) {
+            emit(format(pattern, a));
+        }
+    }
+
+    public void info(String pattern, Object a, Object b) {
+        if (shouldLog()) {
+            emit(format(pattern, a, b));
+        }
+    }
+
+    /**
+     * Replaces each {@code {}} in {@code pattern} with the next argument.
+     */
+    static String format(String pattern, Object... args) {
+        StringBuilder builder = new StringBuilder(pattern.length() + 16 * args.length);
+        int argument = 0;
+        int start = 0;
+        int placeholder;
+        while (argument < args.length && (placeholder = pattern.indexOf("{}", start)) >= 0) {
+            builder.append(pattern, start, placeholder).append(args[argument++]);
+            start = placeholder + 2;
+        }
+        return builder.append(pattern, start, pattern.length()).toString();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCallCount() {
+        return calls;
+    }
+}
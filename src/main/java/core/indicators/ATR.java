@@ -0,0 +1,80 @@
+package core.indicators;
+
+/**
+ * Wilder's average true range: the first value is the mean true range of {@code period} bars, then
+ * {@code atr = (atr * (period - 1) + trueRange) / period}. The first bar's true range is its high-low range.
+ */
+public final class ATR implements StreamingIndicator {
+
+    private final int period;
+    private double value = Double.NaN;
+    private double trueRange = Double.NaN;
+    private double previousClose = Double.NaN;
+    private double seedSum = 0;
+    private int count = 0;
+
+    public ATR(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.period = period;
+    }
+
+    public void update(double high, double low, double close) {
+        trueRange = Double.isNaN(previousClose)
+                ? high - low
+                : Math.max(high, previousClose) - Math.min(low, previousClose);
+        previousClose = close;
+        if (count < period) {
+            seedSum += trueRange;
+            if (++count == period) {
+                value = seedSum / period;
+            }
+        } else {
+            value = (value * (period - 1) + trueRange) / period;
+        }
+    }
+
+    /**
+     * @return the ATR as if a bar with these values completed now, without changing the indicator
+     */
+    public double peek(double high, double low, double close) {
+        if (count < period - 1) {
+            return Double.NaN;
+        }
+        double range = Double.isNaN(previousClose)
+                ? high - low
+                : Math.max(high, previousClose) - Math.min(low, previousClose);
+        return count < period ? (seedSum + range) / period : (value * (period - 1) + range) / period;
+    }
+
+    @Override
+    public double value() {
+        return value;
+    }
+
+    /**
+     * @return the true range of the latest bar
+     */
+    public double getTrueRange() {
+        return trueRange;
+    }
+
+    @Override
+    public boolean isReady() {
+        return count == period;
+    }
+
+    @Override
+    public void reset() {
+        value = Double.NaN;
+        trueRange = Double.NaN;
+        previousClose = Double.NaN;
+        seedSum = 0;
+        count = 0;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+}
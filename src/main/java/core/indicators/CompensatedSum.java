@@ -0,0 +1,30 @@
+package core.indicators;
+
+/**
+ * Running sum with Neumaier compensation, so adding and removing millions of values does not drift
+ * the way a plain {@code double} accumulator does.
+ */
+public final class CompensatedSum {
+
+    private double sum = 0;
+    private double compensation = 0;
+
+    public void add(double value) {
+        double total = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) {
+            compensation += (sum - total) + value;
+        } else {
+            compensation += (value - total) + sum;
+        }
+        sum = total;
+    }
+
+    public double get() {
+        return sum + compensation;
+    }
+
+    public void reset() {
+        sum = 0;
+        compensation = 0;
+    }
+}
@@ -0,0 +1,155 @@
+package core.indicators;
+
+/**
+ * Detects a price crossing a moving level such as an SMA or VWAP. A side is armed while the price is
+ * on it, and the crossing fires once when the {@link Confirmation} rule is met on the other side;
+ * the opposite side arms itself the same way, so the signal cannot fire twice in one direction.
+ * {@link Arming} decides how long an armed side waits for the confirmation.
+ * <p>
+ * In {@link Mode#BAR_CLOSE} mode a module evaluates with each completed bar's close and the committed
+ * indicator value. In {@link Mode#INTRABAR} mode it evaluates every trade against the level of the bar
+ * still forming, e.g. {@link SMA#peek(double)}, so a crossing is acted on at the trade that confirms it.
+ */
+public final class CrossoverSignal {
+
+    public enum Mode {
+        BAR_CLOSE,
+        INTRABAR
+    }
+
+    public enum Confirmation {
+        /** Fires when the price reaches the level; arms once it is strictly on the other side. */
+        TOUCH,
+        /** Fires when the price is strictly beyond the level. */
+        CLOSE_THROUGH,
+        /** Fires when the price is at least {@code ticks} ticks beyond the level. */
+        TICKS_BEYOND
+    }
+
+    public enum Arming {
+        /** A side stays armed until its crossing fires. */
+        UNTIL_FIRED,
+        /**
+         * A side is armed only when the previous price evaluated was on it, compared with the current
+         * level, so the confirmation must come on the very next evaluation.
+         */
+        PREVIOUS_PRICE
+    }
+
+    public static final int NONE = 0;
+    public static final int UP = 1;
+    public static final int DOWN = -1;
+
+    private final Mode mode;
+    private final Confirmation confirmation;
+    private final int ticks;
+    private double tickSize = 1;
+    private Arming arming = Arming.UNTIL_FIRED;
+    private double previousPrice = Double.NaN;
+    private boolean armedUp = false;
+    private boolean armedDown = false;
+    private long upCount = 0;
+    private long downCount = 0;
+
+    public CrossoverSignal(Mode mode, Confirmation confirmation) {
+        this(mode, confirmation, 0);
+    }
+
+    /**
+     * @param ticks distance beyond the level for {@link Confirmation#TICKS_BEYOND}
+     */
+    public CrossoverSignal(Mode mode, Confirmation confirmation, int ticks) {
+        this.mode = mode;
+        this.confirmation = confirmation;
+        this.ticks = confirmation == Confirmation.TICKS_BEYOND ? Math.max(1, ticks) : 0;
+    }
+
+    /**
+     * @param tickSize size of one tick in the unit of the prices evaluated; 1 for Bookmap's tick prices
+     */
+    public CrossoverSignal withTickSize(double tickSize) {
+        this.tickSize = tickSize;
+        return this;
+    }
+
+    public CrossoverSignal withArming(Arming arming) {
+        this.arming = arming;
+        return this;
+    }
+
+    public int evaluate(double price, double level) {
+        return evaluate(price, level, 0);
+    }
+
+    /**
+     * @param extraDistance added to the confirmation distance, e.g. a volatility band; arming still
+     *                      happens at the level itself
+     * @return {@link #UP}, {@link #DOWN} or {@link #NONE}
+     */
+    public int evaluate(double price, double level, double extraDistance) {
+        if (Double.isNaN(level)) {
+            return NONE;
+        }
+        if (arming == Arming.PREVIOUS_PRICE) {
+            armedUp = isOnOrBelow(previousPrice, level);
+            armedDown = isOnOrAbove(previousPrice, level);
+            previousPrice = price;
+        }
+        double distance = ticks * tickSize + extraDistance;
+        int signal = NONE;
+        if (armedUp && (confirmation == Confirmation.CLOSE_THROUGH ? price > level + distance : price >= level + distance)) {
+            armedUp = false;
+            upCount++;
+            signal = UP;
+        } else if (armedDown && (confirmation == Confirmation.CLOSE_THROUGH ? price < level - distance : price <= level - distance)) {
+            armedDown = false;
+            downCount++;
+            signal = DOWN;
+        }
+        if (isOnOrBelow(price, level)) {
+            armedUp = true;
+        }
+        if (isOnOrAbove(price, level)) {
+            armedDown = true;
+        }
+        return signal;
+    }
+
+    private boolean isOnOrBelow(double price, double level) {
+        return confirmation == Confirmation.TOUCH ? price < level : price <= level;
+    }
+
+    private boolean isOnOrAbove(double price, double level) {
+        return confirmation == Confirmation.TOUCH ? price > level : price >= level;
+    }
+
+    public void reset() {
+        armedUp = false;
+        armedDown = false;
+        previousPrice = Double.NaN;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public boolean isIntrabar() {
+        return mode == Mode.INTRABAR;
+    }
+
+    public Confirmation getConfirmation() {
+        return confirmation;
+    }
+
+    public Arming getArming() {
+        return arming;
+    }
+
+    public long getUpCount() {
+        return upCount;
+    }
+
+    public long getDownCount() {
+        return downCount;
+    }
+}
@@ -0,0 +1,73 @@
+package core.indicators;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-capacity ring of the last {@code capacity} doubles. Pushing onto a full ring evicts and returns
+ * the oldest value. Nothing is allocated after construction.
+ */
+public final class DoubleRing {
+
+    private final double[] values;
+    private int next = 0;
+    private int size = 0;
+
+    public DoubleRing(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        values = new double[capacity];
+    }
+
+    /**
+     * @return the value pushed out, or {@link Double#NaN} if the ring was not full
+     */
+    public double push(double value) {
+        double evicted = size == values.length ? values[next] : Double.NaN;
+        values[next] = value;
+        if (++next == values.length) {
+            next = 0;
+        }
+        if (size < values.length) {
+            size++;
+        }
+        return evicted;
+    }
+
+    /**
+     * @param ago 0 for the newest value, {@code size() - 1} for the oldest
+     */
+    public double get(int ago) {
+        if (ago < 0 || ago >= size) {
+            throw new IndexOutOfBoundsException("ago " + ago + ", size " + size);
+        }
+        int index = next - 1 - ago;
+        return values[index < 0 ? index + values.length : index];
+    }
+
+    public double newest() {
+        return get(0);
+    }
+
+    public double oldest() {
+        return get(size - 1);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return values.length;
+    }
+
+    public boolean isFull() {
+        return size == values.length;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0);
+        next = 0;
+        size = 0;
+    }
+}
@@ -0,0 +1,63 @@
+package core.indicators;
+
+/**
+ * Exponential moving average with {@code alpha = 2 / (period + 1)}, seeded with the simple average of
+ * the first {@code period} values.
+ */
+public final class EMA implements SeriesIndicator {
+
+    private final int period;
+    private final double alpha;
+    private double value = Double.NaN;
+    private double seedSum = 0;
+    private int count = 0;
+
+    public EMA(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.period = period;
+        alpha = 2.0 / (period + 1);
+    }
+
+    @Override
+    public void update(double input) {
+        if (count < period) {
+            seedSum += input;
+            if (++count == period) {
+                value = seedSum / period;
+            }
+        } else {
+            value += alpha * (input - value);
+        }
+    }
+
+    @Override
+    public double peek(double input) {
+        if (count < period - 1) {
+            return Double.NaN;
+        }
+        return count < period ? (seedSum + input) / period : value + alpha * (input - value);
+    }
+
+    @Override
+    public double value() {
+        return value;
+    }
+
+    @Override
+    public boolean isReady() {
+        return count == period;
+    }
+
+    @Override
+    public void reset() {
+        value = Double.NaN;
+        seedSum = 0;
+        count = 0;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+}
@@ -0,0 +1,107 @@
+package core.indicators;
+
+/**
+ * Highest ({@link #max(int)}) or lowest ({@link #min(int)}) of the last {@code period} values. A
+ * monotonic deque holds only the values that can still become the extreme, so each value is added and
+ * removed once: amortized O(1) per update, worst case O(period) for a single update.
+ */
+public final class RollingExtreme implements SeriesIndicator {
+
+    private final int period;
+    private final boolean max;
+    private final double[] values;
+    private final long[] indexes;
+    private int head = 0;
+    private int size = 0;
+    private long count = 0;
+
+    public static RollingExtreme max(int period) {
+        return new RollingExtreme(period, true);
+    }
+
+    public static RollingExtreme min(int period) {
+        return new RollingExtreme(period, false);
+    }
+
+    private RollingExtreme(int period, boolean max) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.period = period;
+        this.max = max;
+        values = new double[period];
+        indexes = new long[period];
+    }
+
+    @Override
+    public void update(double value) {
+        // Values the new one dominates can never be the extreme again
+        while (size > 0) {
+            double last = values[slot(size - 1)];
+            if (max ? last > value : last < value) {
+                break;
+            }
+            size--;
+        }
+        if (size > 0 && indexes[head] <= count - period) {
+            head = slot(1);
+            size--;
+        }
+        int tail = slot(size);
+        values[tail] = value;
+        indexes[tail] = count;
+        size++;
+        count++;
+    }
+
+    @Override
+    public double peek(double value) {
+        if (count < period - 1) {
+            return Double.NaN;
+        }
+        // The front leaves the window with this update if it is the oldest value
+        int front = size > 0 && indexes[head] <= count - period ? 1 : 0;
+        if (front == size) {
+            return value;
+        }
+        double current = values[slot(front)];
+        return max ? Math.max(current, value) : Math.min(current, value);
+    }
+
+    private int slot(int offset) {
+        int index = head + offset;
+        return index >= period ? index - period : index;
+    }
+
+    @Override
+    public double value() {
+        return count >= period ? values[head] : Double.NaN;
+    }
+
+    /**
+     * @return how many updates ago the current extreme arrived, 0 being the latest
+     */
+    public int getAge() {
+        return size == 0 ? -1 : (int) (count - 1 - indexes[head]);
+    }
+
+    @Override
+    public boolean isReady() {
+        return count >= period;
+    }
+
+    @Override
+    public void reset() {
+        head = 0;
+        size = 0;
+        count = 0;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+
+    public boolean isMax() {
+        return max;
+    }
+}
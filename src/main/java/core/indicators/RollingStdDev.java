@@ -0,0 +1,111 @@
+package core.indicators;
+
+/**
+ * Population standard deviation, variance and mean of the last {@code period} values, kept with a
+ * sliding-window form of Welford's update. Rounding error in that update accumulates, so every
+ * {@value #RESYNC_WINDOWS} windows the sums are recomputed from the ring: amortized O(1) per update.
+ */
+public final class RollingStdDev implements SeriesIndicator {
+
+    static final int RESYNC_WINDOWS = 16;
+
+    private final int period;
+    private final DoubleRing window;
+    private final long resyncInterval;
+    private long sinceResync = 0;
+    private double mean = 0;
+    private double squaredDeviations = 0;
+
+    public RollingStdDev(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.period = period;
+        window = new DoubleRing(period);
+        resyncInterval = (long) RESYNC_WINDOWS * period;
+    }
+
+    @Override
+    public void update(double value) {
+        if (window.isFull()) {
+            double evicted = window.push(value);
+            double previousMean = mean;
+            mean += (value - evicted) / period;
+            squaredDeviations += (value - evicted) * (value - mean + evicted - previousMean);
+            if (++sinceResync == resyncInterval) {
+                resync();
+            }
+        } else {
+            window.push(value);
+            double delta = value - mean;
+            mean += delta / window.size();
+            squaredDeviations += delta * (value - mean);
+        }
+        if (squaredDeviations < 0) {
+            squaredDeviations = 0;
+        }
+    }
+
+    private void resync() {
+        double sum = 0;
+        for (int i = 0; i < period; i++) {
+            sum += window.get(i);
+        }
+        mean = sum / period;
+        squaredDeviations = 0;
+        for (int i = 0; i < period; i++) {
+            double deviation = window.get(i) - mean;
+            squaredDeviations += deviation * deviation;
+        }
+        sinceResync = 0;
+    }
+
+    @Override
+    public double peek(double value) {
+        if (window.isFull()) {
+            double evicted = window.oldest();
+            double nextMean = mean + (value - evicted) / period;
+            double next = squaredDeviations + (value - evicted) * (value - nextMean + evicted - mean);
+            return Math.sqrt(Math.max(0, next) / period);
+        }
+        if (window.size() < period - 1) {
+            return Double.NaN;
+        }
+        double delta = value - mean;
+        double nextMean = mean + delta / period;
+        return Math.sqrt(Math.max(0, squaredDeviations + delta * (value - nextMean)) / period);
+    }
+
+    /**
+     * @return the standard deviation
+     */
+    @Override
+    public double value() {
+        return window.isFull() ? Math.sqrt(squaredDeviations / period) : Double.NaN;
+    }
+
+    public double getVariance() {
+        return window.isFull() ? squaredDeviations / period : Double.NaN;
+    }
+
+    public double getMean() {
+        return window.isFull() ? mean : Double.NaN;
+    }
+
+    @Override
+    public boolean isReady() {
+        return window.isFull();
+    }
+
+    @Override
+    public void reset() {
+        window.clear();
+        mean = 0;
+        squaredDeviations = 0;
+        sinceResync = 0;
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+}
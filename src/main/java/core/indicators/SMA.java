@@ -0,0 +1,57 @@
+package core.indicators;
+
+/**
+ * Simple moving average over the last {@code period} values, O(1) per update.
+ */
+public final class SMA implements SeriesIndicator {
+
+    private final int period;
+    private final DoubleRing window;
+    private final CompensatedSum sum = new CompensatedSum();
+
+    public SMA(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.period = period;
+        window = new DoubleRing(period);
+    }
+
+    @Override
+    public void update(double value) {
+        double evicted = window.push(value);
+        sum.add(value);
+        if (!Double.isNaN(evicted)) {
+            sum.add(-evicted);
+        }
+    }
+
+    @Override
+    public double peek(double value) {
+        if (window.size() < period - 1) {
+            return Double.NaN;
+        }
+        double evicted = window.isFull() ? window.oldest() : 0;
+        return (sum.get() - evicted + value) / period;
+    }
+
+    @Override
+    public double value() {
+        return window.isFull() ? sum.get() / period : Double.NaN;
+    }
+
+    @Override
+    public boolean isReady() {
+        return window.isFull();
+    }
+
+    @Override
+    public void reset() {
+        window.clear();
+        sum.reset();
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+}
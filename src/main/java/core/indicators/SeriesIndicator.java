@@ -0,0 +1,16 @@
+package core.indicators;
+
+/**
+ * {@link StreamingIndicator} over a single series, such as bar closes. {@link #peek(double)} evaluates the
+ * bar still forming: the value as if it closed at the latest price, in O(1).
+ */
+public interface SeriesIndicator extends StreamingIndicator {
+
+    void update(double value);
+
+    /**
+     * @return what {@link #value()} would be after {@code update(value)}, without changing the
+     *         indicator; {@link Double#NaN} if it would not be ready yet
+     */
+    double peek(double value);
+}
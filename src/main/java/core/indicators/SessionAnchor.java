@@ -0,0 +1,139 @@
+package core.indicators;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.TemporalAdjusters;
+
+/**
+ * Where an anchored calculation such as {@link VWAP} starts over. Times are Bookmap timestamps,
+ * nanoseconds since the epoch. Boundaries are computed with {@code java.time} in the anchor's zone, so
+ * daylight-saving changes keep the local time; they are only computed when a boundary is crossed.
+ */
+public interface SessionAnchor {
+
+    ZoneId NEW_YORK = ZoneId.of("America/New_York");
+
+    /**
+     * @return start of the session that contains {@code nanos}; later than {@code nanos} if no session
+     *         has started yet
+     */
+    long sessionStart(long nanos);
+
+    /**
+     * @return first reset strictly after {@code nanos}, or {@link Long#MAX_VALUE} for none
+     */
+    long nextReset(long nanos);
+
+    /**
+     * One session covering everything.
+     */
+    static SessionAnchor none() {
+        return new SessionAnchor() {
+            @Override
+            public long sessionStart(long nanos) {
+                return Long.MIN_VALUE;
+            }
+
+            @Override
+            public long nextReset(long nanos) {
+                return Long.MAX_VALUE;
+            }
+        };
+    }
+
+    /**
+     * Starts at {@code anchorNanos} and never resets; data before it is ignored.
+     */
+    static SessionAnchor at(long anchorNanos) {
+        return new SessionAnchor() {
+            @Override
+            public long sessionStart(long nanos) {
+                return anchorNanos;
+            }
+
+            @Override
+            public long nextReset(long nanos) {
+                return nanos < anchorNanos ? anchorNanos : Long.MAX_VALUE;
+            }
+        };
+    }
+
+    /**
+     * Resets every day at {@code time} in {@code zone}.
+     */
+    static SessionAnchor daily(LocalTime time, ZoneId zone) {
+        return new SessionAnchor() {
+            @Override
+            public long sessionStart(long nanos) {
+                ZonedDateTime now = toZoned(nanos, zone);
+                LocalDate date = now.toLocalDate();
+                ZonedDateTime start = date.atTime(time).atZone(zone);
+                return toNanos(start.isAfter(now) ? date.minusDays(1).atTime(time).atZone(zone) : start);
+            }
+
+            @Override
+            public long nextReset(long nanos) {
+                ZonedDateTime now = toZoned(nanos, zone);
+                LocalDate date = now.toLocalDate();
+                ZonedDateTime next = date.atTime(time).atZone(zone);
+                return toNanos(next.isAfter(now) ? next : date.plusDays(1).atTime(time).atZone(zone));
+            }
+        };
+    }
+
+    /**
+     * Resets every week on {@code day} at {@code time} in {@code zone}.
+     */
+    static SessionAnchor weekly(DayOfWeek day, LocalTime time, ZoneId zone) {
+        return new SessionAnchor() {
+            @Override
+            public long sessionStart(long nanos) {
+                ZonedDateTime now = toZoned(nanos, zone);
+                LocalDate date = now.toLocalDate().with(TemporalAdjusters.previousOrSame(day));
+                ZonedDateTime start = date.atTime(time).atZone(zone);
+                return toNanos(start.isAfter(now) ? date.minusWeeks(1).atTime(time).atZone(zone) : start);
+            }
+
+            @Override
+            public long nextReset(long nanos) {
+                ZonedDateTime now = toZoned(nanos, zone);
+                LocalDate date = now.toLocalDate().with(TemporalAdjusters.nextOrSame(day));
+                ZonedDateTime next = date.atTime(time).atZone(zone);
+                return toNanos(next.isAfter(now) ? next : date.plusWeeks(1).atTime(time).atZone(zone));
+            }
+        };
+    }
+
+    /**
+     * US equity and index futures regular trading hours: resets at 09:30 New York time.
+     */
+    static SessionAnchor rthOpen() {
+        return daily(LocalTime.of(9, 30), NEW_YORK);
+    }
+
+    /**
+     * CME Globex trading day: resets at 18:00 New York time.
+     */
+    static SessionAnchor globexDaily() {
+        return daily(LocalTime.of(18, 0), NEW_YORK);
+    }
+
+    /**
+     * CME Globex trading week: resets Sunday at 18:00 New York time.
+     */
+    static SessionAnchor globexWeekly() {
+        return weekly(DayOfWeek.SUNDAY, LocalTime.of(18, 0), NEW_YORK);
+    }
+
+    private static ZonedDateTime toZoned(long nanos, ZoneId zone) {
+        return Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)).atZone(zone);
+    }
+
+    private static long toNanos(ZonedDateTime time) {
+        return time.toEpochSecond() * 1_000_000_000L + time.getNano();
+    }
+}
@@ -0,0 +1,20 @@
+package core.indicators;
+
+/**
+ * Indicator fed one observation at a time. Updating and reading are separate, so a module can read
+ * {@link #value()} as often as it likes within a bar without moving the indicator.
+ */
+public interface StreamingIndicator {
+
+    /**
+     * @return the current value, or {@link Double#NaN} until {@link #isReady()}
+     */
+    double value();
+
+    /**
+     * @return true once enough observations arrived to fill the first window
+     */
+    boolean isReady();
+
+    void reset();
+}
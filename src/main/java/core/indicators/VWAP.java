@@ -0,0 +1,114 @@
+package core.indicators;
+
+/**
+ * Volume-weighted average price of every trade since the session start, with volume-weighted standard
+ * deviation bands. Fed per trade, O(1) and allocation-free; reading it at any moment gives the VWAP as
+ * of the last trade. Wire it to a module's {@code onTrade} and {@code onTimestamp}:
+ * <pre>
+ * public void onTimestamp(long t) { vwap.onTimestamp(t); }
+ * public void onTrade(double price, int size, TradeInfo tradeInfo) { vwap.onTrade(price, size); }
+ * </pre>
+ * The sums are kept relative to the session's first trade price and with compensated summation, so the
+ * variance does not lose precision to large prices or long sessions. Prices are in whatever unit the
+ * caller passes, usually Bookmap's tick prices.
+ */
+public final class VWAP implements StreamingIndicator {
+
+    private final SessionAnchor anchor;
+    private long nextReset = Long.MIN_VALUE;
+    private boolean inSession = true;
+    private long sessionStart = Long.MIN_VALUE;
+    private int resets = 0;
+
+    private double reference = Double.NaN;
+    private double volume = 0;
+    private final CompensatedSum deviationVolume = new CompensatedSum();
+    private final CompensatedSum squaredDeviationVolume = new CompensatedSum();
+
+    public VWAP(SessionAnchor anchor) {
+        this.anchor = anchor;
+    }
+
+    /**
+     * Starts a new session when {@code nanos} crossed the anchor's next reset.
+     */
+    public void onTimestamp(long nanos) {
+        if (nanos >= nextReset) {
+            boolean first = nextReset == Long.MIN_VALUE;
+            sessionStart = anchor.sessionStart(nanos);
+            nextReset = anchor.nextReset(nanos);
+            inSession = sessionStart <= nanos;
+            if (!first) {
+                reset();
+                resets++;
+            }
+        }
+    }
+
+    public void onTrade(double price, int size) {
+        if (!inSession || size <= 0) {
+            return;
+        }
+        if (volume == 0) {
+            reference = price;
+        }
+        double deviation = price - reference;
+        volume += size;
+        deviationVolume.add(deviation * size);
+        squaredDeviationVolume.add(deviation * deviation * size);
+    }
+
+    @Override
+    public double value() {
+        return volume > 0 ? reference + deviationVolume.get() / volume : Double.NaN;
+    }
+
+    /**
+     * @return volume-weighted standard deviation of trade prices around the VWAP
+     */
+    public double getStdDev() {
+        if (volume == 0) {
+            return Double.NaN;
+        }
+        double mean = deviationVolume.get() / volume;
+        return Math.sqrt(Math.max(0, squaredDeviationVolume.get() / volume - mean * mean));
+    }
+
+    /**
+     * @param sigmas band distance; negative for the lower bands, e.g. -2 for VWAP - 2&sigma;
+     */
+    public double getBand(double sigmas) {
+        return value() + sigmas * getStdDev();
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+
+    /**
+     * @return timestamp the current session started at, {@link Long#MIN_VALUE} before any timestamp
+     */
+    public long getSessionStart() {
+        return sessionStart;
+    }
+
+    public int getResetCount() {
+        return resets;
+    }
+
+    @Override
+    public boolean isReady() {
+        return volume > 0;
+    }
+
+    /**
+     * Clears the current session; the anchor schedule is kept.
+     */
+    @Override
+    public void reset() {
+        reference = Double.NaN;
+        volume = 0;
+        deviationVolume.reset();
+        squaredDeviationVolume.reset();
+    }
+}
@@ -0,0 +1,66 @@
+package core.indicators;
+
+/**
+ * Linearly weighted moving average: the newest of the last {@code period} values has weight
+ * {@code period}, the oldest weight 1. The weighted sum is updated from the plain sum in O(1).
+ */
+public final class WMA implements SeriesIndicator {
+
+    private final int period;
+    private final double weightTotal;
+    private final DoubleRing window;
+    private final CompensatedSum sum = new CompensatedSum();
+    private final CompensatedSum weightedSum = new CompensatedSum();
+
+    public WMA(int period) {
+        if (period < 1) {
+            throw new IllegalArgumentException("period must be positive: " + period);
+        }
+        this.period = period;
+        weightTotal = period * (period + 1) / 2.0;
+        window = new DoubleRing(period);
+    }
+
+    @Override
+    public void update(double value) {
+        if (window.isFull()) {
+            // Every value already in the window loses one unit of weight; the oldest drops to zero
+            weightedSum.add(-sum.get());
+            weightedSum.add(period * value);
+            sum.add(-window.push(value));
+        } else {
+            window.push(value);
+            weightedSum.add(window.size() * value);
+        }
+        sum.add(value);
+    }
+
+    @Override
+    public double peek(double value) {
+        if (window.isFull()) {
+            return (weightedSum.get() - sum.get() + period * value) / weightTotal;
+        }
+        return window.size() == period - 1 ? (weightedSum.get() + period * value) / weightTotal : Double.NaN;
+    }
+
+    @Override
+    public double value() {
+        return window.isFull() ? weightedSum.get() / weightTotal : Double.NaN;
+    }
+
+    @Override
+    public boolean isReady() {
+        return window.isFull();
+    }
+
+    @Override
+    public void reset() {
+        window.clear();
+        sum.reset();
+        weightedSum.reset();
+    }
+
+    public int getPeriod() {
+        return period;
+    }
+}
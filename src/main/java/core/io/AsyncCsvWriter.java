@@ -0,0 +1,636 @@
+package core.io;
+
+import velox.api.layer1.common.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * CSV writer that keeps disk I/O and text formatting off the market data thread.
+ * <p>
+ * Producers claim a preallocated {@link Row} slot from a ring buffer, fill it with primitive fields and
+ * publish it; nothing is formatted or allocated on their side. A single background thread encodes
+ * published rows into one reusable direct buffer per file and writes them through a long-lived
+ * {@link FileChannel}, either when the buffer fills up or every flush interval.
+ * <p>
+ * When the ring is full, files opened with {@link OverflowPolicy#DROP} lose the row (counted in
+ * {@link #getDroppedRows()}) and files with {@link OverflowPolicy#BLOCK} wait for the writer thread.
+ * A slot that stays claimed but unpublished for {@link #ABANDON_AFTER_MILLIS} is skipped and counted as
+ * dropped, so a producer that failed between claim and publish does not stall the journal.
+ * {@link #stop()} drains every published row before closing the files.
+ * <p>
+ * Opening a path that is already open returns the same {@link CsvFile}, with the overflow policy and
+ * zone its first user chose; it is closed when every {@link #open(String, String, boolean)} has been
+ * matched by a {@link CsvFile#close()}.
+ * <pre>
+ * AsyncCsvWriter.Row row = writer.claim(file);
+ * if (row != null) {
+ *     row.addTimestamp(nanoseconds).addLong(price).addLong(size).publish();
+ * }
+ * </pre>
+ */
+public class AsyncCsvWriter {
+
+    public enum OverflowPolicy {
+        DROP,
+        BLOCK
+    }
+
+    public static final int DEFAULT_CAPACITY = 16384;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 200;
+    public static final ZoneId DEFAULT_ZONE = ZoneId.of("America/New_York");
+    public static final long ABANDON_AFTER_MILLIS = 1000;
+    private static final int MAX_FIELDS = 16;
+    private static final int FILE_BUFFER_SIZE = 256 * 1024;
+    private static final int MAX_BATCH = 4096;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long ABANDON_NANOS = TimeUnit.MILLISECONDS.toNanos(ABANDON_AFTER_MILLIS);
+    // Set in the claim sequence by the writer thread on exit, so no claim can succeed after it drained
+    private static final long SEALED = 1L << 62;
+
+    private static final byte KIND_LONG = 0;
+    private static final byte KIND_DOUBLE = 1;
+    private static final byte KIND_TEXT = 2;
+    private static final byte KIND_BOOLEAN = 3;
+    private static final byte KIND_TIMESTAMP = 4;
+
+    private static AsyncCsvWriter shared;
+    private static int sharedUsers = 0;
+
+    private final Row[] slots;
+    private final int mask;
+    private final long flushIntervalNanos;
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final AtomicLong consumedSequence = new AtomicLong();
+    private final AtomicLong droppedRows = new AtomicLong();
+    private final AtomicLong writtenRows = new AtomicLong();
+    private final Thread writerThread;
+    private volatile CsvFile[] files = new CsvFile[0];
+    private final Map<Path, CsvFile> openFiles = new HashMap<>();
+    private volatile boolean running = true;
+
+    // Writer thread only
+    private final StringBuilder numberText = new StringBuilder(32);
+
+    public AsyncCsvWriter() {
+        this(DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param capacity ring size in rows, rounded up to a power of two
+     */
+    public AsyncCsvWriter(int capacity, long flushIntervalMillis) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        slots = new Row[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Row();
+        }
+        mask = size - 1;
+        flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        writerThread = new Thread(this::runWriter, "csv-journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Returns the process-wide writer, starting it on first use. Every call must be paired with
+     * {@link #releaseShared()}, usually from the module's {@code stop()}.
+     */
+    public static synchronized AsyncCsvWriter acquireShared() {
+        if (shared == null) {
+            shared = new AsyncCsvWriter();
+        }
+        sharedUsers++;
+        return shared;
+    }
+
+    /**
+     * Drains and stops the shared writer once its last user released it.
+     */
+    public static synchronized void releaseShared() {
+        if (sharedUsers > 0 && --sharedUsers == 0) {
+            shared.stop();
+            shared = null;
+        }
+    }
+
+    /**
+     * Opens a file for rows. If the path is already open the same file is returned and neither
+     * {@code header} nor {@code append} apply; its overflow policy and zone stay those of the first user.
+     * Otherwise, with {@code append == false} the file is truncated; the header is written whenever the
+     * file starts out empty.
+     */
+    public synchronized CsvFile open(String path, String header, boolean append) throws IOException {
+        Path filePath = Paths.get(path).toAbsolutePath().normalize();
+        CsvFile existing = openFiles.get(filePath);
+        if (existing != null) {
+            existing.users++;
+            return existing;
+        }
+        Path parent = filePath.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        FileChannel channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        if (!append) {
+            channel.truncate(0);
+        }
+        if (header != null && channel.size() == 0) {
+            channel.write(ByteBuffer.wrap((header + "\n").getBytes(StandardCharsets.UTF_8)));
+        }
+        CsvFile file = new CsvFile(filePath, path, channel);
+        openFiles.put(filePath, file);
+        CsvFile[] updated = Arrays.copyOf(files, files.length + 1);
+        updated[updated.length - 1] = file;
+        files = updated;
+        return file;
+    }
+
+    /**
+     * Releases one user of {@code file}.
+     *
+     * @return true if it was the last one and the file should be closed
+     */
+    private synchronized boolean release(CsvFile file) {
+        if (file.users == 0 || --file.users > 0) {
+            return false;
+        }
+        openFiles.remove(file.key);
+        return true;
+    }
+
+    /**
+     * Removes a closed file from the writer thread's list.
+     */
+    private synchronized void prune(CsvFile file) {
+        CsvFile[] current = files;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == file) {
+                CsvFile[] updated = Arrays.copyOf(current, current.length - 1);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                files = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Claims the next slot for a row of {@code file}.
+     *
+     * @return the slot, or {@code null} if the row was dropped because the ring is full or the writer stopped
+     */
+    public Row claim(CsvFile file) {
+        return claim(file, file.overflowPolicy == OverflowPolicy.BLOCK);
+    }
+
+    private Row claim(CsvFile file, boolean block) {
+        while (true) {
+            if (!running || file.closed) {
+                droppedRows.incrementAndGet();
+                return null;
+            }
+            long sequence = claimSequence.get();
+            if ((sequence & SEALED) != 0) {
+                droppedRows.incrementAndGet();
+                return null;
+            }
+            if (sequence - consumedSequence.get() >= slots.length) {
+                if (!block) {
+                    droppedRows.incrementAndGet();
+                    return null;
+                }
+                LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+                continue;
+            }
+            if (claimSequence.compareAndSet(sequence, sequence + 1)) {
+                Row row = slots[(int) (sequence & mask)];
+                row.begin(file, sequence);
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Stops accepting rows, waits until every published row is written and closes all files.
+     */
+    public void stop() {
+        running = false;
+        LockSupport.unpark(writerThread);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getDroppedRows() {
+        return droppedRows.get();
+    }
+
+    public long getWrittenRows() {
+        return writtenRows.get();
+    }
+
+    private void runWriter() {
+        long next = 0;
+        long lastFlush = System.nanoTime();
+        long stalledSince = 0;
+        while (true) {
+            int drained = 0;
+            while (drained < MAX_BATCH) {
+                Row row = slots[(int) (next & mask)];
+                if (row.publishedSequence != next) {
+                    break;
+                }
+                encode(row);
+                row.clear();
+                next++;
+                drained++;
+                consumedSequence.lazySet(next);
+            }
+            if (drained > 0) {
+                writtenRows.addAndGet(drained);
+            }
+
+            long now = System.nanoTime();
+            if (now - lastFlush >= flushIntervalNanos) {
+                flushAll();
+                lastFlush = now;
+            }
+            if (drained == 0) {
+                if (next == claimSequence.get()) {
+                    stalledSince = 0;
+                    if (!running && claimSequence.compareAndSet(next, next | SEALED)) {
+                        break;
+                    }
+                } else if (stalledSince == 0) {
+                    stalledSince = now;
+                } else if (now - stalledSince >= ABANDON_NANOS) {
+                    if (slots[(int) (next & mask)].abandon(next)) {
+                        droppedRows.incrementAndGet();
+                        next++;
+                        consumedSequence.lazySet(next);
+                    }
+                    stalledSince = 0;
+                    continue;
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            } else {
+                stalledSince = 0;
+            }
+        }
+        flushAll();
+        for (CsvFile file : files) {
+            file.closeChannel();
+        }
+    }
+
+    private void flushAll() {
+        for (CsvFile file : files) {
+            file.drain();
+        }
+    }
+
+    private void encode(Row row) {
+        CsvFile file = row.file;
+        if (row.closeRequest) {
+            file.drain();
+            file.closeChannel();
+            prune(file);
+            return;
+        }
+        if (file.failed) {
+            return;
+        }
+        for (int i = 0; i < row.fieldCount; i++) {
+            if (i > 0) {
+                file.put((byte) ',');
+            }
+            switch (row.kinds[i]) {
+                case KIND_LONG -> putLong(file, row.longs[i]);
+                case KIND_DOUBLE -> putDouble(file, Double.longBitsToDouble(row.longs[i]));
+                case KIND_TEXT -> putText(file, row.texts[i]);
+                case KIND_BOOLEAN -> putText(file, row.longs[i] != 0 ? "true" : "false");
+                case KIND_TIMESTAMP -> putTimestamp(file, row.longs[i]);
+                default -> throw new IllegalStateException("Unknown field kind " + row.kinds[i]);
+            }
+        }
+        file.put((byte) '\n');
+    }
+
+    private void putLong(CsvFile file, long value) {
+        if (value == Long.MIN_VALUE) {
+            putText(file, "-9223372036854775808");
+            return;
+        }
+        if (value < 0) {
+            file.put((byte) '-');
+            value = -value;
+        }
+        byte[] digits = file.digits;
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = position; i < digits.length; i++) {
+            file.put(digits[i]);
+        }
+    }
+
+    private void putDouble(CsvFile file, double value) {
+        numberText.setLength(0);
+        numberText.append(value);
+        putText(file, numberText);
+    }
+
+    private void putText(CsvFile file, CharSequence text) {
+        if (text == null) {
+            return;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                file.put((byte) c);
+            } else if (c < 0x800) {
+                file.put((byte) (0xC0 | (c >> 6)));
+                file.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                file.put((byte) (0xF0 | (codePoint >> 18)));
+                file.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                file.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                file.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                file.put((byte) (0xE0 | (c >> 12)));
+                file.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                file.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Writes {@code yyyy-MM-dd HH:mm:ss.SSS} in the file's zone; the part up to the seconds is cached.
+     */
+    private void putTimestamp(CsvFile file, long nanoseconds) {
+        if (nanoseconds == 0) {
+            return; // No timestamp received yet
+        }
+        long epochSecond = Math.floorDiv(nanoseconds, 1_000_000_000L);
+        int millis = (int) (Math.floorMod(nanoseconds, 1_000_000_000L) / 1_000_000);
+        if (epochSecond != file.cachedSecond) {
+            ZoneOffset offset = file.zone.getRules().getOffset(Instant.ofEpochSecond(epochSecond));
+            LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, offset);
+            byte[] prefix = file.secondPrefix;
+            writeDigits(prefix, 0, time.getYear(), 4);
+            prefix[4] = '-';
+            writeDigits(prefix, 5, time.getMonthValue(), 2);
+            prefix[7] = '-';
+            writeDigits(prefix, 8, time.getDayOfMonth(), 2);
+            prefix[10] = ' ';
+            writeDigits(prefix, 11, time.getHour(), 2);
+            prefix[13] = ':';
+            writeDigits(prefix, 14, time.getMinute(), 2);
+            prefix[16] = ':';
+            writeDigits(prefix, 17, time.getSecond(), 2);
+            prefix[19] = '.';
+            file.cachedSecond = epochSecond;
+        }
+        for (byte b : file.secondPrefix) {
+            file.put(b);
+        }
+        file.put((byte) ('0' + millis / 100));
+        file.put((byte) ('0' + millis / 10 % 10));
+        file.put((byte) ('0' + millis % 10));
+    }
+
+    private static void writeDigits(byte[] target, int offset, int value, int width) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            target[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * A file registered with the writer. Configure it right after {@link #open(String, String, boolean)},
+     * before the first row is claimed. Once the file is shared, a setting that differs from the current
+     * one throws {@link IllegalStateException} instead of changing it under the other users.
+     */
+    public final class CsvFile {
+        private final Path key;
+        private final String path;
+        private final FileChannel channel;
+        private volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+        private volatile ZoneId zone = DEFAULT_ZONE;
+        private volatile boolean closed = false;
+        private int users = 1; // Guarded by the writer
+
+        // Writer thread only
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(FILE_BUFFER_SIZE);
+        private final byte[] digits = new byte[20];
+        private final byte[] secondPrefix = new byte[20];
+        private long cachedSecond = Long.MIN_VALUE;
+        private boolean failed = false;
+
+        private CsvFile(Path key, String path, FileChannel channel) {
+            this.key = key;
+            this.path = path;
+            this.channel = channel;
+        }
+
+        public CsvFile withOverflowPolicy(OverflowPolicy overflowPolicy) {
+            synchronized (AsyncCsvWriter.this) {
+                checkUnshared(this.overflowPolicy, overflowPolicy);
+                this.overflowPolicy = overflowPolicy;
+            }
+            return this;
+        }
+
+        /**
+         * Zone used for {@link Row#addTimestamp(long)} fields, {@link #DEFAULT_ZONE} if not set.
+         */
+        public CsvFile withZone(ZoneId zone) {
+            synchronized (AsyncCsvWriter.this) {
+                checkUnshared(this.zone, zone);
+                this.zone = zone;
+            }
+            return this;
+        }
+
+        private void checkUnshared(Object current, Object requested) {
+            if (users > 1 && !current.equals(requested)) {
+                throw new IllegalStateException(path + " is shared and already uses " + current);
+            }
+        }
+
+        public Row claim() {
+            return AsyncCsvWriter.this.claim(this);
+        }
+
+        /**
+         * Releases this user of the file. The last one writes everything published before the call and
+         * closes the file; later rows are dropped.
+         */
+        public void close() {
+            if (closed || !release(this)) {
+                return;
+            }
+            Row row = AsyncCsvWriter.this.claim(this, true);
+            closed = true;
+            if (row != null) {
+                row.closeRequest = true;
+                row.publish();
+            }
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        private void put(byte b) {
+            if (!buffer.hasRemaining()) {
+                drain();
+            }
+            buffer.put(b);
+        }
+
+        private void drain() {
+            if (buffer.position() == 0) {
+                return;
+            }
+            buffer.flip();
+            try {
+                if (!failed) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                }
+            } catch (IOException e) {
+                failed = true;
+                Log.error("Error writing to CSV file " + path, e);
+            }
+            buffer.clear();
+        }
+
+        private void closeChannel() {
+            try {
+                if (channel.isOpen()) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                Log.error("Error closing CSV file " + path, e);
+            }
+        }
+    }
+
+    /**
+     * A reusable row slot. Add at most 16 fields in column order, then call {@link #publish()} exactly once.
+     */
+    public static final class Row {
+        private static final VarHandle PUBLISHED_SEQUENCE;
+
+        static {
+            try {
+                PUBLISHED_SEQUENCE = MethodHandles.lookup().findVarHandle(Row.class, "publishedSequence", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        private final byte[] kinds = new byte[MAX_FIELDS];
+        private final long[] longs = new long[MAX_FIELDS];
+        private final CharSequence[] texts = new CharSequence[MAX_FIELDS];
+        private int fieldCount;
+        private CsvFile file;
+        private boolean closeRequest;
+        private long sequence;
+        private long claimedOver;
+        private volatile long publishedSequence = -1;
+
+        private void begin(CsvFile file, long sequence) {
+            this.file = file;
+            this.sequence = sequence;
+            this.fieldCount = 0;
+            this.closeRequest = false;
+            this.claimedOver = publishedSequence;
+        }
+
+        /**
+         * Marks the slot of an unpublished {@code sequence} as skipped; a later {@link #publish()} is ignored.
+         *
+         * @return false if the producer published in the meantime
+         */
+        private boolean abandon(long sequence) {
+            long current = publishedSequence;
+            return current != sequence && PUBLISHED_SEQUENCE.compareAndSet(this, current, -2 - sequence);
+        }
+
+        private void clear() {
+            Arrays.fill(texts, 0, fieldCount, null);
+            file = null;
+        }
+
+        private Row add(byte kind, long value) {
+            kinds[fieldCount] = kind;
+            longs[fieldCount] = value;
+            fieldCount++;
+            return this;
+        }
+
+        public Row addLong(long value) {
+            return add(KIND_LONG, value);
+        }
+
+        public Row addDouble(double value) {
+            return add(KIND_DOUBLE, Double.doubleToRawLongBits(value));
+        }
+
+        public Row addBoolean(boolean value) {
+            return add(KIND_BOOLEAN, value ? 1 : 0);
+        }
+
+        /**
+         * Adds an epoch timestamp in nanoseconds, formatted on the writer thread; 0 is written as an empty field.
+         */
+        public Row addTimestamp(long nanoseconds) {
+            return add(KIND_TIMESTAMP, nanoseconds);
+        }
+
+        /**
+         * Adds a text field. The sequence is read on the writer thread, so pass immutable text such as a String.
+         */
+        public Row addText(CharSequence text) {
+            texts[fieldCount] = text;
+            return add(KIND_TEXT, 0);
+        }
+
+        public Row addEmpty() {
+            return addText(null);
+        }
+
+        public void publish() {
+            // Fails only if the writer abandoned the slot, the row is then already counted as dropped
+            PUBLISHED_SEQUENCE.compareAndSet(this, claimedOver, sequence);
+        }
+    }
+}
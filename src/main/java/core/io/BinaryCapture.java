@@ -0,0 +1,72 @@
+package core.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Layout shared by {@link BinaryCaptureWriter} and {@link BinaryCaptureReader}.
+ * <p>
+ * A capture is one directory per instrument alias and session: {@code <root>/<alias>/<yyyyMMdd-HHmmss-SSS>/},
+ * with a {@code -NN} suffix if that directory already exists.
+ * It holds memory-mapped segment files {@code segment-00000.bin, segment-00001.bin, ...} and a sparse
+ * index {@code index.bin}.
+ * <p>
+ * A segment starts with a {@value #HEADER_SIZE} byte header ({@code magic, version, segment number,
+ * data limit}) followed by records. Every record starts with a tag byte:
+ * <ul>
+ * <li>{@code TIME_DELTA}: unsigned varint nanoseconds since the previous timestamp</li>
+ * <li>{@code TIME_ABSOLUTE}: 8 byte timestamp; starts every sync point</li>
+ * <li>{@code BID / ASK}: zigzag varint price delta from the previous integer price, varint size</li>
+ * <li>{@code TRADE}: flags byte, then either a zigzag varint price delta or, with {@code FLAG_FRACTIONAL},
+ * an 8 byte double price, then a varint size</li>
+ * <li>{@code SNAPSHOT}: varint level count, followed by that many {@code BID / ASK} records that
+ * replace the whole book</li>
+ * </ul>
+ * Decoder state (previous timestamp and price) is reset at each sync point and at the start of each
+ * segment, so a reader can start decoding at any index entry. The data limit is published with a release
+ * store and read with {@link #LIMIT} acquire, so a reader never sees the limit ahead of the bytes. Index entries are 16 bytes: timestamp, segment number and the offset of
+ * the sync point, whose high bit marks sync points that carry a book snapshot.
+ */
+public final class BinaryCapture {
+
+    public static final int MAGIC = 0x424D4350; // "BMCP"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int LIMIT_OFFSET = 16;
+    public static final int INDEX_ENTRY_SIZE = 16;
+    public static final int SNAPSHOT_FLAG = 0x8000_0000;
+
+    public static final byte TIME_DELTA = 0x01;
+    public static final byte TIME_ABSOLUTE = 0x02;
+    public static final byte BID = 0x10;
+    public static final byte ASK = 0x11;
+    public static final byte TRADE = 0x20;
+    public static final byte SNAPSHOT = 0x30;
+
+    public static final int FLAG_BID_AGGRESSOR = 1;
+    public static final int FLAG_OTC = 2;
+    public static final int FLAG_FRACTIONAL = 4;
+
+    public static final String INDEX_FILE = "index.bin";
+
+    /**
+     * Access to the data limit in a segment header, in the big-endian order of the other header fields.
+     */
+    static final VarHandle LIMIT = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private BinaryCapture() {
+    }
+
+    public static Path segmentPath(Path sessionDirectory, int segment) {
+        return sessionDirectory.resolve(String.format("segment-%05d.bin", segment));
+    }
+
+    /**
+     * @return the alias with characters that are not safe in a directory name replaced by '_'
+     */
+    public static String directoryName(String alias) {
+        return alias.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,369 @@
+package core.io;
+
+import core.book.TickBook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Decodes a {@link BinaryCapture} session straight out of read-only mapped segments; records are
+ * dispatched to a {@link Listener} as primitives, nothing is copied or allocated per record.
+ * <p>
+ * The reader follows a capture that is still being written: it re-reads the published limit of the
+ * current segment, and once the next segment appears it reads the current one to its final limit before
+ * moving on.
+ * <pre>
+ * java -cp addon.jar core.io.BinaryCaptureReader stats C:\Bookmap\Capture\ESZ4\20241118-093000
+ * java -cp addon.jar core.io.BinaryCaptureReader book C:\Bookmap\Capture\ESZ4\20241118-093000 1731940200000000000
+ * </pre>
+ */
+public class BinaryCaptureReader implements Closeable {
+
+    public interface Listener {
+        void onTimestamp(long nanoseconds);
+
+        void onDepth(boolean isBid, int price, int size);
+
+        void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc);
+
+        /**
+         * A book snapshot starts: the next {@code levels} depth updates replace the whole book.
+         */
+        void onSnapshot(int levels);
+    }
+
+    private final Path sessionDirectory;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private long[] indexTimestamps;
+    private int[] indexSegments;
+    private int[] indexOffsets;
+    private int indexSize;
+
+    private MappedByteBuffer segment;
+    private int segmentNumber;
+    private int limit;
+    private long timestamp = 0;
+    private int previousPrice = 0;
+
+    public BinaryCaptureReader(Path sessionDirectory) throws IOException {
+        this.sessionDirectory = sessionDirectory;
+        loadIndex();
+        if (!openSegment(0)) {
+            throw new IOException("No capture segments in " + sessionDirectory);
+        }
+    }
+
+    private void loadIndex() throws IOException {
+        Path path = sessionDirectory.resolve(BinaryCapture.INDEX_FILE);
+        int entries = Files.exists(path) ? (int) (Files.size(path) / BinaryCapture.INDEX_ENTRY_SIZE) : 0;
+        indexTimestamps = new long[entries];
+        indexSegments = new int[entries];
+        indexOffsets = new int[entries];
+        if (entries == 0) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) entries * BinaryCapture.INDEX_ENTRY_SIZE);
+            for (int i = 0; i < entries; i++) {
+                indexTimestamps[i] = index.getLong();
+                indexSegments[i] = index.getInt();
+                indexOffsets[i] = index.getInt();
+            }
+        }
+        indexSize = entries;
+    }
+
+    private boolean openSegment(int number) throws IOException {
+        if (!mapSegments(number)) {
+            return false;
+        }
+        segment = segments.get(number);
+        segmentNumber = number;
+        limit = publishedLimit();
+        segment.limit(limit).position(BinaryCapture.HEADER_SIZE);
+        previousPrice = 0;
+        return true;
+    }
+
+    /**
+     * Maps the segments up to {@code number}.
+     *
+     * @return false when a segment does not exist yet or its writer has not published its header
+     */
+    private boolean mapSegments(int number) throws IOException {
+        while (segments.size() <= number) {
+            Path path = BinaryCapture.segmentPath(sessionDirectory, segments.size());
+            if (!Files.exists(path)) {
+                return false;
+            }
+            MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                mapped = map(channel);
+            }
+            if (mapped == null) {
+                return false;
+            }
+            if (mapped.getInt(0) != BinaryCapture.MAGIC || mapped.getInt(4) != BinaryCapture.VERSION) {
+                throw new IOException("Not a version " + BinaryCapture.VERSION + " capture segment: " + path);
+            }
+            segments.add(mapped);
+        }
+        return true;
+    }
+
+    /**
+     * @return the whole segment, or null while the writer is still creating it
+     */
+    private static MappedByteBuffer map(FileChannel channel) throws IOException {
+        while (true) {
+            long size = channel.size();
+            if (size < BinaryCapture.HEADER_SIZE) {
+                return null;
+            }
+            try {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                return (long) BinaryCapture.LIMIT.getAcquire(mapped, BinaryCapture.LIMIT_OFFSET) == 0 ? null : mapped;
+            } catch (IOException e) {
+                if (channel.size() >= size) {
+                    throw e;
+                }
+                // The writer truncated the finished segment after its size was read
+            }
+        }
+    }
+
+    private int publishedLimit() {
+        return (int) (long) BinaryCapture.LIMIT.getAcquire(segment, BinaryCapture.LIMIT_OFFSET);
+    }
+
+    /**
+     * Positions the reader on the last sync point at or before {@code nanoseconds}, in O(log n) over the
+     * index. With {@code withSnapshot}, only sync points carrying a book snapshot are considered, so a
+     * listener that rebuilds a book starts from a complete one. Falls back to the start of the session.
+     *
+     * @return the timestamp of the sync point, or 0 when reading restarts from the beginning
+     */
+    public long seek(long nanoseconds, boolean withSnapshot) throws IOException {
+        int low = 0;
+        int high = indexSize - 1;
+        int found = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (indexTimestamps[middle] <= nanoseconds) {
+                found = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        while (withSnapshot && found >= 0 && (indexOffsets[found] & BinaryCapture.SNAPSHOT_FLAG) == 0) {
+            found--;
+        }
+        timestamp = 0;
+        if (found < 0) {
+            openSegment(0);
+            return 0;
+        }
+        openSegment(indexSegments[found]);
+        segment.position(indexOffsets[found] & ~BinaryCapture.SNAPSHOT_FLAG);
+        return indexTimestamps[found];
+    }
+
+    /**
+     * Decodes the next record and dispatches it to {@code listener}.
+     *
+     * @return false when the capture has no more records yet
+     */
+    public boolean next(Listener listener) throws IOException {
+        while (!segment.hasRemaining()) {
+            int published = publishedLimit();
+            if (published > limit) {
+                limit = published;
+                segment.limit(limit);
+            } else if (!mapSegments(segmentNumber + 1)) {
+                return false;
+            } else if (publishedLimit() == limit) {
+                openSegment(segmentNumber + 1);
+            }
+            // Otherwise the writer published more records before it rolled; the writer is done with a
+            // segment once the next one exists, so its limit read now is final and its tail is read first
+        }
+
+        byte tag = segment.get();
+        switch (tag) {
+            case BinaryCapture.TIME_DELTA -> {
+                timestamp += getVarLong();
+                listener.onTimestamp(timestamp);
+            }
+            case BinaryCapture.TIME_ABSOLUTE -> {
+                // Sync point: decoding restarts from absolute values
+                timestamp = segment.getLong();
+                previousPrice = 0;
+                listener.onTimestamp(timestamp);
+            }
+            case BinaryCapture.BID, BinaryCapture.ASK -> {
+                previousPrice += unzigzag(getVarLong());
+                listener.onDepth(tag == BinaryCapture.BID, previousPrice, (int) getVarLong());
+            }
+            case BinaryCapture.TRADE -> {
+                int flags = segment.get();
+                double price;
+                if ((flags & BinaryCapture.FLAG_FRACTIONAL) != 0) {
+                    price = segment.getDouble();
+                } else {
+                    previousPrice += unzigzag(getVarLong());
+                    price = previousPrice;
+                }
+                listener.onTrade(price, (int) getVarLong(),
+                        (flags & BinaryCapture.FLAG_BID_AGGRESSOR) != 0, (flags & BinaryCapture.FLAG_OTC) != 0);
+            }
+            case BinaryCapture.SNAPSHOT -> listener.onSnapshot((int) getVarLong());
+            default -> throw new IOException("Corrupt capture: tag " + tag + " at offset "
+                    + (segment.position() - 1) + " of segment " + segmentNumber);
+        }
+        return true;
+    }
+
+    private long getVarLong() {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = segment.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    private static int unzigzag(long value) {
+        int v = (int) value;
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getIndexSize() {
+        return indexSize;
+    }
+
+    @Override
+    public void close() {
+        // Mapped buffers are released when they become unreachable
+        segments.clear();
+        segment = null;
+    }
+
+    /**
+     * @return the most recent session directory recorded for {@code alias} under {@code root}, or null
+     */
+    public static Path latestSession(Path root, String alias) throws IOException {
+        Path aliasDirectory = root.resolve(BinaryCapture.directoryName(alias));
+        if (!Files.isDirectory(aliasDirectory)) {
+            return null;
+        }
+        try (Stream<Path> sessions = Files.list(aliasDirectory)) {
+            return sessions.filter(Files::isDirectory).max(Path::compareTo).orElse(null);
+        }
+    }
+
+    /**
+     * Listener that keeps a {@link TickBook} in sync with the capture.
+     */
+    public static class BookListener implements Listener {
+        protected final TickBook book;
+
+        public BookListener(TickBook book) {
+            this.book = book;
+        }
+
+        @Override
+        public void onTimestamp(long nanoseconds) {
+        }
+
+        @Override
+        public void onDepth(boolean isBid, int price, int size) {
+            book.onDepth(isBid, price, size);
+        }
+
+        @Override
+        public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) {
+        }
+
+        @Override
+        public void onSnapshot(int levels) {
+            book.clear();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && args[0].equals("stats")) {
+            long[] counts = new long[3];
+            long start = System.nanoTime();
+            try (BinaryCaptureReader reader = new BinaryCaptureReader(Paths.get(args[1]))) {
+                Listener counter = new Listener() {
+                    @Override
+                    public void onTimestamp(long nanoseconds) {
+                        counts[0]++;
+                    }
+
+                    @Override
+                    public void onDepth(boolean isBid, int price, int size) {
+                        counts[1]++;
+                    }
+
+                    @Override
+                    public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) {
+                        counts[2]++;
+                    }
+
+                    @Override
+                    public void onSnapshot(int levels) {
+                    }
+                };
+                while (reader.next(counter)) {
+                    // Counting only
+                }
+                System.out.println("Index entries: " + reader.getIndexSize());
+            }
+            long elapsed = System.nanoTime() - start;
+            long total = counts[0] + counts[1] + counts[2];
+            System.out.println("Timestamps: " + counts[0] + ", depth: " + counts[1] + ", trades: " + counts[2]);
+            System.out.printf("Decoded %d records in %.1f ms (%.1f M records/s)%n",
+                    total, elapsed / 1e6, total * 1e3 / Math.max(1, elapsed));
+        } else if (args.length == 3 && args[0].equals("book")) {
+            long target = Long.parseLong(args[2]);
+            TickBook book = new TickBook();
+            try (BinaryCaptureReader reader = new BinaryCaptureReader(Paths.get(args[1]))) {
+                reader.seek(target, true);
+                BookListener listener = new BookListener(book);
+                while (reader.next(listener) && reader.getTimestamp() <= target) {
+                    // Apply updates up to the requested time
+                }
+            }
+            System.out.println("Price\tBid Size\tAsk Size");
+            int lowestPrice = book.getLowestPrice();
+            for (int price = book.getHighestPrice(); price != TickBook.NO_PRICE && price >= lowestPrice; price--) {
+                int bidSize = book.getSize(true, price);
+                int askSize = book.getSize(false, price);
+                if (bidSize > 0 || askSize > 0) {
+                    System.out.println(price + "\t" + bidSize + "\t" + askSize);
+                }
+            }
+        } else {
+            System.out.println("Usage: BinaryCaptureReader stats <sessionDirectory>");
+            System.out.println("       BinaryCaptureReader book <sessionDirectory> <timestampNanos>");
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package core.io;
+
+import core.book.TickBook;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes depth, trades and timestamps in the {@link BinaryCapture} format through memory-mapped
+ * segment files. Encoding a record is a handful of byte puts into the mapped buffer; nothing is
+ * allocated and no system call is made except when a segment rolls over or an index entry is appended.
+ * <p>
+ * A sync point, with an index entry, is written whenever {@code indexIntervalNanos} of exchange time has
+ * passed. If a book is given, every {@code snapshotIntervalNanos} the sync point also carries the whole
+ * book so readers can seek without replaying from the start. Must be used from a single thread.
+ */
+public class BinaryCaptureWriter implements Closeable {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+    public static final long DEFAULT_INDEX_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    public static final long DEFAULT_SNAPSHOT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Largest possible record is a fractional trade: tag, flags, double, varint size
+    private static final int MAX_RECORD_SIZE = 1 + 1 + 8 + 5;
+
+    private final Path sessionDirectory;
+    private final TickBook book;
+    private final int segmentSize;
+    private final long indexIntervalNanos;
+    private final long snapshotIntervalNanos;
+    private final FileChannel indexChannel;
+    private final ByteBuffer indexEntry = ByteBuffer.allocateDirect(BinaryCapture.INDEX_ENTRY_SIZE);
+
+    private FileChannel segmentChannel;
+    private MappedByteBuffer segment;
+    private int segmentNumber = -1;
+    private long previousTimestamp = 0;
+    private int previousPrice = 0;
+    private long lastSyncTimestamp = 0;
+    private long lastSnapshotTimestamp = 0;
+    private long records = 0;
+
+    public BinaryCaptureWriter(Path root, String alias, TickBook book) throws IOException {
+        this(root, alias, book, DEFAULT_SEGMENT_SIZE, DEFAULT_INDEX_INTERVAL_NANOS, DEFAULT_SNAPSHOT_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param book book kept up to date by the caller for snapshots, or {@code null} to write no snapshots
+     */
+    public BinaryCaptureWriter(Path root, String alias, TickBook book, int segmentSize,
+                               long indexIntervalNanos, long snapshotIntervalNanos) throws IOException {
+        this.sessionDirectory = createSessionDirectory(root.resolve(BinaryCapture.directoryName(alias)));
+        this.book = book;
+        this.segmentSize = segmentSize;
+        this.indexIntervalNanos = indexIntervalNanos;
+        this.snapshotIntervalNanos = snapshotIntervalNanos;
+        indexChannel = FileChannel.open(sessionDirectory.resolve(BinaryCapture.INDEX_FILE),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        rollSegment(true);
+    }
+
+    /**
+     * Creates a directory no other session uses, so two sessions started in the same millisecond never
+     * overwrite each other.
+     */
+    private static Path createSessionDirectory(Path aliasDirectory) throws IOException {
+        Files.createDirectories(aliasDirectory);
+        String session = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS"));
+        for (int attempt = 1; ; attempt++) {
+            Path directory = aliasDirectory.resolve(attempt == 1 ? session : String.format("%s-%02d", session, attempt));
+            try {
+                return Files.createDirectory(directory);
+            } catch (FileAlreadyExistsException e) {
+                // Taken by another session, try the next suffix
+            }
+        }
+    }
+
+    public void onTimestamp(long nanoseconds) throws IOException {
+        if (nanoseconds == previousTimestamp) {
+            return;
+        }
+        if (nanoseconds - lastSyncTimestamp >= indexIntervalNanos) {
+            writeSyncPoint(nanoseconds);
+            records++;
+            return;
+        }
+        ensureCapacity(MAX_RECORD_SIZE);
+        long delta = nanoseconds - previousTimestamp;
+        if (delta > 0) {
+            segment.put(BinaryCapture.TIME_DELTA);
+            putVarLong(delta);
+        } else {
+            segment.put(BinaryCapture.TIME_ABSOLUTE);
+            segment.putLong(nanoseconds);
+        }
+        previousTimestamp = nanoseconds;
+        commit();
+        records++;
+    }
+
+    public void onDepth(boolean isBid, int price, int size) throws IOException {
+        ensureCapacity(MAX_RECORD_SIZE);
+        putLevel(isBid, price, size);
+        commit();
+        records++;
+    }
+
+    public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) throws IOException {
+        ensureCapacity(MAX_RECORD_SIZE);
+        int flags = (isBidAggressor ? BinaryCapture.FLAG_BID_AGGRESSOR : 0) | (isOtc ? BinaryCapture.FLAG_OTC : 0);
+        int ticks = (int) price;
+        segment.put(BinaryCapture.TRADE);
+        if (ticks == price) {
+            segment.put((byte) flags);
+            putVarLong(zigzag(ticks - previousPrice));
+            previousPrice = ticks;
+        } else {
+            segment.put((byte) (flags | BinaryCapture.FLAG_FRACTIONAL));
+            segment.putDouble(price);
+        }
+        putVarLong(size & 0xFFFFFFFFL);
+        commit();
+        records++;
+    }
+
+    private void putLevel(boolean isBid, int price, int size) {
+        segment.put(isBid ? BinaryCapture.BID : BinaryCapture.ASK);
+        putVarLong(zigzag(price - previousPrice));
+        putVarLong(size & 0xFFFFFFFFL);
+        previousPrice = price;
+    }
+
+    private void writeSyncPoint(long nanoseconds) throws IOException {
+        boolean withSnapshot = book != null && nanoseconds - lastSnapshotTimestamp >= snapshotIntervalNanos;
+        int levels = withSnapshot ? book.getLevelCount(true) + book.getLevelCount(false) : 0;
+        int required = 1 + 8 + (withSnapshot ? 1 + 5 + levels * MAX_RECORD_SIZE : 0);
+        if (required > segmentSize - BinaryCapture.HEADER_SIZE) {
+            withSnapshot = false; // A book this deep does not fit in one segment
+            required = 1 + 8;
+        }
+        if (segment.remaining() < required) {
+            rollSegment(false); // This sync point starts the new segment
+        }
+
+        int syncOffset = segment.position();
+        segment.put(BinaryCapture.TIME_ABSOLUTE);
+        segment.putLong(nanoseconds);
+        previousTimestamp = nanoseconds;
+        previousPrice = 0;
+        lastSyncTimestamp = nanoseconds;
+
+        if (withSnapshot) {
+            segment.put(BinaryCapture.SNAPSHOT);
+            putVarLong(levels);
+            for (int price = book.getBestBid(); price != TickBook.NO_PRICE; price = book.nextBid(price)) {
+                putLevel(true, price, book.getSize(true, price));
+            }
+            for (int price = book.getBestAsk(); price != TickBook.NO_PRICE; price = book.nextAsk(price)) {
+                putLevel(false, price, book.getSize(false, price));
+            }
+            lastSnapshotTimestamp = nanoseconds;
+        }
+        commit();
+
+        indexEntry.clear();
+        indexEntry.putLong(nanoseconds);
+        indexEntry.putInt(segmentNumber);
+        indexEntry.putInt(withSnapshot ? syncOffset | BinaryCapture.SNAPSHOT_FLAG : syncOffset);
+        indexEntry.flip();
+        while (indexEntry.hasRemaining()) {
+            indexChannel.write(indexEntry);
+        }
+    }
+
+    private void ensureCapacity(int bytes) throws IOException {
+        if (segment.remaining() < bytes) {
+            rollSegment(true);
+        }
+    }
+
+    /**
+     * @param writeSync whether to start the segment with a sync point; false when the caller writes one
+     */
+    private void rollSegment(boolean writeSync) throws IOException {
+        closeSegment();
+        segmentNumber++;
+        segmentChannel = FileChannel.open(BinaryCapture.segmentPath(sessionDirectory, segmentNumber),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segment = segmentChannel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        segment.putInt(BinaryCapture.MAGIC);
+        segment.putInt(BinaryCapture.VERSION);
+        segment.putInt(segmentNumber);
+        segment.position(BinaryCapture.HEADER_SIZE);
+        commit();
+        // Each segment starts with a sync point so it can be decoded on its own
+        previousPrice = 0;
+        lastSyncTimestamp = 0;
+        if (writeSync && previousTimestamp != 0) {
+            writeSyncPoint(previousTimestamp);
+        }
+    }
+
+    /**
+     * Publishes the written length in the header, so readers in other processes can follow the capture.
+     * The release store orders it after the record bytes.
+     */
+    private void commit() {
+        BinaryCapture.LIMIT.setRelease(segment, BinaryCapture.LIMIT_OFFSET, (long) segment.position());
+    }
+
+    private void closeSegment() throws IOException {
+        if (segment == null) {
+            return;
+        }
+        segment.force();
+        int limit = segment.position();
+        try {
+            segmentChannel.truncate(limit);
+        } catch (IOException e) {
+            // Some platforms refuse to truncate a mapped file; readers rely on the header limit anyway
+        }
+        segmentChannel.close();
+        segment = null;
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            segment.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        segment.put((byte) value);
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xFFFFFFFFL;
+    }
+
+    public Path getSessionDirectory() {
+        return sessionDirectory;
+    }
+
+    /**
+     * @return timestamps, depth updates and trades written; segment headers, sync points and snapshots
+     *         are not counted
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        indexChannel.close();
+    }
+}
@@ -0,0 +1,294 @@
+package core.io;
+
+import core.book.TickBook;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads captures written by {@link DepthCaptureWriter}, one record at a time, and rebuilds the book at
+ * any timestamp from the nearest checkpoint. Also exports the old per-event full snapshot CSV offline.
+ * <pre>
+ * java -cp addon.jar core.io.DepthCaptureReader export MarketDepthCapture_ESZ4.csv MarketDepthData1.csv
+ * java -cp addon.jar core.io.DepthCaptureReader rebuild MarketDepthCapture_ESZ4.csv 1700000000000000000
+ * </pre>
+ */
+public class DepthCaptureReader implements Closeable {
+
+    private final FileChannel channel;
+    private InputStream in;
+    private long offset;
+
+    private char type;
+    private long timestamp;
+    private boolean isBid;
+    private int price;
+    private int size;
+    private long recordOffset;
+
+    public DepthCaptureReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        seek(0);
+    }
+
+    public void seek(long offset) throws IOException {
+        channel.position(offset);
+        in = new BufferedInputStream(Channels.newInputStream(channel), 1 << 16);
+        this.offset = offset;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return false at the end of the file
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            recordOffset = offset;
+            int first = read();
+            if (first < 0) {
+                return false;
+            }
+            if (first == '\n' || first == '\r') {
+                continue;
+            }
+            if (first == 'T') {
+                skipLine(); // Header
+                continue;
+            }
+            type = (char) first;
+            read(); // ','
+            timestamp = readLong();
+            int side = read();
+            isBid = side == 'B';
+            if (side != ',') {
+                read();
+            }
+            price = (int) readLong();
+            size = (int) readLong();
+            return true;
+        }
+    }
+
+    private int read() throws IOException {
+        int b = in.read();
+        if (b >= 0) {
+            offset++;
+        }
+        return b;
+    }
+
+    private void skipLine() throws IOException {
+        int b;
+        do {
+            b = read();
+        } while (b >= 0 && b != '\n');
+    }
+
+    /**
+     * Reads a possibly empty number field and its terminator; an empty field reads as 0.
+     */
+    private long readLong() throws IOException {
+        long value = 0;
+        boolean negative = false;
+        int b = read();
+        if (b == '-') {
+            negative = true;
+            b = read();
+        }
+        while (b >= '0' && b <= '9') {
+            value = value * 10 + (b - '0');
+            b = read();
+        }
+        while (b >= 0 && b != ',' && b != '\n') {
+            b = read();
+        }
+        return negative ? -value : value;
+    }
+
+    public boolean isDelta() {
+        return type == DepthCaptureWriter.DELTA.charAt(0);
+    }
+
+    public boolean isCheckpoint() {
+        return type == DepthCaptureWriter.CHECKPOINT.charAt(0);
+    }
+
+    public boolean isLevel() {
+        return type == DepthCaptureWriter.LEVEL.charAt(0);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isBid() {
+        return isBid;
+    }
+
+    public int getPrice() {
+        return price;
+    }
+
+    /**
+     * @return the level size for {@code D} and {@code L} records, the level count for {@code S} records
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return the byte offset where the current record starts
+     */
+    public long getRecordOffset() {
+        return recordOffset;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Checkpoint timestamps and byte offsets of a capture, in file order.
+     */
+    public static final class CheckpointIndex {
+        private long[] timestamps = new long[64];
+        private long[] offsets = new long[64];
+        private int count = 0;
+
+        private void add(long timestamp, long offset) {
+            if (count == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            timestamps[count] = timestamp;
+            offsets[count] = offset;
+            count++;
+        }
+
+        /**
+         * @return the offset of the last checkpoint at or before {@code timestamp}, or 0 (start of file)
+         */
+        public long floorOffset(long timestamp) {
+            int low = 0;
+            int high = count - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (timestamps[middle] <= timestamp) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found < 0 ? 0 : offsets[found];
+        }
+
+        public int size() {
+            return count;
+        }
+    }
+
+    /**
+     * Scans the capture once and records where each timed checkpoint starts. Session start checkpoints
+     * written before the first timestamp are left out; the reader still applies them while scanning.
+     */
+    public static CheckpointIndex index(Path capture) throws IOException {
+        CheckpointIndex index = new CheckpointIndex();
+        try (DepthCaptureReader reader = new DepthCaptureReader(capture)) {
+            while (reader.next()) {
+                if (reader.isCheckpoint() && reader.getTimestamp() != 0) {
+                    index.add(reader.getTimestamp(), reader.getRecordOffset());
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Loads {@code book} with the state at {@code timestamp}: the nearest checkpoint at or before it plus
+     * every later delta up to and including {@code timestamp}.
+     */
+    public static void rebuildAt(Path capture, CheckpointIndex index, long timestamp, TickBook book) throws IOException {
+        book.clear();
+        try (DepthCaptureReader reader = new DepthCaptureReader(capture)) {
+            reader.seek(index.floorOffset(timestamp));
+            while (reader.next()) {
+                if (reader.getTimestamp() > timestamp && !reader.isLevel()) {
+                    break;
+                }
+                if (reader.isCheckpoint()) {
+                    book.clear();
+                } else {
+                    book.onDepth(reader.isBid(), reader.getPrice(), reader.getSize());
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the book after every delta in the old {@code Price,Bid Size,Ask Size} format.
+     */
+    public static void exportSnapshots(Path capture, Path output) throws IOException {
+        TickBook book = new TickBook();
+        try (DepthCaptureReader reader = new DepthCaptureReader(capture);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            writer.append("Price,Bid Size,Ask Size\n");
+            while (reader.next()) {
+                if (reader.isCheckpoint()) {
+                    book.clear();
+                    continue;
+                }
+                book.onDepth(reader.isBid(), reader.getPrice(), reader.getSize());
+                if (!reader.isDelta()) {
+                    continue;
+                }
+                int lowestPrice = book.getLowestPrice();
+                for (int price = book.getHighestPrice(); price != TickBook.NO_PRICE && price >= lowestPrice; price--) {
+                    int bidSize = book.getSize(true, price);
+                    int askSize = book.getSize(false, price);
+                    if (bidSize > 0 || askSize > 0) {
+                        writer.append(String.valueOf(price)).append(',')
+                                .append(String.valueOf(bidSize)).append(',')
+                                .append(String.valueOf(askSize)).append('\n');
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("export")) {
+            exportSnapshots(Paths.get(args[1]), Paths.get(args[2]));
+        } else if (args.length == 3 && args[0].equals("rebuild")) {
+            Path capture = Paths.get(args[1]);
+            TickBook book = new TickBook();
+            rebuildAt(capture, index(capture), Long.parseLong(args[2]), book);
+            System.out.println("Price\tBid Size\tAsk Size");
+            int lowestPrice = book.getLowestPrice();
+            for (int price = book.getHighestPrice(); price != TickBook.NO_PRICE && price >= lowestPrice; price--) {
+                int bidSize = book.getSize(true, price);
+                int askSize = book.getSize(false, price);
+                if (bidSize > 0 || askSize > 0) {
+                    System.out.println(price + "\t" + bidSize + "\t" + askSize);
+                }
+            }
+        } else {
+            System.out.println("Usage: DepthCaptureReader export <capture.csv> <snapshots.csv>");
+            System.out.println("       DepthCaptureReader rebuild <capture.csv> <timestampNanos>");
+        }
+    }
+}
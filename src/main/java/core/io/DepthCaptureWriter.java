@@ -0,0 +1,97 @@
+package core.io;
+
+import core.book.TickBook;
+
+import java.io.IOException;
+
+/**
+ * Writes depth as deltas plus periodic full-book checkpoints instead of dumping the whole book per event.
+ * <p>
+ * Every {@code onDepth} becomes one {@code D} row. Every checkpoint interval of exchange time, or every
+ * N events, an {@code S} row with the level count is followed by one {@code L} row per non-empty level.
+ * A reader rebuilds the book at any time by loading the nearest checkpoint before it and applying the
+ * deltas that follow, see {@link DepthCaptureReader}. The file is opened with
+ * {@link AsyncCsvWriter.OverflowPolicy#BLOCK}, since a lost delta would corrupt every later rebuild.
+ * Rows carry no instrument, so every instrument needs its own file; a checkpoint resets the whole book.
+ * <pre>
+ * Type,Timestamp,Side,Price,Size
+ * S,1700000000000000000,,,2
+ * L,1700000000000000000,B,17000,12
+ * L,1700000000000000000,A,17001,9
+ * D,1700000000004000000,B,17000,0
+ * </pre>
+ */
+public class DepthCaptureWriter {
+
+    public static final String HEADER = "Type,Timestamp,Side,Price,Size";
+    public static final String DELTA = "D";
+    public static final String CHECKPOINT = "S";
+    public static final String LEVEL = "L";
+    public static final String BID = "B";
+    public static final String ASK = "A";
+
+    private final AsyncCsvWriter.CsvFile file;
+    private final TickBook book;
+    private final long checkpointIntervalNanos;
+    private final int checkpointIntervalEvents;
+    private long timestamp = 0;
+    private long lastCheckpointTimestamp = 0;
+    private int eventsSinceCheckpoint = 0;
+
+    /**
+     * @param book the book the caller updates before each {@link #onDepth(boolean, int, int)}; read for checkpoints
+     */
+    public DepthCaptureWriter(AsyncCsvWriter writer, String path, TickBook book,
+                              long checkpointIntervalNanos, int checkpointIntervalEvents) throws IOException {
+        this.file = writer.open(path, HEADER, true).withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK);
+        this.book = book;
+        this.checkpointIntervalNanos = checkpointIntervalNanos;
+        this.checkpointIntervalEvents = checkpointIntervalEvents;
+        // Marks the start of a session, so appended sessions never mix books
+        writeCheckpoint();
+    }
+
+    public void onTimestamp(long nanoseconds) {
+        timestamp = nanoseconds;
+    }
+
+    public void onDepth(boolean isBid, int price, int size) {
+        AsyncCsvWriter.Row row = file.claim();
+        if (row != null) {
+            row.addText(DELTA).addLong(timestamp).addText(isBid ? BID : ASK).addLong(price).addLong(size).publish();
+        }
+
+        if (++eventsSinceCheckpoint >= checkpointIntervalEvents
+                || (timestamp != 0 && timestamp - lastCheckpointTimestamp >= checkpointIntervalNanos)) {
+            writeCheckpoint();
+        }
+    }
+
+    public void writeCheckpoint() {
+        eventsSinceCheckpoint = 0;
+        lastCheckpointTimestamp = timestamp;
+        AsyncCsvWriter.Row header = file.claim();
+        if (header == null) {
+            return;
+        }
+        header.addText(CHECKPOINT).addLong(timestamp).addEmpty().addEmpty()
+                .addLong(book.getLevelCount(true) + book.getLevelCount(false)).publish();
+        for (int price = book.getBestBid(); price != TickBook.NO_PRICE; price = book.nextBid(price)) {
+            writeLevel(BID, price, book.getSize(true, price));
+        }
+        for (int price = book.getBestAsk(); price != TickBook.NO_PRICE; price = book.nextAsk(price)) {
+            writeLevel(ASK, price, book.getSize(false, price));
+        }
+    }
+
+    private void writeLevel(String side, int price, int size) {
+        AsyncCsvWriter.Row row = file.claim();
+        if (row != null) {
+            row.addText(LEVEL).addLong(timestamp).addText(side).addLong(price).addLong(size).publish();
+        }
+    }
+
+    public void close() {
+        file.close();
+    }
+}
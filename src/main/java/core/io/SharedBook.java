@@ -0,0 +1,84 @@
+package core.io;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Layout of the memory-mapped file {@link SharedBookPublisher} writes and {@link SharedBookReader} reads:
+ * top of book and an N-level ladder of one instrument, for consumers in other processes on the same host.
+ * <p>
+ * All values are in native byte order. The header holds {@code magic, version, levels, state, pips} and
+ * the alias (UTF-8, zero padded to {@value #ALIAS_BYTES} bytes). The book starts at
+ * {@value #SEQUENCE_OFFSET}, on its own cache line:
+ * <ul>
+ * <li>{@code long sequence}: seqlock version, odd while the publisher is writing</li>
+ * <li>{@code long publishNanos}: {@link System#nanoTime()} of the publish, for latency measurements</li>
+ * <li>{@code long timestamp}: exchange timestamp of the last update</li>
+ * <li>{@code long updates}: depth updates seen by the publisher</li>
+ * <li>{@code int bestBid, bestBidSize, bestAsk, bestAskSize}</li>
+ * <li>{@code int bidCount, askCount}: ladder levels in use per side</li>
+ * <li>{@code levels} bid {@code (price, size)} pairs from the best bid down, then {@code levels} ask pairs
+ * from the best ask up</li>
+ * </ul>
+ * A reader reads the sequence, copies the book, and reads the sequence again; the copy is consistent
+ * when both reads return the same even value.
+ */
+public final class SharedBook {
+
+    public static final int MAGIC = 0x424D5348; // "BMSH"
+    public static final int VERSION = 1;
+    public static final int STATE_LIVE = 1;
+    public static final int STATE_CLOSED = 2;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int LEVELS_OFFSET = 8;
+    static final int STATE_OFFSET = 12;
+    static final int PIPS_OFFSET = 16;
+    static final int ALIAS_OFFSET = 24;
+    static final int ALIAS_BYTES = 40;
+
+    static final int SEQUENCE_OFFSET = 64;
+    static final int PUBLISH_NANOS_OFFSET = 72;
+    static final int TIMESTAMP_OFFSET = 80;
+    static final int UPDATES_OFFSET = 88;
+    static final int BEST_BID_OFFSET = 96;
+    static final int BEST_BID_SIZE_OFFSET = 100;
+    static final int BEST_ASK_OFFSET = 104;
+    static final int BEST_ASK_SIZE_OFFSET = 108;
+    static final int BID_COUNT_OFFSET = 112;
+    static final int ASK_COUNT_OFFSET = 116;
+    static final int LADDER_OFFSET = 128;
+    static final int LEVEL_SIZE = 8;
+
+    /**
+     * Ordered access to the sequence field of a mapped buffer.
+     */
+    static final VarHandle LONG = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    public static final String DEFAULT_ROOT = "C:\\Bookmap\\Shared";
+
+    private SharedBook() {
+    }
+
+    public static int fileSize(int levels) {
+        return LADDER_OFFSET + 2 * levels * LEVEL_SIZE;
+    }
+
+    static int bidOffset(int level) {
+        return LADDER_OFFSET + level * LEVEL_SIZE;
+    }
+
+    static int askOffset(int levels, int level) {
+        return LADDER_OFFSET + (levels + level) * LEVEL_SIZE;
+    }
+
+    /**
+     * @return {@code <root>/<alias>.book}, with the alias made safe for a file name
+     */
+    public static Path path(Path root, String alias) {
+        return root.resolve(BinaryCapture.directoryName(alias) + ".book");
+    }
+}
@@ -0,0 +1,197 @@
+package core.io;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import core.book.TickBook;
+import core.replay.MarketDataGenerator;
+
+/**
+ * Publishes the top of a {@link TickBook} into a memory-mapped {@link SharedBook} file with a seqlock:
+ * the sequence is made odd, the book is written with plain stores, and the sequence is made even again
+ * with a release store. Publishing is a few dozen stores into the page cache; there is no syscall per
+ * update and readers never block the publisher.
+ * <p>
+ * {@link #onDepth} republishes only when the update is visible in the ladder, i.e. within the
+ * {@code levels} best prices of its side. Single writer: call it from the feed thread only.
+ * <p>
+ * A file left by an earlier session is continued only if it has the same size. With a different level
+ * count the constructor fails rather than resize a file that readers may still have mapped.
+ */
+public class SharedBookPublisher implements AutoCloseable {
+
+    private final int levels;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private long sequence;
+    private long updates = 0;
+    private long publishes = 0;
+    private int lowestBid = TickBook.NO_PRICE;
+    private int highestAsk = TickBook.NO_PRICE;
+    private int bidCount = 0;
+    private int askCount = 0;
+
+    public SharedBookPublisher(Path file, String alias, double pips, int levels) throws IOException {
+        this.levels = levels;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int size = SharedBook.fileSize(levels);
+        long existing = channel.size();
+        if (existing != 0 && existing != size) {
+            channel.close();
+            throw new IOException(file + " holds " + (existing - SharedBook.LADDER_OFFSET) / (2 * SharedBook.LEVEL_SIZE)
+                    + " levels, not " + levels + "; delete it once no reader has it open");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        buffer.order(ByteOrder.nativeOrder());
+
+        // A file left by an earlier session keeps counting, so readers never see the sequence go back
+        long previous = buffer.getInt(SharedBook.MAGIC_OFFSET) == SharedBook.MAGIC
+                ? (long) SharedBook.LONG.getVolatile(buffer, SharedBook.SEQUENCE_OFFSET) : 0;
+        sequence = (previous + 1) & ~1L;
+        SharedBook.LONG.setVolatile(buffer, SharedBook.SEQUENCE_OFFSET, sequence + 1);
+        buffer.putInt(SharedBook.VERSION_OFFSET, SharedBook.VERSION);
+        buffer.putInt(SharedBook.LEVELS_OFFSET, levels);
+        buffer.putInt(SharedBook.STATE_OFFSET, SharedBook.STATE_LIVE);
+        buffer.putDouble(SharedBook.PIPS_OFFSET, pips);
+        byte[] name = alias.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < SharedBook.ALIAS_BYTES; i++) {
+            buffer.put(SharedBook.ALIAS_OFFSET + i, i < name.length && i < SharedBook.ALIAS_BYTES - 1 ? name[i] : 0);
+        }
+        for (int offset = SharedBook.PUBLISH_NANOS_OFFSET; offset < size; offset += 4) {
+            buffer.putInt(offset, 0);
+        }
+        buffer.putInt(SharedBook.BEST_BID_OFFSET, TickBook.NO_PRICE);
+        buffer.putInt(SharedBook.BEST_ASK_OFFSET, TickBook.NO_PRICE);
+        buffer.putInt(SharedBook.MAGIC_OFFSET, SharedBook.MAGIC);
+        sequence += 2;
+        SharedBook.LONG.setVolatile(buffer, SharedBook.SEQUENCE_OFFSET, sequence);
+    }
+
+    /**
+     * Called after {@code book} applied a depth update; publishes if the ladder changed.
+     */
+    public void onDepth(TickBook book, boolean isBid, int price, long timestamp) {
+        updates++;
+        boolean visible = isBid
+                ? bidCount < levels || price >= lowestBid
+                : askCount < levels || price <= highestAsk;
+        if (visible) {
+            publish(book, timestamp);
+        }
+    }
+
+    /**
+     * Copies the best {@code levels} prices of each side into the shared file.
+     */
+    public void publish(TickBook book, long timestamp) {
+        long writing = sequence + 1;
+        SharedBook.LONG.setOpaque(buffer, SharedBook.SEQUENCE_OFFSET, writing);
+        // The odd sequence must be visible before any of the data below
+        VarHandle.storeStoreFence();
+
+        buffer.putLong(SharedBook.TIMESTAMP_OFFSET, timestamp);
+        buffer.putLong(SharedBook.UPDATES_OFFSET, updates);
+        buffer.putInt(SharedBook.BEST_BID_OFFSET, book.getBestBid());
+        buffer.putInt(SharedBook.BEST_BID_SIZE_OFFSET, book.getBestBidSize());
+        buffer.putInt(SharedBook.BEST_ASK_OFFSET, book.getBestAsk());
+        buffer.putInt(SharedBook.BEST_ASK_SIZE_OFFSET, book.getBestAskSize());
+
+        int count = 0;
+        int last = TickBook.NO_PRICE;
+        for (int price = book.getBestBid(); price != TickBook.NO_PRICE && count < levels; price = book.nextBid(price)) {
+            int offset = SharedBook.bidOffset(count++);
+            buffer.putInt(offset, price);
+            buffer.putInt(offset + 4, book.getSize(true, price));
+            last = price;
+        }
+        bidCount = count;
+        lowestBid = last;
+        count = 0;
+        last = TickBook.NO_PRICE;
+        for (int price = book.getBestAsk(); price != TickBook.NO_PRICE && count < levels; price = book.nextAsk(price)) {
+            int offset = SharedBook.askOffset(levels, count++);
+            buffer.putInt(offset, price);
+            buffer.putInt(offset + 4, book.getSize(false, price));
+            last = price;
+        }
+        askCount = count;
+        highestAsk = last;
+        buffer.putInt(SharedBook.BID_COUNT_OFFSET, bidCount);
+        buffer.putInt(SharedBook.ASK_COUNT_OFFSET, askCount);
+        buffer.putLong(SharedBook.PUBLISH_NANOS_OFFSET, System.nanoTime());
+
+        sequence = writing + 1;
+        SharedBook.LONG.setRelease(buffer, SharedBook.SEQUENCE_OFFSET, sequence);
+        publishes++;
+    }
+
+    public long getPublishCount() {
+        return publishes;
+    }
+
+    public long getUpdateCount() {
+        return updates;
+    }
+
+    /**
+     * Marks the file closed for readers. The file stays in place, so a restarted publisher continues it.
+     */
+    @Override
+    public void close() throws IOException {
+        buffer.putInt(SharedBook.STATE_OFFSET, SharedBook.STATE_CLOSED);
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Publishes a synthetic feed, paced at {@code eventsPerSecond} or as fast as possible with 0, for
+     * {@code SharedBookReader latency} running in another process.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: SharedBookPublisher <file> [levels] [events/s] [seconds]");
+            return;
+        }
+        int levels = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        double rate = args.length > 2 ? Double.parseDouble(args[2]) : 100_000;
+        long seconds = args.length > 3 ? Long.parseLong(args[3]) : 30;
+        TickBook book = new TickBook();
+        MarketDataGenerator generator = new MarketDataGenerator(1, 20_000, 0);
+        try (SharedBookPublisher publisher = new SharedBookPublisher(Paths.get(args[0]), "SYNTHETIC", 0.25, levels)) {
+            BinaryCaptureReader.BookListener listener = new BinaryCaptureReader.BookListener(book) {
+                @Override
+                public void onDepth(boolean isBid, int price, int size) {
+                    super.onDepth(isBid, price, size);
+                    publisher.onDepth(book, isBid, price, generator.getTimestamp());
+                }
+            };
+            long start = System.nanoTime();
+            long end = start + seconds * 1_000_000_000L;
+            long events = 0;
+            while (System.nanoTime() < end) {
+                generator.next(listener);
+                events++;
+                if (rate > 0) {
+                    long due = start + (long) (events * 1e9 / rate);
+                    while (System.nanoTime() < due) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }
+            System.out.printf("%,d depth updates, %,d publishes in %d s%n",
+                    publisher.getUpdateCount(), publisher.getPublishCount(), seconds);
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package core.io;
+
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Lock-free reader of a {@link SharedBook} file written by {@link SharedBookPublisher} in another
+ * process. {@link #read(Snapshot)} copies the book into a reusable {@link Snapshot} and retries if the
+ * publisher wrote during the copy, so a snapshot is never torn. {@link #getSequence()} is one memory
+ * read, for polling whether anything changed. Nothing is allocated per read and no syscall is made.
+ * <pre>
+ * try (SharedBookReader reader = new SharedBookReader(SharedBook.path(Paths.get(SharedBook.DEFAULT_ROOT), "ESZ4"))) {
+ *     SharedBookReader.Snapshot snapshot = reader.newSnapshot();
+ *     long seen = 0;
+ *     while (true) {
+ *         if (reader.getSequence() != seen) {
+ *             seen = reader.read(snapshot);
+ *             ... snapshot.getBestBid(), snapshot.getBidPrice(0), ...
+ *         }
+ *     }
+ * }
+ * </pre>
+ */
+public class SharedBookReader implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int levels;
+    private final String alias;
+    private final double pips;
+    private long retries = 0;
+
+    public SharedBookReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        buffer.order(ByteOrder.nativeOrder());
+        if (buffer.capacity() < SharedBook.LADDER_OFFSET || buffer.getInt(SharedBook.MAGIC_OFFSET) != SharedBook.MAGIC) {
+            channel.close();
+            throw new IOException("Not a shared book file: " + file);
+        }
+        if (buffer.getInt(SharedBook.VERSION_OFFSET) != SharedBook.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported shared book version " + buffer.getInt(SharedBook.VERSION_OFFSET));
+        }
+        levels = buffer.getInt(SharedBook.LEVELS_OFFSET);
+        if (buffer.capacity() < SharedBook.fileSize(levels)) {
+            channel.close();
+            throw new IOException("Shared book file is truncated: " + file);
+        }
+        pips = buffer.getDouble(SharedBook.PIPS_OFFSET);
+        byte[] name = new byte[SharedBook.ALIAS_BYTES];
+        buffer.get(SharedBook.ALIAS_OFFSET, name);
+        int length = 0;
+        while (length < name.length && name[length] != 0) {
+            length++;
+        }
+        alias = new String(name, 0, length, StandardCharsets.UTF_8);
+    }
+
+    public Snapshot newSnapshot() {
+        return new Snapshot(levels);
+    }
+
+    /**
+     * @return the current seqlock sequence; it changes with every publish
+     */
+    public long getSequence() {
+        return (long) SharedBook.LONG.getAcquire(buffer, SharedBook.SEQUENCE_OFFSET);
+    }
+
+    /**
+     * Copies a consistent book into {@code snapshot}, spinning while the publisher is mid-write.
+     *
+     * @return the sequence the snapshot belongs to
+     */
+    public long read(Snapshot snapshot) {
+        while (true) {
+            long before = getSequence();
+            if ((before & 1) != 0) {
+                retries++;
+                Thread.onSpinWait();
+                continue;
+            }
+            snapshot.publishNanos = buffer.getLong(SharedBook.PUBLISH_NANOS_OFFSET);
+            snapshot.timestamp = buffer.getLong(SharedBook.TIMESTAMP_OFFSET);
+            snapshot.updates = buffer.getLong(SharedBook.UPDATES_OFFSET);
+            snapshot.bestBid = buffer.getInt(SharedBook.BEST_BID_OFFSET);
+            snapshot.bestBidSize = buffer.getInt(SharedBook.BEST_BID_SIZE_OFFSET);
+            snapshot.bestAsk = buffer.getInt(SharedBook.BEST_ASK_OFFSET);
+            snapshot.bestAskSize = buffer.getInt(SharedBook.BEST_ASK_SIZE_OFFSET);
+            // Counts from a torn read are clamped here and rejected by the sequence check below
+            int bidCount = Math.max(0, Math.min(levels, buffer.getInt(SharedBook.BID_COUNT_OFFSET)));
+            int askCount = Math.max(0, Math.min(levels, buffer.getInt(SharedBook.ASK_COUNT_OFFSET)));
+            for (int level = 0; level < bidCount; level++) {
+                int offset = SharedBook.bidOffset(level);
+                snapshot.bidPrices[level] = buffer.getInt(offset);
+                snapshot.bidSizes[level] = buffer.getInt(offset + 4);
+            }
+            for (int level = 0; level < askCount; level++) {
+                int offset = SharedBook.askOffset(levels, level);
+                snapshot.askPrices[level] = buffer.getInt(offset);
+                snapshot.askSizes[level] = buffer.getInt(offset + 4);
+            }
+            snapshot.bidCount = bidCount;
+            snapshot.askCount = askCount;
+            // The copy above must complete before the sequence is read again
+            VarHandle.loadLoadFence();
+            if (getSequence() == before) {
+                snapshot.sequence = before;
+                return before;
+            }
+            retries++;
+        }
+    }
+
+    /**
+     * @return true once the publisher closed the file
+     */
+    public boolean isClosed() {
+        return buffer.getInt(SharedBook.STATE_OFFSET) == SharedBook.STATE_CLOSED;
+    }
+
+    public String getAlias() {
+        return alias;
+    }
+
+    public double getPips() {
+        return pips;
+    }
+
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * @return reads that had to start over because the publisher was writing
+     */
+    public long getRetryCount() {
+        return retries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * One consistent copy of the shared book. Arrays are indexed by level, 0 being the best price.
+     */
+    public static final class Snapshot {
+        private final int[] bidPrices;
+        private final int[] bidSizes;
+        private final int[] askPrices;
+        private final int[] askSizes;
+        private int bidCount;
+        private int askCount;
+        private int bestBid;
+        private int bestBidSize;
+        private int bestAsk;
+        private int bestAskSize;
+        private long sequence;
+        private long publishNanos;
+        private long timestamp;
+        private long updates;
+
+        Snapshot(int levels) {
+            bidPrices = new int[levels];
+            bidSizes = new int[levels];
+            askPrices = new int[levels];
+            askSizes = new int[levels];
+        }
+
+        public int getBidCount() {
+            return bidCount;
+        }
+
+        public int getAskCount() {
+            return askCount;
+        }
+
+        public int getBidPrice(int level) {
+            return bidPrices[level];
+        }
+
+        public int getBidSize(int level) {
+            return bidSizes[level];
+        }
+
+        public int getAskPrice(int level) {
+            return askPrices[level];
+        }
+
+        public int getAskSize(int level) {
+            return askSizes[level];
+        }
+
+        public int getBestBid() {
+            return bestBid;
+        }
+
+        public int getBestBidSize() {
+            return bestBidSize;
+        }
+
+        public int getBestAsk() {
+            return bestAsk;
+        }
+
+        public int getBestAskSize() {
+            return bestAskSize;
+        }
+
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * @return the publisher's {@link System#nanoTime()} at publish; comparable across processes on one host
+         */
+        public long getPublishNanos() {
+            return publishNanos;
+        }
+
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        public long getUpdateCount() {
+            return updates;
+        }
+    }
+
+    /**
+     * {@code book <file>} prints the ladder; {@code latency <file> [seconds]} spins on the sequence and
+     * reports how long after each publish this process saw it.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SharedBookReader book|latency <file> [seconds]");
+            return;
+        }
+        try (SharedBookReader reader = new SharedBookReader(Paths.get(args[1]))) {
+            Snapshot snapshot = reader.newSnapshot();
+            if (args[0].equals("book")) {
+                reader.read(snapshot);
+                System.out.printf("%s, sequence %d, %,d updates%nPrice\tBid Size\tAsk Size%n",
+                        reader.getAlias(), snapshot.getSequence(), snapshot.getUpdateCount());
+                for (int level = snapshot.getAskCount() - 1; level >= 0; level--) {
+                    System.out.println(snapshot.getAskPrice(level) + "\t\t" + snapshot.getAskSize(level));
+                }
+                for (int level = 0; level < snapshot.getBidCount(); level++) {
+                    System.out.println(snapshot.getBidPrice(level) + "\t" + snapshot.getBidSize(level));
+                }
+                return;
+            }
+
+            long seconds = args.length > 2 ? Long.parseLong(args[2]) : 10;
+            long[] samples = new long[1 << 22];
+            int count = 0;
+            long reads = 0;
+            long seen = reader.getSequence();
+            long end = System.nanoTime() + seconds * 1_000_000_000L;
+            while (System.nanoTime() < end && !reader.isClosed()) {
+                if (reader.getSequence() == seen) {
+                    Thread.onSpinWait();
+                    continue;
+                }
+                seen = reader.read(snapshot);
+                long latency = System.nanoTime() - snapshot.getPublishNanos();
+                reads++;
+                if (count < samples.length) {
+                    samples[count++] = latency;
+                }
+            }
+            if (count == 0) {
+                System.out.println("No publishes seen");
+                return;
+            }
+            Arrays.sort(samples, 0, count);
+            System.out.printf("%,d snapshots read, %,d retries; publish-to-read latency ns: p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+                    reads, reader.getRetryCount(), samples[count / 2], samples[(int) (count * 0.9)],
+                    samples[(int) (count * 0.99)], samples[(int) (count * 0.999)], samples[count - 1]);
+        }
+    }
+}
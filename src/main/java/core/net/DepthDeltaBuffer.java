@@ -0,0 +1,99 @@
+package core.net;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pending depth updates for one subscriber, conflated per side and price: a level that changes several
+ * times before it is sent is sent once, with its latest size. Entries keep the order in which their
+ * level first changed. An open-addressing table of primitive keys holds at most {@code maxEntries}
+ * levels; {@link #put} reports when that is exceeded instead of growing.
+ */
+class DepthDeltaBuffer {
+
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final int maxEntries;
+    private final int mask;
+    private final long[] keys;
+    private final int[] sizes;
+    private final int[] order;
+    private int count = 0;
+    private long conflated = 0;
+
+    DepthDeltaBuffer(int maxEntries) {
+        this.maxEntries = maxEntries;
+        int tableSize = Integer.highestOneBit(Math.max(2, maxEntries * 2 - 1)) << 1;
+        this.mask = tableSize - 1;
+        keys = new long[tableSize];
+        sizes = new int[tableSize];
+        order = new int[maxEntries];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    /**
+     * @return false if the level is new and the buffer already holds {@code maxEntries} levels
+     */
+    boolean put(boolean isBid, int price, int size) {
+        long key = ((long) price << 1) | (isBid ? 1 : 0);
+        int slot = (int) mix(key) & mask;
+        while (keys[slot] != EMPTY) {
+            if (keys[slot] == key) {
+                sizes[slot] = size;
+                conflated++;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (count == maxEntries) {
+            return false;
+        }
+        keys[slot] = key;
+        sizes[slot] = size;
+        order[count++] = slot;
+        return true;
+    }
+
+    /**
+     * Writes the entries as {@code (byte side, int price, int size)}, bids with side 1; the buffer must
+     * have room for {@link #encodedSize()} bytes.
+     */
+    void encode(ByteBuffer out) {
+        for (int i = 0; i < count; i++) {
+            int slot = order[i];
+            long key = keys[slot];
+            out.put((byte) (key & 1)).putInt((int) (key >> 1)).putInt(sizes[slot]);
+        }
+    }
+
+    int encodedSize() {
+        return count * DepthFeedServer.ENTRY_SIZE;
+    }
+
+    int size() {
+        return count;
+    }
+
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @return updates that replaced a pending one since construction
+     */
+    long getConflatedCount() {
+        return conflated;
+    }
+
+    void clear() {
+        for (int i = 0; i < count; i++) {
+            keys[order[i]] = EMPTY;
+        }
+        count = 0;
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+}
@@ -0,0 +1,152 @@
+package core.net;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+import core.book.TickBook;
+import core.io.BinaryCaptureReader;
+
+/**
+ * Blocking reader for a {@link DepthFeedServer} stream. Frames are decoded into the same
+ * {@link BinaryCaptureReader.Listener} callbacks a capture replays into, so a
+ * {@link BinaryCaptureReader.BookListener} keeps a local copy of the book:
+ * <pre>
+ * try (DepthFeedClient client = new DepthFeedClient("localhost", 5555)) {
+ *     TickBook book = new TickBook();
+ *     BinaryCaptureReader.BookListener listener = new BinaryCaptureReader.BookListener(book);
+ *     while (client.next(listener)) { ... }
+ * }
+ * </pre>
+ */
+public class DepthFeedClient implements AutoCloseable {
+
+    private final SocketChannel channel;
+    private final ByteBuffer in;
+    private String alias;
+    private double pips = Double.NaN;
+    private long frames = 0;
+    private long entries = 0;
+
+    public DepthFeedClient(String host, int port) throws IOException {
+        this(host, port, DepthFeedServer.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize at least the server's buffer size, which bounds the frame length
+     */
+    public DepthFeedClient(String host, int port, int bufferSize) throws IOException {
+        channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.socket().setTcpNoDelay(true);
+        in = ByteBuffer.allocateDirect(bufferSize);
+        in.flip();
+    }
+
+    /**
+     * Reads one frame, blocking until it has arrived, and passes its entries to {@code listener}. A
+     * snapshot starts with {@code onSnapshot(count)}.
+     *
+     * @return false when the server closed the connection
+     */
+    public boolean next(BinaryCaptureReader.Listener listener) throws IOException {
+        if (!fill(4)) {
+            return false;
+        }
+        int length = in.getInt();
+        if (length < 1 || length > in.capacity()) {
+            throw new IOException("Bad frame length " + length);
+        }
+        if (!fill(length)) {
+            throw new EOFException("Connection closed inside a frame");
+        }
+        byte type = in.get();
+        frames++;
+        switch (type) {
+            case DepthFeedServer.INSTRUMENT -> {
+                pips = in.getDouble();
+                byte[] name = new byte[in.getShort()];
+                in.get(name);
+                alias = new String(name, StandardCharsets.UTF_8);
+            }
+            case DepthFeedServer.SNAPSHOT, DepthFeedServer.DELTAS -> {
+                int count = in.getInt();
+                if (type == DepthFeedServer.SNAPSHOT) {
+                    listener.onSnapshot(count);
+                }
+                for (int i = 0; i < count; i++) {
+                    listener.onDepth(in.get() == 1, in.getInt(), in.getInt());
+                }
+                entries += count;
+            }
+            default -> in.position(in.position() + length - 1);
+        }
+        return true;
+    }
+
+    private boolean fill(int bytes) throws IOException {
+        if (in.remaining() >= bytes) {
+            return true;
+        }
+        in.compact();
+        try {
+            while (in.position() < bytes) {
+                if (channel.read(in) < 0) {
+                    return false;
+                }
+            }
+        } finally {
+            in.flip();
+        }
+        return true;
+    }
+
+    /**
+     * @return the instrument alias, once the first frame was read
+     */
+    public String getAlias() {
+        return alias;
+    }
+
+    public double getPips() {
+        return pips;
+    }
+
+    public long getFrameCount() {
+        return frames;
+    }
+
+    public long getEntryCount() {
+        return entries;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Connects to a server and prints the touch and the update rate once a second.
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 5555;
+        TickBook book = new TickBook();
+        BinaryCaptureReader.BookListener listener = new BinaryCaptureReader.BookListener(book);
+        try (DepthFeedClient client = new DepthFeedClient(host, port)) {
+            long nextReport = System.nanoTime() + 1_000_000_000L;
+            long reportedEntries = 0;
+            while (client.next(listener)) {
+                if (System.nanoTime() >= nextReport) {
+                    System.out.printf("%s bid %d x %d, ask %d x %d, %,d levels/s in %,d frames%n", client.getAlias(),
+                            book.getBestBid(), book.getBestBidSize(), book.getBestAsk(), book.getBestAskSize(),
+                            client.getEntryCount() - reportedEntries, client.getFrameCount());
+                    reportedEntries = client.getEntryCount();
+                    nextReport += 1_000_000_000L;
+                }
+            }
+        }
+    }
+}
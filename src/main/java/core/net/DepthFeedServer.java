@@ -0,0 +1,345 @@
+package core.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import core.book.TickBook;
+import velox.api.layer1.common.Log;
+
+/**
+ * Streams a {@link TickBook} to any number of TCP subscribers: an instrument frame and a snapshot on
+ * connect, then batches of depth deltas. One selector thread does all socket I/O.
+ * <p>
+ * Frames are {@code int length} (of what follows), {@code byte type}, payload, big-endian:
+ * <ul>
+ * <li>{@link #INSTRUMENT}: {@code double pips}, {@code short} length and UTF-8 bytes of the alias.</li>
+ * <li>{@link #SNAPSHOT}: {@code int count} and {@code count} entries; the client clears its book first.</li>
+ * <li>{@link #DELTAS}: {@code int count} and {@code count} entries applied to the book.</li>
+ * </ul>
+ * An entry is {@code byte side} (1 bid, 0 ask), {@code int price} in ticks and {@code int size}, 0
+ * removing the level.
+ * <p>
+ * {@link #onDepth(boolean, int, int)} updates the book and records the change for every subscriber
+ * while holding the book's monitor. Each subscriber has a conflating {@link DepthDeltaBuffer}, so a slow
+ * one receives the latest size of each level it missed rather than every intermediate update, and a
+ * fixed outbound buffer. The selector thread only encodes new deltas once a subscriber's outbound buffer
+ * has been written out; until then updates keep conflating. If a subscriber falls so far behind that
+ * its pending levels would no longer fit in one frame, they are dropped and it gets a fresh snapshot
+ * instead. Neither case blocks or slows {@code onDepth}, which does O(subscribers) work per event and
+ * never touches a socket.
+ * <p>
+ * Pending deltas are sent every {@code flushIntervalMillis}, which bounds the added latency and sets
+ * the batch size.
+ */
+public class DepthFeedServer implements AutoCloseable {
+
+    public static final byte INSTRUMENT = 0;
+    public static final byte SNAPSHOT = 1;
+    public static final byte DELTAS = 2;
+    public static final int ENTRY_SIZE = 9;
+    static final int FRAME_HEADER_SIZE = 4 + 1 + 4;
+
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024;
+    public static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 5;
+
+    private final TickBook book;
+    private final String alias;
+    private final double pips;
+    private final int port;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private long flushIntervalMillis = DEFAULT_FLUSH_INTERVAL_MILLIS;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread thread;
+    private volatile boolean running = false;
+    // Changed under the book's monitor, so onDepth sees a consistent list
+    private volatile Subscriber[] subscribers = new Subscriber[0];
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(1024);
+
+    private long connections = 0;
+    private long snapshotsSent = 0;
+    private long deltaFramesSent = 0;
+
+    public DepthFeedServer(TickBook book, String alias, double pips, int port) {
+        this.book = book;
+        this.alias = alias;
+        this.pips = pips;
+        this.port = port;
+    }
+
+    /**
+     * @param bufferSize outbound bytes per subscriber; also bounds the levels in one snapshot or delta frame
+     */
+    public DepthFeedServer withBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    public DepthFeedServer withFlushInterval(long flushIntervalMillis) {
+        this.flushIntervalMillis = flushIntervalMillis;
+        return this;
+    }
+
+    public synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        thread = new Thread(this::run, "depth-feed-" + port);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Applies a depth update to the book and queues it for every subscriber. Called on the feed thread.
+     */
+    public void onDepth(boolean isBid, int price, int size) {
+        synchronized (book) {
+            book.onDepth(isBid, price, size);
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.needsSnapshot && !subscriber.pending.put(isBid, price, size)) {
+                    // Too far behind to send every level it missed: resend the whole book instead
+                    subscriber.pending.clear();
+                    subscriber.needsSnapshot = true;
+                }
+            }
+        }
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select(flushIntervalMillis);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Subscriber subscriber = (Subscriber) key.attachment();
+                        if (key.isReadable()) {
+                            read(subscriber);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            flush(subscriber);
+                        }
+                    }
+                }
+                for (Subscriber subscriber : subscribers) {
+                    if (subscriber.out.position() == 0) {
+                        fill(subscriber);
+                        flush(subscriber);
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (running) {
+                Log.error("Depth feed server on port " + port + " stopped: " + e.getMessage());
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Subscriber subscriber = new Subscriber(channel, bufferSize);
+        subscriber.key = channel.register(selector, SelectionKey.OP_READ, subscriber);
+        connections++;
+
+        byte[] name = alias.getBytes(StandardCharsets.UTF_8);
+        subscriber.out.putInt(1 + 8 + 2 + name.length).put(INSTRUMENT).putDouble(pips)
+                .putShort((short) name.length).put(name);
+        synchronized (book) {
+            // Snapshot and registration under the same lock: every later update reaches the pending buffer
+            writeSnapshot(subscriber);
+            Subscriber[] updated = Arrays.copyOf(subscribers, subscribers.length + 1);
+            updated[subscribers.length] = subscriber;
+            subscribers = updated;
+        }
+        flush(subscriber);
+    }
+
+    private void read(Subscriber subscriber) {
+        // Subscribers do not send anything; reading only detects a closed connection
+        try {
+            readBuffer.clear();
+            if (subscriber.channel.read(readBuffer) < 0) {
+                close(subscriber);
+            }
+        } catch (IOException e) {
+            close(subscriber);
+        }
+    }
+
+    /**
+     * Encodes what the subscriber has pending into its empty outbound buffer.
+     */
+    private void fill(Subscriber subscriber) {
+        DepthDeltaBuffer deltas;
+        synchronized (book) {
+            if (subscriber.needsSnapshot) {
+                writeSnapshot(subscriber);
+                return;
+            }
+            if (subscriber.pending.isEmpty()) {
+                return;
+            }
+            deltas = subscriber.pending;
+            subscriber.pending = subscriber.draining;
+            subscriber.draining = deltas;
+        }
+        ByteBuffer out = subscriber.out;
+        out.putInt(1 + 4 + deltas.encodedSize()).put(DELTAS).putInt(deltas.size());
+        deltas.encode(out);
+        deltas.clear();
+        deltaFramesSent++;
+    }
+
+    /**
+     * Writes the book as a snapshot frame; called holding the book's monitor.
+     */
+    private void writeSnapshot(Subscriber subscriber) {
+        ByteBuffer out = subscriber.out;
+        int maxEntries = (out.remaining() - FRAME_HEADER_SIZE) / ENTRY_SIZE;
+        int start = out.position();
+        out.position(start + FRAME_HEADER_SIZE);
+        int count = 0;
+        for (int price = book.getBestBid(); price != TickBook.NO_PRICE && count < maxEntries; price = book.nextBid(price)) {
+            out.put((byte) 1).putInt(price).putInt(book.getSize(true, price));
+            count++;
+        }
+        for (int price = book.getBestAsk(); price != TickBook.NO_PRICE && count < maxEntries; price = book.nextAsk(price)) {
+            out.put((byte) 0).putInt(price).putInt(book.getSize(false, price));
+            count++;
+        }
+        out.putInt(start, 1 + 4 + count * ENTRY_SIZE).put(start + 4, SNAPSHOT).putInt(start + 5, count);
+        subscriber.pending.clear();
+        subscriber.needsSnapshot = false;
+        snapshotsSent++;
+    }
+
+    private void flush(Subscriber subscriber) {
+        ByteBuffer out = subscriber.out;
+        if (out.position() == 0) {
+            return;
+        }
+        try {
+            out.flip();
+            subscriber.channel.write(out);
+            out.compact();
+            subscriber.key.interestOps(out.position() > 0
+                    ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        } catch (IOException | CancelledKeyException e) {
+            close(subscriber);
+        }
+    }
+
+    private void close(Subscriber subscriber) {
+        synchronized (book) {
+            Subscriber[] current = subscribers;
+            int index = Arrays.asList(current).indexOf(subscriber);
+            if (index < 0) {
+                return;
+            }
+            Subscriber[] updated = new Subscriber[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            subscribers = updated;
+        }
+        subscriber.key.cancel();
+        try {
+            subscriber.channel.close();
+        } catch (IOException e) {
+            // Already gone
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Subscriber subscriber : subscribers) {
+            close(subscriber);
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            Log.error("Error closing depth feed server: " + e.getMessage());
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.length;
+    }
+
+    public long getConnectionCount() {
+        return connections;
+    }
+
+    public long getSnapshotsSent() {
+        return snapshotsSent;
+    }
+
+    public long getDeltaFramesSent() {
+        return deltaFramesSent;
+    }
+
+    /**
+     * @return updates that were conflated into a pending one, over the current subscribers
+     */
+    public long getConflatedCount() {
+        long conflated = 0;
+        synchronized (book) {
+            for (Subscriber subscriber : subscribers) {
+                conflated += subscriber.pending.getConflatedCount() + subscriber.draining.getConflatedCount();
+            }
+        }
+        return conflated;
+    }
+
+    private static final class Subscriber {
+        final SocketChannel channel;
+        final ByteBuffer out;
+        SelectionKey key;
+        // Written by onDepth and swapped by the selector thread, both under the book's monitor
+        DepthDeltaBuffer pending;
+        DepthDeltaBuffer draining;
+        boolean needsSnapshot = false;
+
+        Subscriber(SocketChannel channel, int bufferSize) {
+            this.channel = channel;
+            this.out = ByteBuffer.allocateDirect(bufferSize);
+            int maxEntries = (bufferSize - FRAME_HEADER_SIZE) / ENTRY_SIZE;
+            pending = new DepthDeltaBuffer(maxEntries);
+            draining = new DepthDeltaBuffer(maxEntries);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package core.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Stand-in peer for {@link MessageChannel}: accepts any number of connections and writes every byte it
+ * receives straight back, so length-prefixed frames come back unchanged. One thread per connection.
+ */
+public class EchoServer implements AutoCloseable {
+
+    private final ServerSocketChannel serverChannel;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    /**
+     * @param port port to listen on, or 0 for any free port
+     */
+    public EchoServer(int port) throws IOException {
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress("localhost", port));
+        acceptor = new Thread(this::accept, "echo-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.socket().setTcpNoDelay(true);
+                Thread echo = new Thread(() -> echo(channel), "echo-" + channel.socket().getPort());
+                echo.setDaemon(true);
+                echo.start();
+            } catch (IOException e) {
+                if (running) {
+                    Log.error("Echo server stopped accepting: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    private void echo(SocketChannel channel) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try (channel) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                buffer.clear();
+            }
+        } catch (IOException e) {
+            // The client went away
+        }
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverChannel.close();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 5555;
+        try (EchoServer server = new EchoServer(port)) {
+            System.out.println("Echoing on port " + server.getPort());
+            server.acceptor.join();
+        }
+    }
+}
@@ -0,0 +1,353 @@
+package core.net;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import velox.api.layer1.common.Log;
+
+/**
+ * Long-lived, length-prefixed message connection to one peer. {@link #send(byte[])} only offers the
+ * message to a bounded queue and never blocks; when the queue is full the message is dropped and counted.
+ * A writer thread connects (and reconnects with exponential backoff after any failure), drains whatever
+ * is queued and writes it as one batch of frames, so a burst of messages costs one write rather than a
+ * connection each.
+ * <p>
+ * A frame is an {@code int} length followed by that many payload bytes. With a {@link Listener}, frames
+ * sent back by the peer are read on a second thread and passed to it. A batch whose write failed is
+ * written again after reconnecting, so the peer may see some messages twice. There are no
+ * acknowledgements: a batch the socket accepted just before the peer went away is lost.
+ */
+public class MessageChannel implements AutoCloseable {
+
+    public interface Listener {
+        /**
+         * Called on the reader thread; {@code message} is only valid during the call.
+         */
+        void onMessage(ByteBuffer message);
+    }
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 65_536;
+    public static final int DEFAULT_BATCH_BYTES = 64 * 1024;
+    public static final int MAX_MESSAGE_BYTES = 1 << 20;
+
+    private final String host;
+    private final int port;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int batchBytes = DEFAULT_BATCH_BYTES;
+    private long reconnectDelayMillis = 100;
+    private long maxReconnectDelayMillis = 5_000;
+    private Listener listener;
+
+    private ArrayBlockingQueue<byte[]> queue;
+    private Thread writer;
+    private volatile boolean running = false;
+    private volatile SocketChannel channel;
+
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile long sent = 0;
+    private volatile long batches = 0;
+    private volatile long reconnects = 0;
+    private volatile long received = 0;
+
+    public MessageChannel(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+
+    public MessageChannel withQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * @param batchBytes size of the buffer one batch is written from
+     */
+    public MessageChannel withBatchBytes(int batchBytes) {
+        this.batchBytes = batchBytes;
+        return this;
+    }
+
+    public MessageChannel withReconnectDelay(long reconnectDelayMillis, long maxReconnectDelayMillis) {
+        this.reconnectDelayMillis = reconnectDelayMillis;
+        this.maxReconnectDelayMillis = maxReconnectDelayMillis;
+        return this;
+    }
+
+    public MessageChannel withListener(Listener listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public synchronized MessageChannel start() {
+        if (!running) {
+            queue = new ArrayBlockingQueue<>(queueCapacity);
+            running = true;
+            writer = new Thread(this::writeLoop, "message-channel-" + host + ":" + port);
+            writer.setDaemon(true);
+            writer.start();
+        }
+        return this;
+    }
+
+    /**
+     * Queues a message without blocking.
+     *
+     * @return false if the queue was full and the message was dropped
+     */
+    public boolean send(byte[] message) {
+        if (message.length > MAX_MESSAGE_BYTES) {
+            throw new IllegalArgumentException("message of " + message.length + " bytes is over " + MAX_MESSAGE_BYTES);
+        }
+        if (queue == null || !queue.offer(message)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    public boolean send(String message) {
+        return send(message.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void writeLoop() {
+        ByteBuffer out = ByteBuffer.allocateDirect(batchBytes);
+        List<byte[]> batch = new ArrayList<>();
+        long delay = reconnectDelayMillis;
+        while (running || !queue.isEmpty() || !batch.isEmpty()) {
+            try {
+                if (batch.isEmpty()) {
+                    byte[] first = queue.poll(100, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch);
+                }
+                SocketChannel current = channel;
+                if (current == null) {
+                    current = connect();
+                    delay = reconnectDelayMillis;
+                }
+                writeBatch(current, batch, out);
+                sent += batch.size();
+                batches++;
+                batch.clear();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                disconnect();
+                if (!running) {
+                    // Closing and the peer is gone: what is left cannot be delivered
+                    return;
+                }
+                if (delay == reconnectDelayMillis) {
+                    Log.info("Message channel to " + host + ":" + port + " lost (" + e.getMessage() + "), reconnecting");
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+                delay = Math.min(maxReconnectDelayMillis, delay * 2);
+            }
+        }
+        disconnect();
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel opened = SocketChannel.open(new InetSocketAddress(host, port));
+        opened.socket().setTcpNoDelay(true);
+        channel = opened;
+        reconnects++;
+        if (listener != null) {
+            Thread reader = new Thread(() -> readLoop(opened), "message-channel-reader-" + host + ":" + port);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        return opened;
+    }
+
+    private void writeBatch(SocketChannel current, List<byte[]> batch, ByteBuffer out) throws IOException {
+        out.clear();
+        for (byte[] message : batch) {
+            if (out.remaining() < 4) {
+                writeFully(current, out);
+            }
+            out.putInt(message.length);
+            int written = 0;
+            while (written < message.length) {
+                if (!out.hasRemaining()) {
+                    writeFully(current, out);
+                }
+                int chunk = Math.min(out.remaining(), message.length - written);
+                out.put(message, written, chunk);
+                written += chunk;
+            }
+        }
+        writeFully(current, out);
+    }
+
+    private static void writeFully(SocketChannel current, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            current.write(out);
+        }
+        out.clear();
+    }
+
+    private void readLoop(SocketChannel current) {
+        ByteBuffer in = ByteBuffer.allocateDirect(MAX_MESSAGE_BYTES + 4);
+        try {
+            while (current.read(in) >= 0) {
+                in.flip();
+                while (in.remaining() >= 4) {
+                    int length = in.getInt(in.position());
+                    if (length < 0 || length > MAX_MESSAGE_BYTES) {
+                        throw new IOException("Bad frame length " + length);
+                    }
+                    if (in.remaining() < 4 + length) {
+                        break;
+                    }
+                    int limit = in.limit();
+                    int end = in.position() + 4 + length;
+                    in.position(in.position() + 4).limit(end);
+                    received++;
+                    listener.onMessage(in);
+                    in.limit(limit).position(end);
+                }
+                in.compact();
+            }
+        } catch (IOException e) {
+            // Reported by the writer when it next fails
+        }
+        if (channel == current) {
+            disconnect();
+        }
+    }
+
+    private synchronized void disconnect() {
+        SocketChannel current = channel;
+        channel = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                // Already closed
+            }
+        }
+    }
+
+    /**
+     * Stops accepting messages and waits up to {@code timeoutMillis} for the queue to be written out.
+     */
+    public void close(long timeoutMillis) {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+        }
+        try {
+            writer.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer.interrupt();
+        disconnect();
+    }
+
+    @Override
+    public void close() {
+        close(1_000);
+    }
+
+    public boolean isConnected() {
+        return channel != null;
+    }
+
+    public long getSentCount() {
+        return sent;
+    }
+
+    public long getBatchCount() {
+        return batches;
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return successful connections, the first one included
+     */
+    public long getConnectCount() {
+        return reconnects;
+    }
+
+    public long getReceivedCount() {
+        return received;
+    }
+
+    public int getQueuedCount() {
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**
+     * Sends {@code messages} timestamped messages of {@code size} bytes through an in-process
+     * {@link EchoServer} (or {@code host:port} if given) and reports throughput and round-trip latency.
+     */
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int size = args.length > 1 ? Math.max(8, Integer.parseInt(args[1])) : 64;
+        EchoServer echo = args.length > 3 ? null : new EchoServer(0);
+        String host = args.length > 3 ? args[2] : "localhost";
+        int port = args.length > 3 ? Integer.parseInt(args[3]) : echo.getPort();
+
+        long[] latencies = new long[messages];
+        AtomicLong count = new AtomicLong();
+        MessageChannel channel = new MessageChannel(host, port).withQueueCapacity(1 << 20)
+                .withListener(message -> {
+                    int index = (int) count.getAndIncrement();
+                    if (index < latencies.length) {
+                        latencies[index] = System.nanoTime() - message.getLong(message.position());
+                    }
+                }).start();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            byte[] message = new byte[size];
+            ByteBuffer.wrap(message).putLong(System.nanoTime());
+            while (!channel.send(message)) {
+                Thread.onSpinWait();
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (count.get() < messages && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int n = (int) Math.min(count.get(), messages);
+        Arrays.sort(latencies, 0, n);
+        System.out.printf("%,d messages of %d bytes echoed in %.2f s: %,.0f messages/s, %,d batches (%.1f messages per write), %,d dropped%n",
+                n, size, seconds, n / seconds, channel.getBatchCount(),
+                (double) channel.getSentCount() / Math.max(1, channel.getBatchCount()), channel.getDroppedCount());
+        if (n > 0) {
+            System.out.printf("Round trip us: p50 %.1f, p99 %.1f, max %.1f (includes queueing behind the burst)%n",
+                    latencies[n / 2] / 1e3, latencies[(int) (n * 0.99)] / 1e3, latencies[n - 1] / 1e3);
+        }
+        channel.close();
+        if (echo != null) {
+            echo.close();
+        }
+    }
+}
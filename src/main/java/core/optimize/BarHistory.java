@@ -0,0 +1,218 @@
+package core.optimize;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import core.bars.BarEngine;
+import core.bars.BarSeries;
+import core.indicators.SessionAnchor;
+import core.io.BinaryCaptureReader;
+
+/**
+ * Bar history in parallel primitive arrays, loaded once and shared read-only by every evaluation of a
+ * {@link ParameterSweep}. Prices are in ticks, like Bookmap's bar prices; times are bar start times in
+ * nanoseconds since the epoch.
+ */
+public final class BarHistory {
+
+    private static final LocalTime SESSION_OPEN = LocalTime.of(18, 0);
+
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final long[] volume;
+    private final long[] time;
+    private final double pips;
+
+    private BarHistory(Builder builder, double pips) {
+        int size = builder.size;
+        open = Arrays.copyOf(builder.open, size);
+        high = Arrays.copyOf(builder.high, size);
+        low = Arrays.copyOf(builder.low, size);
+        close = Arrays.copyOf(builder.close, size);
+        volume = Arrays.copyOf(builder.volume, size);
+        time = Arrays.copyOf(builder.time, size);
+        this.pips = pips;
+    }
+
+    /**
+     * Reads {@code time,open,high,low,close,volume} lines; a header line is skipped. Times are epoch
+     * milliseconds or nanoseconds, prices in ticks.
+     */
+    public static BarHistory fromCsv(Path file, double pips) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || !Character.isDigit(line.charAt(0))) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                long timestamp = Long.parseLong(fields[0].trim());
+                builder.add(timestamp < 100_000_000_000_000L ? TimeUnit.MILLISECONDS.toNanos(timestamp) : timestamp,
+                        Double.parseDouble(fields[1]), Double.parseDouble(fields[2]), Double.parseDouble(fields[3]),
+                        Double.parseDouble(fields[4]), Long.parseLong(fields[5].trim()));
+            }
+        }
+        return new BarHistory(builder, pips);
+    }
+
+    /**
+     * Builds time bars from the trades of a {@link BinaryCaptureReader} session.
+     */
+    public static BarHistory fromCapture(Path session, long intervalNanos, double pips) throws IOException {
+        Builder builder = new Builder();
+        BarEngine engine = new BarEngine().withCapacity(1);
+        engine.timeBars(intervalNanos).addListener(builder::add);
+        try (BinaryCaptureReader reader = new BinaryCaptureReader(session)) {
+            BinaryCaptureReader.Listener listener = new BinaryCaptureReader.Listener() {
+                @Override
+                public void onTimestamp(long nanoseconds) {
+                    engine.onTimestamp(nanoseconds);
+                }
+
+                @Override
+                public void onDepth(boolean isBid, int price, int size) {
+                }
+
+                @Override
+                public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) {
+                    engine.onTrade(price, size, isBidAggressor);
+                }
+
+                @Override
+                public void onSnapshot(int levels) {
+                }
+            };
+            while (reader.next(listener)) {
+                // Bars arrive through the builder
+            }
+        }
+        return new BarHistory(builder, pips);
+    }
+
+    /**
+     * Random-walk 1 minute bars, 23 hours a day from 18:00 New York Sunday to Thursday, for {@code days}
+     * trading days from 2024-01-01. Volatility rises around the cash session and trends come and go, so
+     * the grid has something to find.
+     */
+    public static BarHistory synthetic(int days, long seed) {
+        Builder builder = new Builder();
+        SplittableRandom random = new SplittableRandom(seed);
+        double price = 20_000;
+        double drift = 0;
+        LocalDate date = LocalDate.of(2024, 1, 1);
+        long minute = TimeUnit.MINUTES.toNanos(1);
+        for (int day = 0; day < days; date = date.plusDays(1)) {
+            DayOfWeek weekday = date.getDayOfWeek();
+            if (weekday == DayOfWeek.FRIDAY || weekday == DayOfWeek.SATURDAY) {
+                continue;
+            }
+            long sessionStart = TimeUnit.SECONDS.toNanos(date.atTime(SESSION_OPEN).atZone(SessionAnchor.NEW_YORK).toEpochSecond());
+            for (int bar = 0; bar < 23 * 60; bar++) {
+                if (random.nextInt(240) == 0) {
+                    drift = (random.nextDouble() - 0.5) * 0.08;
+                }
+                // Busier, more volatile bars around the 09:30 New York open (bar 930 of the session)
+                double activity = bar >= 900 && bar < 1320 ? 2.0 : 1.0;
+                double o = price;
+                double h = o;
+                double l = o;
+                long v = 0;
+                int steps = 4 + random.nextInt(8);
+                for (int step = 0; step < steps; step++) {
+                    price += Math.round(drift + (random.nextDouble() - 0.5) * 3 * activity);
+                    h = Math.max(h, price);
+                    l = Math.min(l, price);
+                    v += 1 + random.nextInt((int) (40 * activity));
+                }
+                builder.add(sessionStart + bar * minute, o, h, l, price, v);
+            }
+            day++;
+        }
+        return new BarHistory(builder, 0.25);
+    }
+
+    public int size() {
+        return close.length;
+    }
+
+    public double getPips() {
+        return pips;
+    }
+
+    double[] open() {
+        return open;
+    }
+
+    double[] high() {
+        return high;
+    }
+
+    double[] low() {
+        return low;
+    }
+
+    double[] close() {
+        return close;
+    }
+
+    long[] volume() {
+        return volume;
+    }
+
+    long[] time() {
+        return time;
+    }
+
+    public long getStartTime() {
+        return time.length == 0 ? 0 : time[0];
+    }
+
+    public long getEndTime() {
+        return time.length == 0 ? 0 : time[time.length - 1];
+    }
+
+    private static final class Builder {
+        private double[] open = new double[1024];
+        private double[] high = new double[1024];
+        private double[] low = new double[1024];
+        private double[] close = new double[1024];
+        private long[] volume = new long[1024];
+        private long[] time = new long[1024];
+        private int size = 0;
+
+        void add(BarSeries series) {
+            add(series.getStartTime(0), series.getOpen(0), series.getHigh(0), series.getLow(0),
+                    series.getClose(0), series.getVolume(0));
+        }
+
+        void add(long timestamp, double o, double h, double l, double c, long v) {
+            if (size == close.length) {
+                int capacity = size * 2;
+                open = Arrays.copyOf(open, capacity);
+                high = Arrays.copyOf(high, capacity);
+                low = Arrays.copyOf(low, capacity);
+                close = Arrays.copyOf(close, capacity);
+                volume = Arrays.copyOf(volume, capacity);
+                time = Arrays.copyOf(time, capacity);
+            }
+            open[size] = o;
+            high[size] = h;
+            low[size] = l;
+            close[size] = c;
+            volume[size] = v;
+            time[size] = timestamp;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package core.optimize;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import core.indicators.ATR;
+import core.indicators.SMA;
+import core.indicators.SessionAnchor;
+import core.indicators.VWAP;
+
+/**
+ * Indicator series over a {@link BarHistory}, computed once per distinct parameter and shared by every
+ * combination that uses it. Values are what the bar strategies see at each bar close: the
+ * {@code core.indicators} classes are run over the bars, so a sweep and a live module agree.
+ */
+final class IndicatorCache {
+
+    private final BarHistory history;
+    private final ConcurrentHashMap<Integer, double[]> smas = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, double[]> atrs = new ConcurrentHashMap<>();
+    private volatile double[] vwap;
+
+    IndicatorCache(BarHistory history) {
+        this.history = history;
+    }
+
+    /**
+     * @return the SMA of the closes at each bar, NaN until it is ready
+     */
+    double[] sma(int period) {
+        return smas.computeIfAbsent(period, key -> {
+            double[] close = history.close();
+            double[] values = new double[close.length];
+            SMA sma = new SMA(period);
+            for (int i = 0; i < close.length; i++) {
+                sma.update(close[i]);
+                values[i] = sma.value();
+            }
+            return values;
+        });
+    }
+
+    /**
+     * @return Wilder's ATR at each bar, 0 until it is ready as in OnBarVwapATR
+     */
+    double[] atr(int period) {
+        return atrs.computeIfAbsent(period, key -> {
+            double[] close = history.close();
+            double[] high = history.high();
+            double[] low = history.low();
+            double[] values = new double[close.length];
+            ATR atr = new ATR(period);
+            for (int i = 0; i < close.length; i++) {
+                atr.update(high[i], low[i], close[i]);
+                values[i] = atr.isReady() ? atr.value() : 0;
+            }
+            return values;
+        });
+    }
+
+    /**
+     * @return the RTH-anchored session VWAP at each bar close, with each bar's volume at its typical price
+     */
+    double[] vwap() {
+        double[] values = vwap;
+        if (values == null) {
+            synchronized (this) {
+                values = vwap;
+                if (values == null) {
+                    values = computeVwap();
+                    vwap = values;
+                }
+            }
+        }
+        return values;
+    }
+
+    private double[] computeVwap() {
+        double[] close = history.close();
+        double[] high = history.high();
+        double[] low = history.low();
+        long[] volume = history.volume();
+        long[] time = history.time();
+        double[] values = new double[close.length];
+        VWAP sessionVwap = new VWAP(SessionAnchor.rthOpen());
+        for (int i = 0; i < close.length; i++) {
+            sessionVwap.onTimestamp(time[i]);
+            sessionVwap.onTrade((high[i] + low[i] + close[i]) / 3, (int) Math.min(Integer.MAX_VALUE, volume[i]));
+            values[i] = sessionVwap.value();
+        }
+        return values;
+    }
+
+    /**
+     * @return indicator series computed so far
+     */
+    int size() {
+        return smas.size() + atrs.size() + (vwap == null ? 0 : 1);
+    }
+}
@@ -0,0 +1,395 @@
+package core.optimize;
+
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import core.indicators.CrossoverSignal;
+
+/**
+ * Evaluates a grid of strategy parameters over one {@link BarHistory} on a {@link ForkJoinPool} and
+ * ranks the combinations by net PnL. Indicator series are computed once per distinct period, in
+ * parallel, before the sweep. Each fork-join task then makes one pass over the shared primitive arrays
+ * for a (period, multiplier) group, evaluating the crossover once per bar for all of the group's
+ * stop loss and take profit combinations.
+ * <p>
+ * The simulation follows the bar-close mode of the modules: crossovers are
+ * {@link CrossoverSignal.Confirmation#CLOSE_THROUGH} at the bar close, entries and reversals fill at
+ * that close, one contract. {@link Strategy#SMA_CROSS} is OnBarSMA and SMAStrategy; with a stop loss or
+ * take profit it is SMAStrategy's bracket, offsets in ticks. {@link Strategy#VWAP_ATR} is OnBarVwapATR:
+ * the close must clear the session VWAP by {@code multiplier * ATR * pips}, right after a close on the
+ * other side of it ({@link CrossoverSignal.Arming#PREVIOUS_PRICE}). A bracket that is hit goes
+ * flat until the next signal; when a bar reaches both the stop and the target, the stop is assumed to
+ * fill first. PnL and drawdown are in ticks, net of {@code commission} ticks per side.
+ */
+public final class ParameterSweep {
+
+    public enum Strategy {
+        SMA_CROSS,
+        VWAP_ATR
+    }
+
+    private final BarHistory history;
+    private final Strategy strategy;
+    private final IndicatorCache cache;
+    private int[] periods = {14};
+    private double[] multipliers = {2.0};
+    private int[] stopLosses = {0};
+    private int[] takeProfits = {0};
+    private double commission = 0;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private double[] pnl;
+    private double[] maxDrawdown;
+    private int[] trades;
+    private int[] wins;
+
+    public ParameterSweep(BarHistory history, Strategy strategy) {
+        this.history = history;
+        this.strategy = strategy;
+        this.cache = new IndicatorCache(history);
+    }
+
+    /**
+     * @param periods SMA periods for {@link Strategy#SMA_CROSS}, ATR periods for {@link Strategy#VWAP_ATR}
+     */
+    public ParameterSweep withPeriods(int... periods) {
+        this.periods = periods.clone();
+        return this;
+    }
+
+    /**
+     * @param multipliers ATR multipliers; only used by {@link Strategy#VWAP_ATR}
+     */
+    public ParameterSweep withMultipliers(double... multipliers) {
+        this.multipliers = strategy == Strategy.VWAP_ATR ? multipliers.clone() : new double[]{0};
+        return this;
+    }
+
+    /**
+     * @param stopLosses stop loss offsets in ticks, 0 for none
+     */
+    public ParameterSweep withStopLosses(int... stopLosses) {
+        this.stopLosses = stopLosses.clone();
+        return this;
+    }
+
+    /**
+     * @param takeProfits take profit offsets in ticks, 0 for none
+     */
+    public ParameterSweep withTakeProfits(int... takeProfits) {
+        this.takeProfits = takeProfits.clone();
+        return this;
+    }
+
+    public ParameterSweep withCommission(double ticksPerSide) {
+        this.commission = ticksPerSide;
+        return this;
+    }
+
+    public ParameterSweep withParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    public int getCombinationCount() {
+        return periods.length * multipliers.length * stopLosses.length * takeProfits.length;
+    }
+
+    /**
+     * Runs every combination; results are read with the getters, indexed like {@link #getPeriod(int)}.
+     */
+    public void run() throws InterruptedException {
+        int combinations = getCombinationCount();
+        pnl = new double[combinations];
+        maxDrawdown = new double[combinations];
+        trades = new int[combinations];
+        wins = new int[combinations];
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            List<Callable<double[]>> indicators = new ArrayList<>();
+            for (int period : IntStream.of(periods).distinct().toArray()) {
+                indicators.add(() -> strategy == Strategy.SMA_CROSS ? cache.sma(period) : cache.atr(period));
+            }
+            if (strategy == Strategy.VWAP_ATR) {
+                indicators.add(cache::vwap);
+            }
+            pool.invokeAll(indicators);
+            pool.invoke(new Sweep(0, periods.length * multipliers.length));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Splits the (period, multiplier) groups; each group is one pass over the bars for all its brackets.
+     */
+    private final class Sweep extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+
+        Sweep(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                for (int group = from; group < to; group++) {
+                    simulate(group);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Sweep(from, middle), new Sweep(middle, to));
+        }
+    }
+
+    /**
+     * Runs every stop loss and take profit of one (period, multiplier) group side by side: the bar, the
+     * indicator values and the crossover are read and evaluated once per bar for all of them.
+     */
+    private void simulate(int group) {
+        double[] open = history.open();
+        double[] high = history.high();
+        double[] low = history.low();
+        double[] close = history.close();
+        int period = periods[group % periods.length];
+        double[] level = strategy == Strategy.SMA_CROSS ? cache.sma(period) : cache.vwap();
+        double[] atr = strategy == Strategy.VWAP_ATR ? cache.atr(period) : null;
+        double band = multipliers[group / periods.length] * history.getPips();
+        CrossoverSignal crossover = new CrossoverSignal(CrossoverSignal.Mode.BAR_CLOSE, CrossoverSignal.Confirmation.CLOSE_THROUGH)
+                .withArming(strategy == Strategy.VWAP_ATR ? CrossoverSignal.Arming.PREVIOUS_PRICE : CrossoverSignal.Arming.UNTIL_FIRED);
+
+        int brackets = stopLosses.length * takeProfits.length;
+        int[] stopLoss = new int[brackets];
+        int[] takeProfit = new int[brackets];
+        for (int bracket = 0; bracket < brackets; bracket++) {
+            stopLoss[bracket] = stopLosses[bracket % stopLosses.length];
+            takeProfit[bracket] = takeProfits[bracket / stopLosses.length];
+        }
+        int[] position = new int[brackets];
+        double[] entry = new double[brackets];
+        double[] realized = new double[brackets];
+        double[] peak = new double[brackets];
+        double[] drawdown = new double[brackets];
+        int[] closed = new int[brackets];
+        int[] won = new int[brackets];
+
+        for (int i = 0; i < close.length; i++) {
+            int signal = crossover.evaluate(close[i], level[i], atr == null ? 0 : band * atr[i]);
+            for (int b = 0; b < brackets; b++) {
+                int side = position[b];
+                if (side != 0) {
+                    double exit = Double.NaN;
+                    if (stopLoss[b] > 0) {
+                        double stop = entry[b] - side * stopLoss[b];
+                        if (side > 0 ? low[i] <= stop : high[i] >= stop) {
+                            // A gap through the stop fills at the open
+                            exit = side > 0 ? Math.min(stop, open[i]) : Math.max(stop, open[i]);
+                        }
+                    }
+                    if (Double.isNaN(exit) && takeProfit[b] > 0) {
+                        double target = entry[b] + side * takeProfit[b];
+                        if (side > 0 ? high[i] >= target : low[i] <= target) {
+                            exit = side > 0 ? Math.max(target, open[i]) : Math.min(target, open[i]);
+                        }
+                    }
+                    if (!Double.isNaN(exit)) {
+                        double profit = side * (exit - entry[b]) - 2 * commission;
+                        realized[b] += profit;
+                        closed[b]++;
+                        won[b] += profit > 0 ? 1 : 0;
+                        side = 0;
+                    }
+                }
+                if ((signal == CrossoverSignal.UP && side <= 0) || (signal == CrossoverSignal.DOWN && side >= 0)) {
+                    if (side != 0) {
+                        double profit = side * (close[i] - entry[b]) - 2 * commission;
+                        realized[b] += profit;
+                        closed[b]++;
+                        won[b] += profit > 0 ? 1 : 0;
+                    }
+                    side = signal;
+                    entry[b] = close[i];
+                }
+                position[b] = side;
+
+                double equity = realized[b] + side * (close[i] - entry[b]);
+                if (equity > peak[b]) {
+                    peak[b] = equity;
+                } else if (peak[b] - equity > drawdown[b]) {
+                    drawdown[b] = peak[b] - equity;
+                }
+            }
+        }
+
+        int groups = periods.length * multipliers.length;
+        for (int b = 0; b < brackets; b++) {
+            if (position[b] != 0) {
+                double profit = position[b] * (close[close.length - 1] - entry[b]) - 2 * commission;
+                realized[b] += profit;
+                closed[b]++;
+                won[b] += profit > 0 ? 1 : 0;
+            }
+            int combination = group + b * groups;
+            pnl[combination] = realized[b];
+            maxDrawdown[combination] = drawdown[b];
+            trades[combination] = closed[b];
+            wins[combination] = won[b];
+        }
+    }
+
+    public int getPeriod(int combination) {
+        return periods[combination % periods.length];
+    }
+
+    public double getMultiplier(int combination) {
+        return multipliers[combination / periods.length % multipliers.length];
+    }
+
+    public int getStopLoss(int combination) {
+        return stopLosses[combination / (periods.length * multipliers.length) % stopLosses.length];
+    }
+
+    public int getTakeProfit(int combination) {
+        return takeProfits[combination / (periods.length * multipliers.length * stopLosses.length)];
+    }
+
+    public double getPnl(int combination) {
+        return pnl[combination];
+    }
+
+    public double getMaxDrawdown(int combination) {
+        return maxDrawdown[combination];
+    }
+
+    public int getTradeCount(int combination) {
+        return trades[combination];
+    }
+
+    public int getWinCount(int combination) {
+        return wins[combination];
+    }
+
+    /**
+     * @return combination indexes by net PnL, best first
+     */
+    public int[] rank() {
+        return IntStream.range(0, pnl.length).boxed()
+                .sorted((a, b) -> Double.compare(pnl[b], pnl[a]))
+                .mapToInt(Integer::intValue).toArray();
+    }
+
+    public void printTable(PrintStream out, int rows) {
+        double pips = history.getPips();
+        out.printf("%5s %8s %10s %6s %6s %12s %10s %12s %10s %7s %6s%n", "Rank", "Period",
+                strategy == Strategy.VWAP_ATR ? "Multiplier" : "", "SL", "TP", "PnL ticks", "PnL pts",
+                "Max DD ticks", "PnL/DD", "Trades", "Win %");
+        int[] ranked = rank();
+        for (int rank = 0; rank < Math.min(rows, ranked.length); rank++) {
+            int i = ranked[rank];
+            out.printf("%5d %8d %10s %6d %6d %12.1f %10.2f %12.1f %10.2f %7d %6.1f%n", rank + 1, getPeriod(i),
+                    strategy == Strategy.VWAP_ATR ? String.format("%.2f", getMultiplier(i)) : "",
+                    getStopLoss(i), getTakeProfit(i), pnl[i], pnl[i] * pips, maxDrawdown[i],
+                    maxDrawdown[i] > 0 ? pnl[i] / maxDrawdown[i] : 0, trades[i],
+                    trades[i] > 0 ? 100.0 * wins[i] / trades[i] : 0);
+        }
+    }
+
+    /**
+     * Parses {@code from:to[:step]} ranges and comma separated values, e.g. {@code 0,10:40:10}.
+     */
+    static double[] parseValues(String spec) {
+        List<Double> values = new ArrayList<>();
+        for (String part : spec.split(",")) {
+            String[] range = part.split(":");
+            double from = Double.parseDouble(range[0]);
+            double to = range.length > 1 ? Double.parseDouble(range[1]) : from;
+            double step = range.length > 2 ? Double.parseDouble(range[2]) : 1;
+            for (int i = 0; from + i * step <= to + 1e-9; i++) {
+                values.add(from + i * step);
+            }
+        }
+        return values.stream().mapToDouble(Double::doubleValue).toArray();
+    }
+
+    private static int[] parseInts(String spec) {
+        return Arrays.stream(parseValues(spec)).mapToInt(value -> (int) Math.round(value)).toArray();
+    }
+
+    /**
+     * {@code sma|vwap-atr <history> [period=..] [multiplier=..] [sl=..] [tp=..] [commission=..] [threads=..] [top=..] [pips=..]}.
+     * The history is {@code synthetic[:days[:seed]]}, a {@code time,open,high,low,close,volume} CSV file
+     * or a capture session directory, aggregated into 1 minute bars.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: ParameterSweep sma|vwap-atr synthetic[:days[:seed]]|<bars.csv>|<session directory> "
+                    + "[period=5:200] [multiplier=0.5:4:0.5] [sl=0,5:40:5] [tp=0,10:80:10] [commission=0] [threads=N] [top=20] [pips=0.25]");
+            return;
+        }
+        Strategy strategy = args[0].equalsIgnoreCase("vwap-atr") ? Strategy.VWAP_ATR : Strategy.SMA_CROSS;
+        String periods = strategy == Strategy.SMA_CROSS ? "5:200" : "5:60";
+        String multipliers = "0.5:4:0.5";
+        String stopLosses = "0,5:40:5";
+        String takeProfits = "0,10:80:10";
+        double commission = 0;
+        double pips = 0.25;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int top = 20;
+        for (int i = 2; i < args.length; i++) {
+            String[] option = args[i].split("=", 2);
+            switch (option[0]) {
+                case "period": periods = option[1]; break;
+                case "multiplier": multipliers = option[1]; break;
+                case "sl": stopLosses = option[1]; break;
+                case "tp": takeProfits = option[1]; break;
+                case "commission": commission = Double.parseDouble(option[1]); break;
+                case "threads": threads = Integer.parseInt(option[1]); break;
+                case "top": top = Integer.parseInt(option[1]); break;
+                case "pips": pips = Double.parseDouble(option[1]); break;
+                default: throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        long loadStart = System.nanoTime();
+        BarHistory history;
+        if (args[1].startsWith("synthetic")) {
+            String[] parts = args[1].split(":");
+            history = BarHistory.synthetic(parts.length > 1 ? Integer.parseInt(parts[1]) : 252,
+                    parts.length > 2 ? Long.parseLong(parts[2]) : 1);
+        } else {
+            Path path = Paths.get(args[1]);
+            history = Files.isDirectory(path)
+                    ? BarHistory.fromCapture(path, TimeUnit.MINUTES.toNanos(1), pips)
+                    : BarHistory.fromCsv(path, pips);
+        }
+        double loadSeconds = (System.nanoTime() - loadStart) / 1e9;
+
+        ParameterSweep sweep = new ParameterSweep(history, strategy)
+                .withPeriods(parseInts(periods)).withMultipliers(parseValues(multipliers))
+                .withStopLosses(parseInts(stopLosses)).withTakeProfits(parseInts(takeProfits))
+                .withCommission(commission).withParallelism(threads);
+        long start = System.nanoTime();
+        sweep.run();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d bars loaded in %.2f s; %,d combinations, %d indicator series, %d threads: %.2f s, %,.0f bar evaluations/s%n%n",
+                history.size(), loadSeconds, sweep.getCombinationCount(), sweep.cache.size(), threads, seconds,
+                (double) sweep.getCombinationCount() * history.size() / seconds);
+        sweep.printTable(System.out, top);
+    }
+}
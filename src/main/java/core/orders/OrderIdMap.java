@@ -0,0 +1,117 @@
+package core.orders;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from order id to an int slot. Probing is linear on the id's cached
+ * {@link String#hashCode()}, kept in an int array so a probe only touches the key when the hashes match,
+ * and removal shifts the following entries back instead of leaving tombstones. Lookups do not allocate.
+ */
+final class OrderIdMap {
+
+    static final int NO_SLOT = -1;
+
+    private int[] hashes;
+    private String[] keys;
+    private int[] values;
+    private int mask;
+    private int size = 0;
+
+    OrderIdMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(8, expectedSize * 2) - 1) << 1;
+        hashes = new int[capacity];
+        keys = new String[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    int get(String key) {
+        int hash = mix(key.hashCode());
+        for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return NO_SLOT;
+    }
+
+    void put(String key, int value) {
+        int hash = mix(key.hashCode());
+        int i = hash & mask;
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && keys[i].equals(key)) {
+                values[i] = value;
+                return;
+            }
+        }
+        hashes[i] = hash;
+        keys[i] = key;
+        values[i] = value;
+        // At most half full keeps probe sequences short
+        if (++size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    int remove(String key) {
+        int hash = mix(key.hashCode());
+        int i = hash & mask;
+        for (; keys[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && keys[i].equals(key)) {
+                break;
+            }
+        }
+        if (keys[i] == null) {
+            return NO_SLOT;
+        }
+        int removed = values[i];
+        // Moves back every following entry whose probe sequence passes over the freed slot
+        for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+            int home = hashes[j] & mask;
+            if (((j - home) & mask) >= ((j - i) & mask)) {
+                hashes[i] = hashes[j];
+                keys[i] = keys[j];
+                values[i] = values[j];
+                i = j;
+            }
+        }
+        keys[i] = null;
+        size--;
+        return removed;
+    }
+
+    private void grow() {
+        int[] oldHashes = hashes;
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        hashes = new int[oldKeys.length * 2];
+        keys = new String[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != null) {
+                int i = oldHashes[j] & mask;
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                hashes[i] = oldHashes[j];
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(keys, null);
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+}
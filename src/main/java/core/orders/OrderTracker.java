@@ -0,0 +1,483 @@
+package core.orders;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import velox.api.layer1.common.Log;
+import velox.api.layer1.data.ExecutionInfo;
+import velox.api.layer1.data.OrderInfoUpdate;
+import velox.api.layer1.data.OrderStatus;
+import velox.api.layer1.data.OrderType;
+import velox.api.layer1.data.SimpleOrderSendParameters;
+
+/**
+ * Orders, position and PnL of one instrument, built from the module's own order callbacks, so a strategy
+ * asks what it holds instead of assuming that its orders fill. Feed it from {@code onOrderUpdated},
+ * {@code onOrderExecuted} and {@code onBbo}, and report every order before sending it:
+ * <pre>
+ * orders.onOrderSent(order);
+ * api.sendOrder(order);
+ * ...
+ * if (signal == CrossoverSignal.UP &amp;&amp; orders.getPendingPosition() &lt; 1) { ... }
+ * </pre>
+ * Orders are found by id in an {@link OrderIdMap} and their state is kept in parallel arrays, so updates,
+ * executions and queries are O(1) and allocate nothing once an order is known.
+ * <p>
+ * Bookmap does not say which orders a stop loss or take profit offset created, so brackets are matched as
+ * orders appear. A new order with the side, type, prices and size of an order sent is that order. Otherwise
+ * a new stop order is the stop loss of the oldest opposite-side parent that has filled and still waits for
+ * one, and a new limit order is its take profit; a parent without fills is chosen only when no filled one
+ * waits. Anything left is matched to an order sent on its side.
+ * <p>
+ * The position comes from executions only. The average price is that of the open position, and realized
+ * PnL is booked as executions reduce it. Unrealized PnL marks a long at the best bid and a short at the best
+ * ask on every {@link #onBbo}, and uses the last execution price before the first one. Prices and PnL are in
+ * price units per contract; multiply by {@code InstrumentInfo.multiplier} for the account currency. Not
+ * thread safe; call it from the module's callbacks.
+ */
+public final class OrderTracker {
+
+    private static final int NONE = OrderIdMap.NO_SLOT;
+    private static final int AWAITS_STOP_LOSS = 1;
+    private static final int AWAITS_TAKE_PROFIT = 2;
+    // Orders sent that never show up, e.g. refused before an id was assigned, are forgotten past this
+    private static final int MAX_SENT = 64;
+
+    private final double pips;
+    private final OrderIdMap slots = new OrderIdMap(64);
+    private final ArrayDeque<SimpleOrderSendParameters> sent = new ArrayDeque<>();
+
+    private String[] ids = new String[0];
+    private boolean[] isBuy = new boolean[0];
+    private OrderType[] types = new OrderType[0];
+    private OrderStatus[] statuses = new OrderStatus[0];
+    private int[] filled = new int[0];
+    private int[] unfilled = new int[0];
+    private int[] executed = new int[0];
+    private double[] averageFillPrices = new double[0];
+    private int[] parents = new int[0];
+    private int[] stopLosses = new int[0];
+    private int[] takeProfits = new int[0];
+    private int[] awaiting = new int[0];
+    // Signed unfilled quantity each order adds to the pending position
+    private int[] pending = new int[0];
+    private int[] freeSlots = new int[0];
+    private int freeCount = 0;
+    private int slotCount = 0;
+    private int[] awaitingParents = new int[8];
+    private int awaitingCount = 0;
+
+    private int position = 0;
+    private double averagePrice = Double.NaN;
+    private double realizedPnl = 0;
+    private double unrealizedPnl = 0;
+    private double bestBid = Double.NaN;
+    private double bestAsk = Double.NaN;
+    private double lastExecutionPrice = Double.NaN;
+    private int workingOrders = 0;
+    private int pendingQuantity = 0;
+    private long executions = 0;
+    private long volume = 0;
+    private long unknownExecutions = 0;
+
+    /**
+     * @param pips price of one tick, to convert the best prices of {@link #onBbo}
+     */
+    public OrderTracker(double pips) {
+        this.pips = pips;
+        grow(64);
+    }
+
+    private void grow(int capacity) {
+        int previous = ids.length;
+        ids = Arrays.copyOf(ids, capacity);
+        isBuy = Arrays.copyOf(isBuy, capacity);
+        types = Arrays.copyOf(types, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+        filled = Arrays.copyOf(filled, capacity);
+        unfilled = Arrays.copyOf(unfilled, capacity);
+        executed = Arrays.copyOf(executed, capacity);
+        averageFillPrices = Arrays.copyOf(averageFillPrices, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        stopLosses = Arrays.copyOf(stopLosses, capacity);
+        takeProfits = Arrays.copyOf(takeProfits, capacity);
+        awaiting = Arrays.copyOf(awaiting, capacity);
+        pending = Arrays.copyOf(pending, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+        for (int slot = capacity - 1; slot >= previous; slot--) {
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    /**
+     * Call before {@code api.sendOrder}, so the order and its bracket are recognised even if the platform
+     * reports them from inside that call.
+     */
+    public void onOrderSent(SimpleOrderSendParameters order) {
+        if (sent.size() == MAX_SENT) {
+            sent.pollFirst();
+        }
+        sent.addLast(order);
+    }
+
+    public void onOrderUpdated(OrderInfoUpdate update) {
+        int slot = slots.get(update.orderId);
+        if (slot == NONE) {
+            slot = add(update);
+            // An order as sent, then a bracket order, then any order sent on that side
+            if (!matchSent(slot, update) && !linkToParent(slot)) {
+                matchSent(slot, null);
+            }
+        }
+        boolean wasActive = isActive(statuses[slot]);
+        statuses[slot] = update.status;
+        filled[slot] = update.filled;
+        unfilled[slot] = update.unfilled;
+        averageFillPrices[slot] = update.averageFillPrice;
+        boolean active = isActive(update.status);
+        if (active != wasActive) {
+            workingOrders += active ? 1 : -1;
+        }
+        if (!active && awaiting[slot] != 0 && Math.max(filled[slot], executed[slot]) == 0) {
+            // Nothing filled, so no bracket follows
+            stopAwaiting(slot);
+        }
+        updatePending(slot);
+    }
+
+    private static boolean isActive(OrderStatus status) {
+        return status != null && status.isActive();
+    }
+
+    private int add(OrderInfoUpdate update) {
+        if (freeCount == 0) {
+            grow(ids.length * 2);
+        }
+        int slot = freeSlots[--freeCount];
+        slotCount = Math.max(slotCount, slot + 1);
+        ids[slot] = update.orderId;
+        isBuy[slot] = update.isBuy;
+        types[slot] = update.type;
+        statuses[slot] = null;
+        filled[slot] = 0;
+        unfilled[slot] = 0;
+        executed[slot] = 0;
+        averageFillPrices[slot] = Double.NaN;
+        parents[slot] = NONE;
+        stopLosses[slot] = NONE;
+        takeProfits[slot] = NONE;
+        awaiting[slot] = 0;
+        pending[slot] = 0;
+        slots.put(update.orderId, slot);
+        return slot;
+    }
+
+    private boolean linkToParent(int slot) {
+        OrderType type = types[slot];
+        boolean isStop = type == OrderType.STP || type == OrderType.STP_LMT;
+        int child = isStop ? AWAITS_STOP_LOSS : type == OrderType.LMT ? AWAITS_TAKE_PROFIT : 0;
+        if (child == 0) {
+            return false;
+        }
+        // Brackets normally appear once their parent fills; a parent without fills is the fallback
+        int candidate = -1;
+        for (int i = 0; i < awaitingCount; i++) {
+            int parent = awaitingParents[i];
+            if (isBuy[parent] != isBuy[slot] && (awaiting[parent] & child) != 0) {
+                if (Math.max(filled[parent], executed[parent]) > 0) {
+                    candidate = i;
+                    break;
+                }
+                if (candidate == -1) {
+                    candidate = i;
+                }
+            }
+        }
+        if (candidate == -1) {
+            return false;
+        }
+        int parent = awaitingParents[candidate];
+        parents[slot] = parent;
+        if (isStop) {
+            stopLosses[parent] = slot;
+        } else {
+            takeProfits[parent] = slot;
+        }
+        awaiting[parent] &= ~child;
+        if (awaiting[parent] == 0) {
+            System.arraycopy(awaitingParents, candidate + 1, awaitingParents, candidate, --awaitingCount - candidate);
+        }
+        return true;
+    }
+
+    /**
+     * @param update when not null, only an order sent with the same type, prices and size matches
+     */
+    private boolean matchSent(int slot, OrderInfoUpdate update) {
+        Iterator<SimpleOrderSendParameters> iterator = sent.iterator();
+        while (iterator.hasNext()) {
+            SimpleOrderSendParameters order = iterator.next();
+            if (order.isBuy == isBuy[slot] && (update == null || isSameOrder(order, update))) {
+                iterator.remove();
+                int bracket = (order.stopLossOffset > 0 ? AWAITS_STOP_LOSS : 0)
+                        | (order.takeProfitOffset > 0 ? AWAITS_TAKE_PROFIT : 0);
+                if (bracket != 0) {
+                    awaiting[slot] = bracket;
+                    if (awaitingCount == awaitingParents.length) {
+                        awaitingParents = Arrays.copyOf(awaitingParents, awaitingCount * 2);
+                    }
+                    awaitingParents[awaitingCount++] = slot;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isSameOrder(SimpleOrderSendParameters order, OrderInfoUpdate update) {
+        boolean isLimit = !Double.isNaN(order.limitPrice);
+        boolean isStop = !Double.isNaN(order.stopPrice);
+        OrderType type = isStop ? (isLimit ? OrderType.STP_LMT : OrderType.STP) : (isLimit ? OrderType.LMT : OrderType.MKT);
+        return update.type == type && update.filled + update.unfilled == order.size
+                && (!isLimit || Math.abs(update.limitPrice - order.limitPrice) < pips / 2)
+                && (!isStop || Math.abs(update.stopPrice - order.stopPrice) < pips / 2);
+    }
+
+    private void stopAwaiting(int slot) {
+        awaiting[slot] = 0;
+        for (int i = 0; i < awaitingCount; i++) {
+            if (awaitingParents[i] == slot) {
+                System.arraycopy(awaitingParents, i + 1, awaitingParents, i, --awaitingCount - i);
+                return;
+            }
+        }
+    }
+
+    private void updatePending(int slot) {
+        int quantity = 0;
+        // Bracket orders close the position their parent opened, so only entries are pending
+        if (parents[slot] == NONE && isActive(statuses[slot])) {
+            int done = Math.max(filled[slot], executed[slot]);
+            int remaining = Math.max(0, filled[slot] + unfilled[slot] - done);
+            quantity = isBuy[slot] ? remaining : -remaining;
+        }
+        pendingQuantity += quantity - pending[slot];
+        pending[slot] = quantity;
+    }
+
+    public void onOrderExecuted(ExecutionInfo execution) {
+        int slot = slots.get(execution.orderId);
+        if (slot == NONE) {
+            if (unknownExecutions++ == 0) {
+                Log.info("OrderTracker: execution for unknown order " + execution.orderId);
+            }
+            return;
+        }
+        executed[slot] += execution.size;
+        executions++;
+        volume += execution.size;
+        applyFill(isBuy[slot] ? execution.size : -execution.size, execution.price);
+        updatePending(slot);
+    }
+
+    private void applyFill(int quantity, double price) {
+        lastExecutionPrice = price;
+        if (position == 0 || (position > 0) == (quantity > 0)) {
+            double held = Math.abs(position);
+            averagePrice = position == 0 ? price : (averagePrice * held + price * Math.abs(quantity)) / (held + Math.abs(quantity));
+            position += quantity;
+        } else {
+            int closed = Math.min(Math.abs(position), Math.abs(quantity));
+            realizedPnl += closed * (price - averagePrice) * (position > 0 ? 1 : -1);
+            int previous = position;
+            position += quantity;
+            if (position == 0) {
+                averagePrice = Double.NaN;
+            } else if ((position > 0) != (previous > 0)) {
+                averagePrice = price;
+            }
+        }
+        mark();
+    }
+
+    /**
+     * Marks the position to the new best prices, in ticks as Bookmap delivers them.
+     */
+    public void onBbo(int priceBid, int sizeBid, int priceAsk, int sizeAsk) {
+        bestBid = sizeBid > 0 ? priceBid * pips : Double.NaN;
+        bestAsk = sizeAsk > 0 ? priceAsk * pips : Double.NaN;
+        mark();
+    }
+
+    private void mark() {
+        if (position == 0) {
+            unrealizedPnl = 0;
+            return;
+        }
+        double price = position > 0 ? bestBid : bestAsk;
+        unrealizedPnl = position * ((Double.isNaN(price) ? lastExecutionPrice : price) - averagePrice);
+    }
+
+    /**
+     * Forgets orders that are done, along with their bracket once every order in it is done. Orders that
+     * are still waiting for their bracket are kept.
+     *
+     * @return the number of orders removed
+     */
+    public int removeDone() {
+        int removed = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (ids[slot] != null && !isActive(statuses[slot]) && awaiting[slot] == 0
+                    && isDone(parents[slot]) && isDone(stopLosses[slot]) && isDone(takeProfits[slot])) {
+                remove(slot);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private boolean isDone(int slot) {
+        return slot == NONE || !isActive(statuses[slot]);
+    }
+
+    private void remove(int slot) {
+        int parent = parents[slot];
+        if (parent != NONE) {
+            if (stopLosses[parent] == slot) {
+                stopLosses[parent] = NONE;
+            }
+            if (takeProfits[parent] == slot) {
+                takeProfits[parent] = NONE;
+            }
+        }
+        if (stopLosses[slot] != NONE) {
+            parents[stopLosses[slot]] = NONE;
+        }
+        if (takeProfits[slot] != NONE) {
+            parents[takeProfits[slot]] = NONE;
+        }
+        pendingQuantity -= pending[slot];
+        slots.remove(ids[slot]);
+        ids[slot] = null;
+        statuses[slot] = null;
+        freeSlots[freeCount++] = slot;
+    }
+
+    private int slotOf(String orderId) {
+        return orderId == null ? NONE : slots.get(orderId);
+    }
+
+    private String idOf(int slot) {
+        return slot == NONE ? null : ids[slot];
+    }
+
+    /**
+     * @return the filled position, positive when long
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the position once every working order that is not part of a bracket has filled
+     */
+    public int getPendingPosition() {
+        return position + pendingQuantity;
+    }
+
+    /**
+     * @return average entry price of the open position, NaN when flat
+     */
+    public double getAveragePrice() {
+        return averagePrice;
+    }
+
+    public double getRealizedPnl() {
+        return realizedPnl;
+    }
+
+    public double getUnrealizedPnl() {
+        return unrealizedPnl;
+    }
+
+    public double getTotalPnl() {
+        return realizedPnl + unrealizedPnl;
+    }
+
+    public int getWorkingOrderCount() {
+        return workingOrders;
+    }
+
+    public int getOrderCount() {
+        return slots.size();
+    }
+
+    public long getExecutionCount() {
+        return executions;
+    }
+
+    public long getVolume() {
+        return volume;
+    }
+
+    public long getUnknownExecutionCount() {
+        return unknownExecutions;
+    }
+
+    public boolean isKnown(String orderId) {
+        return slotOf(orderId) != NONE;
+    }
+
+    public boolean isWorking(String orderId) {
+        int slot = slotOf(orderId);
+        return slot != NONE && isActive(statuses[slot]);
+    }
+
+    /**
+     * @return the last status reported, or null for an unknown order
+     */
+    public OrderStatus getStatus(String orderId) {
+        int slot = slotOf(orderId);
+        return slot == NONE ? null : statuses[slot];
+    }
+
+    public int getFilled(String orderId) {
+        int slot = slotOf(orderId);
+        return slot == NONE ? 0 : Math.max(filled[slot], executed[slot]);
+    }
+
+    public int getUnfilled(String orderId) {
+        int slot = slotOf(orderId);
+        return slot == NONE ? 0 : unfilled[slot];
+    }
+
+    public double getAverageFillPrice(String orderId) {
+        int slot = slotOf(orderId);
+        return slot == NONE ? Double.NaN : averageFillPrices[slot];
+    }
+
+    /**
+     * @return the order whose bracket {@code orderId} belongs to, or null
+     */
+    public String getParentOrderId(String orderId) {
+        int slot = slotOf(orderId);
+        return slot == NONE ? null : idOf(parents[slot]);
+    }
+
+    /**
+     * @return the stop loss order of {@code orderId}'s bracket, or null until it appears
+     */
+    public String getStopLossOrderId(String orderId) {
+        int slot = slotOf(orderId);
+        return slot == NONE ? null : idOf(stopLosses[slot]);
+    }
+
+    /**
+     * @return the take profit order of {@code orderId}'s bracket, or null until it appears
+     */
+    public String getTakeProfitOrderId(String orderId) {
+        int slot = slotOf(orderId);
+        return slot == NONE ? null : idOf(takeProfits[slot]);
+    }
+}
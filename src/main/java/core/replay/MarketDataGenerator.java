@@ -0,0 +1,332 @@
+package core.replay;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import core.book.TickBook;
+import core.io.BinaryCaptureReader;
+import core.io.BinaryCaptureWriter;
+
+/**
+ * Seedable synthetic order book feed for load tests. Events go to a {@link BinaryCaptureReader.Listener},
+ * the same sink a capture replays into, so the stream can drive modules through
+ * {@link ReplayEngine#run(MarketDataGenerator, long)} or be recorded with {@link BinaryCaptureWriter}.
+ * <p>
+ * The model, in exchange time:
+ * <ul>
+ * <li>Events arrive as a Poisson process; each is a limit order, a cancel or a market order.</li>
+ * <li>Limit orders and cancels mostly land at an exponentially distributed distance from the touch, the rest
+ * anywhere within {@code depth} levels. Each side
+ * keeps at most {@code depth} levels; levels past that are dropped.</li>
+ * <li>Market orders sweep the opposite side. Their direction leans towards a fair price that follows
+ * a random walk with drift.</li>
+ * <li>Bursts start as a Poisson process. While one lasts, the event rate is multiplied and more events
+ * are market orders, like the seconds after a news release.</li>
+ * </ul>
+ * Prices are in ticks, as Bookmap delivers them; the tick size is only carried for the instrument info.
+ * The same seed and settings always produce the same stream.
+ */
+public class MarketDataGenerator {
+
+    /**
+     * Start of the generated sessions: 2024-01-02 09:00 New York, half an hour before the regular open.
+     * Fixed so that the same seed also produces the same timestamps and session resets.
+     */
+    public static final long DEFAULT_START_TIMESTAMP = TimeUnit.SECONDS.toNanos(1_704_204_000L);
+
+    private final SplittableRandom random;
+    private final TickBook book = new TickBook();
+
+    private int depth = 100;
+    private double tickSize = 0.25;
+    private double eventsPerSecond = 20_000;
+    private double tradeProbability = 0.08;
+    private double cancelProbability = 0.37;
+    private double meanOffsetTicks = 4;
+    private double meanSize = 15;
+    private double driftTicksPerSecond = 0;
+    private double volatilityTicks = 1.5;
+    private double burstsPerHour = 6;
+    private long burstDurationNanos = TimeUnit.SECONDS.toNanos(3);
+    private double burstRateMultiplier = 15;
+
+    private final int startPrice;
+    private long timestamp;
+    private double fairPrice;
+    private long burstEnd = 0;
+    private long nextBurst = 0;
+    private boolean started = false;
+    private long events = 0;
+
+    public MarketDataGenerator(long seed, int startPrice, long startTimestamp) {
+        this.random = new SplittableRandom(seed);
+        this.startPrice = startPrice;
+        this.timestamp = startTimestamp;
+        this.fairPrice = startPrice;
+    }
+
+    public MarketDataGenerator withDepth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    public MarketDataGenerator withTickSize(double tickSize) {
+        this.tickSize = tickSize;
+        return this;
+    }
+
+    public MarketDataGenerator withEventRate(double eventsPerSecond) {
+        this.eventsPerSecond = eventsPerSecond;
+        return this;
+    }
+
+    /**
+     * @param tradeProbability share of events that are market orders
+     * @param cancelProbability share of events that are cancels; the rest are limit orders
+     */
+    public MarketDataGenerator withEventMix(double tradeProbability, double cancelProbability) {
+        this.tradeProbability = tradeProbability;
+        this.cancelProbability = cancelProbability;
+        return this;
+    }
+
+    public MarketDataGenerator withOrderShape(double meanOffsetTicks, double meanSize) {
+        this.meanOffsetTicks = meanOffsetTicks;
+        this.meanSize = meanSize;
+        return this;
+    }
+
+    /**
+     * @param volatilityTicks standard deviation of the fair price over one second
+     */
+    public MarketDataGenerator withPriceProcess(double driftTicksPerSecond, double volatilityTicks) {
+        this.driftTicksPerSecond = driftTicksPerSecond;
+        this.volatilityTicks = volatilityTicks;
+        return this;
+    }
+
+    public MarketDataGenerator withBursts(double burstsPerHour, long burstDurationNanos, double burstRateMultiplier) {
+        this.burstsPerHour = burstsPerHour;
+        this.burstDurationNanos = burstDurationNanos;
+        this.burstRateMultiplier = burstRateMultiplier;
+        return this;
+    }
+
+    /**
+     * Emits events until at least {@code count} more have been delivered.
+     *
+     * @return the number of events delivered
+     */
+    public long generate(BinaryCaptureReader.Listener listener, long count) {
+        long target = events + count;
+        long first = events;
+        while (events < target) {
+            next(listener);
+        }
+        return events - first;
+    }
+
+    /**
+     * Advances the clock to the next order event and emits it: a timestamp, then one or more depth
+     * updates, plus trades for market orders.
+     */
+    public void next(BinaryCaptureReader.Listener listener) {
+        if (!started) {
+            start(listener);
+            return;
+        }
+        boolean inBurst = timestamp < burstEnd;
+        double rate = inBurst ? eventsPerSecond * burstRateMultiplier : eventsPerSecond;
+        double seconds = random.nextExponential() / rate;
+        long nextTimestamp = timestamp + Math.max(1, (long) (seconds * 1e9));
+        if (nextTimestamp >= nextBurst) {
+            burstEnd = nextBurst + burstDurationNanos;
+            scheduleBurst(nextBurst);
+        }
+        timestamp = nextTimestamp;
+        emitTimestamp(listener);
+        fairPrice += driftTicksPerSecond * seconds + volatilityTicks * Math.sqrt(seconds) * random.nextGaussian();
+
+        double tradeShare = inBurst ? Math.min(0.5, tradeProbability * 2) : tradeProbability;
+        double type = random.nextDouble();
+        if (type < tradeShare) {
+            marketOrder(listener);
+        } else if (type < tradeShare + cancelProbability) {
+            cancel(listener);
+        } else {
+            limitOrder(listener);
+        }
+    }
+
+    private void start(BinaryCaptureReader.Listener listener) {
+        started = true;
+        scheduleBurst(timestamp);
+        emitTimestamp(listener);
+        for (int offset = 0; offset < depth; offset++) {
+            setLevel(listener, true, startPrice - offset, drawSize());
+            setLevel(listener, false, startPrice + 1 + offset, drawSize());
+        }
+    }
+
+    private void scheduleBurst(long from) {
+        if (burstsPerHour <= 0) {
+            nextBurst = Long.MAX_VALUE;
+            return;
+        }
+        double seconds = random.nextExponential() * 3600 / burstsPerHour;
+        nextBurst = from + (long) (seconds * 1e9);
+    }
+
+    private void limitOrder(BinaryCaptureReader.Listener listener) {
+        boolean isBid = random.nextBoolean();
+        // Quotes are placed relative to the opposite touch, so a gap in the spread fills in first
+        int price = isBid ? book.getBestAsk() - 1 - drawOffset() : book.getBestBid() + 1 + drawOffset();
+        setLevel(listener, isBid, price, book.getSize(isBid, price) + drawSize());
+        trim(listener, isBid);
+    }
+
+    private void cancel(BinaryCaptureReader.Listener listener) {
+        boolean isBid = random.nextBoolean();
+        int price = isBid ? book.getBestBid() - drawOffset() : book.getBestAsk() + drawOffset();
+        int size = book.getSize(isBid, price);
+        if (size == 0) {
+            return;
+        }
+        int cancelled = Math.min(size, drawSize());
+        // Never cancel the last level of a side, so the touch stays defined
+        if (cancelled == size && book.getLevelCount(isBid) == 1) {
+            cancelled = size - 1;
+        }
+        if (cancelled > 0) {
+            setLevel(listener, isBid, price, size - cancelled);
+        }
+    }
+
+    private void marketOrder(BinaryCaptureReader.Listener listener) {
+        double mid = (book.getBestBid() + book.getBestAsk()) / 2.0;
+        double buyProbability = Math.max(0.05, Math.min(0.95, 0.5 + 0.15 * (fairPrice - mid)));
+        boolean isBuy = random.nextDouble() < buyProbability;
+        boolean isBid = !isBuy; // The resting side that gets hit
+        // One order in ten is a block several times the usual size
+        int remaining = random.nextInt(10) == 0 ? drawSize() * 5 : drawSize();
+        while (remaining > 0) {
+            int price = isBid ? book.getBestBid() : book.getBestAsk();
+            int size = book.getSize(isBid, price);
+            if (size == 0) {
+                break;
+            }
+            int filled = Math.min(size, remaining);
+            listener.onTrade(price, filled, isBuy, false);
+            events++;
+            remaining -= filled;
+            if (filled == size && book.getLevelCount(isBid) == 1) {
+                // Swept the whole side: fresh liquidity appears one tick further out
+                setLevel(listener, isBid, price, 0);
+                int next = isBid ? price - 1 : price + 1;
+                setLevel(listener, isBid, next, drawSize());
+                break;
+            }
+            setLevel(listener, isBid, price, size - filled);
+        }
+    }
+
+    /**
+     * Drops the levels furthest from the touch while a side has more than {@code depth} of them.
+     */
+    private void trim(BinaryCaptureReader.Listener listener, boolean isBid) {
+        while (book.getLevelCount(isBid) > depth) {
+            setLevel(listener, isBid, isBid ? book.getLowestBid() : book.getHighestAsk(), 0);
+        }
+    }
+
+    private void setLevel(BinaryCaptureReader.Listener listener, boolean isBid, int price, int size) {
+        book.onDepth(isBid, price, size);
+        listener.onDepth(isBid, price, size);
+        events++;
+    }
+
+    private void emitTimestamp(BinaryCaptureReader.Listener listener) {
+        listener.onTimestamp(timestamp);
+        events++;
+    }
+
+    private int drawOffset() {
+        // Most orders land near the touch; a fifth are spread over the whole book so deep levels stay populated
+        if (random.nextInt(5) == 0) {
+            return random.nextInt(depth);
+        }
+        return Math.min(depth - 1, (int) (random.nextExponential() * meanOffsetTicks));
+    }
+
+    private int drawSize() {
+        return 1 + (int) (random.nextExponential() * meanSize);
+    }
+
+    public double getTickSize() {
+        return tickSize;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getEventCount() {
+        return events;
+    }
+
+    /**
+     * Records a synthetic session as a binary capture, for replays and benchmarks.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("Usage: MarketDataGenerator <capture root> <alias> <events> [seed] [depth]");
+            return;
+        }
+        long count = Long.parseLong(args[2]);
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 1;
+        int depth = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        MarketDataGenerator generator = new MarketDataGenerator(seed, 20_000, DEFAULT_START_TIMESTAMP)
+                .withDepth(depth);
+        TickBook book = new TickBook();
+        long start = System.nanoTime();
+        try (BinaryCaptureWriter writer = new BinaryCaptureWriter(Paths.get(args[0]), args[1], book)) {
+            generator.generate(new BinaryCaptureReader.BookListener(book) {
+                @Override
+                public void onTimestamp(long nanoseconds) {
+                    try {
+                        writer.onTimestamp(nanoseconds);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void onDepth(boolean isBid, int price, int size) {
+                    super.onDepth(isBid, price, size);
+                    try {
+                        writer.onDepth(isBid, price, size);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+
+                @Override
+                public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) {
+                    try {
+                        writer.onTrade(price, size, isBidAggressor, isOtc);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            }, count);
+            System.out.println("Recorded to " + writer.getSessionDirectory());
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%,d events in %.2f s (%,.0f events/s), %.1f s of exchange time%n",
+                generator.getEventCount(), seconds, generator.getEventCount() / seconds,
+                (generator.getTimestamp() - DEFAULT_START_TIMESTAMP) / 1e9);
+    }
+}
@@ -0,0 +1,559 @@
+package core.replay;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import core.book.TickBook;
+import velox.api.layer1.data.ExecutionInfo;
+import velox.api.layer1.data.OrderDuration;
+import velox.api.layer1.data.OrderInfoBuilder;
+import velox.api.layer1.data.OrderInfoUpdate;
+import velox.api.layer1.data.OrderStatus;
+import velox.api.layer1.data.OrderType;
+import velox.api.layer1.data.SimpleOrderSendParameters;
+import velox.api.layer1.simplified.OrdersListener;
+
+/**
+ * Simulated exchange for replays. It accepts {@link SimpleOrderSendParameters}, matches them against the
+ * replayed {@link TickBook} and trades, and reports {@link OrderInfoUpdate}s and {@link ExecutionInfo}s:
+ * <ul>
+ * <li>Market orders and the marketable part of limit orders sweep the displayed opposite side level by
+ * level. A market order that runs out of displayed liquidity fills the rest at the last level it reached.</li>
+ * <li>IOC cancels whatever does not fill at once and FOK fills in full or not at all; other limit orders rest.</li>
+ * <li>A resting order joins the back of its level. Trades at its price consume the queue ahead of it first;
+ * a size decrease those trades do not explain is a cancel, taken pro rata from ahead of and behind the
+ * order. It fills once the queue ahead is gone, and in full when a trade prints through its price or the
+ * opposite side quotes at it.</li>
+ * <li>Stop orders trigger on a trade at or through the stop price, then match as market orders, or as limit
+ * orders for a stop limit.</li>
+ * <li>Stop loss and take profit offsets place a stop and a limit child, in ticks from the parent's average
+ * fill, once the parent is done. The children are one-cancels-other: a fill of one reduces the other.</li>
+ * <li>{@link #cancel(String)} cancels a working order; cancelling one bracket child leaves the other working.</li>
+ * </ul>
+ * Simulated fills do not take liquidity out of the replayed book, and there is no latency. Order and
+ * execution ids are sequential and nothing depends on wall-clock time, so the same feed and orders always
+ * produce the same callbacks. Call {@link #onDepth} after the book has applied the update. Not thread safe,
+ * and orders must not be sent from inside this engine's callbacks; {@link ReplayApi} queues them.
+ */
+public class MatchingEngine {
+
+    private static final int NO_PRICE = TickBook.NO_PRICE;
+
+    private final String alias;
+    private final double pips;
+    private final TickBook book;
+    // Best price first: buys by descending and sells by ascending limit price
+    private final List<Order> restingBuys = new ArrayList<>();
+    private final List<Order> restingSells = new ArrayList<>();
+    // Nearest trigger first: buy stops by ascending and sell stops by descending stop price
+    private final List<Order> buyStops = new ArrayList<>();
+    private final List<Order> sellStops = new ArrayList<>();
+    // Orders that start working while an event or order is handled join the lists after it
+    private final List<Order> arriving = new ArrayList<>();
+    private boolean hasInactive = false;
+
+    private OrdersListener ordersListener;
+    private long timestamp;
+    private double lastTradePrice = Double.NaN;
+    private int nextOrderId = 1;
+    private long ordersSent = 0;
+    private long ordersFilled = 0;
+    private long ordersCancelled = 0;
+    private long ordersRejected = 0;
+    private long executions = 0;
+
+    private static final class Order {
+        final String id;
+        final boolean isBuy;
+        final OrderDuration duration;
+        final OrderInfoBuilder info;
+        final int stopLossOffset;
+        final int takeProfitOffset;
+        int size;
+        int filled = 0;
+        // Sum of fill price times size, in ticks
+        double fillValue = 0;
+        int limitPrice;
+        int stopPrice;
+        OrderStatus status = OrderStatus.WORKING;
+        boolean triggered = false;
+        Order sibling;
+        double queueAhead;
+        int levelSize;
+        int tradedAtLevel;
+        int executions = 0;
+
+        Order(String id, boolean isBuy, OrderType type, OrderDuration duration, String alias, int size,
+              int limitPrice, int stopPrice, int stopLossOffset, int takeProfitOffset) {
+            this.id = id;
+            this.isBuy = isBuy;
+            this.duration = duration;
+            this.size = size;
+            this.limitPrice = limitPrice;
+            this.stopPrice = stopPrice;
+            this.stopLossOffset = stopLossOffset;
+            this.takeProfitOffset = takeProfitOffset;
+            this.info = new OrderInfoBuilder(alias, id, isBuy, type, id, false);
+        }
+
+        int remaining() {
+            return size - filled;
+        }
+
+        boolean isWorking() {
+            return status == OrderStatus.WORKING;
+        }
+
+        boolean isPendingStop() {
+            return stopPrice != NO_PRICE && !triggered;
+        }
+    }
+
+    public MatchingEngine(String alias, double pips, TickBook book) {
+        this.alias = alias;
+        this.pips = pips;
+        this.book = book;
+    }
+
+    public void setOrdersListener(OrdersListener ordersListener) {
+        this.ordersListener = ordersListener;
+    }
+
+    /**
+     * Accepts an order and matches it against the current book.
+     *
+     * @return the order id, as in the callbacks
+     */
+    public String send(SimpleOrderSendParameters parameters) {
+        ordersSent++;
+        String id = "replay-" + nextOrderId++;
+        boolean isLimit = !Double.isNaN(parameters.limitPrice);
+        boolean isStop = !Double.isNaN(parameters.stopPrice);
+        OrderType type = isStop ? (isLimit ? OrderType.STP_LMT : OrderType.STP) : (isLimit ? OrderType.LMT : OrderType.MKT);
+        Order order = new Order(id, parameters.isBuy, type, parameters.duration, alias, parameters.size,
+                isLimit ? toTicks(parameters.limitPrice) : NO_PRICE, isStop ? toTicks(parameters.stopPrice) : NO_PRICE,
+                parameters.stopLossOffset, parameters.takeProfitOffset);
+        if (isLimit) {
+            order.info.setLimitPrice(order.limitPrice * pips);
+        }
+        if (isStop) {
+            order.info.setStopPrice(order.stopPrice * pips);
+        }
+        order.info.setDuration(parameters.duration);
+        if (parameters.size <= 0) {
+            order.status = OrderStatus.REJECTED;
+            ordersRejected++;
+            report(order);
+            return id;
+        }
+        activate(order);
+        endEvent();
+        return id;
+    }
+
+    /**
+     * Cancels a working order; ids of orders that are done or unknown are ignored.
+     */
+    public void cancel(String orderId) {
+        for (List<Order> orders : List.of(restingBuys, restingSells, buyStops, sellStops, arriving)) {
+            for (Order order : orders) {
+                if (order.isWorking() && order.id.equals(orderId)) {
+                    finish(order, OrderStatus.CANCELLED);
+                    endEvent();
+                    return;
+                }
+            }
+        }
+    }
+
+    private int toTicks(double price) {
+        return (int) Math.round(price / pips);
+    }
+
+    private void activate(Order order) {
+        report(order);
+        place(order);
+    }
+
+    /**
+     * Matches or parks an order whose working state was already reported.
+     */
+    private void place(Order order) {
+        if (order.stopPrice == NO_PRICE) {
+            match(order);
+        } else if (isTriggered(order, lastTradePrice)) {
+            trigger(order);
+        } else {
+            arriving.add(order);
+        }
+    }
+
+    private static boolean isTriggered(Order stop, double tradePrice) {
+        return stop.isBuy ? tradePrice >= stop.stopPrice : tradePrice <= stop.stopPrice;
+    }
+
+    private void trigger(Order stop) {
+        stop.triggered = true;
+        hasInactive = true;
+        match(stop);
+    }
+
+    /**
+     * Sweeps the opposite side for a new or triggered order, then rests, fills or cancels what is left.
+     */
+    private void match(Order order) {
+        boolean hitsBids = !order.isBuy;
+        int limit = order.limitPrice;
+        if (order.duration == OrderDuration.FOK && available(hitsBids, limit) < order.remaining()) {
+            finish(order, OrderStatus.CANCELLED);
+            return;
+        }
+        int lastLevel = NO_PRICE;
+        int level = hitsBids ? book.getBestBid() : book.getBestAsk();
+        while (level != NO_PRICE && order.isWorking() && (limit == NO_PRICE || (hitsBids ? level >= limit : level <= limit))) {
+            fill(order, Math.min(order.remaining(), book.getSize(hitsBids, level)), level);
+            lastLevel = level;
+            level = hitsBids ? book.nextBid(level) : book.nextAsk(level);
+        }
+        if (!order.isWorking()) {
+            return;
+        }
+        if (limit == NO_PRICE) {
+            if (lastLevel == NO_PRICE && !Double.isNaN(lastTradePrice)) {
+                lastLevel = (int) Math.round(lastTradePrice);
+            }
+            if (lastLevel == NO_PRICE) {
+                finish(order, OrderStatus.CANCELLED);
+            } else {
+                fill(order, order.remaining(), lastLevel);
+            }
+        } else if (order.duration == OrderDuration.IOC || order.duration == OrderDuration.FOK) {
+            finish(order, OrderStatus.CANCELLED);
+        } else {
+            // Joins the back of its level
+            order.levelSize = book.getSize(order.isBuy, limit);
+            order.queueAhead = order.levelSize;
+            order.tradedAtLevel = 0;
+            arriving.add(order);
+        }
+    }
+
+    private long available(boolean isBid, int limit) {
+        long total = 0;
+        for (int level = isBid ? book.getBestBid() : book.getBestAsk();
+             level != NO_PRICE && (limit == NO_PRICE || (isBid ? level >= limit : level <= limit));
+             level = isBid ? book.nextBid(level) : book.nextAsk(level)) {
+            total += book.getSize(isBid, level);
+        }
+        return total;
+    }
+
+    private void fill(Order order, int size, int price) {
+        if (size <= 0) {
+            return;
+        }
+        order.filled += size;
+        order.fillValue += (double) size * price;
+        order.executions++;
+        executions++;
+        if (ordersListener != null) {
+            ordersListener.onOrderExecuted(new ExecutionInfo(order.id, size, price * pips,
+                    order.id + "-" + order.executions, timestamp));
+        }
+        Order sibling = order.sibling;
+        if (sibling != null && sibling.isWorking()) {
+            sibling.size -= size;
+            if (sibling.remaining() <= 0) {
+                sibling.size = sibling.filled;
+                finish(sibling, OrderStatus.CANCELLED);
+            } else {
+                report(sibling);
+            }
+        }
+        if (order.remaining() == 0) {
+            finish(order, OrderStatus.FILLED);
+        } else {
+            report(order);
+        }
+    }
+
+    private void finish(Order order, OrderStatus status) {
+        order.status = status;
+        hasInactive = true;
+        if (status == OrderStatus.FILLED) {
+            ordersFilled++;
+        } else {
+            ordersCancelled++;
+        }
+        report(order);
+        if (order.filled > 0 && (order.stopLossOffset > 0 || order.takeProfitOffset > 0)) {
+            placeBracket(order);
+        }
+    }
+
+    private void placeBracket(Order parent) {
+        int entry = (int) Math.round(parent.fillValue / parent.filled);
+        int side = parent.isBuy ? 1 : -1;
+        Order stopLoss = null;
+        Order takeProfit = null;
+        if (parent.stopLossOffset > 0) {
+            int stopPrice = entry - side * parent.stopLossOffset;
+            stopLoss = new Order("replay-" + nextOrderId++, !parent.isBuy, OrderType.STP, OrderDuration.GTC, alias,
+                    parent.filled, NO_PRICE, stopPrice, 0, 0);
+            stopLoss.info.setStopPrice(stopPrice * pips).setDuration(OrderDuration.GTC);
+        }
+        if (parent.takeProfitOffset > 0) {
+            int limitPrice = entry + side * parent.takeProfitOffset;
+            takeProfit = new Order("replay-" + nextOrderId++, !parent.isBuy, OrderType.LMT, OrderDuration.GTC, alias,
+                    parent.filled, limitPrice, NO_PRICE, 0, 0);
+            takeProfit.info.setLimitPrice(limitPrice * pips).setDuration(OrderDuration.GTC);
+        }
+        if (stopLoss != null && takeProfit != null) {
+            stopLoss.sibling = takeProfit;
+            takeProfit.sibling = stopLoss;
+        }
+        // Both children are reported working before either can match, so a fill of one never cancels a
+        // sibling whose working state was not reported yet
+        if (stopLoss != null) {
+            ordersSent++;
+            report(stopLoss);
+        }
+        if (takeProfit != null) {
+            ordersSent++;
+            report(takeProfit);
+        }
+        if (stopLoss != null) {
+            place(stopLoss);
+        }
+        if (takeProfit != null && takeProfit.isWorking()) {
+            place(takeProfit);
+        }
+    }
+
+    private void report(Order order) {
+        if (ordersListener == null) {
+            return;
+        }
+        order.info.setFilled(order.filled).setUnfilled(Math.max(0, order.remaining())).setStatus(order.status);
+        if (order.filled > 0) {
+            order.info.setAverageFillPrice(order.fillValue / order.filled * pips);
+        }
+        ordersListener.onOrderUpdated(order.info.build());
+        order.info.markAllUnchanged();
+    }
+
+    public void onTimestamp(long nanoseconds) {
+        timestamp = nanoseconds;
+    }
+
+    public void onDepth(boolean isBid, int price, int size) {
+        if (restingBuys.isEmpty() && restingSells.isEmpty()) {
+            return;
+        }
+        List<Order> sameSide = isBid ? restingBuys : restingSells;
+        for (int i = firstAtOrBehind(sameSide, price), count = sameSide.size(); i < count; i++) {
+            Order order = sameSide.get(i);
+            if (order.limitPrice != price) {
+                break;
+            }
+            if (order.isWorking()) {
+                updateQueue(order, size);
+            }
+        }
+        if (size > 0) {
+            // The opposite side quotes at or through these orders, which would have traded with them
+            List<Order> crossed = isBid ? restingSells : restingBuys;
+            for (int i = 0, count = crossed.size(); i < count; i++) {
+                Order order = crossed.get(i);
+                if (isBid ? order.limitPrice > price : order.limitPrice < price) {
+                    break;
+                }
+                if (order.isWorking()) {
+                    fill(order, order.remaining(), order.limitPrice);
+                }
+            }
+        }
+        endEvent();
+    }
+
+    private static void updateQueue(Order order, int size) {
+        int decrease = order.levelSize - size;
+        if (decrease > 0) {
+            int traded = Math.min(decrease, order.tradedAtLevel);
+            int cancelled = decrease - traded;
+            int remainingLevel = order.levelSize - traded;
+            if (cancelled > 0 && remainingLevel > 0) {
+                order.queueAhead -= order.queueAhead * cancelled / remainingLevel;
+            }
+        }
+        order.queueAhead = Math.min(order.queueAhead, size);
+        order.levelSize = size;
+        order.tradedAtLevel = 0;
+    }
+
+    public void onTrade(double price, int size, boolean isBidAggressor) {
+        lastTradePrice = price;
+        if (restingBuys.isEmpty() && restingSells.isEmpty() && buyStops.isEmpty() && sellStops.isEmpty()) {
+            return;
+        }
+        // A buying aggressor trades with resting sell orders
+        List<Order> hit = isBidAggressor ? restingSells : restingBuys;
+        for (int i = 0, count = hit.size(); i < count; i++) {
+            Order order = hit.get(i);
+            if (order.isBuy ? price > order.limitPrice : price < order.limitPrice) {
+                break;
+            }
+            if (!order.isWorking()) {
+                continue;
+            }
+            if (price != order.limitPrice) {
+                fill(order, order.remaining(), order.limitPrice);
+            } else {
+                order.tradedAtLevel += size;
+                double beyondQueue = size - order.queueAhead;
+                order.queueAhead = Math.max(0, order.queueAhead - size);
+                if (beyondQueue >= 1) {
+                    fill(order, Math.min(order.remaining(), (int) beyondQueue), order.limitPrice);
+                }
+            }
+        }
+        triggerStops(buyStops, price);
+        triggerStops(sellStops, price);
+        endEvent();
+    }
+
+    private void triggerStops(List<Order> stops, double price) {
+        for (int i = 0, count = stops.size(); i < count; i++) {
+            Order stop = stops.get(i);
+            if (!isTriggered(stop, price)) {
+                break;
+            }
+            if (stop.isWorking() && !stop.triggered) {
+                trigger(stop);
+            }
+        }
+    }
+
+    private void endEvent() {
+        if (hasInactive) {
+            hasInactive = false;
+            removeInactive(restingBuys, false);
+            removeInactive(restingSells, false);
+            removeInactive(buyStops, true);
+            removeInactive(sellStops, true);
+        }
+        for (int i = 0; i < arriving.size(); i++) {
+            Order order = arriving.get(i);
+            if (order.isWorking()) {
+                insert(order);
+            }
+        }
+        arriving.clear();
+    }
+
+    private List<Order> listFor(Order order) {
+        if (order.isPendingStop()) {
+            return order.isBuy ? buyStops : sellStops;
+        }
+        return order.isBuy ? restingBuys : restingSells;
+    }
+
+    /**
+     * Lower is nearer the front of the order's list.
+     */
+    private static int priority(Order order) {
+        if (order.isPendingStop()) {
+            return order.isBuy ? order.stopPrice : -order.stopPrice;
+        }
+        return order.isBuy ? -order.limitPrice : order.limitPrice;
+    }
+
+    private void insert(Order order) {
+        List<Order> orders = listFor(order);
+        int priority = priority(order);
+        // Behind the orders already at the same price
+        int index = orders.size();
+        while (index > 0 && priority(orders.get(index - 1)) > priority) {
+            index--;
+        }
+        orders.add(index, order);
+    }
+
+    /**
+     * @return index of the first resting order at {@code price} or further from the touch
+     */
+    private static int firstAtOrBehind(List<Order> resting, int price) {
+        int low = 0;
+        int high = resting.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            Order order = resting.get(middle);
+            if (order.isBuy ? order.limitPrice > price : order.limitPrice < price) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static void removeInactive(List<Order> orders, boolean isStops) {
+        int kept = 0;
+        for (int i = 0, count = orders.size(); i < count; i++) {
+            Order order = orders.get(i);
+            if (order.isWorking() && (!isStops || !order.triggered)) {
+                orders.set(kept++, order);
+            }
+        }
+        orders.subList(kept, orders.size()).clear();
+    }
+
+    /**
+     * @return contracts estimated ahead of a resting order at its price, or NaN if it is not resting
+     */
+    public double getQueueAhead(String orderId) {
+        for (List<Order> resting : List.of(restingBuys, restingSells)) {
+            for (Order order : resting) {
+                if (order.isWorking() && order.id.equals(orderId)) {
+                    return order.queueAhead;
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    public int getWorkingCount() {
+        int working = 0;
+        for (List<Order> resting : List.of(restingBuys, restingSells)) {
+            for (Order order : resting) {
+                working += order.isWorking() ? 1 : 0;
+            }
+        }
+        for (List<Order> stops : List.of(buyStops, sellStops)) {
+            for (Order order : stops) {
+                working += order.isWorking() && !order.triggered ? 1 : 0;
+            }
+        }
+        return working;
+    }
+
+    public long getOrdersSent() {
+        return ordersSent;
+    }
+
+    public long getOrdersFilled() {
+        return ordersFilled;
+    }
+
+    public long getOrdersCancelled() {
+        return ordersCancelled;
+    }
+
+    public long getOrdersRejected() {
+        return ordersRejected;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+}
@@ -0,0 +1,144 @@
+package core.replay;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import core.book.TickBook;
+import velox.api.layer1.common.Log;
+import velox.api.layer1.data.OrderCancelParameters;
+import velox.api.layer1.data.SimpleOrderSendParameters;
+import velox.api.layer1.simplified.Api;
+import velox.api.layer1.simplified.OrdersListener;
+
+/**
+ * Stand-in {@link Api} for replays. Indicators are {@link ReplayIndicator}s; orders and cancels are queued
+ * and, once the module returns from the current callback, sent in call order to a {@link MatchingEngine}
+ * that works them against the replayed book and trades. Calls the replay does not support return null, 0 or false and are logged
+ * once per method.
+ */
+public class ReplayApi implements InvocationHandler {
+
+    private final Api api;
+    private final MatchingEngine matchingEngine;
+    private final List<ReplayIndicator> indicators = new ArrayList<>();
+    // SimpleOrderSendParameters and OrderCancelParameters, in the order the module made the calls
+    private final List<Object> pendingRequests = new ArrayList<>();
+    private static final Set<String> reportedCalls = new HashSet<>();
+
+    public ReplayApi(String alias, double pips, TickBook book) {
+        this.matchingEngine = new MatchingEngine(alias, pips, book);
+        this.api = (Api) Proxy.newProxyInstance(Api.class.getClassLoader(), new Class<?>[]{Api.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("registerIndicator") && args != null && args.length > 0 && args[0] instanceof String) {
+            ReplayIndicator indicator = new ReplayIndicator((String) args[0]);
+            indicators.add(indicator);
+            return indicator.asIndicator();
+        }
+        if (name.equals("sendOrder") && args != null && args.length == 1 && args[0] instanceof SimpleOrderSendParameters) {
+            pendingRequests.add(args[0]);
+            return null;
+        }
+        if (name.equals("updateOrder") && args != null && args.length == 1 && args[0] instanceof OrderCancelParameters) {
+            pendingRequests.add(args[0]);
+            return null;
+        }
+        return defaultResult(proxy, method, args, "Api");
+    }
+
+    /**
+     * Handles {@link Object} methods and returns the zero value of the method's return type for anything else.
+     */
+    static Object defaultResult(Object proxy, Method method, Object[] args, String owner) {
+        switch (method.getName()) {
+            case "toString":
+                return owner + " (replay)";
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return args != null && args.length == 1 && proxy == args[0];
+            default:
+                break;
+        }
+        synchronized (reportedCalls) {
+            if (reportedCalls.add(owner + "." + method.getName())) {
+                Log.info("Replay ignores " + owner + "." + method.getName());
+            }
+        }
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == char.class) {
+            return '\0';
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == byte.class) {
+            return (byte) 0;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    void setOrdersListener(OrdersListener ordersListener) {
+        matchingEngine.setOrdersListener(ordersListener);
+    }
+
+    void onTimestamp(long nanoseconds) {
+        matchingEngine.onTimestamp(nanoseconds);
+    }
+
+    void onDepth(boolean isBid, int price, int size) {
+        matchingEngine.onDepth(isBid, price, size);
+    }
+
+    void onTrade(double price, int size, boolean isBidAggressor) {
+        matchingEngine.onTrade(price, size, isBidAggressor);
+    }
+
+    boolean hasPendingOrders() {
+        return !pendingRequests.isEmpty();
+    }
+
+    /**
+     * Sends every queued order and cancel to the matching engine.
+     */
+    void processPendingOrders() {
+        // Callbacks may send more orders; those are handled in the same pass
+        for (int i = 0; i < pendingRequests.size(); i++) {
+            Object request = pendingRequests.get(i);
+            if (request instanceof SimpleOrderSendParameters order) {
+                matchingEngine.send(order);
+            } else {
+                matchingEngine.cancel(((OrderCancelParameters) request).orderId);
+            }
+        }
+        pendingRequests.clear();
+    }
+
+    public Api asApi() {
+        return api;
+    }
+
+    public List<ReplayIndicator> getIndicators() {
+        return indicators;
+    }
+
+    public MatchingEngine getMatchingEngine() {
+        return matchingEngine;
+    }
+}
@@ -0,0 +1,305 @@
+package core.replay;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import core.book.TickBook;
+import core.io.BinaryCaptureReader;
+import velox.api.layer1.data.InstrumentInfo;
+import velox.api.layer1.data.TradeInfo;
+import velox.api.layer1.layers.utils.OrderBook;
+import velox.api.layer1.simplified.*;
+
+/**
+ * Drives an unmodified {@link CustomModule} from a recorded {@link BinaryCaptureReader} session, outside
+ * Bookmap. The module gets {@code initialize}, then {@code onTimestamp}, {@code onDepth} and
+ * {@code onTrade} in capture order, with {@code onBbo} after each depth update that changes the best bid
+ * or ask. {@code onBar} and {@code onInterval} fire on exchange-time interval boundaries, and order
+ * callbacks come from the {@link MatchingEngine} behind {@link ReplayApi}. Bars are built from the replayed
+ * trades; no bar is delivered before the first trade.
+ * <p>
+ * With speed 0 the capture is replayed as fast as possible; otherwise exchange time is paced at
+ * {@code speed} times real time.
+ * <pre>
+ * java -cp addon.jar:bm-simplified-api.jar core.replay.ReplayEngine day1.OnBarSMA C:\Bookmap\Capture\ESZ4\20241118-093000 max 0.25
+ * java -cp addon.jar:bm-simplified-api.jar core.replay.ReplayEngine day3.StackedImbalance synthetic:10000000:7 max
+ * </pre>
+ */
+public class ReplayEngine implements BinaryCaptureReader.Listener {
+
+    // Sleeping for less than this costs more than it paces
+    private static final long MIN_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final TradeInfo[] TRADE_INFOS = {
+            new TradeInfo(false, false, false, false), new TradeInfo(false, true, false, false),
+            new TradeInfo(true, false, false, false), new TradeInfo(true, true, false, false)};
+
+    private final CustomModule module;
+    private final String alias;
+    private final InstrumentInfo info;
+    private final TickBook book = new TickBook();
+    private final ReplayApi api;
+
+    private final DepthDataListener depthListener;
+    private final BboListener bboListener;
+    private final TradeDataListener tradeListener;
+    private final TimeListener timeListener;
+    private final IntervalListener intervalListener;
+    private final BarDataListener barListener;
+    private final OrderBook orderBook;
+    private final Bar bar;
+    private final long interval;
+
+    private double speed = 0;
+    private boolean started = false;
+    private boolean barHasTrades = false;
+    private long nextIntervalTimestamp = 0;
+    private long firstTimestamp = 0;
+    private long lastTimestamp = 0;
+    private long wallStart;
+    private long wallElapsed;
+    private int skipLevels = 0;
+    private int bboBid = TickBook.NO_PRICE;
+    private int bboBidSize = 0;
+    private int bboAsk = TickBook.NO_PRICE;
+    private int bboAskSize = 0;
+
+    private long depthEvents = 0;
+    private long tradeEvents = 0;
+    private long timestampEvents = 0;
+    private long bars = 0;
+    private long intervals = 0;
+
+    public ReplayEngine(CustomModule module, String alias, InstrumentInfo info) {
+        this.module = module;
+        this.alias = alias;
+        this.info = info;
+        this.api = new ReplayApi(alias, info.pips, book);
+        depthListener = module instanceof DepthDataListener ? (DepthDataListener) module : null;
+        bboListener = module instanceof BboListener ? (BboListener) module : null;
+        tradeListener = module instanceof TradeDataListener ? (TradeDataListener) module : null;
+        timeListener = module instanceof TimeListener ? (TimeListener) module : null;
+        intervalListener = module instanceof IntervalListener ? (IntervalListener) module : null;
+        barListener = module instanceof BarDataListener ? (BarDataListener) module : null;
+        orderBook = barListener != null ? new OrderBook() : null;
+        bar = barListener != null ? new Bar() : null;
+        interval = intervalListener != null ? intervalListener.getInterval() : 0;
+        if (module instanceof OrdersListener) {
+            api.setOrdersListener((OrdersListener) module);
+        }
+    }
+
+    /**
+     * @param speed multiple of real time to replay at, or 0 to replay as fast as possible
+     */
+    public ReplayEngine withSpeed(double speed) {
+        this.speed = speed;
+        return this;
+    }
+
+    public void start() {
+        // No module reads the initial state
+        module.initialize(alias, info, api.asApi(), null);
+        started = true;
+        wallStart = System.nanoTime();
+    }
+
+    /**
+     * Replays {@code reader} from its current position to the end of the capture.
+     */
+    public void run(BinaryCaptureReader reader) throws IOException {
+        if (!started) {
+            start();
+        }
+        while (reader.next(this)) {
+            if (api.hasPendingOrders()) {
+                api.processPendingOrders();
+            }
+        }
+        wallElapsed = System.nanoTime() - wallStart;
+    }
+
+    /**
+     * Feeds {@code count} synthetic events to the module, the same way a capture is replayed.
+     */
+    public void run(MarketDataGenerator generator, long count) {
+        if (!started) {
+            start();
+        }
+        long target = generator.getEventCount() + count;
+        while (generator.getEventCount() < target) {
+            generator.next(this);
+            if (api.hasPendingOrders()) {
+                api.processPendingOrders();
+            }
+        }
+        wallElapsed = System.nanoTime() - wallStart;
+    }
+
+    public void stop() {
+        module.stop();
+    }
+
+    @Override
+    public void onTimestamp(long nanoseconds) {
+        if (firstTimestamp == 0) {
+            firstTimestamp = nanoseconds;
+        }
+        lastTimestamp = nanoseconds;
+        timestampEvents++;
+        if (speed > 0) {
+            long wait = wallStart + (long) ((nanoseconds - firstTimestamp) / speed) - System.nanoTime();
+            if (wait > MIN_PARK_NANOS) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+
+        if (interval > 0) {
+            if (nextIntervalTimestamp == 0) {
+                nextIntervalTimestamp = (nanoseconds / interval + 1) * interval;
+            }
+            while (nanoseconds >= nextIntervalTimestamp) {
+                fireInterval();
+                nextIntervalTimestamp += interval;
+            }
+        }
+
+        api.onTimestamp(nanoseconds);
+        if (timeListener != null) {
+            timeListener.onTimestamp(nanoseconds);
+        }
+    }
+
+    private void fireInterval() {
+        if (barListener != null && barHasTrades) {
+            barListener.onBar(orderBook, bar);
+            bar.startNext();
+            bars++;
+        }
+        intervalListener.onInterval();
+        intervals++;
+    }
+
+    @Override
+    public void onDepth(boolean isBid, int price, int size) {
+        if (skipLevels > 0) {
+            skipLevels--;
+            return;
+        }
+        depthEvents++;
+        book.onDepth(isBid, price, size);
+        api.onDepth(isBid, price, size);
+        if (orderBook != null) {
+            orderBook.onUpdate(isBid, price, size);
+        }
+        if (depthListener != null) {
+            depthListener.onDepth(isBid, price, size);
+        }
+        if (bboListener != null) {
+            fireBboIfChanged();
+        }
+    }
+
+    private void fireBboIfChanged() {
+        int bid = book.getBestBid();
+        int bidSize = book.getBestBidSize();
+        int ask = book.getBestAsk();
+        int askSize = book.getBestAskSize();
+        if (bid != bboBid || bidSize != bboBidSize || ask != bboAsk || askSize != bboAskSize) {
+            bboBid = bid;
+            bboBidSize = bidSize;
+            bboAsk = ask;
+            bboAskSize = askSize;
+            bboListener.onBbo(bid, bidSize, ask, askSize);
+        }
+    }
+
+    @Override
+    public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) {
+        tradeEvents++;
+        api.onTrade(price, size, isBidAggressor);
+        if (bar != null) {
+            bar.addTrade(isBidAggressor, size, price);
+            barHasTrades = true;
+        }
+        if (tradeListener != null) {
+            tradeListener.onTrade(price, size, TRADE_INFOS[(isOtc ? 2 : 0) | (isBidAggressor ? 1 : 0)]);
+        }
+    }
+
+    @Override
+    public void onSnapshot(int levels) {
+        // The replayed book already matches every snapshot after the first one
+        if (depthEvents > 0) {
+            skipLevels = levels;
+        }
+    }
+
+    public long getEventCount() {
+        return depthEvents + tradeEvents + timestampEvents;
+    }
+
+    public ReplayApi getApi() {
+        return api;
+    }
+
+    public void printReport(PrintStream out) {
+        long events = getEventCount();
+        double seconds = wallElapsed / 1e9;
+        double exchangeSeconds = (lastTimestamp - firstTimestamp) / 1e9;
+        out.printf("Replayed %,d events (depth %,d, trades %,d, timestamps %,d) in %.3f s: %,.0f events/s%n",
+                events, depthEvents, tradeEvents, timestampEvents, seconds, events / Math.max(seconds, 1e-9));
+        out.printf("Exchange time %.1f s, %.1fx real time%n", exchangeSeconds, exchangeSeconds / Math.max(seconds, 1e-9));
+        MatchingEngine matching = api.getMatchingEngine();
+        out.printf("Bars %,d, intervals %,d, orders sent %,d, filled %,d, cancelled %,d, rejected %,d, working %,d, executions %,d%n",
+                bars, intervals, matching.getOrdersSent(), matching.getOrdersFilled(), matching.getOrdersCancelled(),
+                matching.getOrdersRejected(), matching.getWorkingCount(), matching.getExecutions());
+        for (ReplayIndicator indicator : api.getIndicators()) {
+            out.printf("Indicator %s: %,d points, last %s%n",
+                    indicator.getName(), indicator.getPoints(), indicator.getLastValue());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: ReplayEngine <module class> <session directory | synthetic:<events>[:<seed>]> [max|speed] [pips]");
+            return;
+        }
+        CustomModule module = (CustomModule) Class.forName(args[0]).getDeclaredConstructor().newInstance();
+        double speed = args.length > 2 && !args[2].equals("max") ? Double.parseDouble(args[2]) : 0;
+        double pips = args.length > 3 ? Double.parseDouble(args[3]) : 0.25;
+
+        if (args[1].startsWith("synthetic:")) {
+            String[] parts = args[1].split(":");
+            long count = Long.parseLong(parts[1]);
+            long seed = parts.length > 2 ? Long.parseLong(parts[2]) : 1;
+            MarketDataGenerator generator = new MarketDataGenerator(seed, 20_000,
+                    MarketDataGenerator.DEFAULT_START_TIMESTAMP).withTickSize(pips);
+            InstrumentInfo info = new InstrumentInfo("SYNTHETIC", "", "", pips, 1, "SYNTHETIC", true);
+            ReplayEngine engine = new ReplayEngine(module, "SYNTHETIC", info).withSpeed(speed);
+            try {
+                engine.run(generator, count);
+            } finally {
+                engine.stop();
+            }
+            engine.printReport(System.out);
+            return;
+        }
+
+        Path session = Paths.get(args[1]);
+        // Captures are stored as <root>/<alias>/<session>
+        String alias = session.toAbsolutePath().getParent().getFileName().toString();
+        InstrumentInfo info = new InstrumentInfo(alias, "", "", pips, 1, alias, true);
+
+        ReplayEngine engine = new ReplayEngine(module, alias, info).withSpeed(speed);
+        try (BinaryCaptureReader reader = new BinaryCaptureReader(session)) {
+            engine.run(reader);
+        } finally {
+            engine.stop();
+        }
+        engine.printReport(System.out);
+    }
+}
@@ -0,0 +1,51 @@
+package core.replay;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import velox.api.layer1.simplified.Indicator;
+
+/**
+ * Stand-in {@link Indicator} for replays: counts the points a module adds and keeps the last value.
+ * Every other indicator call (colors, icons, ...) is accepted and ignored.
+ */
+public class ReplayIndicator implements InvocationHandler {
+
+    private final String name;
+    private final Indicator indicator;
+    private long points = 0;
+    private double lastValue = Double.NaN;
+
+    public ReplayIndicator(String name) {
+        this.name = name;
+        this.indicator = (Indicator) Proxy.newProxyInstance(Indicator.class.getClassLoader(),
+                new Class<?>[]{Indicator.class}, this);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        if (method.getName().equals("addPoint") && args != null && args.length == 1 && args[0] instanceof Double) {
+            lastValue = (Double) args[0];
+            points++;
+            return null;
+        }
+        return ReplayApi.defaultResult(proxy, method, args, "Indicator " + name);
+    }
+
+    public Indicator asIndicator() {
+        return indicator;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getPoints() {
+        return points;
+    }
+
+    public double getLastValue() {
+        return lastValue;
+    }
+}
@@ -0,0 +1,193 @@
+package core.ui;
+
+import java.awt.*;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+
+import javax.swing.JComponent;
+
+import core.book.TickBook;
+
+/**
+ * Bar chart of the book, one column per tick with prices rising from left to right, centered on the
+ * touch. In split mode each column shows the bid size in blue and the ask size in red side by side;
+ * otherwise one bar shows the total size at the price.
+ * <p>
+ * Bars are drawn into a cached {@link BufferedImage}, and painting is a single {@code drawImage}.
+ * {@link #refresh()} runs on the EDT, typically from a {@link RenderScheduler}: it copies the visible
+ * sizes from the book while holding the book's monitor, redraws only the columns whose sizes changed
+ * since the last frame and repaints just the strip that covers them. Everything is redrawn only when the
+ * window re-centers, the panel is resized or the vertical scale changes. The scale leaves 50% headroom
+ * over the tallest bar and is only reset when a bar would be clipped or the tallest bar drops below a
+ * quarter of it.
+ */
+public class DepthBarsPanel extends JComponent {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Color BACKGROUND = Color.WHITE;
+    private static final Color BID_COLOR = Color.BLUE;
+    private static final Color ASK_COLOR = Color.RED;
+    private static final Color TOTAL_COLOR = Color.DARK_GRAY;
+
+    private final TickBook book;
+    private final boolean split;
+    private final int columnWidth;
+
+    private BufferedImage image;
+    private int columns = 0;
+    private int firstPrice = TickBook.NO_PRICE;
+    private int scaleMax = 0;
+    private boolean fullRedraw = true;
+    private int[] bidSizes = new int[0];
+    private int[] askSizes = new int[0];
+    private int[] nextBidSizes = new int[0];
+    private int[] nextAskSizes = new int[0];
+    private long columnsDrawn = 0;
+
+    public DepthBarsPanel(TickBook book, boolean split, int columnWidth) {
+        this.book = book;
+        this.split = split;
+        this.columnWidth = columnWidth;
+        setOpaque(true);
+        addComponentListener(new ComponentAdapter() {
+            @Override
+            public void componentResized(ComponentEvent e) {
+                refresh();
+            }
+        });
+    }
+
+    /**
+     * Redraws the columns that changed since the last call. EDT only.
+     */
+    public void refresh() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        if (image == null || image.getWidth() != width || image.getHeight() != height) {
+            image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            columns = Math.max(1, width / columnWidth);
+            bidSizes = new int[columns];
+            askSizes = new int[columns];
+            nextBidSizes = new int[columns];
+            nextAskSizes = new int[columns];
+            fullRedraw = true;
+        }
+
+        int max = 0;
+        synchronized (book) {
+            int first = windowStart(book.getBestBid(), book.getBestAsk());
+            if (first == TickBook.NO_PRICE) {
+                return;
+            }
+            if (first != firstPrice) {
+                firstPrice = first;
+                fullRedraw = true;
+            }
+            for (int column = 0; column < columns; column++) {
+                int bid = book.getSize(true, first + column);
+                int ask = book.getSize(false, first + column);
+                nextBidSizes[column] = bid;
+                nextAskSizes[column] = ask;
+                max = Math.max(max, split ? Math.max(bid, ask) : bid + ask);
+            }
+        }
+        if (max > scaleMax || max < scaleMax / 4) {
+            scaleMax = Math.max(1, max + max / 2);
+            fullRedraw = true;
+        }
+
+        int[] swap = bidSizes;
+        bidSizes = nextBidSizes;
+        nextBidSizes = swap;
+        swap = askSizes;
+        askSizes = nextAskSizes;
+        nextAskSizes = swap;
+
+        Graphics2D g = image.createGraphics();
+        try {
+            if (fullRedraw) {
+                g.setColor(BACKGROUND);
+                g.fillRect(0, 0, width, height);
+                for (int column = 0; column < columns; column++) {
+                    drawColumn(g, column, height);
+                }
+                fullRedraw = false;
+                repaint();
+                return;
+            }
+            int firstChanged = -1;
+            int lastChanged = -1;
+            for (int column = 0; column < columns; column++) {
+                if (bidSizes[column] != nextBidSizes[column] || askSizes[column] != nextAskSizes[column]) {
+                    drawColumn(g, column, height);
+                    if (firstChanged < 0) {
+                        firstChanged = column;
+                    }
+                    lastChanged = column;
+                }
+            }
+            if (firstChanged >= 0) {
+                repaint(firstChanged * columnWidth, 0, (lastChanged - firstChanged + 1) * columnWidth, height);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private int windowStart(int bestBid, int bestAsk) {
+        if (bestBid == TickBook.NO_PRICE && bestAsk == TickBook.NO_PRICE) {
+            return firstPrice;
+        }
+        int high = bestAsk != TickBook.NO_PRICE ? bestAsk : bestBid;
+        int low = bestBid != TickBook.NO_PRICE ? bestBid : bestAsk;
+        int margin = columns / 4;
+        if (firstPrice != TickBook.NO_PRICE && low >= firstPrice + margin && high <= firstPrice + columns - 1 - margin) {
+            return firstPrice;
+        }
+        return (int) (((long) high + low) / 2) - columns / 2;
+    }
+
+    private void drawColumn(Graphics2D g, int column, int height) {
+        int x = column * columnWidth;
+        g.setColor(BACKGROUND);
+        g.fillRect(x, 0, columnWidth, height);
+        if (split) {
+            int barWidth = Math.max(1, (columnWidth - 1) / 2);
+            drawBar(g, x, barWidth, bidSizes[column], height, BID_COLOR);
+            drawBar(g, x + barWidth, barWidth, askSizes[column], height, ASK_COLOR);
+        } else {
+            drawBar(g, x, Math.max(1, columnWidth - 1), bidSizes[column] + askSizes[column], height, TOTAL_COLOR);
+        }
+        columnsDrawn++;
+    }
+
+    private void drawBar(Graphics2D g, int x, int width, int size, int height, Color color) {
+        int barHeight = (int) ((long) size * height / scaleMax);
+        if (barHeight > 0) {
+            g.setColor(color);
+            g.fillRect(x, height - barHeight, width, barHeight);
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        if (image != null) {
+            g.drawImage(image, 0, 0, null);
+        } else {
+            g.setColor(BACKGROUND);
+            g.fillRect(0, 0, getWidth(), getHeight());
+        }
+    }
+
+    /**
+     * @return number of columns drawn into the image since construction
+     */
+    public long getColumnsDrawn() {
+        return columnsDrawn;
+    }
+}
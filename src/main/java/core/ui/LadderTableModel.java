@@ -0,0 +1,190 @@
+package core.ui;
+
+import javax.swing.table.AbstractTableModel;
+
+import core.book.TickBook;
+
+/**
+ * Price ladder over a {@link TickBook}: a fixed number of rows, one tick per row with the highest price
+ * on top, centered on the touch. Columns are bid size, price and ask size.
+ * <p>
+ * {@link #refresh()} runs on the EDT, typically from a {@link RenderScheduler}. It copies the sizes of
+ * the visible rows from the book while holding the book's monitor, the lock the feed thread takes for
+ * its updates, and compares them with the previous frame. Only cells that changed are reported with
+ * {@code fireTableCellUpdated}, so the table keeps its selection and scroll position and repaints a
+ * few cells instead of relaying out. When the touch comes within {@code margin} rows of the top or
+ * bottom, the window re-centers and all rows are reported once.
+ * <p>
+ * Cell values are cached strings: prices from {@link PriceLabels}, sizes up to {@value #SIZE_LABELS}
+ * from a lazily filled table. Painting a frame does not box or format anything.
+ */
+public class LadderTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+
+    public static final int BID_COLUMN = 0;
+    public static final int PRICE_COLUMN = 1;
+    public static final int ASK_COLUMN = 2;
+    private static final String[] COLUMN_NAMES = {"Bid", "Price", "Ask"};
+    static final int SIZE_LABELS = 10_000;
+
+    private final TickBook book;
+    private final PriceLabels priceLabels;
+    private final int rows;
+    private final int margin;
+    private final String[] sizeLabels = new String[SIZE_LABELS];
+
+    private int topPrice = TickBook.NO_PRICE;
+    private int[] bidSizes;
+    private int[] askSizes;
+    private int[] nextBidSizes;
+    private int[] nextAskSizes;
+    private long cellUpdates = 0;
+    private long recenters = 0;
+
+    public LadderTableModel(TickBook book, double pips, int rows) {
+        this(book, pips, rows, rows / 4);
+    }
+
+    /**
+     * @param margin the window re-centers when the best bid or ask is closer than this to an edge
+     */
+    public LadderTableModel(TickBook book, double pips, int rows, int margin) {
+        if (rows < 1 || margin < 0 || 2 * margin >= rows) {
+            throw new IllegalArgumentException("rows " + rows + " and margin " + margin + " do not fit");
+        }
+        this.book = book;
+        this.priceLabels = new PriceLabels(pips);
+        this.rows = rows;
+        this.margin = margin;
+        bidSizes = new int[rows];
+        askSizes = new int[rows];
+        nextBidSizes = new int[rows];
+        nextAskSizes = new int[rows];
+    }
+
+    /**
+     * Reads the visible part of the book and reports what changed since the last call. EDT only.
+     */
+    public void refresh() {
+        int top;
+        synchronized (book) {
+            top = windowTop(book.getBestBid(), book.getBestAsk());
+            if (top == TickBook.NO_PRICE) {
+                return;
+            }
+            for (int row = 0; row < rows; row++) {
+                nextBidSizes[row] = book.getSize(true, top - row);
+                nextAskSizes[row] = book.getSize(false, top - row);
+            }
+        }
+
+        int[] swap = bidSizes;
+        bidSizes = nextBidSizes;
+        nextBidSizes = swap;
+        swap = askSizes;
+        askSizes = nextAskSizes;
+        nextAskSizes = swap;
+
+        if (top != topPrice) {
+            topPrice = top;
+            recenters++;
+            fireTableRowsUpdated(0, rows - 1);
+            return;
+        }
+        // The previous frame is now in the next* arrays
+        for (int row = 0; row < rows; row++) {
+            if (bidSizes[row] != nextBidSizes[row]) {
+                cellUpdates++;
+                fireTableCellUpdated(row, BID_COLUMN);
+            }
+            if (askSizes[row] != nextAskSizes[row]) {
+                cellUpdates++;
+                fireTableCellUpdated(row, ASK_COLUMN);
+            }
+        }
+    }
+
+    private int windowTop(int bestBid, int bestAsk) {
+        if (bestBid == TickBook.NO_PRICE && bestAsk == TickBook.NO_PRICE) {
+            return topPrice;
+        }
+        int high = bestAsk != TickBook.NO_PRICE ? bestAsk : bestBid;
+        int low = bestBid != TickBook.NO_PRICE ? bestBid : bestAsk;
+        if (topPrice != TickBook.NO_PRICE && high <= topPrice - margin && low >= topPrice - rows + 1 + margin) {
+            return topPrice;
+        }
+        return (int) (((long) high + low) / 2) + rows / 2;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMN_NAMES.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMN_NAMES[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return String.class;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (topPrice == TickBook.NO_PRICE) {
+            return "";
+        }
+        return switch (column) {
+            case BID_COLUMN -> sizeLabel(bidSizes[row]);
+            case PRICE_COLUMN -> priceLabels.get(topPrice - row);
+            case ASK_COLUMN -> sizeLabel(askSizes[row]);
+            default -> throw new IndexOutOfBoundsException("column " + column);
+        };
+    }
+
+    private String sizeLabel(int size) {
+        if (size == 0) {
+            return "";
+        }
+        if (size < 0 || size >= SIZE_LABELS) {
+            return Integer.toString(size);
+        }
+        String label = sizeLabels[size];
+        if (label == null) {
+            label = Integer.toString(size);
+            sizeLabels[size] = label;
+        }
+        return label;
+    }
+
+    /**
+     * @return tick price shown in {@code row}, or {@link TickBook#NO_PRICE} before the first refresh
+     */
+    public int getPriceAt(int row) {
+        return topPrice == TickBook.NO_PRICE ? TickBook.NO_PRICE : topPrice - row;
+    }
+
+    /**
+     * @return row showing {@code price}, or -1 if it is outside the window
+     */
+    public int getRowOf(int price) {
+        int row = topPrice - price;
+        return topPrice == TickBook.NO_PRICE || row < 0 || row >= rows ? -1 : row;
+    }
+
+    public long getCellUpdateCount() {
+        return cellUpdates;
+    }
+
+    public long getRecenterCount() {
+        return recenters;
+    }
+}
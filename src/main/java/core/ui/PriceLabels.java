@@ -0,0 +1,57 @@
+package core.ui;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+/**
+ * Display strings for tick prices, cached per tick. The number of decimals follows the tick size, so an
+ * instrument with {@code pips == 0.25} shows {@code 5012.25} and one with {@code pips == 0.01} shows
+ * {@code 101.37}.
+ * <p>
+ * Labels live in a window of {@value #CAPACITY} ticks that re-centers when a price outside it is asked
+ * for; a label is formatted once and then returned without allocating. Confined to one thread, the EDT
+ * for table models.
+ */
+public class PriceLabels {
+
+    static final int CAPACITY = 4096;
+
+    private final BigDecimal tickSize;
+    private final int decimals;
+    private final String[] labels = new String[CAPACITY];
+    private int basePrice;
+    private boolean anchored = false;
+
+    public PriceLabels(double pips) {
+        this.tickSize = BigDecimal.valueOf(pips);
+        this.decimals = Math.max(0, tickSize.stripTrailingZeros().scale());
+    }
+
+    public String get(int price) {
+        int index = price - basePrice;
+        if (!anchored || index < 0 || index >= CAPACITY) {
+            basePrice = price - CAPACITY / 2;
+            anchored = true;
+            Arrays.fill(labels, null);
+            index = price - basePrice;
+        }
+        String label = labels[index];
+        if (label == null) {
+            label = format(price);
+            labels[index] = label;
+        }
+        return label;
+    }
+
+    /**
+     * Formats without the cache.
+     */
+    public String format(int price) {
+        return BigDecimal.valueOf(price).multiply(tickSize).setScale(decimals, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+}
@@ -0,0 +1,82 @@
+package core.ui;
+
+import javax.swing.Timer;
+
+/**
+ * Frame-rate-capped repaint driver for Swing views of a live book. The feed thread calls
+ * {@link #markDirty()} after each update, which is a single volatile write; a Swing {@link Timer} on the
+ * EDT runs the render callback at most once per frame, and only if something changed since the last one.
+ * <p>
+ * Any number of updates between two frames cost one refresh, and the EDT queue holds at most one pending
+ * timer event whatever the event rate ({@link Timer#setCoalesce(boolean)}). Because frames are driven by
+ * the timer rather than by incoming events, the last update before the market goes quiet is still drawn
+ * on the next frame.
+ * <p>
+ * {@link #stop()} is final: a {@link #start()} that arrives later, for example from a UI setup that was
+ * still queued on the EDT when the module stopped, does nothing.
+ */
+public class RenderScheduler {
+
+    public static final int DEFAULT_FPS = 30;
+
+    private final Runnable render;
+    private final Timer timer;
+    private volatile boolean dirty = false;
+    private volatile boolean stopped = false;
+    private long frames = 0;
+
+    /**
+     * @param render called on the EDT for each frame that has updates
+     */
+    public RenderScheduler(Runnable render) {
+        this(DEFAULT_FPS, render);
+    }
+
+    public RenderScheduler(int framesPerSecond, Runnable render) {
+        if (framesPerSecond < 1 || framesPerSecond > 1000) {
+            throw new IllegalArgumentException("framesPerSecond must be between 1 and 1000: " + framesPerSecond);
+        }
+        this.render = render;
+        this.timer = new Timer(1000 / framesPerSecond, event -> onFrame());
+        timer.setCoalesce(true);
+        timer.setInitialDelay(0);
+    }
+
+    /**
+     * Starts the frame timer unless the scheduler was already stopped; may be called from any thread.
+     */
+    public synchronized void start() {
+        if (!stopped) {
+            timer.start();
+        }
+    }
+
+    public synchronized void stop() {
+        stopped = true;
+        timer.stop();
+    }
+
+    /**
+     * Called on the feed thread after the rendered state changed.
+     */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    private void onFrame() {
+        if (!dirty || stopped) {
+            return; // A frame event may still be queued on the EDT after stop()
+        }
+        // Cleared before rendering, so an update that lands during the render is drawn on the next frame
+        dirty = false;
+        render.run();
+        frames++;
+    }
+
+    /**
+     * @return number of frames rendered; read it on the EDT
+     */
+    public long getFrameCount() {
+        return frames;
+    }
+}
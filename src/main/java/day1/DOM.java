@@ -1,10 +1,13 @@
 package day1;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
-import java.util.*;
+import java.util.concurrent.TimeUnit;
 
+import core.book.TickBook;
+import core.diag.BookSnapshotPrinter;
+import core.io.AsyncCsvWriter;
+import core.io.BinaryCapture;
+import core.io.DepthCaptureWriter;
 import velox.api.layer1.annotations.*;
 import velox.api.layer1.common.Log;
 import velox.api.layer1.data.InstrumentInfo;
@@ -15,92 +18,59 @@ import velox.api.layer1.simplified.*;
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
 public class DOM implements CustomModuleAdapter, DepthDataListener, TimeListener {
 
-    private final TreeMap<Integer, Integer> bids = new TreeMap<>(Comparator.reverseOrder());
-    private final TreeMap<Integer, Integer> asks = new TreeMap<>();
-    private String formattedTimestamp;
-    private final SimpleDateFormat dateFormat;
-    private static boolean isHeaderWritten = false;
+    private final TickBook book = new TickBook();
+    // Deltas plus periodic checkpoints, one file per instrument so checkpoints never clear another book;
+    // the old full snapshot CSV is exported offline with
+    // DepthCaptureReader export MarketDepthCapture_<alias>.csv MarketDepthData1.csv
+    private static final String CAPTURE_DIRECTORY = "C:\\Bookmap\\Logs\\";
+    private static final long CHECKPOINT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final int CHECKPOINT_INTERVAL_EVENTS = 50_000;
+    private DepthCaptureWriter capture;
+    // The DOM is logged once a second from the printer's own thread instead of in full on every update
+    private final BookSnapshotPrinter printer = new BookSnapshotPrinter("Depth of Market (DOM)", 10, 1, TimeUnit.SECONDS);
 
-    public DOM() {
-        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT-4")); // Set time zone to EDT (UTC-4)
+    @Override
+    public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
+        // Open the capture once; rows are written by the shared writer thread
+        AsyncCsvWriter csvWriter = AsyncCsvWriter.acquireShared();
+        try {
+            String path = CAPTURE_DIRECTORY + "MarketDepthCapture_" + BinaryCapture.directoryName(alias) + ".csv";
+            capture = new DepthCaptureWriter(csvWriter, path, book,
+                    CHECKPOINT_INTERVAL_NANOS, CHECKPOINT_INTERVAL_EVENTS);
+        } catch (IOException e) {
+            Log.error("Error opening CSV file: " + e.getMessage());
+        }
+        printer.start();
     }
 
     @Override
-    public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
-        // Initialize the file with headers
-        writeDataToFile(null, null);
+    public void stop() {
+        printer.stop();
+        if (capture != null) {
+            capture.close();
+        }
+        AsyncCsvWriter.releaseShared();
     }
 
     @Override
     public void onDepth(boolean isBid, int price, int size) {
         // Update the order book based on the new depth data received
-        TreeMap<Integer, Integer> book = isBid ? bids : asks;
+        book.onDepth(isBid, price, size);
 
-        if (size == 0) {
-            book.remove(price);
-        } else {
-            book.put(price, size);
+        // Record only what changed; checkpoints are written every 10 s or 50,000 events
+        if (capture != null) {
+            capture.onDepth(isBid, price, size);
         }
 
-        // Write the current state of the order book to the file
-        writeDataToFile(bids, asks);
-
-        // Display the DOM
-        displayDOM();
-    }
-
-    private void writeDataToFile(TreeMap<Integer, Integer> bidData, TreeMap<Integer, Integer> askData) {
-        try (FileWriter writer = new FileWriter("C:\\Bookmap\\Logs\\MarketDepthData1.csv", true)) {
-            if (!isHeaderWritten) {
-                writer.append("Price,Bid Size,Ask Size\n");
-                isHeaderWritten = true;
-            }
-    
-            if (bidData != null && askData != null) {
-                TreeSet<Integer> allPrices = new TreeSet<>();
-                allPrices.addAll(bidData.keySet());
-                allPrices.addAll(askData.keySet());
-    
-                for (Integer price : allPrices.descendingSet()) {
-                    int bidSize = bidData.getOrDefault(price, 0);
-                    int askSize = askData.getOrDefault(price, 0);
-    
-                    if (bidSize > 0 || askSize > 0) {
-                        writer.append(String.valueOf(price));
-                        writer.append(',');
-                        writer.append(String.valueOf(bidSize));
-                        writer.append(',');
-                        writer.append(String.valueOf(askSize));
-                        writer.append('\n');
-                    }
-                }
-            }
-        } catch (IOException e) {
-            Log.error("Error writing to CSV file: " + e.getMessage());
-        }
+        // Hand the top of the book to the printer when it asks for a snapshot
+        printer.offer(book);
     }
 
-    private void displayDOM() {
-        Log.info("Depth of Market (DOM)");
-        Log.info("---------------------");
-        Log.info("Price\tBid Size\tAsk Size");
-
-        TreeSet<Integer> allPrices = new TreeSet<>();
-        allPrices.addAll(bids.keySet());
-        allPrices.addAll(asks.keySet());
-
-        for (Integer price : allPrices.descendingSet()) {
-            int bidSize = bids.getOrDefault(price, 0);
-            int askSize = asks.getOrDefault(price, 0);
-            System.out.println(price + "\t" + bidSize + "\t" + askSize);
-        }
-    }
-    
     @Override
     public void onTimestamp(long nanoseconds) {
-        // Update the timestamp and formatted timestamp based on the new timestamp received
-        Date date = new Date(nanoseconds / 1000000); // Convert nanoseconds to milliseconds
-        formattedTimestamp = dateFormat.format(date); // Format date to a readable string format
+        // Deltas are stamped with the latest exchange timestamp
+        if (capture != null) {
+            capture.onTimestamp(nanoseconds);
+        }
     }
 }
@@ -0,0 +1,92 @@
+package day1;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import core.book.TickBook;
+import core.io.BinaryCaptureWriter;
+import velox.api.layer1.annotations.*;
+import velox.api.layer1.common.Log;
+import velox.api.layer1.data.InstrumentInfo;
+import velox.api.layer1.data.TradeInfo;
+import velox.api.layer1.simplified.*;
+
+/**
+ * Records depth, trades and timestamps into the compact binary capture (see core.io.BinaryCapture).
+ * Each attach starts a new session directory under C:\Bookmap\Capture\<alias>\; read it back with
+ * BinaryCaptureReader stats|book <sessionDirectory>.
+ */
+@Layer1SimpleAttachable
+@Layer1StrategyName("Depth Recorder")
+@Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
+public class DepthRecorder implements CustomModuleAdapter, DepthDataListener, TradeDataListener, TimeListener {
+
+    private static final String CAPTURE_ROOT = "C:\\Bookmap\\Capture";
+
+    // Kept only so sync points can carry a full book snapshot
+    private final TickBook book = new TickBook();
+    private BinaryCaptureWriter capture;
+
+    @Override
+    public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
+        try {
+            capture = new BinaryCaptureWriter(Paths.get(CAPTURE_ROOT), alias, book);
+            Log.info("Recording " + alias + " to " + capture.getSessionDirectory());
+        } catch (IOException e) {
+            Log.error("Error opening capture: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (capture != null) {
+            try {
+                capture.close();
+                Log.info("Recorded " + capture.getRecordCount() + " records");
+            } catch (IOException e) {
+                Log.error("Error closing capture: " + e.getMessage());
+            }
+            capture = null;
+        }
+    }
+
+    @Override
+    public void onTimestamp(long nanoseconds) {
+        if (capture != null) {
+            try {
+                capture.onTimestamp(nanoseconds);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    @Override
+    public void onDepth(boolean isBid, int price, int size) {
+        book.onDepth(isBid, price, size);
+        if (capture != null) {
+            try {
+                capture.onDepth(isBid, price, size);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    @Override
+    public void onTrade(double price, int size, TradeInfo tradeInfo) {
+        if (capture != null) {
+            try {
+                capture.onTrade(price, size, tradeInfo.isBidAggressor, tradeInfo.isOtc);
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private void fail(IOException e) {
+        // A capture with a gap is useless for replay, so stop recording instead of skipping records
+        Log.error("Error writing capture, recording stopped: " + e.getMessage());
+        stop();
+    }
+}
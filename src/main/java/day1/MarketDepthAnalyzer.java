@@ -1,10 +1,15 @@
 package day1;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
+import core.book.IndexedTickBook;
+import core.book.LevelThresholdTracker;
+import core.book.TickBook;
+import core.diag.LogSite;
+import core.io.AsyncCsvWriter;
 import velox.api.layer1.annotations.*;
 import velox.api.layer1.common.Log;
 import velox.api.layer1.data.InstrumentInfo;
@@ -15,185 +20,133 @@ import velox.api.layer1.simplified.*;
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
 public class MarketDepthAnalyzer implements CustomModuleAdapter, DepthDataListener, TimeListener  {
 
-    private final TreeMap<Integer, Integer> bids = new TreeMap<>(Comparator.reverseOrder());
-    private final TreeMap<Integer, Integer> asks = new TreeMap<>();
-    private TreeMap<Integer, Integer> bidVolumeClusters = new TreeMap<>(Comparator.reverseOrder());
-    private TreeMap<Integer, Integer> askVolumeClusters = new TreeMap<>();
-    private String formattedTimestamp;
-    private static boolean isHeaderWritten = false;
-    private final SimpleDateFormat dateFormat;
+    private final IndexedTickBook book = new IndexedTickBook();
+    private long timestamp;
+    private static final ZoneId TIME_ZONE = ZoneId.of("GMT-4"); // EDT (UTC-4)
     private static final int VOLUME_CLUSTER_THRESHOLD = 400; // You can change 100 to any value that suits your logic
     private static final int LIQUIDITY_THRESHOLD = 1000; // Adjust this value based on your strategy
-    private static boolean isVolumeClusterHeaderWritten = false;
-    private static boolean isLiquidityPoolHeaderWritten = false;
+    // A level exits a cluster or pool only below this share of the threshold, so it does not flap
+    private static final double EXIT_RATIO = 0.8;
+    // Cluster volume fades with this half-life of exchange time; exits are checked every 100 ms
+    private static final long CLUSTER_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private final LevelThresholdTracker volumeClusters = new LevelThresholdTracker(VOLUME_CLUSTER_THRESHOLD,
+            VOLUME_CLUSTER_THRESHOLD * EXIT_RATIO, CLUSTER_HALF_LIFE_NANOS, SWEEP_INTERVAL_NANOS);
+    private final LevelThresholdTracker liquidityPools = new LevelThresholdTracker(LIQUIDITY_THRESHOLD,
+            LIQUIDITY_THRESHOLD * EXIT_RATIO, 0, SWEEP_INTERVAL_NANOS);
+    private AsyncCsvWriter.CsvFile bestPriceSizeFile;
+    private AsyncCsvWriter.CsvFile volumeClusterFile;
+    private AsyncCsvWriter.CsvFile liquidityPoolFile;
+    private static final int[] OBI_LEVELS = {1, 5, 10, 20, 50};
+    private static final int TOUCH_DISTANCE_TICKS = 10;
+    private final double[] obiVector = new double[OBI_LEVELS.length];
+    // Console lines are rate limited per call site; the CSV files still get every update
+    private static final LogSite TOP_LEVELS_LOG = LogSite.every("MarketDepthAnalyzer.topLevels", 250, TimeUnit.MILLISECONDS);
+    private static final LogSite OBI_LOG = LogSite.every("MarketDepthAnalyzer.obi", 250, TimeUnit.MILLISECONDS);
 
-
-    public MarketDepthAnalyzer() {
-        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        dateFormat.setTimeZone(TimeZone.getTimeZone("GMT-4")); // Set time zone to EDT (UTC-4)
+    @Override
+    public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
+        // Open the files with headers once; rows are written by the shared writer thread
+        AsyncCsvWriter csvWriter = AsyncCsvWriter.acquireShared();
+        StringBuilder bestPriceSizeHeader = new StringBuilder("Timestamp,BestBidPrice,BestBidSize,BestAskPrice,BestAskSize");
+        for (int levels : OBI_LEVELS) {
+            bestPriceSizeHeader.append(",OBI").append(levels);
+        }
+        try {
+            bestPriceSizeFile = csvWriter.open("C:\\Bookmap\\Logs\\bestPriceSize.csv",
+                    bestPriceSizeHeader.toString(), true).withZone(TIME_ZONE);
+            volumeClusterFile = csvWriter.open("C:\\Bookmap\\Logs\\volumeClusterEvents.csv",
+                    "Timestamp,Event,Side,Price,Volume", true).withZone(TIME_ZONE);
+            liquidityPoolFile = csvWriter.open("C:\\Bookmap\\Logs\\liquidityPoolEvents.csv",
+                    "Timestamp,Event,Side,Price,TotalSize", true).withZone(TIME_ZONE);
+        } catch (IOException e) {
+            Log.error("Error opening CSV file: " + e.getMessage());
+        }
+        // Rows are written only when a level enters or exits, not for every level on every update
+        volumeClusters.setListener((isBid, price, value, entered) -> logCrossing(volumeClusterFile, isBid, price, value, entered));
+        liquidityPools.setListener((isBid, price, value, entered) -> logCrossing(liquidityPoolFile, isBid, price, value, entered));
     }
 
     @Override
-    public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
-        // Initialize the file with headers by calling demoBestPriceSize method
-        writeBestPriceSizeToFile(null);
+    public void stop() {
+        for (AsyncCsvWriter.CsvFile file : new AsyncCsvWriter.CsvFile[] {bestPriceSizeFile, volumeClusterFile, liquidityPoolFile}) {
+            if (file != null) {
+                file.close();
+            }
+        }
+        AsyncCsvWriter.releaseShared();
     }
 
     @Override
     public void onDepth(boolean isBid, int price, int size) {
         // Update the order book based on the new depth data received
-        TreeMap<Integer, Integer> book = isBid ? bids : asks;
-        TreeMap<Integer, Integer> volumeClusters = isBid ? bidVolumeClusters : askVolumeClusters;
-
-
-        if (size == 0) {
-            book.remove(price);
-        } else {
-            book.put(price, size);
-        }
-
-        volumeClusters.put(price, volumeClusters.getOrDefault(price, 0) + size);
-
+        book.onDepth(isBid, price, size);
 
         // Calculate the sum of top levels and log it
         VolumePair topLevelsSum = calculateTopLevelsVolume(5); // For example, summing top 5 levels
-        int sumOfTopLevels = isBid ? topLevelsSum.bidVolume() : topLevelsSum.askVolume();
-        Log.info("Sum of top " + (isBid ? "bid" : "ask") + " levels: " + sumOfTopLevels);
-
-        // Update the best price size and calculate the OBI
-        writeBestPriceSizeToFile(topLevelsSum);
+        long sumOfTopLevels = isBid ? topLevelsSum.bidVolume() : topLevelsSum.askVolume();
+        TOP_LEVELS_LOG.info(isBid ? "Sum of top bid levels: {}" : "Sum of top ask levels: {}", sumOfTopLevels);
 
-        // Identify and log volume clusters
-        identifyVolumeClusters(volumeClusters);
-
-        // Identify and log liquidity pools
-        identifyLiquidityPools(isBid ? bidVolumeClusters : askVolumeClusters, isBid);
-    }
-    private void identifyLiquidityPools(TreeMap<Integer, Integer> volumeClusters, boolean isBid) {
-        for (Map.Entry<Integer, Integer> entry : volumeClusters.entrySet()) {
-            int totalSizeAtPrice = getTotalSizeAtPrice(isBid, entry.getKey());
-            if (totalSizeAtPrice >= LIQUIDITY_THRESHOLD) {
-                logLiquidityPool(entry.getKey(), totalSizeAtPrice, isBid);
-            }
-        }
-    }
+        // Update the best price size and calculate the OBI at every depth of OBI_LEVELS
+        writeBestPriceSizeToFile();
 
-    private void logLiquidityPool(int price, int totalSizeAtPrice, boolean isBid) {
-        try (FileWriter writer = new FileWriter("C:\\Bookmap\\Logs\\liquidityPools.csv", true)) {
-            if (!isLiquidityPoolHeaderWritten) {
-                writer.append("Timestamp,Side,Price,TotalSize\n");
-                isLiquidityPoolHeaderWritten = true;
-            }
-            writer.append(formattedTimestamp);
-            writer.append(',');
-            writer.append(isBid ? "Bid" : "Ask");
-            writer.append(',');
-            writer.append(String.valueOf(price));
-            writer.append(',');
-            writer.append(String.valueOf(totalSizeAtPrice));
-            writer.append('\n');
-        } catch (IOException e) {
-            Log.error("Error writing to CSV file: " + e.getMessage());
-        }
-    }
+        // Volume clusters: size reported at a price, accumulated with decay
+        volumeClusters.add(isBid, price, size);
 
-    private int getTotalSizeAtPrice(boolean isBid, int price) {
-        return (isBid ? bidVolumeClusters : askVolumeClusters).getOrDefault(price, 0);
+        // Liquidity pools: size resting at a price
+        liquidityPools.set(isBid, price, size);
     }
 
-    private void identifyVolumeClusters(TreeMap<Integer, Integer> volumeClusters) {
-        for (Map.Entry<Integer, Integer> entry : volumeClusters.entrySet()) {
-            if (entry.getValue() > VOLUME_CLUSTER_THRESHOLD) {
-                // This is a volume cluster
-                logVolumeCluster(entry.getKey(), entry.getValue());
-            }
+    private void logCrossing(AsyncCsvWriter.CsvFile file, boolean isBid, int price, double value, boolean entered) {
+        AsyncCsvWriter.Row row = file == null ? null : file.claim();
+        if (row != null) {
+            row.addTimestamp(timestamp).addText(entered ? "Entered" : "Exited").addText(isBid ? "Bid" : "Ask")
+                    .addLong(price).addLong(Math.round(value)).publish();
         }
     }
 
-    private void logVolumeCluster(int price, int volume) {
-        try (FileWriter writer = new FileWriter("C:\\Bookmap\\Logs\\volumeClusters.csv", true)) {
-            if (!isVolumeClusterHeaderWritten) {
-                writer.append("Timestamp,Price,Volume\n");
-                isVolumeClusterHeaderWritten = true;
-            }
-            writer.append(String.valueOf(formattedTimestamp));
-            writer.append(',');
-            writer.append(String.valueOf(price));
-            writer.append(',');
-            writer.append(String.valueOf(volume));
-            writer.append('\n');
-        } catch (IOException e) {
-            Log.error("Error writing to CSV file: " + e.getMessage());
+    private void writeBestPriceSizeToFile() {
+        int bestBidPrice = book.getBestBid();
+        int bestAskPrice = book.getBestAsk();
+        int bestBidSize = book.getBestBidSize();
+        int bestAskSize = book.getBestAskSize();
+        boolean hasBothSides = bestBidPrice != TickBook.NO_PRICE && bestAskPrice != TickBook.NO_PRICE;
+        if (hasBothSides) {
+            book.fillImbalances(OBI_LEVELS, obiVector);
         }
-    }
-
-    private void writeBestPriceSizeToFile(VolumePair topLevelsSum) {
-        Integer bestBidPrice = bids.isEmpty() ? null : bids.firstKey();
-        Integer bestAskPrice = asks.isEmpty() ? null : asks.firstKey();
-        Integer bestBidSize = bids.isEmpty() ? null : bids.firstEntry().getValue();
-        Integer bestAskSize = asks.isEmpty() ? null : asks.firstEntry().getValue();
 
-        try (FileWriter writer = new FileWriter("C:\\Bookmap\\Logs\\bestPriceSize.csv", true)) {
-            if (!isHeaderWritten) {
-                writer.append("Timestamp,BestBidPrice,BestBidSize,BestAskPrice,BestAskSize\n");
-                isHeaderWritten = true;
+        AsyncCsvWriter.Row row = hasBothSides && bestPriceSizeFile != null ? bestPriceSizeFile.claim() : null;
+        if (row != null) {
+            row.addTimestamp(timestamp)
+                    .addLong(bestBidPrice).addLong(bestBidSize)
+                    .addLong(bestAskPrice).addLong(bestAskSize);
+            for (double obi : obiVector) {
+                row.addDouble(obi);
             }
-            if (bestBidPrice != null && bestAskPrice != null) {
-                writer.append(String.valueOf(formattedTimestamp));
-                writer.append(',');
-                writer.append(String.valueOf(bestBidPrice));
-                writer.append(',');
-                writer.append(String.valueOf(bestBidSize));
-                writer.append(',');
-                writer.append(String.valueOf(bestAskPrice));
-                writer.append(',');
-                writer.append(String.valueOf(bestAskSize));
-                writer.append('\n');
-            }
-        } catch (IOException e) {
-            Log.error("Error writing to CSV file: " + e.getMessage());
+            row.publish();
         }
 
-        if (topLevelsSum != null) {
-            // Now use the passed topLevelsSum variable to calculate the OBI
-            int bidVolume = topLevelsSum.bidVolume();
-            int askVolume = topLevelsSum.askVolume();
-
-            double obi = (double)(bidVolume - askVolume) / (bidVolume + askVolume);
-            Log.info("Order Book Imbalance (OBI): " + obi);
+        if (hasBothSides && OBI_LOG.shouldLog()) {
+            OBI_LOG.emit("Order Book Imbalance (OBI) at " + Arrays.toString(OBI_LEVELS) + " levels: "
+                    + Arrays.toString(obiVector) + ", volume within " + TOUCH_DISTANCE_TICKS + " ticks of the touch: bid "
+                    + book.getVolumeWithinTicks(true, TOUCH_DISTANCE_TICKS) + ", ask "
+                    + book.getVolumeWithinTicks(false, TOUCH_DISTANCE_TICKS));
         }
     }
 
     @Override
     public void onTimestamp(long nanoseconds) {
-        // Update the timestamp and formatted timestamp based on the new timestamp received
-        Date date = new Date(nanoseconds / 1000000); // Convert nanoseconds to milliseconds
-        formattedTimestamp = dateFormat.format(date); // Format date to a readable string format
+        // Keep the raw timestamp; the CSV writer thread formats it
+        timestamp = nanoseconds;
+        volumeClusters.onTimestamp(nanoseconds);
+        liquidityPools.onTimestamp(nanoseconds);
     }
 
-    public record VolumePair(int bidVolume, int askVolume){}
+    public record VolumePair(long bidVolume, long askVolume){}
 
     private VolumePair calculateTopLevelsVolume(int numLevelsToSum) {
-        // Calculate the sum of the top bid and ask levels and return a VolumePair object holding this data
-        int sizeOfTopBidLevels = 0;
-        int sizeOfTopAskLevels = 0;
-
-        int bidLevelsCount = 0;
-        for (Integer size : bids.values()) {
-            if (bidLevelsCount++ >= numLevelsToSum) {
-                break;
-            }
-            sizeOfTopBidLevels += size;
-        }
-
-        int askLevelsCount = 0;
-        for (Integer size : asks.values()) {
-            if (askLevelsCount++ >= numLevelsToSum) {
-                break;
-            }
-            sizeOfTopAskLevels += size;
-        }
-
-        return new VolumePair(sizeOfTopBidLevels, sizeOfTopAskLevels);
+        // Sum of the top bid and ask levels, answered by the book's cumulative depth index in O(log n)
+        return new VolumePair(book.getTopLevelsVolume(true, numLevelsToSum),
+                book.getTopLevelsVolume(false, numLevelsToSum));
     }
 }
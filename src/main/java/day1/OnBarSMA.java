@@ -1,19 +1,18 @@
 package day1;
 
+import core.bars.BarEngine;
+import core.bars.BarSeries;
+import core.indicators.CrossoverSignal;
+import core.indicators.SMA;
+import core.io.AsyncCsvWriter;
+import core.orders.OrderTracker;
 import velox.api.layer1.annotations.*;
 import velox.api.layer1.common.Log;
 import velox.api.layer1.data.*;
-import velox.api.layer1.layers.utils.OrderBook;
 import velox.api.layer1.messages.indicators.Layer1ApiUserMessageModifyIndicator.GraphType;
 import velox.api.layer1.simplified.*;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.awt.*;
 
 @Layer1TradingStrategy
@@ -21,20 +20,26 @@ import java.awt.*;
 @Layer1StrategyName("onBar SMA ID")
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
 
-public class OnBarSMA implements CustomModule, BarDataListener, OrdersListener {
+public class OnBarSMA implements CustomModule, OrdersListener, TradeDataListener, TimeListener, BboListener {
 
-    private static final double INITIAL_PREVIOUS_CLOSE = -1.0;
+    private static final long BAR_INTERVAL = Intervals.INTERVAL_1_MINUTE;
+    // BAR_CLOSE checks the crossover when a bar completes, INTRABAR on every trade of the forming bar
+    private static final CrossoverSignal.Mode SIGNAL_MODE = CrossoverSignal.Mode.BAR_CLOSE;
+    private static final CrossoverSignal.Confirmation CONFIRMATION = CrossoverSignal.Confirmation.CLOSE_THROUGH;
+    private static final int CONFIRMATION_TICKS = 2; // Used by TICKS_BEYOND
     private static final int SMA_PERIOD = 14;
     private Indicator closeIndicator;
     private Indicator smaIndicator;
     private double pips;
+    private final BarEngine bars = new BarEngine();
+    private final CrossoverSignal crossover = new CrossoverSignal(SIGNAL_MODE, CONFIRMATION, CONFIRMATION_TICKS);
+    private BarSeries barSeries;
     private SMA sma;
-    private double previousClose = INITIAL_PREVIOUS_CLOSE;
-    private Double previousSMA = null;
     private Api api;
     private String alias;
-    private int currentPosition = 0;
+    private OrderTracker orders;
     private static final String EXECUTED_CSV_FILE_PATH = "C:\\Bookmap\\Trading_Logs\\Order_Executed_log.csv";
+    private AsyncCsvWriter.CsvFile executedCsvFile;
 
     @Override
     public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
@@ -43,96 +48,114 @@ public class OnBarSMA implements CustomModule, BarDataListener, OrdersListener {
         smaIndicator = api.registerIndicator("SMA", GraphType.PRIMARY);
         smaIndicator.setColor(Color.BLUE);
         pips = info.pips;
+        orders = new OrderTracker(info.pips);
+        barSeries = bars.timeBars(BAR_INTERVAL);
+        barSeries.addListener(this::onBar);
         this.alias = alias;
         this.api = api;
         sma = new SMA(SMA_PERIOD);
 
-        try (PrintWriter pw = new PrintWriter(new FileWriter(EXECUTED_CSV_FILE_PATH))) {
-            pw.println("Order ID,Price,Time,Execution ID");
+        try {
+            executedCsvFile = AsyncCsvWriter.acquireShared()
+                    .open(EXECUTED_CSV_FILE_PATH, "Order ID,Price,Time,Execution ID", false)
+                    .withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK);
         } catch (IOException e) {
             Log.info("Error initializing CSV file", e);
         }
     }
 
-    private String convertTimestampToHumanReadable(long timestampInNanoseconds) {
-        long timestampInMilliseconds = timestampInNanoseconds / 1_000_000;
-        Instant instant = Instant.ofEpochMilli(timestampInMilliseconds);
-        LocalDateTime dateTime = LocalDateTime.ofInstant(instant, ZoneId.of("America/New_York"));
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
-        return dateTime.format(formatter);
-    }
-
     @Override
     public void stop() {
         Log.info("Stopping the OnBarSMA strategy...");
+        if (orders != null) {
+            Log.info("Position " + orders.getPosition() + ", realized PnL " + orders.getRealizedPnl()
+                    + ", unrealized PnL " + orders.getUnrealizedPnl());
+        }
+        if (executedCsvFile != null) {
+            executedCsvFile.close();
+        }
+        AsyncCsvWriter.releaseShared();
     }
 
-    @Override
-    public void onBar(OrderBook orderBook, Bar bar) {
-        double closePrice = bar.getClose();
+    private void onBar(BarSeries series) {
+        double closePrice = series.getClose(0);
+        sma.update(closePrice);
         updateIndicators(closePrice);
-        checkForCrossoverSignals(closePrice);
-        updatePreviousValues(closePrice);
+        if (!crossover.isIntrabar()) {
+            checkForCrossoverSignals(closePrice, sma.value());
+        }
+        orders.removeDone();
     }
 
     private void updateIndicators(double closePrice) {
         closeIndicator.addPoint(closePrice);
-        Double smaValue = sma.calculate(closePrice);
-        if (smaValue != null) {
-            smaIndicator.addPoint(smaValue);
+        if (sma.isReady()) {
+            smaIndicator.addPoint(sma.value());
         }
     }
 
-    private void checkForCrossoverSignals(double closePrice) {
-        Double smaValue = sma.calculate(closePrice);
-        if (smaValue != null && previousClose != INITIAL_PREVIOUS_CLOSE && previousSMA != null) {
-            if (closePrice > smaValue && previousClose <= previousSMA) {
-                Log.info("Buy Signal at " + closePrice * pips);
-                if (currentPosition <= 0) {
-                    placeOrder(true, closePrice, 1); // Place a buy order
-                    currentPosition = 1; // Update the current position to long
-                }
-            } else if (closePrice < smaValue && previousClose >= previousSMA) {
-                Log.info("Sell Signal at " + closePrice * pips);
-                if (currentPosition >= 0) {
-                    placeOrder(false, closePrice, 1); // Place a sell order
-                    currentPosition = -1; // Update the current position to short
-                }
+    private void checkForCrossoverSignals(double price, double smaValue) {
+        int signal = crossover.evaluate(price, smaValue);
+        if (signal == CrossoverSignal.UP) {
+            Log.info("Buy Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition < 1) {
+                placeOrder(true, price, 1 - pendingPosition); // Reverse to one contract long
+            }
+        } else if (signal == CrossoverSignal.DOWN) {
+            Log.info("Sell Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition > -1) {
+                placeOrder(false, price, 1 + pendingPosition); // Reverse to one contract short
             }
         }
     }
 
-    private void updatePreviousValues(double closePrice) {
-        previousClose = closePrice;
-        previousSMA = sma.calculate(closePrice);
-    }
-
     private void placeOrder(boolean isBuy, double price, int quantity) {
         try {
             SimpleOrderSendParametersBuilder builder = new SimpleOrderSendParametersBuilder(alias, isBuy, quantity);
             builder.setDuration(OrderDuration.IOC);
             SimpleOrderSendParameters order = builder.build();
+            orders.onOrderSent(order);
             api.sendOrder(order);
         } catch (Exception e) {
             Log.info("Error placing order", e);
         }
     }
 
+    @Override
+    public void onTimestamp(long nanoseconds) {
+        bars.onTimestamp(nanoseconds);
+    }
+
+    @Override
+    public void onTrade(double price, int size, TradeInfo tradeInfo) {
+        bars.onTrade(price, size, tradeInfo.isBidAggressor);
+        if (crossover.isIntrabar()) {
+            // The SMA as if the forming bar closed at this trade
+            checkForCrossoverSignals(price, barSeries.isForming() ? sma.peek(price) : sma.value());
+        }
+    }
+
     @Override
     public void onOrderExecuted(ExecutionInfo executionInfo) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(EXECUTED_CSV_FILE_PATH, true))) {
-            String formattedTime = convertTimestampToHumanReadable(executionInfo.time);
-            pw.println(executionInfo.orderId + "," + executionInfo.price + "," + formattedTime + "," +
-                    executionInfo.executionId);
-        } catch (IOException e) {
-            Log.info("Error writing to CSV file", e);
+        orders.onOrderExecuted(executionInfo);
+        // The time is formatted as America/New_York by the writer thread
+        AsyncCsvWriter.Row row = executedCsvFile == null ? null : executedCsvFile.claim();
+        if (row != null) {
+            row.addText(executionInfo.orderId).addDouble(executionInfo.price)
+                    .addTimestamp(executionInfo.time).addText(executionInfo.executionId)
+                    .publish();
         }
     }
 
     @Override
-    public void onOrderUpdated(OrderInfoUpdate orderInfoUpdate){}
+    public void onOrderUpdated(OrderInfoUpdate orderInfoUpdate) {
+        orders.onOrderUpdated(orderInfoUpdate);
+    }
+
     @Override
-    public long getInterval() {
-        return Intervals.INTERVAL_1_MINUTE;
+    public void onBbo(int priceBid, int sizeBid, int priceAsk, int sizeAsk) {
+        orders.onBbo(priceBid, sizeBid, priceAsk, sizeAsk);
     }
 }
@@ -1,19 +1,19 @@
 package day1;
 
+import core.bars.BarEngine;
+import core.bars.BarSeries;
+import core.indicators.CrossoverSignal;
+import core.indicators.SessionAnchor;
+import core.indicators.VWAP;
+import core.io.AsyncCsvWriter;
+import core.orders.OrderTracker;
 import velox.api.layer1.annotations.*;
 import velox.api.layer1.common.Log;
 import velox.api.layer1.data.*;
-import velox.api.layer1.layers.utils.OrderBook;
 import velox.api.layer1.messages.indicators.Layer1ApiUserMessageModifyIndicator.GraphType;
 import velox.api.layer1.simplified.*;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
 import java.awt.*;
 
 @Layer1TradingStrategy
@@ -21,122 +21,162 @@ import java.awt.*;
 @Layer1StrategyName("onBar VWAP ID")
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
 
-public class OnBarVWAP implements CustomModule, BarDataListener, OrdersListener {
+public class OnBarVWAP implements CustomModule, OrdersListener, TradeDataListener, TimeListener, BboListener {
 
-    private static final double INITIAL_PREVIOUS_CLOSE = -1.0;
+    private static final long BAR_INTERVAL = Intervals.INTERVAL_1_MINUTE;
+    // BAR_CLOSE checks the crossover when a bar completes, INTRABAR on every trade of the forming bar
+    private static final CrossoverSignal.Mode SIGNAL_MODE = CrossoverSignal.Mode.BAR_CLOSE;
+    private static final CrossoverSignal.Confirmation CONFIRMATION = CrossoverSignal.Confirmation.CLOSE_THROUGH;
+    private static final int CONFIRMATION_TICKS = 2; // Used by TICKS_BEYOND
+    private static final int BAND_SIGMAS = 2;
     private Indicator closeIndicator;
     private Indicator vwapIndicator;
+    private Indicator upperBandIndicator;
+    private Indicator lowerBandIndicator;
     private double pips;
-    private double cumulativePriceVolume = 0.0;
-    private double cumulativeVolume = 0.0;
-    private double vwap = 0.0;
-    private double previousClose = INITIAL_PREVIOUS_CLOSE;
+    private final BarEngine bars = new BarEngine();
+    private final CrossoverSignal crossover = new CrossoverSignal(SIGNAL_MODE, CONFIRMATION, CONFIRMATION_TICKS);
+    private final VWAP sessionVwap = new VWAP(SessionAnchor.rthOpen());
+    // NaN from a session reset until the first bar of the new session
+    private double vwap = Double.NaN;
+    private int sessionResets = 0;
     private Api api;
     private String alias;
-    private int currentPosition = 0;
+    private OrderTracker orders;
     private static final String EXECUTED_CSV_FILE_PATH = "C:\\Bookmap\\Trading_Logs\\Order_Executed_log.csv";
+    private AsyncCsvWriter.CsvFile executedCsvFile;
 
     @Override
     public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
         closeIndicator = api.registerIndicator("Close", GraphType.PRIMARY);
         closeIndicator.setColor(Color.MAGENTA);
-        vwapIndicator = api.registerIndicator("SMA", GraphType.PRIMARY);
+        vwapIndicator = api.registerIndicator("VWAP", GraphType.PRIMARY);
         vwapIndicator.setColor(Color.BLUE);
+        upperBandIndicator = api.registerIndicator("VWAP +" + BAND_SIGMAS + " SD", GraphType.PRIMARY);
+        upperBandIndicator.setColor(Color.GRAY);
+        lowerBandIndicator = api.registerIndicator("VWAP -" + BAND_SIGMAS + " SD", GraphType.PRIMARY);
+        lowerBandIndicator.setColor(Color.GRAY);
         pips = info.pips;
+        orders = new OrderTracker(info.pips);
+        bars.timeBars(BAR_INTERVAL).addListener(this::onBar);
         this.alias = alias;
         this.api = api;
 
 
-        try (PrintWriter pw = new PrintWriter(new FileWriter(EXECUTED_CSV_FILE_PATH))) {
-            pw.println("Order ID,Price,Time,Execution ID");
+        try {
+            executedCsvFile = AsyncCsvWriter.acquireShared()
+                    .open(EXECUTED_CSV_FILE_PATH, "Order ID,Price,Time,Execution ID", false)
+                    .withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK);
         } catch (IOException e) {
             Log.info("Error initializing CSV file", e);
         }
     }
 
-    private String convertTimestampToHumanReadable(long timestampInNanoseconds) {
-        long timestampInMilliseconds = timestampInNanoseconds / 1_000_000;
-        Instant instant = Instant.ofEpochMilli(timestampInMilliseconds);
-        LocalDateTime dateTime = LocalDateTime.ofInstant(instant, ZoneId.of("America/New_York"));
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
-        return dateTime.format(formatter);
-    }
-
     @Override
     public void stop() {
-        Log.info("Stopping the OnBarSMA strategy...");
+        Log.info("Stopping the OnBarVWAP strategy...");
+        if (orders != null) {
+            Log.info("Position " + orders.getPosition() + ", realized PnL " + orders.getRealizedPnl()
+                    + ", unrealized PnL " + orders.getUnrealizedPnl());
+        }
+        if (executedCsvFile != null) {
+            executedCsvFile.close();
+        }
+        AsyncCsvWriter.releaseShared();
     }
 
-    @Override
-    public void onBar(OrderBook orderBook, Bar bar) {
-        double closePrice = bar.getClose();
-        double volume = bar.getVolumeTotal();
-
-        cumulativePriceVolume += closePrice * volume;
-        cumulativeVolume += volume;
-
-        if (cumulativeVolume != 0) {
-            vwap = cumulativePriceVolume / cumulativeVolume;
+    private void onBar(BarSeries series) {
+        double closePrice = series.getClose(0);
+        if (sessionVwap.isReady()) {
+            vwap = sessionVwap.value();
         }
 
         updateIndicators(closePrice);
-        checkForCrossoverSignals(closePrice);
-        updatePreviousValues(closePrice);
+        if (!crossover.isIntrabar() && sessionVwap.isReady()) {
+            checkForCrossoverSignals(closePrice, vwap);
+        }
+        orders.removeDone();
     }
 
     private void updateIndicators(double closePrice) {
         closeIndicator.addPoint(closePrice);
         vwapIndicator.addPoint(vwap);
+        if (sessionVwap.isReady()) {
+            upperBandIndicator.addPoint(sessionVwap.getBand(BAND_SIGMAS));
+            lowerBandIndicator.addPoint(sessionVwap.getBand(-BAND_SIGMAS));
+        }
     }
 
-    private void checkForCrossoverSignals(double closePrice) {
-        if (previousClose != INITIAL_PREVIOUS_CLOSE) {
-            if (closePrice > vwap && previousClose <= vwap) {
-                Log.info("Buy Signal at " + closePrice * pips);
-                if (currentPosition <= 0) {
-                    placeOrder(true, closePrice, 1); // Place a buy order
-                    currentPosition = 1; // Update the current position to long
-                }
-            } else if (closePrice < vwap && previousClose >= vwap) {
-                Log.info("Sell Signal at " + closePrice * pips);
-                if (currentPosition >= 0) {
-                    placeOrder(false, closePrice, 1); // Place a sell order
-                    currentPosition = -1; // Update the current position to short
-                }
+    private void checkForCrossoverSignals(double price, double vwapValue) {
+        int signal = crossover.evaluate(price, vwapValue);
+        if (signal == CrossoverSignal.UP) {
+            Log.info("Buy Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition < 1) {
+                placeOrder(true, price, 1 - pendingPosition); // Reverse to one contract long
+            }
+        } else if (signal == CrossoverSignal.DOWN) {
+            Log.info("Sell Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition > -1) {
+                placeOrder(false, price, 1 + pendingPosition); // Reverse to one contract short
             }
         }
     }
 
-    private void updatePreviousValues(double closePrice) {
-        previousClose = closePrice;
-    }
-
     private void placeOrder(boolean isBuy, double price, int quantity) {
         try {
             SimpleOrderSendParametersBuilder builder = new SimpleOrderSendParametersBuilder(alias, isBuy, quantity);
             builder.setDuration(OrderDuration.IOC);
             SimpleOrderSendParameters order = builder.build();
+            orders.onOrderSent(order);
             api.sendOrder(order);
         } catch (Exception e) {
             Log.info("Error placing order", e);
         }
     }
 
+    @Override
+    public void onTimestamp(long nanoseconds) {
+        // The bar that ends here still belongs to the session the VWAP may be about to reset
+        bars.onTimestamp(nanoseconds);
+        sessionVwap.onTimestamp(nanoseconds);
+        if (sessionVwap.getResetCount() != sessionResets) {
+            // The last session's VWAP and crossover state must not produce signals in the new one
+            sessionResets = sessionVwap.getResetCount();
+            vwap = Double.NaN;
+            crossover.reset();
+        }
+    }
+
+    @Override
+    public void onTrade(double price, int size, TradeInfo tradeInfo) {
+        sessionVwap.onTrade(price, size);
+        bars.onTrade(price, size, tradeInfo.isBidAggressor);
+        if (crossover.isIntrabar()) {
+            checkForCrossoverSignals(price, sessionVwap.value());
+        }
+    }
+
     @Override
     public void onOrderExecuted(ExecutionInfo executionInfo) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(EXECUTED_CSV_FILE_PATH, true))) {
-            String formattedTime = convertTimestampToHumanReadable(executionInfo.time);
-            pw.println(executionInfo.orderId + "," + executionInfo.price + "," + formattedTime + "," +
-                    executionInfo.executionId);
-        } catch (IOException e) {
-            Log.info("Error writing to CSV file", e);
+        orders.onOrderExecuted(executionInfo);
+        // The time is formatted as America/New_York by the writer thread
+        AsyncCsvWriter.Row row = executedCsvFile == null ? null : executedCsvFile.claim();
+        if (row != null) {
+            row.addText(executionInfo.orderId).addDouble(executionInfo.price)
+                    .addTimestamp(executionInfo.time).addText(executionInfo.executionId)
+                    .publish();
         }
     }
 
     @Override
-    public void onOrderUpdated(OrderInfoUpdate orderInfoUpdate){}
+    public void onOrderUpdated(OrderInfoUpdate orderInfoUpdate) {
+        orders.onOrderUpdated(orderInfoUpdate);
+    }
+
     @Override
-    public long getInterval() {
-        return Intervals.INTERVAL_1_MINUTE;
+    public void onBbo(int priceBid, int sizeBid, int priceAsk, int sizeAsk) {
+        orders.onBbo(priceBid, sizeBid, priceAsk, sizeAsk);
     }
 }
@@ -1,55 +1,66 @@
 package day1;
 
+import core.bars.BarEngine;
+import core.bars.BarSeries;
+import core.indicators.ATR;
+import core.indicators.CrossoverSignal;
+import core.indicators.SessionAnchor;
+import core.indicators.VWAP;
+import core.io.AsyncCsvWriter;
+import core.orders.OrderTracker;
 import velox.api.layer1.annotations.*;
 import velox.api.layer1.common.Log;
 import velox.api.layer1.data.*;
-import velox.api.layer1.layers.utils.OrderBook;
 import velox.api.layer1.messages.indicators.Layer1ApiUserMessageModifyIndicator.GraphType;
 import velox.api.layer1.simplified.*;
 
 import java.awt.*;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.time.Instant;
-import java.time.LocalDateTime;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import java.util.LinkedList;
 
 @Layer1TradingStrategy
 @Layer1SimpleAttachable
 @Layer1StrategyName("onBar VWAP ATR")
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
-public class OnBarVwapATR implements CustomModule, BarDataListener, OrdersListener {
-
-    private static final double INITIAL_PREVIOUS_CLOSE = -1.0;
+public class OnBarVwapATR implements CustomModule, OrdersListener, TradeDataListener, TimeListener, BboListener {
+
+    private static final long BAR_INTERVAL = Intervals.INTERVAL_1_MINUTE;
+    // BAR_CLOSE checks the crossover when a bar completes, INTRABAR on every trade of the forming bar
+    private static final CrossoverSignal.Mode SIGNAL_MODE = CrossoverSignal.Mode.BAR_CLOSE;
+    private static final CrossoverSignal.Confirmation CONFIRMATION = CrossoverSignal.Confirmation.CLOSE_THROUGH;
+    private static final int CONFIRMATION_TICKS = 2; // Used by TICKS_BEYOND
+    // PREVIOUS_PRICE is the original rule: the close before the band breakout is on the other side of the VWAP
+    private static final CrossoverSignal.Arming ARMING = CrossoverSignal.Arming.PREVIOUS_PRICE;
     private static final int ATR_PERIOD = 14;
     private static final double ATR_MULTIPLIER = 2.0;
     private static final String EXECUTED_CSV_FILE_PATH = "C:\\Bookmap\\Trading_Logs\\Order_Executed_log.csv";
+    private AsyncCsvWriter.CsvFile executedCsvFile;
 
     private Indicator closeIndicator;
     private Indicator vwapIndicator;
     private Indicator atrIndicator;
     private double pips;
-    private double cumulativePriceVolume = 0.0;
-    private double cumulativeVolume = 0.0;
-    private double vwap = 0.0;
-    private double previousClose = INITIAL_PREVIOUS_CLOSE;
+    private final BarEngine bars = new BarEngine();
+    private final CrossoverSignal crossover = new CrossoverSignal(SIGNAL_MODE, CONFIRMATION, CONFIRMATION_TICKS)
+            .withArming(ARMING);
+    private BarSeries barSeries;
+    private final VWAP sessionVwap = new VWAP(SessionAnchor.rthOpen());
+    // NaN from a session reset until the first bar of the new session
+    private double vwap = Double.NaN;
+    private int sessionResets = 0;
     private double atr = 0.0;
-    private double previousHigh = -1.0;
-    private double previousLow = -1.0;
-    private LinkedList<Double> trueRanges = new LinkedList<>();
-    private double cumulativeTrueRange = 0.0;
+    private final ATR averageTrueRange = new ATR(ATR_PERIOD);
     private Api api;
     private String alias;
-    private int currentPosition = 0;
+    private OrderTracker orders;
 
     @Override
     public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
         this.alias = alias;
         this.api = api;
         pips = info.pips;
+        orders = new OrderTracker(info.pips);
+        barSeries = bars.timeBars(BAR_INTERVAL);
+        barSeries.addListener(this::onBar);
 
         closeIndicator = api.registerIndicator("Close", GraphType.PRIMARY);
         closeIndicator.setColor(Color.MAGENTA);
@@ -64,72 +75,44 @@ public class OnBarVwapATR implements CustomModule, BarDataListener, OrdersListen
     }
 
     private void initializeCSVFile() {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(EXECUTED_CSV_FILE_PATH))) {
-            pw.println("Order ID,Price,Time,Execution ID");
+        try {
+            executedCsvFile = AsyncCsvWriter.acquireShared()
+                    .open(EXECUTED_CSV_FILE_PATH, "Order ID,Price,Time,Execution ID", false)
+                    .withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK);
         } catch (IOException e) {
             Log.info("Error initializing CSV file", e);
         }
     }
 
-    private String convertTimestampToHumanReadable(long timestampInNanoseconds) {
-        long timestampInMilliseconds = timestampInNanoseconds / 1_000_000;
-        Instant instant = Instant.ofEpochMilli(timestampInMilliseconds);
-        LocalDateTime dateTime = LocalDateTime.ofInstant(instant, ZoneId.of("America/New_York"));
-        DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
-        return dateTime.format(formatter);
-    }
-
     @Override
     public void stop() {
         Log.info("Stopping the OnBarVwapATR strategy...");
-    }
-
-    @Override
-    public void onBar(OrderBook orderBook, Bar bar) {
-        double closePrice = bar.getClose();
-        double volume = bar.getVolumeTotal();
-
-        cumulativePriceVolume += closePrice * volume;
-        cumulativeVolume += volume;
-
-        if (cumulativeVolume != 0) {
-            vwap = cumulativePriceVolume / cumulativeVolume;
+        if (orders != null) {
+            Log.info("Position " + orders.getPosition() + ", realized PnL " + orders.getRealizedPnl()
+                    + ", unrealized PnL " + orders.getUnrealizedPnl());
         }
+        if (executedCsvFile != null) {
+            executedCsvFile.close();
+        }
+        AsyncCsvWriter.releaseShared();
+    }
 
-        double high = bar.getHigh();
-        double low = bar.getLow();
-        double trueRange = calculateTrueRange(high, low, previousClose);
-
-        if (trueRanges.size() >= ATR_PERIOD) {
-            cumulativeTrueRange -= trueRanges.removeFirst();
+    private void onBar(BarSeries series) {
+        double closePrice = series.getClose(0);
+        if (sessionVwap.isReady()) {
+            vwap = sessionVwap.value();
         }
-        trueRanges.add(trueRange);
-        cumulativeTrueRange += trueRange;
 
-        if (trueRanges.size() >= ATR_PERIOD) {
-            atr = cumulativeTrueRange / ATR_PERIOD;
+        averageTrueRange.update(series.getHigh(0), series.getLow(0), closePrice);
+        if (averageTrueRange.isReady()) {
+            atr = averageTrueRange.value();
         }
 
         updateIndicators(closePrice);
-        checkForCrossoverSignals(closePrice);
-        updatePreviousValues(closePrice);
-
-        previousHigh = high;
-        previousLow = low;
-    }
-
-
-    /**
-     * Calculates the true range which is the greatest of the following:
-     * - Current high less the current low
-     * - The absolute value of the current high less the previous close
-     * - The absolute value of the current low less the previous close
-     */
-    private double calculateTrueRange(double high, double low, double previousClose) {
-        if (previousClose == INITIAL_PREVIOUS_CLOSE) {
-            return high - low;
+        if (!crossover.isIntrabar() && sessionVwap.isReady()) {
+            checkForCrossoverSignals(closePrice, vwap, atr);
         }
-        return Math.max(high - low, Math.max(Math.abs(high - previousClose), Math.abs(low - previousClose)));
+        orders.removeDone();
     }
 
     private void updateIndicators(double closePrice) {
@@ -139,57 +122,82 @@ public class OnBarVwapATR implements CustomModule, BarDataListener, OrdersListen
 
     }
 
-    private void checkForCrossoverSignals(double closePrice) {
-        double riskManagementPrice = ATR_MULTIPLIER * atr * pips;
-
-        if (previousClose != INITIAL_PREVIOUS_CLOSE) {
-            if (closePrice > vwap + riskManagementPrice && previousClose <= vwap) {
-                Log.info("Buy Signal at " + closePrice * pips);
-                if (currentPosition <= 0) {
-                    placeOrder(true, closePrice, 1); // Place a buy order
-                    currentPosition = 1; // Update the current position to long
-                }
-            } else if (closePrice < vwap - riskManagementPrice && previousClose >= vwap) {
-                Log.info("Sell Signal at " + closePrice * pips);
-                if (currentPosition >= 0) {
-                    placeOrder(false, closePrice, 1); // Place a sell order
-                    currentPosition = -1; // Update the current position to short
-                }
+    private void checkForCrossoverSignals(double price, double vwapValue, double atrValue) {
+        double riskManagementPrice = ATR_MULTIPLIER * atrValue * pips;
+        int signal = crossover.evaluate(price, vwapValue, riskManagementPrice);
+        if (signal == CrossoverSignal.UP) {
+            Log.info("Buy Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition < 1) {
+                placeOrder(true, price, 1 - pendingPosition); // Reverse to one contract long
+            }
+        } else if (signal == CrossoverSignal.DOWN) {
+            Log.info("Sell Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition > -1) {
+                placeOrder(false, price, 1 + pendingPosition); // Reverse to one contract short
             }
         }
     }
 
-    private void updatePreviousValues(double closePrice) {
-        previousClose = closePrice;
-    }
-
     private void placeOrder(boolean isBuy, double price, int quantity) {
         try {
             SimpleOrderSendParametersBuilder builder = new SimpleOrderSendParametersBuilder(alias, isBuy, quantity);
             builder.setDuration(OrderDuration.IOC);
             SimpleOrderSendParameters order = builder.build();
+            orders.onOrderSent(order);
             api.sendOrder(order);
         } catch (Exception e) {
             Log.info("Error placing order", e);
         }
     }
 
+    @Override
+    public void onTimestamp(long nanoseconds) {
+        // The bar that ends here still belongs to the session the VWAP may be about to reset
+        bars.onTimestamp(nanoseconds);
+        sessionVwap.onTimestamp(nanoseconds);
+        if (sessionVwap.getResetCount() != sessionResets) {
+            // The last session's VWAP and crossover state must not produce signals in the new one
+            sessionResets = sessionVwap.getResetCount();
+            vwap = Double.NaN;
+            crossover.reset();
+        }
+    }
+
+    @Override
+    public void onTrade(double price, int size, TradeInfo tradeInfo) {
+        sessionVwap.onTrade(price, size);
+        bars.onTrade(price, size, tradeInfo.isBidAggressor);
+        if (crossover.isIntrabar()) {
+            // The ATR as if the forming bar closed at this trade
+            double atrValue = barSeries.isForming()
+                    ? averageTrueRange.peek(barSeries.getCurrentHigh(), barSeries.getCurrentLow(), price)
+                    : averageTrueRange.value();
+            checkForCrossoverSignals(price, sessionVwap.value(), Double.isNaN(atrValue) ? 0 : atrValue);
+        }
+    }
+
     @Override
     public void onOrderExecuted(ExecutionInfo executionInfo) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(EXECUTED_CSV_FILE_PATH, true))) {
-            String formattedTime = convertTimestampToHumanReadable(executionInfo.time);
-            pw.println(executionInfo.orderId + "," + executionInfo.price + "," + formattedTime + "," +
-                    executionInfo.executionId);
-        } catch (IOException e) {
-            Log.info("Error writing to CSV file", e);
+        orders.onOrderExecuted(executionInfo);
+        // The time is formatted as America/New_York by the writer thread
+        AsyncCsvWriter.Row row = executedCsvFile == null ? null : executedCsvFile.claim();
+        if (row != null) {
+            row.addText(executionInfo.orderId).addDouble(executionInfo.price)
+                    .addTimestamp(executionInfo.time).addText(executionInfo.executionId)
+                    .publish();
         }
     }
 
     @Override
-    public void onOrderUpdated(OrderInfoUpdate orderInfoUpdate) {}
+    public void onOrderUpdated(OrderInfoUpdate orderInfoUpdate) {
+        orders.onOrderUpdated(orderInfoUpdate);
+    }
 
     @Override
-    public long getInterval() {
-        return Intervals.INTERVAL_1_MINUTE;
+    public void onBbo(int priceBid, int sizeBid, int priceAsk, int sizeAsk) {
+        orders.onBbo(priceBid, sizeBid, priceAsk, sizeAsk);
     }
+
 }
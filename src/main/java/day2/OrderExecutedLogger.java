@@ -1,22 +1,22 @@
 package day2;
 
-import velox.api.layer1.common.Log;
+import core.io.AsyncCsvWriter;
 import velox.api.layer1.data.ExecutionInfo;
 
-import java.io.FileWriter;
-import java.io.IOException;
-import java.io.PrintWriter;
-
 public class OrderExecutedLogger {
 
-    private static final String CSV_FILE_PATH = "C:\\Bookmap\\Logs\\Nasser2_log.csv";
+    private final AsyncCsvWriter.CsvFile csvFile;
+
+    public OrderExecutedLogger(AsyncCsvWriter.CsvFile csvFile) {
+        this.csvFile = csvFile;
+    }
 
     public void logOrderExecuted(ExecutionInfo executionInfo) {
-        try (PrintWriter pw = new PrintWriter(new FileWriter(CSV_FILE_PATH, true))) {
-            pw.println("Order Executed," + executionInfo.orderId + ",,,,");
-        } catch (IOException e) {
-            Log.error("Error writing to CSV file", e);
+        AsyncCsvWriter.Row row = csvFile.claim();
+        if (row != null) {
+            row.addText("Order Executed").addText(executionInfo.orderId)
+                    .addEmpty().addEmpty().addEmpty().addEmpty()
+                    .publish();
         }
     }
 }
-
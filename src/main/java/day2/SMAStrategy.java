@@ -1,16 +1,18 @@
 package day2;
 
-import day1.SMA;
+import core.bars.BarEngine;
+import core.bars.BarSeries;
+import core.indicators.CrossoverSignal;
+import core.indicators.SMA;
+import core.io.AsyncCsvWriter;
+import core.orders.OrderTracker;
 import velox.api.layer1.annotations.*;
 import velox.api.layer1.common.Log;
 import velox.api.layer1.data.*;
-import velox.api.layer1.layers.utils.OrderBook;
 import velox.api.layer1.messages.indicators.Layer1ApiUserMessageModifyIndicator.GraphType;
 import velox.api.layer1.simplified.*;
 
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
 
 import java.awt.*;
 
@@ -18,9 +20,13 @@ import java.awt.*;
 @Layer1SimpleAttachable
 @Layer1StrategyName("SMA Strategy")
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
-public class SMAStrategy implements CustomModule, BarDataListener, OrdersListener {
+public class SMAStrategy implements CustomModule, OrdersListener, TradeDataListener, TimeListener, BboListener {
 
-    private static final double INITIAL_PREVIOUS_CLOSE = -1.0;
+    private static final long BAR_INTERVAL = Intervals.INTERVAL_1_MINUTE;
+    // BAR_CLOSE checks the crossover when a bar completes, INTRABAR on every trade of the forming bar
+    private static final CrossoverSignal.Mode SIGNAL_MODE = CrossoverSignal.Mode.BAR_CLOSE;
+    private static final CrossoverSignal.Confirmation CONFIRMATION = CrossoverSignal.Confirmation.CLOSE_THROUGH;
+    private static final int CONFIRMATION_TICKS = 2; // Used by TICKS_BEYOND
     private static final int SMA_PERIOD = 14;
     private static final int STOP_LOSS_OFFSET = 10;
     private static final int TAKE_PROFIT_OFFSET = 20;
@@ -28,15 +34,20 @@ public class SMAStrategy implements CustomModule, BarDataListener, OrdersListene
     private Indicator closeIndicator;
     private Indicator smaIndicator;
     private double pips;
+    private final BarEngine bars = new BarEngine();
+    private final CrossoverSignal crossover = new CrossoverSignal(SIGNAL_MODE, CONFIRMATION, CONFIRMATION_TICKS);
+    private BarSeries barSeries;
     private SMA sma;
-    private double previousClose = INITIAL_PREVIOUS_CLOSE;
-    private Double previousSMA = null;
     private Api api;
     private String alias;
-    private int currentPosition = 0;
-
-    private OrderUpdatedLogger orderUpdatedLogger = new OrderUpdatedLogger();
-    private OrderExecutedLogger orderExecutedLogger = new OrderExecutedLogger();
+    private OrderTracker orders;
+    // Entry whose stop loss and take profit protect the current position, and the side of the last entry
+    private String entryOrderId;
+    private int direction = 0;
+
+    private AsyncCsvWriter.CsvFile csvFile;
+    private OrderUpdatedLogger orderUpdatedLogger;
+    private OrderExecutedLogger orderExecutedLogger;
     private static final String CSV_FILE_PATH = "C:\\Bookmap\\Logs\\Nasser2_log.csv";
 
     @Override
@@ -48,13 +59,20 @@ public class SMAStrategy implements CustomModule, BarDataListener, OrdersListene
         smaIndicator = api.registerIndicator("SMA", GraphType.PRIMARY);
         smaIndicator.setColor(Color.BLUE);
         pips = info.pips;
+        orders = new OrderTracker(info.pips);
+        barSeries = bars.timeBars(BAR_INTERVAL);
+        barSeries.addListener(this::onBar);
         this.alias = alias;
         this.api = api;
         sma = new SMA(SMA_PERIOD);
 
-        // Initialize CSV file with headers
-        try (PrintWriter pw = new PrintWriter(new FileWriter(CSV_FILE_PATH))) {
-            pw.println("Log Type,Order ID,Is Buy,Status,Stop Price,Limit Price");
+        // Initialize CSV file with headers; both loggers append to it through the shared writer
+        try {
+            csvFile = AsyncCsvWriter.acquireShared()
+                    .open(CSV_FILE_PATH, "Log Type,Order ID,Is Buy,Status,Stop Price,Limit Price", false)
+                    .withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK);
+            orderUpdatedLogger = new OrderUpdatedLogger(csvFile);
+            orderExecutedLogger = new OrderExecutedLogger(csvFile);
         } catch (IOException e) {
             Log.error("Error initializing CSV file", e);
         }
@@ -65,55 +83,92 @@ public class SMAStrategy implements CustomModule, BarDataListener, OrdersListene
     @Override
     public void stop() {
         Log.info("Stopping the OnBarSMA strategy...");
+        if (orders != null) {
+            Log.info("Position " + orders.getPosition() + ", realized PnL " + orders.getRealizedPnl()
+                    + ", unrealized PnL " + orders.getUnrealizedPnl());
+        }
+        if (csvFile != null) {
+            csvFile.close();
+        }
+        AsyncCsvWriter.releaseShared();
     }
 
-    @Override
-    public void onBar(OrderBook orderBook, Bar bar) {
-        double closePrice = bar.getClose();
+    private void onBar(BarSeries series) {
+        orders.removeDone();
+        double closePrice = series.getClose(0);
+        sma.update(closePrice);
         updateIndicators(closePrice);
-        checkForCrossoverSignals(closePrice);
-        updatePreviousValues(closePrice);
+        if (!crossover.isIntrabar()) {
+            checkForCrossoverSignals(closePrice, sma.value());
+        }
     }
 
     private void updateIndicators(double closePrice) {
         closeIndicator.addPoint(closePrice);
-        Double smaValue = sma.calculate(closePrice);
-        if (smaValue != null) {
-            smaIndicator.addPoint(smaValue);
+        if (sma.isReady()) {
+            smaIndicator.addPoint(sma.value());
         }
     }
 
-    private void checkForCrossoverSignals(double closePrice) {
-        Double smaValue = sma.calculate(closePrice);
-        if (smaValue != null && previousClose != INITIAL_PREVIOUS_CLOSE && previousSMA != null) {
-            if (closePrice > smaValue && previousClose <= previousSMA) {
-                Log.info("Buy Signal at " + closePrice * pips);
-                if (currentPosition <= 0) {
-                    placeOrder(true, closePrice, 1); // Place a buy order
-                    currentPosition = 1; // Update the current position to long
+    private void checkForCrossoverSignals(double price, double smaValue) {
+        int signal = crossover.evaluate(price, smaValue);
+        if (signal == CrossoverSignal.UP) {
+            Log.info("Buy Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition < 1) {
+                direction = 1;
+                cancelBracket();
+                if (pendingPosition < 0) {
+                    placeOrder(true, price, -pendingPosition, false); // Close the short
                 }
-            } else if (closePrice < smaValue && previousClose >= previousSMA) {
-                Log.info("Sell Signal at " + closePrice * pips);
-                if (currentPosition >= 0) {
-                    placeOrder(false, closePrice, 1); // Place a sell order
-                    currentPosition = -1; // Update the current position to short
+                placeOrder(true, price, 1, true); // Buy one with its bracket
+            }
+        } else if (signal == CrossoverSignal.DOWN) {
+            Log.info("Sell Signal at " + price * pips);
+            int pendingPosition = orders.getPendingPosition();
+            if (pendingPosition > -1) {
+                direction = -1;
+                cancelBracket();
+                if (pendingPosition > 0) {
+                    placeOrder(false, price, pendingPosition, false); // Close the long
                 }
+                placeOrder(false, price, 1, true); // Sell one with its bracket
             }
         }
     }
 
-    private void updatePreviousValues(double closePrice) {
-        previousClose = closePrice;
-        previousSMA = sma.calculate(closePrice);
+    /**
+     * Cancels the stop loss and take profit of the position being reversed, so they cannot fill against
+     * the new one.
+     */
+    private void cancelBracket() {
+        if (entryOrderId != null) {
+            cancelIfWorking(orders.getStopLossOrderId(entryOrderId));
+            cancelIfWorking(orders.getTakeProfitOrderId(entryOrderId));
+            entryOrderId = null;
+        }
     }
 
-    private void placeOrder(boolean isBuy, double price, int quantity) {
+    private void cancelIfWorking(String orderId) {
+        if (orderId != null && orders.isWorking(orderId)) {
+            try {
+                api.updateOrder(new OrderCancelParameters(orderId));
+            } catch (Exception e) {
+                Log.info("Error cancelling order " + orderId, e);
+            }
+        }
+    }
+
+    private void placeOrder(boolean isBuy, double price, int quantity, boolean withBracket) {
         try {
             SimpleOrderSendParametersBuilder builder = new SimpleOrderSendParametersBuilder(alias, isBuy, quantity);
             builder.setDuration(OrderDuration.IOC);
-            builder.setStopLossOffset(STOP_LOSS_OFFSET);
-            builder.setTakeProfitOffset(TAKE_PROFIT_OFFSET);
+            if (withBracket) {
+                builder.setStopLossOffset(STOP_LOSS_OFFSET);
+                builder.setTakeProfitOffset(TAKE_PROFIT_OFFSET);
+            }
             SimpleOrderSendParameters order = builder.build();
+            orders.onOrderSent(order);
             api.sendOrder(order);
         } catch (Exception e) {
             Log.info("Error placing order", e);
@@ -122,18 +177,48 @@ public class SMAStrategy implements CustomModule, BarDataListener, OrdersListene
 
     @Override
     public void onOrderUpdated(OrderInfoUpdate orderInfoUpdate) {
-        orderUpdatedLogger.logOrderUpdated(orderInfoUpdate);
+        orders.onOrderUpdated(orderInfoUpdate);
+        String parentId = orders.getParentOrderId(orderInfoUpdate.orderId);
+        if (parentId != null && !parentId.equals(entryOrderId) && orders.isWorking(orderInfoUpdate.orderId)) {
+            if (orderInfoUpdate.isBuy != (direction > 0)) {
+                entryOrderId = parentId;
+            } else {
+                // A bracket that showed up after its position was reversed closes in the wrong direction
+                cancelIfWorking(orderInfoUpdate.orderId);
+            }
+        }
+        if (orderUpdatedLogger != null) {
+            orderUpdatedLogger.logOrderUpdated(orderInfoUpdate);
+        }
     }
 
     @Override
-    public void onOrderExecuted(ExecutionInfo executionInfo) {
-        orderExecutedLogger.logOrderExecuted(executionInfo);
+    public void onBbo(int priceBid, int sizeBid, int priceAsk, int sizeAsk) {
+        orders.onBbo(priceBid, sizeBid, priceAsk, sizeAsk);
     }
 
     @Override
-    public long getInterval() {
-        return Intervals.INTERVAL_1_MINUTE;
+    public void onTimestamp(long nanoseconds) {
+        bars.onTimestamp(nanoseconds);
+    }
+
+    @Override
+    public void onTrade(double price, int size, TradeInfo tradeInfo) {
+        bars.onTrade(price, size, tradeInfo.isBidAggressor);
+        if (crossover.isIntrabar()) {
+            // The SMA as if the forming bar closed at this trade
+            checkForCrossoverSignals(price, barSeries.isForming() ? sma.peek(price) : sma.value());
+        }
     }
 
+    @Override
+    public void onOrderExecuted(ExecutionInfo executionInfo) {
+        orders.onOrderExecuted(executionInfo);
+        if (orderExecutedLogger != null) {
+            orderExecutedLogger.logOrderExecuted(executionInfo);
+        }
+    }
+
+
 
 }
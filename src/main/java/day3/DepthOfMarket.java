@@ -1,10 +1,12 @@
 package day3;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import core.book.LiquidityFlowDetector;
+import core.book.TickBook;
 import velox.api.layer1.annotations.*;
 import velox.api.layer1.common.Log;
+import velox.api.layer1.data.InstrumentInfo;
 import velox.api.layer1.simplified.*;
 
 @Layer1SimpleAttachable
@@ -12,53 +14,62 @@ import velox.api.layer1.simplified.*;
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
 
 
-public class DepthOfMarket implements CustomModuleAdapter, DepthDataListener,
+public class DepthOfMarket implements CustomModuleAdapter, DepthDataListener, TimeListener,
         IntervalListener {
-    private Map<Integer, Integer> bidLevels = new HashMap<>();
-    private Map<Integer, Integer> askLevels = new HashMap<>();
-    private long lastUpdateTime = 0;
-    private final long TIME_THRESHOLD = 40000; // 1 second
-    private final int SIZE_THRESHOLD = 10000; // Example size threshold
+    // Rolling windows in exchange time, and the size added or pulled at one price that counts as large in each
+    private static final long[] WINDOWS = {
+            TimeUnit.MILLISECONDS.toNanos(100), TimeUnit.SECONDS.toNanos(1), TimeUnit.SECONDS.toNanos(10)};
+    private static final String[] WINDOW_NAMES = {"100 ms", "1 s", "10 s"};
+    private static final long[] SIZE_THRESHOLDS = {300, 1_000, 5_000};
+    private static final int BAND_TICKS = 1;
+
+    private final TickBook book = new TickBook();
+    private final LiquidityFlowDetector detector = new LiquidityFlowDetector(
+            WINDOWS, SIZE_THRESHOLDS, BAND_TICKS, LiquidityFlowDetector.DEFAULT_CAPACITY);
+    private final long[] reportedAlerts = new long[WINDOWS.length];
 
     @Override
-    public void onDepth(boolean isBid, int price, int size) {
-        long currentTime = System.currentTimeMillis();
-        
-        // Update levels
-        if (isBid) {
-            if (size == 0) bidLevels.remove(price);
-            else bidLevels.put(price, size);
-        } else {
-            if (size == 0) askLevels.remove(price);
-            else askLevels.put(price, size);
-        }
+    public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
+        detector.setListener((window, isBid, price, isAdded, size) ->
+                Log.info("Large order " + (isAdded ? "added" : "pulled") + " on the " + (isBid ? "bid" : "ask")
+                        + " at " + price + ": " + size + " in " + WINDOW_NAMES[window]));
+    }
 
-        // Check for large market orders
-        if (currentTime - lastUpdateTime < TIME_THRESHOLD) {
-            int totalSizeChange = 0;
-            for (int bidSize : bidLevels.values()) {  
-                totalSizeChange += bidSize;
-            }
-            for (int askSize : askLevels.values()) {  
-                totalSizeChange += askSize;
-            }
-            if (totalSizeChange >= SIZE_THRESHOLD) {
-                Log.info("Large market order detected.");
-            }
-        }
+    @Override
+    public void onTimestamp(long nanoseconds) {
+        detector.onTimestamp(nanoseconds);
+    }
 
-        lastUpdateTime = currentTime;
+    @Override
+    public void onDepth(boolean isBid, int price, int size) {
+        // Only the change of the one level is recorded; the book is never summed
+        int previousSize = book.getSize(isBid, price);
+        book.onDepth(isBid, price, size);
+        detector.onDepth(isBid, price, previousSize, size);
     }
 
     @Override
     public long getInterval() {
-        return Intervals.INTERVAL_10_MINUTES;
+        return Intervals.INTERVAL_10_SECONDS;
     }
 
     @Override
     public void onInterval() {
-
+        // One line per interval: added/pulled per side in each window, and alerts since the last summary
+        StringBuilder summary = new StringBuilder("Liquidity flow");
+        for (int window = 0; window < WINDOWS.length; window++) {
+            long alerts = detector.getAlertCount(window);
+            summary.append(window == 0 ? " " : " | ").append(WINDOW_NAMES[window])
+                    .append(": bid +").append(detector.getAdded(window, true))
+                    .append("/-").append(detector.getPulled(window, true))
+                    .append(", ask +").append(detector.getAdded(window, false))
+                    .append("/-").append(detector.getPulled(window, false))
+                    .append(", ").append(alerts - reportedAlerts[window]).append(" alerts");
+            reportedAlerts[window] = alerts;
+        }
+        if (detector.getOverflowCount() > 0) {
+            summary.append(" (").append(detector.getOverflowCount()).append(" deltas evicted early)");
+        }
+        Log.info(summary.toString());
     }
 }
-
-
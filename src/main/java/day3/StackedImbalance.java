@@ -1,7 +1,8 @@
 package day3;
 
+import core.book.StackedImbalanceBook;
+import core.diag.LogSite;
 import velox.api.layer1.annotations.*;
-import velox.api.layer1.common.Log;
 import velox.api.layer1.messages.indicators.Layer1ApiUserMessageModifyIndicator.GraphType;
 import velox.api.layer1.data.InstrumentInfo;
 import velox.api.layer1.simplified.*;
@@ -9,9 +10,7 @@ import velox.gui.StrategyPanel;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.Comparator;
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
 
 @Layer1SimpleAttachable
 @Layer1StrategyName("Stacked Imbalance")
@@ -19,68 +18,70 @@ import java.util.TreeMap;
 public class StackedImbalance implements CustomModuleAdapter, DepthDataListener,
         CustomSettingsPanelProvider, IntervalListener {
 
-    private final TreeMap<Integer, Integer> bids = new TreeMap<>(Comparator.reverseOrder());
-    private final TreeMap<Integer, Integer> asks = new TreeMap<>();
+    private final StackedImbalanceBook book = new StackedImbalanceBook();
+    // A stack that flickers in and out would otherwise log on every update
+    private static final LogSite ASK_STACK_LOG = LogSite.every("StackedImbalance.askStacks", 250, TimeUnit.MILLISECONDS);
+    private static final LogSite BID_STACK_LOG = LogSite.every("StackedImbalance.bidStacks", 250, TimeUnit.MILLISECONDS);
     private velox.api.layer1.simplified.Indicator askBidIndicator;
     private velox.api.layer1.simplified.Indicator bidAskIndicator;
-    private int imbalanceRatio = 300;
-    private int imbalanceVolume = 30;
-    private int imbalanceStack = 3;
+    private velox.api.layer1.simplified.Indicator askStackIndicator;
+    private velox.api.layer1.simplified.Indicator bidStackIndicator;
+    // Written by the settings panels on the EDT, applied to the book on the next depth update
+    private volatile int imbalanceRatio = 300;
+    private volatile int imbalanceVolume = 30;
+    private volatile int imbalanceStack = 3;
+    private volatile boolean diagonalComparison = false;
+    private volatile boolean settingsChanged = true;
 
     @Override
     public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
         askBidIndicator = api.registerIndicator("Ask/Bid Imbalance", GraphType.BOTTOM);
         bidAskIndicator = api.registerIndicator("Bid/Ask Imbalance", GraphType.BOTTOM);
 
+        askStackIndicator = api.registerIndicator("Ask Imbalance Stacks", GraphType.BOTTOM);
+        bidStackIndicator = api.registerIndicator("Bid Imbalance Stacks", GraphType.BOTTOM);
+
         askBidIndicator.setColor(Color.MAGENTA);
         bidAskIndicator.setColor(Color.BLUE);
+        askStackIndicator.setColor(Color.RED);
+        bidStackIndicator.setColor(Color.GREEN);
     }
 
     @Override
     public void onDepth(boolean isBid, int price, int size) {
-        TreeMap<Integer, Integer> book = isBid ? bids : asks;
-        if (size == 0) {
-            book.remove(price);
-        } else {
-            book.put(price, size);
+        if (settingsChanged) {
+            settingsChanged = false;
+            book.configure(imbalanceRatio, imbalanceVolume, imbalanceStack, diagonalComparison);
         }
+        int askStacksBefore = book.getStackCount(false);
+        int bidStacksBefore = book.getStackCount(true);
 
-        // Update indicators
-        askBidIndicator.addPoint(calculateAskBidImbalance());
-        bidAskIndicator.addPoint(calculateBidAskImbalance());
-    }
+        // Only the touched level and the opposite level compared with it are re-evaluated
+        book.onDepth(isBid, price, size);
 
-    private int calculateAskBidImbalance() {
-        int imbalance = 0;
-        for (Map.Entry<Integer, Integer> ask : asks.entrySet()) {
-            int askPrice = ask.getKey();
-            int askSize = ask.getValue();
-            int bidSize = bids.getOrDefault(askPrice, 0);
-            if (askSize > bidSize * imbalanceRatio / 100 && askSize > imbalanceVolume) {
-                imbalance += askSize - bidSize;
+        // Update indicators
+        askBidIndicator.addPoint(book.getAskImbalance());
+        bidAskIndicator.addPoint(book.getBidImbalance());
+
+        int askStacks = book.getStackCount(false);
+        int bidStacks = book.getStackCount(true);
+        if (askStacks != askStacksBefore) {
+            askStackIndicator.addPoint(askStacks);
+            if (askStacks > askStacksBefore) {
+                ASK_STACK_LOG.info("Ask stacked imbalance: {} run(s) of {}+ levels", askStacks, book.getStackSize());
             }
         }
-        Log.info("Ask/Bid Imbalance detected: " + imbalance);
-        return imbalance;
-    }
-
-    private int calculateBidAskImbalance() {
-        int imbalance = 0;
-        for (Map.Entry<Integer, Integer> bid : bids.entrySet()) {
-            int bidPrice = bid.getKey();
-            int bidSize = bid.getValue();
-            int askSize = asks.getOrDefault(bidPrice, 0);
-            if (bidSize > askSize * imbalanceRatio / 100 && bidSize > imbalanceVolume) {
-                imbalance += bidSize - askSize;
+        if (bidStacks != bidStacksBefore) {
+            bidStackIndicator.addPoint(bidStacks);
+            if (bidStacks > bidStacksBefore) {
+                BID_STACK_LOG.info("Bid stacked imbalance: {} run(s) of {}+ levels", bidStacks, book.getStackSize());
             }
         }
-        Log.info("Bid/Ask Imbalance detected: " + imbalance);
-        return imbalance;
     }
 
     private void recalculateIndicators() {
-        askBidIndicator.addPoint(calculateAskBidImbalance());
-        bidAskIndicator.addPoint(calculateBidAskImbalance());
+        // The feed thread owns the book, so it re-evaluates all levels on its next update
+        settingsChanged = true;
     }
 
     @Override
@@ -112,7 +113,17 @@ public class StackedImbalance implements CustomModuleAdapter, DepthDataListener,
         });
         stackPanel.add(stackSpinner);
 
-        return new StrategyPanel[] { ratioPanel, volumePanel, stackPanel };
+        // Panel for choosing which bid level each ask level is compared with
+        StrategyPanel comparisonPanel = new StrategyPanel("Imbalance Comparison");
+        JComboBox<String> comparisonBox = new JComboBox<>(new String[] {"Same price", "Diagonal"});
+        comparisonBox.setSelectedIndex(diagonalComparison ? 1 : 0);
+        comparisonBox.addActionListener(e -> {
+            diagonalComparison = comparisonBox.getSelectedIndex() == 1;
+            recalculateIndicators();
+        });
+        comparisonPanel.add(comparisonBox);
+
+        return new StrategyPanel[] { ratioPanel, volumePanel, stackPanel, comparisonPanel };
     }
 
     @Override
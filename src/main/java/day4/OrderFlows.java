@@ -1,20 +1,23 @@
 package day4;
 
+import java.util.concurrent.TimeUnit;
+
+import core.book.IndexedTickBook;
+import core.diag.LogSite;
 import velox.api.layer1.annotations.*;
-import velox.api.layer1.common.Log;
 import velox.api.layer1.data.InstrumentInfo;
 import velox.api.layer1.simplified.*;
 
-import java.util.*;
-
 @Layer1SimpleAttachable
 @Layer1StrategyName("Order Flow Understandings")
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION2)
 
 public class OrderFlows implements CustomModule, TimeListener, DepthDataListener {
-    private final TreeMap<Integer, Integer> bids = new TreeMap<>(Comparator.reverseOrder());
-    private final TreeMap<Integer, Integer> asks = new TreeMap<>();
+    private final IndexedTickBook book = new IndexedTickBook();
     private long timestamp;
+    // At most one line per site every 250 ms; formatting only happens for lines that are logged
+    private static final LogSite BEST_PRICE_LOG = LogSite.every("OrderFlows.bestPrice", 250, TimeUnit.MILLISECONDS);
+    private static final LogSite TOP_LEVELS_LOG = LogSite.every("OrderFlows.topLevels", 250, TimeUnit.MILLISECONDS);
 
     @Override
     public void initialize(String s, InstrumentInfo instrumentInfo, Api api, InitialState initialState) {
@@ -23,42 +26,28 @@ public class OrderFlows implements CustomModule, TimeListener, DepthDataListener
 
     @Override
     public void onDepth(boolean isBid, int price, int size) {
-        TreeMap<Integer, Integer> book = isBid ? bids : asks;
-        if (size == 0) {
-            book.remove(price);
-        } else {
-            book.put(price, size);
-        }
+        book.onDepth(isBid, price, size);
 
         BestPriceSize();
-        int sumOfTop5Bids = SumOfPriceLevels(true, 5);
-        int sumOfTop5Asks = SumOfPriceLevels(false, 5);
-        Log.info("Sum of top 5 Bids: " + sumOfTop5Bids);
-        Log.info("Sum of top 5 Asks: " + sumOfTop5Asks);
+        long sumOfTop5Bids = SumOfPriceLevels(true, 5);
+        long sumOfTop5Asks = SumOfPriceLevels(false, 5);
+        TOP_LEVELS_LOG.info("Sum of top 5 Bids: {}, Sum of top 5 Asks: {}", sumOfTop5Bids, sumOfTop5Asks);
     }
 
     private void BestPriceSize() {
-        if (!bids.isEmpty() && !asks.isEmpty()) {
-            int bestBidPrice = bids.firstKey();
-            int bestAskPrice = asks.firstKey();
-            int bestBidSize = bids.firstEntry().getValue();
-            int bestAskSize = asks.firstEntry().getValue();
-            Log.info("Best Bid: " + bestBidPrice + " @ " + bestBidSize);
-            Log.info("Best Ask: " + bestAskPrice + " @ " + bestAskSize);
+        if (!book.isEmpty(true) && !book.isEmpty(false)) {
+            int bestBidPrice = book.getBestBid();
+            int bestAskPrice = book.getBestAsk();
+            int bestBidSize = book.getBestBidSize();
+            int bestAskSize = book.getBestAskSize();
+            BEST_PRICE_LOG.info("Best Bid: {} @ {}, Best Ask: {} @ {}", bestBidPrice, bestBidSize, bestAskPrice, bestAskSize);
         } else {
-            Log.info("Order Book is empty.");
+            BEST_PRICE_LOG.info("Order Book is empty.");
         }
     }
 
-    private int SumOfPriceLevels(boolean isBid, int numLevelsToSum) {
-        int sizeOfTopLevels = 0;
-        for (Integer size : (isBid ? bids : asks).values()) {
-            if (--numLevelsToSum < 0) {
-                break;
-            }
-            sizeOfTopLevels += size;
-        }
-        return sizeOfTopLevels;
+    private long SumOfPriceLevels(boolean isBid, int numLevelsToSum) {
+        return book.getTopLevelsVolume(isBid, numLevelsToSum);
     }
 
     @Override
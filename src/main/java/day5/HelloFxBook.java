@@ -9,16 +9,19 @@ import velox.api.layer1.data.InstrumentInfo;
 import velox.api.layer1.simplified.Api;
 import velox.api.layer1.simplified.CustomModule;
 import velox.api.layer1.simplified.InitialState;
-import java.net.Socket;
-import java.io.PrintWriter;
+
+import core.net.MessageChannel;
 
 @Layer1SimpleAttachable
 @Layer1StrategyName("HelloFxBook")
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION1)
 public class HelloFxBook implements CustomModule {
 
+    private MessageChannel channel;
+
     @Override
     public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
+        channel = new MessageChannel("localhost", 5555).start();
         Log.info("Hello");
         sendMessage("Hello");
     }
@@ -27,14 +30,12 @@ public class HelloFxBook implements CustomModule {
     public void stop() {
         Log.info("Bye");
         sendMessage("Bye");
+        channel.close();
     }
 
     private void sendMessage(String message) {
-        try (Socket socket = new Socket("localhost", 5555);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true)) {
-            out.println(message);
-        } catch (Exception e) {
-            e.printStackTrace();
+        if (!channel.send(message)) {
+            Log.info("Message dropped, send queue is full: " + message);
         }
     }
 }
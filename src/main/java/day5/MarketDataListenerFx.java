@@ -1,17 +1,16 @@
 package day5;
 
+import core.book.TickBook;
+import core.net.DepthFeedServer;
 import velox.api.layer1.annotations.Layer1ApiVersion;
 import velox.api.layer1.annotations.Layer1ApiVersionValue;
 import velox.api.layer1.annotations.Layer1SimpleAttachable;
 import velox.api.layer1.annotations.Layer1StrategyName;
+import velox.api.layer1.common.Log;
 import velox.api.layer1.data.InstrumentInfo;
 import velox.api.layer1.simplified.*;
 
-import java.io.ObjectOutputStream;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.Comparator;
-import java.util.TreeMap;
+import java.io.IOException;
 
 
 @Layer1SimpleAttachable
@@ -19,41 +18,34 @@ import java.util.TreeMap;
 @Layer1ApiVersion(Layer1ApiVersionValue.VERSION1)
 public class MarketDataListenerFx implements CustomModule, DepthDataListener {
 
-    private final TreeMap<Integer, Integer> bids = new TreeMap<>(Comparator.reverseOrder());
-    private final TreeMap<Integer, Integer> asks = new TreeMap<>();
+    private static final int PORT = 5555;
+
+    private final TickBook book = new TickBook();
+    private DepthFeedServer server;
 
     @Override
     public void initialize(String s, InstrumentInfo instrumentInfo, Api api, InitialState initialState) {
+        server = new DepthFeedServer(book, s, instrumentInfo.pips, PORT);
         startServer();
     }
 
     public void startServer() {
-        new Thread(() -> {
-            try (ServerSocket serverSocket = new ServerSocket(5555)) {
-                Socket clientSocket = serverSocket.accept();
-                ObjectOutputStream out = new ObjectOutputStream(clientSocket.getOutputStream());
-
-                // Send data to JavaFX client
-                out.writeObject(bids);
-                out.writeObject(asks);
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }).start();
+        // Any number of clients: each gets a snapshot, then conflated binary deltas (see core.net.DepthFeedClient)
+        try {
+            server.start();
+        } catch (IOException e) {
+            Log.error("Error starting depth feed server on port " + PORT + ": " + e.getMessage());
+        }
     }
 
     @Override
     public void onDepth(boolean isBid, int price, int size) {
-        TreeMap<Integer, Integer> book = isBid ? bids : asks;
-        if (size == 0) {
-            book.remove(price);
-        } else {
-            book.put(price, size);
-        }
+        // Updates the book and queues the change for every client; never blocks on a socket
+        server.onDepth(isBid, price, size);
     }
 
     @Override
     public void stop() {
-
+        server.close();
     }
 }
@@ -0,0 +1,68 @@
+package day5;
+
+import core.book.TickBook;
+import core.io.SharedBook;
+import core.io.SharedBookPublisher;
+import velox.api.layer1.annotations.Layer1ApiVersion;
+import velox.api.layer1.annotations.Layer1ApiVersionValue;
+import velox.api.layer1.annotations.Layer1SimpleAttachable;
+import velox.api.layer1.annotations.Layer1StrategyName;
+import velox.api.layer1.common.Log;
+import velox.api.layer1.data.InstrumentInfo;
+import velox.api.layer1.simplified.*;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Publishes the top of the book into C:\Bookmap\Shared\<alias>.book for readers on the same host
+ * (core.io.SharedBookReader), without sockets or a syscall per update.
+ */
+@Layer1SimpleAttachable
+@Layer1StrategyName("Shared Memory Book")
+@Layer1ApiVersion(Layer1ApiVersionValue.VERSION1)
+public class SharedMemoryBook implements CustomModule, DepthDataListener, TimeListener {
+
+    private static final int LEVELS = 20;
+
+    private final TickBook book = new TickBook();
+    private SharedBookPublisher publisher;
+    private long timestamp;
+
+    @Override
+    public void initialize(String alias, InstrumentInfo info, Api api, InitialState initialState) {
+        Path file = SharedBook.path(Paths.get(SharedBook.DEFAULT_ROOT), alias);
+        try {
+            publisher = new SharedBookPublisher(file, alias, info.pips, LEVELS);
+            Log.info("Publishing " + LEVELS + " levels to " + file);
+        } catch (IOException e) {
+            Log.error("Error opening shared book file: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void onTimestamp(long nanoseconds) {
+        timestamp = nanoseconds;
+    }
+
+    @Override
+    public void onDepth(boolean isBid, int price, int size) {
+        book.onDepth(isBid, price, size);
+        if (publisher != null) {
+            // Republishes only when the update falls within the published levels
+            publisher.onDepth(book, isBid, price, timestamp);
+        }
+    }
+
+    @Override
+    public void stop() {
+        if (publisher != null) {
+            try {
+                publisher.close();
+            } catch (IOException e) {
+                Log.error("Error closing shared book file: " + e.getMessage());
+            }
+        }
+    }
+}
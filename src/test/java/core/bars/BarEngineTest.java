@@ -0,0 +1,146 @@
+package core.bars;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class BarEngineTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final BarEngine bars = new BarEngine();
+
+    private void trade(long nanos, double price, int size, boolean isBuy) {
+        bars.onTimestamp(nanos);
+        bars.onTrade(price, size, isBuy);
+    }
+
+    @Test
+    void timeBarsAlignToTheIntervalAndCloseOnTheNextTimestamp() {
+        BarSeries series = bars.timeBars(10, TimeUnit.SECONDS);
+        int[] completed = new int[1];
+        series.addListener(s -> completed[0]++);
+
+        trade(12 * SECOND, 100, 2, true);
+        trade(15 * SECOND, 103, 1, false);
+        trade(19 * SECOND, 99, 4, true);
+        assertTrue(series.isForming());
+        assertEquals(0, series.size());
+
+        bars.onTimestamp(20 * SECOND);
+
+        assertEquals(1, completed[0]);
+        assertFalse(series.isForming());
+        assertEquals(100, series.getOpen(0));
+        assertEquals(103, series.getHigh(0));
+        assertEquals(99, series.getLow(0));
+        assertEquals(99, series.getClose(0));
+        assertEquals(7, series.getVolume(0));
+        assertEquals(6, series.getBuyVolume(0));
+        assertEquals(1, series.getSellVolume(0));
+        assertEquals(3, series.getTradeCount(0));
+        assertEquals(10 * SECOND, series.getStartTime(0));
+        assertEquals(20 * SECOND, series.getEndTime(0));
+    }
+
+    @Test
+    void timeBarsSkipIntervalsWithoutTrades() {
+        BarSeries series = bars.timeBars(10 * SECOND);
+        trade(5 * SECOND, 100, 1, true);
+        trade(47 * SECOND, 101, 1, true);
+        bars.onTimestamp(50 * SECOND);
+
+        assertEquals(2, series.size());
+        assertEquals(40 * SECOND, series.getStartTime(0));
+        assertEquals(10 * SECOND, series.getEndTime(1));
+    }
+
+    @Test
+    void tickBarsCloseOnTheNthTrade() {
+        BarSeries series = bars.tickBars(3);
+        for (int i = 0; i < 7; i++) {
+            trade(i, 100 + i, 1, true);
+        }
+
+        assertEquals(2, series.size());
+        assertEquals(103, series.getOpen(0));
+        assertEquals(105, series.getClose(0));
+        assertEquals(5, series.getEndTime(0));
+        assertTrue(series.isForming());
+        assertEquals(106, series.getCurrentOpen());
+    }
+
+    @Test
+    void volumeBarsCloseAtTheThresholdWithoutSplittingTrades() {
+        BarSeries series = bars.volumeBars(10);
+        trade(1, 100, 4, true);
+        trade(2, 101, 4, false);
+        assertEquals(0, series.size());
+
+        trade(3, 102, 5, true);
+
+        assertEquals(1, series.size());
+        assertEquals(13, series.getVolume(0));
+        assertEquals(9, series.getBuyVolume(0));
+        assertFalse(series.isForming());
+    }
+
+    @Test
+    void rangeBarsCloseBeforeATradeThatWouldExceedTheRange() {
+        BarSeries series = bars.rangeBars(1.0);
+        trade(1, 100.00, 1, true);
+        trade(2, 100.75, 1, true);
+        trade(3, 100.25, 1, false);
+        trade(4, 101.00, 1, true); // Range exactly 1.0 still fits
+
+        trade(5, 101.25, 1, true);
+
+        assertEquals(1, series.size());
+        assertEquals(100.00, series.getLow(0));
+        assertEquals(101.00, series.getHigh(0));
+        assertEquals(4, series.getTradeCount(0));
+        assertEquals(101.25, series.getCurrentOpen());
+    }
+
+    @Test
+    void keepsTheLastCapacityBars() {
+        BarSeries series = bars.withCapacity(3).tickBars(1);
+        for (int i = 0; i < 5; i++) {
+            trade(i, 100 + i, 1, true);
+        }
+
+        assertEquals(5, series.getCount());
+        assertEquals(3, series.size());
+        assertEquals(104, series.getClose(0));
+        assertEquals(102, series.getClose(2));
+        assertThrows(IndexOutOfBoundsException.class, () -> series.getClose(3));
+        assertThrows(IndexOutOfBoundsException.class, () -> series.getClose(-1));
+    }
+
+    @Test
+    void seriesOfDifferentTypesShareTheFeed() {
+        BarSeries ticks = bars.tickBars(2);
+        BarSeries volume = bars.volumeBars(3);
+        trade(1, 100, 1, true);
+        trade(2, 101, 1, true);
+        trade(3, 102, 1, true);
+
+        assertEquals(1, ticks.size());
+        assertEquals(1, volume.size());
+        assertEquals(2, bars.getSeries().length);
+    }
+
+    @Test
+    void rejectsNonPositiveBarSizes() {
+        assertThrows(IllegalArgumentException.class, () -> bars.timeBars(0));
+        assertThrows(IllegalArgumentException.class, () -> bars.tickBars(0));
+        assertThrows(IllegalArgumentException.class, () -> bars.volumeBars(-1));
+        assertThrows(IllegalArgumentException.class, () -> bars.rangeBars(0));
+        assertThrows(IllegalArgumentException.class, () -> bars.rangeBars(Double.NaN));
+    }
+}
@@ -0,0 +1,91 @@
+package core.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class FenwickTreeTest {
+
+    private static final int SIZE = 37;
+
+    @Test
+    void sumsMatchANaiveArray() {
+        SplittableRandom random = new SplittableRandom(1);
+        FenwickTree tree = new FenwickTree(SIZE);
+        long[] values = new long[SIZE];
+        for (int update = 0; update < 500; update++) {
+            int index = random.nextInt(SIZE);
+            long delta = random.nextInt(10);
+            tree.add(index, delta);
+            values[index] += delta;
+
+            int from = random.nextInt(SIZE);
+            int to = random.nextInt(SIZE);
+            assertEquals(naiveSum(values, 0, to), tree.prefixSum(to));
+            assertEquals(naiveSum(values, from, to), tree.rangeSum(from, to));
+        }
+        assertEquals(0, tree.prefixSum(-1));
+        assertEquals(naiveSum(values, 0, SIZE - 1), tree.prefixSum(SIZE + 5));
+    }
+
+    @Test
+    void lowerBoundMatchesALinearSearch() {
+        SplittableRandom random = new SplittableRandom(2);
+        int[] values = new int[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            // Some empty levels, like a sparse ladder
+            values[i] = random.nextInt(3) == 0 ? 0 : random.nextInt(1, 20);
+        }
+        FenwickTree tree = new FenwickTree(SIZE);
+        tree.rebuild(values);
+
+        long total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        for (long target = -1; target <= total + 1; target++) {
+            assertEquals(linearLowerBound(values, target), tree.lowerBound(target), "target " + target);
+        }
+    }
+
+    @Test
+    void rebuildMatchesPointUpdates() {
+        int[] values = new int[SIZE];
+        FenwickTree added = new FenwickTree(SIZE);
+        for (int i = 0; i < SIZE; i++) {
+            values[i] = i * 3 % 7;
+            added.add(i, values[i]);
+        }
+        FenwickTree rebuilt = new FenwickTree(SIZE);
+        rebuilt.add(5, 100); // Discarded by the rebuild
+        rebuilt.rebuild(values);
+
+        for (int i = 0; i < SIZE; i++) {
+            assertEquals(added.prefixSum(i), rebuilt.prefixSum(i));
+        }
+    }
+
+    private static long naiveSum(long[] values, int from, int to) {
+        long sum = 0;
+        for (int i = from; i <= to; i++) {
+            sum += values[i];
+        }
+        return sum;
+    }
+
+    private static int linearLowerBound(int[] values, long target) {
+        if (target <= 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+            if (sum >= target) {
+                return i;
+            }
+        }
+        return values.length;
+    }
+}
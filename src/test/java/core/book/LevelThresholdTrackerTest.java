@@ -0,0 +1,88 @@
+package core.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LevelThresholdTrackerTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final List<String> crossings = new ArrayList<>();
+
+    private LevelThresholdTracker tracker(long halfLifeNanos, int capacity) {
+        LevelThresholdTracker tracker = new LevelThresholdTracker(100, 60, halfLifeNanos, SECOND / 10, capacity);
+        tracker.setListener((isBid, price, value, entered) ->
+                crossings.add((isBid ? "bid " : "ask ") + price + (entered ? " entered" : " exited")));
+        return tracker;
+    }
+
+    @Test
+    void entersAtTheEnterThresholdAndExitsBelowTheExitThreshold() {
+        LevelThresholdTracker tracker = tracker(0, 64);
+        tracker.set(true, 10, 99);
+        assertFalse(tracker.isEntered(true, 10));
+
+        tracker.set(true, 10, 100);
+        tracker.set(true, 10, 60);
+        assertTrue(tracker.isEntered(true, 10));
+        assertEquals(List.of("bid 10 entered"), crossings);
+
+        tracker.set(true, 10, 59);
+        tracker.set(false, 10, 150);
+        assertEquals(List.of("bid 10 entered", "bid 10 exited", "ask 10 entered"), crossings);
+        assertEquals(1, tracker.getEnteredCount());
+    }
+
+    @Test
+    void accumulatedValuesDecayWithTheHalfLife() {
+        LevelThresholdTracker tracker = tracker(SECOND, 64);
+        tracker.onTimestamp(SECOND);
+        tracker.add(false, 20, 80);
+        tracker.onTimestamp(2 * SECOND);
+        assertEquals(40, tracker.getValue(false, 20), 1e-9);
+
+        // 40 + 60 reaches the enter threshold, the undecayed 80 + 60 would have earlier
+        tracker.add(false, 20, 59);
+        assertFalse(tracker.isEntered(false, 20));
+        tracker.add(false, 20, 1);
+        assertTrue(tracker.isEntered(false, 20));
+    }
+
+    @Test
+    void sweepLetsAnUntouchedLevelExitOnceItHasDecayed() {
+        LevelThresholdTracker tracker = tracker(SECOND, 64);
+        tracker.onTimestamp(SECOND);
+        tracker.add(true, 30, 100);
+        tracker.onTimestamp(SECOND + SECOND / 2);
+        assertEquals(List.of("bid 30 entered"), crossings);
+
+        tracker.onTimestamp(2 * SECOND);
+        assertEquals(List.of("bid 30 entered", "bid 30 exited"), crossings);
+        assertEquals(0, tracker.getEnteredCount());
+    }
+
+    @Test
+    void enteredLevelExitsWhenAnotherPriceTakesItsSlot() {
+        LevelThresholdTracker tracker = tracker(0, 4);
+        tracker.set(true, 1, 200);
+        tracker.set(true, 5, 10);
+
+        assertEquals(List.of("bid 1 entered", "bid 1 exited"), crossings);
+        assertEquals(0, tracker.getValue(true, 1), 0);
+        assertEquals(10, tracker.getValue(true, 5), 0);
+        assertFalse(tracker.isEntered(true, 1));
+    }
+
+    @Test
+    void rejectsAnExitAboveTheEnterThresholdAndOddCapacities() {
+        assertThrows(IllegalArgumentException.class, () -> new LevelThresholdTracker(50, 60, 0, SECOND));
+        assertThrows(IllegalArgumentException.class, () -> new LevelThresholdTracker(100, 60, 0, SECOND, 100));
+    }
+}
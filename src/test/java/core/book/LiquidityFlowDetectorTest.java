@@ -0,0 +1,125 @@
+package core.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class LiquidityFlowDetectorTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void rollingTotalsMatchANaiveWindow() {
+        long[] windows = {2 * SECOND, 10 * SECOND};
+        LiquidityFlowDetector detector = new LiquidityFlowDetector(windows, new long[] {1_000, 1_000}, 2, 1 << 12);
+        SplittableRandom random = new SplittableRandom(11);
+        // time, isBid (1/0), price, delta
+        List<long[]> history = new ArrayList<>();
+        long now = SECOND;
+        detector.onTimestamp(now);
+        for (int step = 0; step < 3_000; step++) {
+            if (random.nextInt(4) == 0) {
+                now += random.nextLong(SECOND / 2);
+                detector.onTimestamp(now);
+            }
+            boolean isBid = random.nextBoolean();
+            int price = 100 + random.nextInt(10);
+            int previousSize = random.nextInt(50);
+            int size = random.nextInt(50);
+            detector.onDepth(isBid, price, previousSize, size);
+            if (size != previousSize) {
+                history.add(new long[] {now, isBid ? 1 : 0, price, size - previousSize});
+            }
+
+            for (int window = 0; window < windows.length; window++) {
+                long cutoff = now - windows[window];
+                long[] added = new long[2];
+                long[] pulled = new long[2];
+                long bandAdded = 0;
+                long bandPulled = 0;
+                int events = 0;
+                for (long[] event : history) {
+                    if (event[0] <= cutoff) {
+                        continue;
+                    }
+                    events++;
+                    int side = (int) event[1];
+                    if (event[3] > 0) {
+                        added[side] += event[3];
+                    } else {
+                        pulled[side] -= event[3];
+                    }
+                    // Band of 2 ticks holding 104 and 105, bid side
+                    if (side == 1 && event[2] / 2 == 52) {
+                        if (event[3] > 0) {
+                            bandAdded += event[3];
+                        } else {
+                            bandPulled -= event[3];
+                        }
+                    }
+                }
+                assertEquals(events, detector.getEventCount(window));
+                assertEquals(added[1], detector.getAdded(window, true));
+                assertEquals(pulled[1], detector.getPulled(window, true));
+                assertEquals(added[0], detector.getAdded(window, false));
+                assertEquals(added[0] - pulled[0], detector.getNetFlow(window, false));
+                assertEquals(bandAdded, detector.getAddedAt(window, true, 105));
+                assertEquals(bandPulled, detector.getPulledAt(window, true, 104));
+            }
+        }
+        assertEquals(0, detector.getOverflowCount());
+    }
+
+    @Test
+    void firesOnceWhenABandReachesTheThresholdAndRearmsBelowIt() {
+        LiquidityFlowDetector detector = new LiquidityFlowDetector(new long[] {SECOND}, new long[] {100});
+        List<String> alerts = new ArrayList<>();
+        detector.setListener((window, isBid, price, isAdded, size) ->
+                alerts.add(window + " " + isBid + " " + price + " " + isAdded + " " + size));
+
+        detector.onTimestamp(SECOND);
+        detector.onDepth(false, 200, 0, 60);
+        detector.onDepth(false, 200, 60, 100);
+        detector.onTimestamp(SECOND + SECOND / 2);
+        detector.onDepth(false, 200, 100, 150);
+        assertEquals(List.of("0 false 200 true 100"), alerts);
+
+        // The first two additions leave the window, 50 is below the threshold again
+        detector.onTimestamp(2 * SECOND);
+        assertEquals(50, detector.getAddedAt(0, false, 200));
+        detector.onDepth(false, 200, 150, 200);
+        assertEquals(List.of("0 false 200 true 100", "0 false 200 true 100"), alerts);
+
+        detector.onDepth(true, 199, 500, 0);
+        assertEquals("0 true 199 false 500", alerts.get(2));
+        assertEquals(3, detector.getAlertCount(0));
+    }
+
+    @Test
+    void fullRingEvictsTheOldestDeltasEarly() {
+        LiquidityFlowDetector detector = new LiquidityFlowDetector(new long[] {SECOND}, new long[] {1_000}, 1, 4);
+        detector.onTimestamp(SECOND);
+        for (int i = 1; i <= 6; i++) {
+            detector.onDepth(true, 100, 0, i);
+        }
+
+        assertEquals(2, detector.getOverflowCount());
+        assertEquals(4, detector.getEventCount(0));
+        assertEquals(3 + 4 + 5 + 6, detector.getAdded(0, true));
+    }
+
+    @Test
+    void rejectsMismatchedWindowsAndThresholds() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LiquidityFlowDetector(new long[] {SECOND}, new long[] {1, 2}));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LiquidityFlowDetector(new long[0], new long[0]));
+        assertThrows(IllegalArgumentException.class,
+                () -> new LiquidityFlowDetector(new long[] {SECOND}, new long[] {1}, 0, 16));
+    }
+}
@@ -0,0 +1,102 @@
+package core.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class StackedImbalanceBookTest {
+
+    private static final int RATIO = 300;
+    private static final int MIN_VOLUME = 10;
+    private static final int STACK = 3;
+
+    @Test
+    void flagsAnAskThreeTimesTheBidAtTheSamePrice() {
+        StackedImbalanceBook book = new StackedImbalanceBook(64);
+        book.configure(RATIO, MIN_VOLUME, STACK, false);
+        book.onDepth(true, 100, 5);
+        book.onDepth(false, 100, 16);
+
+        assertTrue(book.isImbalanced(false, 100));
+        assertFalse(book.isImbalanced(true, 100));
+        assertEquals(11, book.getAskImbalance());
+
+        // 15 is not more than three times 5
+        book.onDepth(false, 100, 15);
+        assertFalse(book.isImbalanced(false, 100));
+        assertEquals(0, book.getAskImbalance());
+    }
+
+    @Test
+    void countsARunOfStackSizeLevelsOnce() {
+        StackedImbalanceBook book = new StackedImbalanceBook(64);
+        book.configure(RATIO, MIN_VOLUME, STACK, false);
+        for (int price = 100; price < 105; price++) {
+            book.onDepth(true, price, 50);
+        }
+        assertEquals(1, book.getStackCount(true));
+
+        // Splitting the run of five in the middle leaves two runs of two
+        book.onDepth(false, 102, 50);
+        assertEquals(0, book.getStackCount(true));
+
+        book.onDepth(false, 102, 0);
+        assertEquals(1, book.getStackCount(true));
+    }
+
+    @Test
+    void diagonalModeComparesTheAskWithTheBidOneTickLower() {
+        StackedImbalanceBook book = new StackedImbalanceBook(64);
+        book.configure(RATIO, MIN_VOLUME, STACK, true);
+        book.onDepth(true, 99, 5);
+        book.onDepth(false, 100, 16);
+        assertTrue(book.isImbalanced(false, 100));
+
+        book.onDepth(true, 99, 6);
+        assertFalse(book.isImbalanced(false, 100));
+    }
+
+    @Test
+    void incrementalStateMatchesARecomputation() {
+        for (boolean diagonal : new boolean[] {false, true}) {
+            SplittableRandom random = new SplittableRandom(diagonal ? 5 : 4);
+            StackedImbalanceBook book = new StackedImbalanceBook(64);
+            book.configure(RATIO, MIN_VOLUME, 2, diagonal);
+            for (int update = 0; update < 5_000; update++) {
+                int price = 90 + random.nextInt(20);
+                int size = random.nextInt(4) == 0 ? 0 : random.nextInt(60);
+                book.onDepth(random.nextBoolean(), price, size);
+                assertMatchesRecomputation(book, 2, diagonal);
+            }
+        }
+    }
+
+    private static void assertMatchesRecomputation(StackedImbalanceBook book, int stackSize, boolean diagonal) {
+        for (boolean isBid : new boolean[] {true, false}) {
+            long imbalance = 0;
+            int stacks = 0;
+            int run = 0;
+            for (int i = 0; i < book.getCapacity(); i++) {
+                int price = book.getBasePrice() + i;
+                int size = book.getSize(isBid, price);
+                int opposite = book.getSize(!isBid, diagonal ? (isBid ? price + 1 : price - 1) : price);
+                boolean imbalanced = size > MIN_VOLUME && size > (long) opposite * RATIO / 100;
+                assertEquals(imbalanced, book.isImbalanced(isBid, price), "level " + price);
+                if (imbalanced) {
+                    imbalance += size - opposite;
+                    if (++run == stackSize) {
+                        stacks++;
+                    }
+                } else {
+                    run = 0;
+                }
+            }
+            assertEquals(imbalance, isBid ? book.getBidImbalance() : book.getAskImbalance());
+            assertEquals(stacks, book.getStackCount(isBid));
+        }
+    }
+}
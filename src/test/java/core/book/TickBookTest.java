@@ -0,0 +1,122 @@
+package core.book;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TickBookTest {
+
+    @Test
+    void tracksBestAndWorstPricesOfBothSides() {
+        TickBook book = new TickBook(16);
+        book.onDepth(true, 100, 5);
+        book.onDepth(true, 98, 3);
+        book.onDepth(false, 101, 4);
+        book.onDepth(false, 104, 2);
+
+        assertEquals(100, book.getBestBid());
+        assertEquals(5, book.getBestBidSize());
+        assertEquals(98, book.getLowestBid());
+        assertEquals(101, book.getBestAsk());
+        assertEquals(104, book.getHighestAsk());
+        assertEquals(2, book.getLevelCount(true));
+        assertEquals(3, book.getSize(true, 98));
+        assertEquals(0, book.getSize(true, 99));
+        assertEquals(98, book.nextBid(100));
+        assertEquals(TickBook.NO_PRICE, book.nextBid(98));
+        assertEquals(104, book.nextAsk(101));
+    }
+
+    @Test
+    void removingTheBestLevelFindsTheNextOne() {
+        TickBook book = new TickBook(16);
+        book.onDepth(true, 100, 5);
+        book.onDepth(true, 97, 3);
+        book.onDepth(true, 100, 0);
+
+        assertEquals(97, book.getBestBid());
+        assertEquals(97, book.getLowestBid());
+        assertEquals(1, book.getLevelCount(true));
+
+        book.onDepth(true, 97, 0);
+        assertTrue(book.isEmpty(true));
+        assertEquals(TickBook.NO_PRICE, book.getBestBid());
+        assertEquals(TickBook.NO_PRICE, book.getLowestBid());
+    }
+
+    @Test
+    void recentersOnTheTouchAndDropsLevelsThatFallOff() {
+        TickBook book = new TickBook(16);
+        book.onDepth(true, 100, 5); // Window 92..107
+        book.onDepth(true, 93, 7);
+        book.onDepth(false, 101, 4);
+        book.onDepth(false, 101, 0);
+        book.onDepth(true, 104, 1);
+        book.onDepth(false, 105, 1);
+
+        // Mid 104 moves the window to 96..111, which drops the bid at 93
+        book.onDepth(false, 110, 6);
+
+        assertEquals(1, book.getRecenterCount());
+        assertEquals(96, book.getBasePrice());
+        assertEquals(1, book.getDroppedLevels());
+        assertEquals(6, book.getSize(false, 110));
+        assertEquals(5, book.getSize(true, 100));
+        assertEquals(0, book.getSize(true, 93));
+        assertEquals(104, book.getBestBid());
+        assertEquals(100, book.getLowestBid());
+        assertEquals(110, book.getHighestAsk());
+    }
+
+    @Test
+    void ignoresUpdatesTooFarFromTheTouch() {
+        TickBook book = new TickBook(16);
+        book.onDepth(true, 100, 5);
+        book.onDepth(false, 101, 4);
+
+        book.onDepth(false, 130, 9);
+        book.onDepth(true, 500, 0);
+
+        assertEquals(1, book.getOutOfRangeUpdates());
+        assertEquals(0, book.getRecenterCount());
+        assertEquals(0, book.getSize(false, 130));
+        assertEquals(101, book.getHighestAsk());
+        assertEquals(100, book.getBestBid());
+    }
+
+    @Test
+    void emptyBookFollowsTheUpdatePrice() {
+        TickBook book = new TickBook(16);
+        book.onDepth(true, 100, 5);
+        book.onDepth(true, 100, 0);
+        book.onDepth(true, 500, 2);
+
+        assertEquals(500, book.getBestBid());
+        assertEquals(2, book.getSize(true, 500));
+        assertEquals(0, book.getOutOfRangeUpdates());
+    }
+
+    @Test
+    void clearEmptiesBothSides() {
+        TickBook book = new TickBook(16);
+        book.onDepth(true, 100, 5);
+        book.onDepth(false, 101, 4);
+        book.clear();
+
+        assertTrue(book.isEmpty(true));
+        assertTrue(book.isEmpty(false));
+        assertEquals(0, book.getSize(true, 100));
+
+        book.onDepth(false, 900, 1);
+        assertFalse(book.isEmpty(false));
+        assertEquals(900, book.getBestAsk());
+    }
+
+    @Test
+    void rejectsCapacityBelowTwoTicks() {
+        assertThrows(IllegalArgumentException.class, () -> new TickBook(1));
+    }
+}
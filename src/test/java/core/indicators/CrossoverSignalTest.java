@@ -0,0 +1,113 @@
+package core.indicators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+import core.indicators.CrossoverSignal.Confirmation;
+import core.indicators.CrossoverSignal.Mode;
+
+class CrossoverSignalTest {
+
+    @Test
+    void closeThroughFiresOnceWhenThePriceCrossesFromTheOtherSide() {
+        CrossoverSignal signal = new CrossoverSignal(Mode.BAR_CLOSE, Confirmation.CLOSE_THROUGH);
+
+        // Nothing is armed before the first evaluation
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(105, 100));
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(100, 100));
+        assertEquals(CrossoverSignal.UP, signal.evaluate(101, 100));
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(102, 100));
+        assertEquals(CrossoverSignal.DOWN, signal.evaluate(99, 100));
+        assertEquals(CrossoverSignal.UP, signal.evaluate(101, 100));
+
+        assertEquals(2, signal.getUpCount());
+        assertEquals(1, signal.getDownCount());
+    }
+
+    @Test
+    void touchFiresWhenThePriceReachesTheLevel() {
+        CrossoverSignal signal = new CrossoverSignal(Mode.INTRABAR, Confirmation.TOUCH);
+        signal.evaluate(99, 100);
+
+        assertEquals(CrossoverSignal.UP, signal.evaluate(100, 100));
+        // Sitting on the level arms neither side
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(100, 100));
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(98, 100));
+        signal.evaluate(101, 100);
+        assertEquals(CrossoverSignal.DOWN, signal.evaluate(100, 100));
+    }
+
+    @Test
+    void ticksBeyondNeedsTheDistanceInTicks() {
+        CrossoverSignal signal = new CrossoverSignal(Mode.BAR_CLOSE, Confirmation.TICKS_BEYOND, 2).withTickSize(0.25);
+        signal.evaluate(4000, 4000.1);
+
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(4000.5, 4000.1));
+        assertEquals(CrossoverSignal.UP, signal.evaluate(4000.6, 4000.1));
+    }
+
+    @Test
+    void extraDistanceMovesTheConfirmationButNotTheArming() {
+        CrossoverSignal signal = new CrossoverSignal(Mode.BAR_CLOSE, Confirmation.CLOSE_THROUGH);
+        signal.evaluate(99, 100, 5);
+
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(104, 100, 5));
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(105, 100, 5));
+        assertEquals(CrossoverSignal.UP, signal.evaluate(106, 100, 5));
+    }
+
+    @Test
+    void resetDisarmsBothSidesAndMissingLevelsAreIgnored() {
+        CrossoverSignal signal = new CrossoverSignal(Mode.BAR_CLOSE, Confirmation.CLOSE_THROUGH);
+        signal.evaluate(99, 100);
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(101, Double.NaN));
+
+        signal.reset();
+
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(101, 100));
+        assertEquals(0, signal.getUpCount());
+    }
+
+    @Test
+    void previousPriceArmingOnlyLooksAtTheLastEvaluation() {
+        CrossoverSignal signal = new CrossoverSignal(Mode.BAR_CLOSE, Confirmation.CLOSE_THROUGH)
+                .withArming(CrossoverSignal.Arming.PREVIOUS_PRICE);
+        signal.evaluate(99, 100, 5);
+
+        // Above the level but inside the band: the side that was armed by 99 is disarmed again
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(103, 100, 5));
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(110, 100, 5));
+
+        // The previous price is compared with the current level
+        signal.evaluate(101, 100, 5);
+        assertEquals(CrossoverSignal.UP, signal.evaluate(108, 102, 5));
+        assertEquals(CrossoverSignal.NONE, signal.evaluate(110, 102, 5));
+    }
+
+    @Test
+    void previousPriceArmingReproducesTheOriginalVwapAtrConditions() {
+        SplittableRandom random = new SplittableRandom(4);
+        CrossoverSignal signal = new CrossoverSignal(Mode.BAR_CLOSE, Confirmation.CLOSE_THROUGH)
+                .withArming(CrossoverSignal.Arming.PREVIOUS_PRICE);
+        double previousClose = Double.NaN;
+        double close = 16_000;
+        double vwap = 16_000;
+        for (int bar = 0; bar < 100_000; bar++) {
+            close += random.nextInt(-6, 7);
+            vwap += (close - vwap) * 0.05;
+            double band = random.nextInt(4) * 0.5;
+
+            int expected = CrossoverSignal.NONE;
+            if (close > vwap + band && previousClose <= vwap) {
+                expected = CrossoverSignal.UP;
+            } else if (close < vwap - band && previousClose >= vwap) {
+                expected = CrossoverSignal.DOWN;
+            }
+            assertEquals(expected, signal.evaluate(close, vwap, band), "bar " + bar);
+            previousClose = close;
+        }
+    }
+}
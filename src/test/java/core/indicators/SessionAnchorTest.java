@@ -0,0 +1,62 @@
+package core.indicators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+import org.junit.jupiter.api.Test;
+
+class SessionAnchorTest {
+
+    static long nanos(String instant) {
+        Instant parsed = Instant.parse(instant);
+        return parsed.getEpochSecond() * 1_000_000_000L + parsed.getNano();
+    }
+
+    @Test
+    void dailyAnchorFindsTheSessionAroundATimestamp() {
+        SessionAnchor anchor = SessionAnchor.daily(LocalTime.of(9, 30), ZoneOffset.UTC);
+
+        assertEquals(nanos("2024-03-04T09:30:00Z"), anchor.sessionStart(nanos("2024-03-04T12:00:00Z")));
+        assertEquals(nanos("2024-03-05T09:30:00Z"), anchor.nextReset(nanos("2024-03-04T12:00:00Z")));
+        assertEquals(nanos("2024-03-03T09:30:00Z"), anchor.sessionStart(nanos("2024-03-04T09:00:00Z")));
+        assertEquals(nanos("2024-03-04T09:30:00Z"), anchor.nextReset(nanos("2024-03-04T09:00:00Z")));
+        // The reset instant belongs to the new session
+        assertEquals(nanos("2024-03-04T09:30:00Z"), anchor.sessionStart(nanos("2024-03-04T09:30:00Z")));
+        assertEquals(nanos("2024-03-05T09:30:00Z"), anchor.nextReset(nanos("2024-03-04T09:30:00Z")));
+    }
+
+    @Test
+    void newYorkAnchorsKeepTheLocalTimeAcrossDaylightSaving() {
+        SessionAnchor rth = SessionAnchor.rthOpen();
+        // Clocks went forward on Sunday 2024-03-10: 09:30 is 14:30 UTC before and 13:30 UTC after
+        assertEquals(nanos("2024-03-08T14:30:00Z"), rth.sessionStart(nanos("2024-03-08T20:00:00Z")));
+        assertEquals(nanos("2024-03-11T13:30:00Z"), rth.sessionStart(nanos("2024-03-11T20:00:00Z")));
+        assertEquals(nanos("2024-03-10T13:30:00Z"), rth.nextReset(nanos("2024-03-09T20:00:00Z")));
+    }
+
+    @Test
+    void globexWeekStartsSundayEvening() {
+        SessionAnchor week = SessionAnchor.globexWeekly();
+        // Wednesday 2024-03-06; the week opened Sunday 2024-03-03 18:00 New York
+        assertEquals(nanos("2024-03-03T23:00:00Z"), week.sessionStart(nanos("2024-03-06T15:00:00Z")));
+        assertEquals(nanos("2024-03-10T22:00:00Z"), week.nextReset(nanos("2024-03-06T15:00:00Z")));
+
+        SessionAnchor monday = SessionAnchor.weekly(DayOfWeek.MONDAY, LocalTime.MIDNIGHT, ZoneOffset.UTC);
+        assertEquals(nanos("2024-03-04T00:00:00Z"), monday.sessionStart(nanos("2024-03-04T00:00:00Z")));
+        assertEquals(nanos("2024-03-11T00:00:00Z"), monday.nextReset(nanos("2024-03-04T00:00:00Z")));
+    }
+
+    @Test
+    void fixedAnchorStartsOnceAndNeverResets() {
+        SessionAnchor anchor = SessionAnchor.at(1_000);
+
+        assertEquals(1_000, anchor.sessionStart(10));
+        assertEquals(1_000, anchor.nextReset(10));
+        assertEquals(Long.MAX_VALUE, anchor.nextReset(1_000));
+        assertEquals(Long.MAX_VALUE, SessionAnchor.none().nextReset(Long.MAX_VALUE - 1));
+    }
+}
@@ -0,0 +1,239 @@
+package core.indicators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+
+class StreamingIndicatorTest {
+
+    private static final int PERIOD = 14;
+    private static final int COUNT = 5_000;
+
+    /**
+     * A random walk around 4000 with the occasional gap, like futures closes.
+     */
+    private static double[] closes(long seed) {
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] closes = new double[COUNT];
+        double price = 4_000;
+        for (int i = 0; i < COUNT; i++) {
+            price += random.nextInt(20) == 0 ? random.nextInt(-40, 41) * 0.25 : random.nextInt(-4, 5) * 0.25;
+            closes[i] = price;
+        }
+        return closes;
+    }
+
+    private static void assertMatches(SeriesIndicator indicator, double[] closes, IntFunction<Double> expected,
+                                      double tolerance) {
+        for (int i = 0; i < closes.length; i++) {
+            indicator.update(closes[i]);
+            if (i < PERIOD - 1) {
+                assertFalse(indicator.isReady());
+                assertTrue(Double.isNaN(indicator.value()));
+            } else {
+                assertTrue(indicator.isReady());
+                assertEquals(expected.apply(i), indicator.value(), tolerance, "value after update " + i);
+            }
+        }
+    }
+
+    @Test
+    void smaMatchesTheMeanOfTheWindow() {
+        double[] closes = closes(1);
+        assertMatches(new SMA(PERIOD), closes, i -> {
+            double sum = 0;
+            for (int j = i - PERIOD + 1; j <= i; j++) {
+                sum += closes[j];
+            }
+            return sum / PERIOD;
+        }, 1e-9);
+    }
+
+    @Test
+    void emaIsSeededWithTheSimpleAverage() {
+        double[] closes = closes(2);
+        double alpha = 2.0 / (PERIOD + 1);
+        double[] ema = new double[COUNT];
+        double seed = 0;
+        for (int i = 0; i < PERIOD; i++) {
+            seed += closes[i];
+        }
+        ema[PERIOD - 1] = seed / PERIOD;
+        for (int i = PERIOD; i < COUNT; i++) {
+            ema[i] = alpha * closes[i] + (1 - alpha) * ema[i - 1];
+        }
+        assertMatches(new EMA(PERIOD), closes, i -> ema[i], 1e-9);
+    }
+
+    @Test
+    void wmaWeighsTheNewestValueMost() {
+        double[] closes = closes(3);
+        assertMatches(new WMA(PERIOD), closes, i -> {
+            double sum = 0;
+            for (int weight = 1; weight <= PERIOD; weight++) {
+                sum += weight * closes[i - PERIOD + weight];
+            }
+            return sum / (PERIOD * (PERIOD + 1) / 2.0);
+        }, 1e-9);
+    }
+
+    @Test
+    void rollingStdDevMatchesATwoPassComputation() {
+        double[] closes = closes(4);
+        RollingStdDev stdDev = new RollingStdDev(PERIOD);
+        assertMatches(stdDev, closes, i -> {
+            double mean = 0;
+            for (int j = i - PERIOD + 1; j <= i; j++) {
+                mean += closes[j];
+            }
+            mean /= PERIOD;
+            double squares = 0;
+            for (int j = i - PERIOD + 1; j <= i; j++) {
+                squares += (closes[j] - mean) * (closes[j] - mean);
+            }
+            assertEquals(mean, stdDev.getMean(), 1e-9);
+            return Math.sqrt(squares / PERIOD);
+        }, 1e-7);
+    }
+
+    @Test
+    void rollingExtremesTrackTheWindowAndTheAgeOfTheExtreme() {
+        double[] closes = closes(5);
+        RollingExtreme max = RollingExtreme.max(PERIOD);
+        assertMatches(max, closes, i -> {
+            double highest = Double.NEGATIVE_INFINITY;
+            for (int j = i - PERIOD + 1; j <= i; j++) {
+                highest = Math.max(highest, closes[j]);
+            }
+            // The oldest occurrence of an equal value stays the extreme until a newer one dominates it
+            int age = 0;
+            for (int j = i; j > i - PERIOD; j--) {
+                if (closes[j] == highest) {
+                    age = i - j;
+                    break;
+                }
+            }
+            assertTrue(max.getAge() >= age, "age " + max.getAge() + " at " + i);
+            assertEquals(highest, closes[i - max.getAge()]);
+            return highest;
+        }, 0);
+        double[] lows = closes(6);
+        assertMatches(RollingExtreme.min(PERIOD), lows, i -> {
+            double lowest = Double.POSITIVE_INFINITY;
+            for (int j = i - PERIOD + 1; j <= i; j++) {
+                lowest = Math.min(lowest, lows[j]);
+            }
+            return lowest;
+        }, 0);
+    }
+
+    @Test
+    void atrUsesWildersSmoothingOfTheTrueRange() {
+        double[] closes = closes(7);
+        ATR atr = new ATR(PERIOD);
+        double expected = 0;
+        double previousClose = Double.NaN;
+        for (int i = 0; i < COUNT; i++) {
+            double high = closes[i] + 1;
+            double low = closes[i] - 0.75;
+            double trueRange = Double.isNaN(previousClose)
+                    ? high - low
+                    : Math.max(high, previousClose) - Math.min(low, previousClose);
+            previousClose = closes[i];
+            expected = i < PERIOD ? expected + trueRange / PERIOD : (expected * (PERIOD - 1) + trueRange) / PERIOD;
+            atr.update(high, low, closes[i]);
+
+            assertEquals(trueRange, atr.getTrueRange(), 1e-12);
+            assertEquals(i >= PERIOD - 1, atr.isReady());
+            if (atr.isReady()) {
+                assertEquals(expected, atr.value(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    void resetStartsOver() {
+        List<SeriesIndicator> indicators = List.of(new SMA(3), new EMA(3), new WMA(3), new RollingStdDev(3),
+                RollingExtreme.max(3));
+        for (SeriesIndicator indicator : indicators) {
+            for (int i = 0; i < 5; i++) {
+                indicator.update(100 + i);
+            }
+            indicator.reset();
+            indicator.update(1);
+            indicator.update(1);
+            assertFalse(indicator.isReady());
+            indicator.update(1);
+            assertEquals(indicator instanceof RollingStdDev ? 0 : 1, indicator.value(), 1e-12);
+        }
+    }
+
+    @Test
+    void doubleRingEvictsTheOldestValue() {
+        DoubleRing ring = new DoubleRing(3);
+        assertTrue(Double.isNaN(ring.push(1)));
+        ring.push(2);
+        ring.push(3);
+        assertEquals(1, ring.push(4), 0);
+        assertEquals(4, ring.newest(), 0);
+        assertEquals(2, ring.oldest(), 0);
+        assertEquals(3, ring.get(1), 0);
+        assertThrows(IndexOutOfBoundsException.class, () -> ring.get(3));
+    }
+
+    @Test
+    void compensatedSumDoesNotDrift() {
+        CompensatedSum sum = new CompensatedSum();
+        sum.add(1e16);
+        for (int i = 0; i < 1_000; i++) {
+            sum.add(1);
+        }
+        sum.add(-1e16);
+        assertEquals(1_000, sum.get(), 0);
+    }
+
+    @Test
+    void rejectsNonPositivePeriods() {
+        List<IntFunction<Object>> constructors = List.of(SMA::new, EMA::new, WMA::new, RollingStdDev::new, ATR::new,
+                RollingExtreme::max, RollingExtreme::min);
+        for (IntFunction<Object> constructor : constructors) {
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> constructor.apply(0));
+            assertEquals("period must be positive: 0", e.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new DoubleRing(0));
+    }
+
+    @Test
+    void peekMatchesTheValueAfterTheSameUpdate() {
+        double[] closes = closes(8);
+        List<SeriesIndicator> indicators = List.of(new SMA(PERIOD), new EMA(PERIOD), new WMA(PERIOD),
+                new RollingStdDev(PERIOD), RollingExtreme.max(PERIOD), RollingExtreme.min(PERIOD));
+        for (SeriesIndicator indicator : indicators) {
+            for (int i = 0; i < COUNT; i++) {
+                double before = indicator.value();
+                double peeked = indicator.peek(closes[i]);
+                assertEquals(before, indicator.value(), 0, "peek must not change the value");
+                indicator.update(closes[i]);
+                assertEquals(indicator.value(), peeked, 1e-7, indicator.getClass().getSimpleName() + " at " + i);
+            }
+        }
+    }
+
+    @Test
+    void atrPeekMatchesTheValueAfterTheSameBar() {
+        double[] closes = closes(9);
+        ATR atr = new ATR(PERIOD);
+        for (int i = 0; i < COUNT; i++) {
+            double peeked = atr.peek(closes[i] + 0.5, closes[i] - 1.25, closes[i]);
+            atr.update(closes[i] + 0.5, closes[i] - 1.25, closes[i]);
+            assertEquals(atr.value(), peeked, 1e-9, "bar " + i);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package core.indicators;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class VWAPTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void matchesTheVolumeWeightedMeanAndDeviation() {
+        SplittableRandom random = new SplittableRandom(1);
+        VWAP vwap = new VWAP(SessionAnchor.none());
+        vwap.onTimestamp(0);
+        double priceVolume = 0;
+        double volume = 0;
+        double[] prices = new double[10_000];
+        int[] sizes = new int[prices.length];
+        for (int i = 0; i < prices.length; i++) {
+            // Tick prices of a 4000 point index future are in the tens of thousands
+            prices[i] = 16_000 + random.nextInt(-200, 201);
+            sizes[i] = random.nextInt(1, 50);
+            vwap.onTrade(prices[i], sizes[i]);
+            priceVolume += prices[i] * sizes[i];
+            volume += sizes[i];
+        }
+        double mean = priceVolume / volume;
+        double squares = 0;
+        for (int i = 0; i < prices.length; i++) {
+            squares += (prices[i] - mean) * (prices[i] - mean) * sizes[i];
+        }
+        double stdDev = Math.sqrt(squares / volume);
+
+        assertEquals(volume, vwap.getVolume(), 0);
+        assertEquals(mean, vwap.value(), 1e-9);
+        assertEquals(stdDev, vwap.getStdDev(), 1e-9);
+        assertEquals(mean - 2 * stdDev, vwap.getBand(-2), 1e-9);
+    }
+
+    @Test
+    void isNotReadyWithoutVolume() {
+        VWAP vwap = new VWAP(SessionAnchor.none());
+        vwap.onTimestamp(0);
+        vwap.onTrade(100, 0);
+
+        assertFalse(vwap.isReady());
+        assertTrue(Double.isNaN(vwap.value()));
+        assertTrue(Double.isNaN(vwap.getStdDev()));
+
+        vwap.onTrade(100, 3);
+        assertEquals(100, vwap.value(), 0);
+        assertEquals(0, vwap.getStdDev(), 0);
+    }
+
+    @Test
+    void ignoresTradesBeforeTheAnchor() {
+        VWAP vwap = new VWAP(SessionAnchor.at(10 * SECOND));
+        vwap.onTimestamp(5 * SECOND);
+        vwap.onTrade(50, 10);
+        assertFalse(vwap.isReady());
+
+        vwap.onTimestamp(10 * SECOND);
+        vwap.onTrade(100, 1);
+        vwap.onTrade(103, 2);
+
+        assertEquals(102, vwap.value(), 1e-12);
+        assertEquals(10 * SECOND, vwap.getSessionStart());
+    }
+
+    @Test
+    void startsOverAtEachDailyReset() {
+        VWAP vwap = new VWAP(SessionAnchor.rthOpen());
+        // 2024-03-04 15:00 New York, then 09:30 New York the next morning
+        long monday = SessionAnchorTest.nanos("2024-03-04T20:00:00Z");
+        long tuesdayOpen = SessionAnchorTest.nanos("2024-03-05T14:30:00Z");
+        vwap.onTimestamp(monday);
+        vwap.onTrade(100, 5);
+
+        vwap.onTimestamp(tuesdayOpen - 1);
+        assertEquals(100, vwap.value(), 0);
+        vwap.onTimestamp(tuesdayOpen);
+
+        assertFalse(vwap.isReady());
+        assertEquals(1, vwap.getResetCount());
+        assertEquals(tuesdayOpen, vwap.getSessionStart());
+        vwap.onTrade(90, 1);
+        assertEquals(90, vwap.value(), 0);
+    }
+}
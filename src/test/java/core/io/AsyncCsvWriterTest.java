@@ -0,0 +1,154 @@
+package core.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class AsyncCsvWriterTest {
+
+    // 2024-03-01 14:30:05.123 UTC
+    private static final long TIMESTAMP = 1_709_303_405_123_456_789L;
+
+    @TempDir
+    Path directory;
+
+    private List<String> lines(String name) throws IOException {
+        return Files.readAllLines(directory.resolve(name), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void writesTheHeaderAndFormatsFieldsInColumnOrder() throws IOException {
+        AsyncCsvWriter writer = new AsyncCsvWriter(16, 10);
+        AsyncCsvWriter.CsvFile file = writer.open(directory.resolve("rows.csv").toString(), "a,b,c,d,e,f,g", false)
+                .withZone(ZoneOffset.UTC);
+        file.claim().addLong(-42).addLong(Long.MIN_VALUE).addDouble(1.5).addText("caf\u00e9 \u20ac")
+                .addBoolean(true).addTimestamp(TIMESTAMP).addEmpty().publish();
+        file.claim().addTimestamp(0).addLong(7).publish();
+        writer.stop();
+
+        assertEquals(List.of(
+                "a,b,c,d,e,f,g",
+                "-42,-9223372036854775808,1.5,caf\u00e9 \u20ac,true,2024-03-01 14:30:05.123,",
+                ",7"), lines("rows.csv"));
+        assertEquals(2, writer.getWrittenRows());
+    }
+
+    @Test
+    void appendingKeepsExistingRowsAndDoesNotRepeatTheHeader() throws IOException {
+        Files.writeString(directory.resolve("log.csv"), "id\n1\n");
+        AsyncCsvWriter writer = new AsyncCsvWriter(16, 10);
+        writer.open(directory.resolve("log.csv").toString(), "id", true).claim().addLong(2).publish();
+        writer.open(directory.resolve("fresh.csv").toString(), "id", false).claim().addLong(3).publish();
+        writer.stop();
+
+        assertEquals(List.of("id", "1", "2"), lines("log.csv"));
+        assertEquals(List.of("id", "3"), lines("fresh.csv"));
+    }
+
+    @Test
+    void dropPolicyCountsRowsThatDoNotFitTheRing() throws IOException {
+        AsyncCsvWriter writer = new AsyncCsvWriter(2, 10);
+        AsyncCsvWriter.CsvFile file = writer.open(directory.resolve("drop.csv").toString(), null, false);
+        AsyncCsvWriter.Row first = file.claim();
+        AsyncCsvWriter.Row second = file.claim();
+
+        assertNull(file.claim());
+        assertEquals(1, writer.getDroppedRows());
+
+        first.addLong(1).publish();
+        second.addLong(2).publish();
+        writer.stop();
+        assertEquals(List.of("1", "2"), lines("drop.csv"));
+    }
+
+    @Test
+    void blockPolicyWaitsForTheWriterInsteadOfDropping() throws IOException {
+        AsyncCsvWriter writer = new AsyncCsvWriter(4, 10);
+        AsyncCsvWriter.CsvFile file = writer.open(directory.resolve("block.csv").toString(), null, false)
+                .withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK);
+        for (int i = 0; i < 5_000; i++) {
+            file.claim().addLong(i).publish();
+        }
+        writer.stop();
+
+        List<String> lines = lines("block.csv");
+        assertEquals(5_000, lines.size());
+        assertEquals("4999", lines.get(4_999));
+        assertEquals(0, writer.getDroppedRows());
+    }
+
+    @Test
+    void rowsAfterStopAreDropped() throws IOException {
+        AsyncCsvWriter writer = new AsyncCsvWriter(16, 10);
+        AsyncCsvWriter.CsvFile file = writer.open(directory.resolve("late.csv").toString(), null, false);
+        writer.stop();
+
+        assertNull(file.claim());
+        assertEquals(1, writer.getDroppedRows());
+    }
+
+    @Test
+    void openingTheSamePathTwiceSharesTheFileUntilTheLastClose() throws IOException {
+        AsyncCsvWriter writer = new AsyncCsvWriter(16, 10);
+        AsyncCsvWriter.CsvFile first = writer.open(directory.resolve("shared.csv").toString(), "id", false);
+        first.claim().addLong(1).publish();
+        AsyncCsvWriter.CsvFile second = writer.open(directory.resolve("./shared.csv").toString(), "id", false);
+        assertEquals(first, second);
+
+        second.claim().addLong(2).publish();
+        first.close();
+        AsyncCsvWriter.Row row = second.claim();
+        assertNotNull(row, "the file stays open for its other user");
+        row.addLong(3).publish();
+        second.close();
+        assertNull(second.claim());
+        writer.stop();
+
+        // The second open neither truncated the file nor wrote the header again
+        assertEquals(List.of("id", "1", "2", "3"), lines("shared.csv"));
+    }
+
+    @Test
+    void abandonedSlotIsSkippedAfterTheTimeout() throws IOException, InterruptedException {
+        AsyncCsvWriter writer = new AsyncCsvWriter(16, 10);
+        AsyncCsvWriter.CsvFile file = writer.open(directory.resolve("abandoned.csv").toString(), null, false);
+        AsyncCsvWriter.Row abandoned = file.claim();
+        file.claim().addLong(2).publish();
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AsyncCsvWriter.ABANDON_AFTER_MILLIS * 5);
+        while (writer.getWrittenRows() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        abandoned.addLong(1).publish();
+        writer.stop();
+
+        assertEquals(List.of("2"), lines("abandoned.csv"));
+        assertEquals(1, writer.getDroppedRows());
+    }
+
+    @Test
+    void sharedFileRejectsAConflictingConfiguration() throws IOException {
+        AsyncCsvWriter writer = new AsyncCsvWriter(16, 10);
+        String path = directory.resolve("orders.csv").toString();
+        writer.open(path, null, false).withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK);
+        AsyncCsvWriter.CsvFile second = writer.open(path, null, false);
+
+        // Repeating the first user's choice is fine, changing it is not
+        second.withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.BLOCK).withZone(AsyncCsvWriter.DEFAULT_ZONE);
+        assertThrows(IllegalStateException.class, () -> second.withOverflowPolicy(AsyncCsvWriter.OverflowPolicy.DROP));
+        assertThrows(IllegalStateException.class, () -> second.withZone(ZoneOffset.UTC));
+        writer.stop();
+    }
+}
@@ -0,0 +1,267 @@
+package core.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import core.book.TickBook;
+
+class BinaryCaptureTest {
+
+    private static final long START = 1_700_000_000_000_000_000L;
+    private static final long MILLISECOND = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @TempDir
+    Path root;
+
+    /**
+     * Records what a reader decodes, leaving out what the writer adds on its own: repeated timestamps of
+     * sync points and the levels of book snapshots.
+     */
+    private static final class Recorder implements BinaryCaptureReader.Listener {
+        final List<String> events = new ArrayList<>();
+        long lastTimestamp = 0;
+        int snapshotLevels = 0;
+
+        @Override
+        public void onTimestamp(long nanoseconds) {
+            if (nanoseconds != lastTimestamp) {
+                events.add("t " + nanoseconds);
+                lastTimestamp = nanoseconds;
+            }
+        }
+
+        @Override
+        public void onDepth(boolean isBid, int price, int size) {
+            if (snapshotLevels > 0) {
+                snapshotLevels--;
+            } else {
+                events.add((isBid ? "b " : "a ") + price + " " + size);
+            }
+        }
+
+        @Override
+        public void onTrade(double price, int size, boolean isBidAggressor, boolean isOtc) {
+            events.add("x " + price + " " + size + " " + isBidAggressor + " " + isOtc);
+        }
+
+        @Override
+        public void onSnapshot(int levels) {
+            snapshotLevels = levels;
+        }
+    }
+
+    /**
+     * Feeds {@code count} random events to the writer and the book and returns them in recorder form.
+     */
+    private static List<String> writeRandom(BinaryCaptureWriter writer, TickBook book, SplittableRandom random,
+                                            long[] clock, int count) throws IOException {
+        List<String> events = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 3) {
+                clock[0] += random.nextLong(1, 3 * MILLISECOND);
+                writer.onTimestamp(clock[0]);
+                events.add("t " + clock[0]);
+            } else if (kind < 8) {
+                boolean isBid = random.nextBoolean();
+                int price = isBid ? 4_000 + random.nextInt(30) : 4_030 + random.nextInt(30);
+                int size = random.nextInt(4) == 0 ? 0 : random.nextInt(1, 500);
+                if (book != null) {
+                    book.onDepth(isBid, price, size);
+                }
+                writer.onDepth(isBid, price, size);
+                events.add((isBid ? "b " : "a ") + price + " " + size);
+            } else {
+                double price = random.nextInt(4) == 0 ? 4_030.5 : 4_000 + random.nextInt(60);
+                int size = random.nextInt(1, 50);
+                boolean isBidAggressor = random.nextBoolean();
+                boolean isOtc = random.nextInt(10) == 0;
+                writer.onTrade(price, size, isBidAggressor, isOtc);
+                events.add("x " + price + " " + size + " " + isBidAggressor + " " + isOtc);
+            }
+        }
+        return events;
+    }
+
+    private static List<String> readAll(BinaryCaptureReader reader) throws IOException {
+        Recorder recorder = new Recorder();
+        while (reader.next(recorder)) {
+            // Collect everything published so far
+        }
+        return recorder.events;
+    }
+
+    @Test
+    void roundTripsEveryRecordAcrossSegments() throws IOException {
+        TickBook book = new TickBook(512);
+        long[] clock = {START};
+        List<String> expected = new ArrayList<>();
+        Path session;
+        try (BinaryCaptureWriter writer = new BinaryCaptureWriter(root, "ES 12-24", book, 4096,
+                10 * MILLISECOND, 100 * MILLISECOND)) {
+            writer.onTimestamp(START);
+            expected.add("t " + START);
+            expected.addAll(writeRandom(writer, book, new SplittableRandom(7), clock, 20_000));
+            session = writer.getSessionDirectory();
+        }
+
+        assertEquals(root.resolve("ES_12-24"), session.getParent());
+        assertTrue(Files.exists(BinaryCapture.segmentPath(session, 10)), "small segments roll over");
+        try (BinaryCaptureReader reader = new BinaryCaptureReader(session)) {
+            assertEquals(expected, readAll(reader));
+            assertTrue(reader.getIndexSize() > 0);
+        }
+    }
+
+    @Test
+    void seekRebuildsTheBookFromTheLastSnapshot() throws IOException {
+        TickBook book = new TickBook(512);
+        SplittableRandom random = new SplittableRandom(8);
+        long[] clock = {START};
+        long target;
+        TickBook expected = new TickBook(512);
+        Path session;
+        try (BinaryCaptureWriter writer = new BinaryCaptureWriter(root, "ES", book, 1 << 20,
+                10 * MILLISECOND, 100 * MILLISECOND)) {
+            writer.onTimestamp(START);
+            writeRandom(writer, book, random, clock, 10_000);
+            target = clock[0];
+            for (int price = 3_990; price < 4_070; price++) {
+                expected.onDepth(true, price, book.getSize(true, price));
+                expected.onDepth(false, price, book.getSize(false, price));
+            }
+            // Later updates must not leak into the rebuilt book
+            clock[0] += MILLISECOND;
+            writer.onTimestamp(clock[0]);
+            writeRandom(writer, book, random, clock, 1_000);
+            session = writer.getSessionDirectory();
+        }
+
+        TickBook rebuilt = new TickBook(512);
+        try (BinaryCaptureReader reader = new BinaryCaptureReader(session)) {
+            long syncPoint = reader.seek(target, true);
+            assertTrue(syncPoint > START && syncPoint <= target);
+            BinaryCaptureReader.BookListener listener = new BinaryCaptureReader.BookListener(rebuilt);
+            while (reader.next(listener) && reader.getTimestamp() <= target) {
+                // Apply updates up to the target time
+            }
+        }
+        for (int price = 3_990; price < 4_070; price++) {
+            assertEquals(expected.getSize(true, price), rebuilt.getSize(true, price), "bid " + price);
+            assertEquals(expected.getSize(false, price), rebuilt.getSize(false, price), "ask " + price);
+        }
+    }
+
+    @Test
+    void followsACaptureThatIsStillBeingWritten() throws IOException {
+        try (BinaryCaptureWriter writer = new BinaryCaptureWriter(root, "ES", null, 1 << 16,
+                10 * MILLISECOND, 100 * MILLISECOND);
+             BinaryCaptureReader reader = new BinaryCaptureReader(writer.getSessionDirectory())) {
+            assertEquals(List.of(), readAll(reader));
+
+            writer.onTimestamp(START);
+            writer.onDepth(true, 100, 5);
+            assertEquals(List.of("t " + START, "b 100 5"), readAll(reader));
+
+            writer.onTrade(100.25, 2, false, false);
+            writer.onTimestamp(START + 1);
+            assertEquals(List.of("x 100.25 2 false false", "t " + (START + 1)), readAll(reader));
+        }
+    }
+
+    @Test
+    void decodesPricesAfterARollBeforeTheFirstTimestamp() throws IOException {
+        List<String> expected = new ArrayList<>();
+        Path session;
+        try (BinaryCaptureWriter writer = new BinaryCaptureWriter(root, "ES", null, 256,
+                10 * MILLISECOND, 100 * MILLISECOND)) {
+            for (int i = 0; i < 100; i++) {
+                writer.onDepth(i % 2 == 0, 5_000 + i, i + 1);
+                expected.add((i % 2 == 0 ? "b " : "a ") + (5_000 + i) + " " + (i + 1));
+            }
+            session = writer.getSessionDirectory();
+        }
+
+        assertTrue(Files.exists(BinaryCapture.segmentPath(session, 1)));
+        try (BinaryCaptureReader reader = new BinaryCaptureReader(session)) {
+            assertEquals(expected, readAll(reader));
+        }
+    }
+
+    @Test
+    void sessionsStartedTogetherGetTheirOwnDirectory() throws IOException {
+        try (BinaryCaptureWriter first = new BinaryCaptureWriter(root, "ES", null);
+             BinaryCaptureWriter second = new BinaryCaptureWriter(root, "ES", null)) {
+            assertNotEquals(first.getSessionDirectory(), second.getSessionDirectory());
+        }
+    }
+
+    @Test
+    void recordCountLeavesOutSegmentHeadersSyncPointsAndSnapshots() throws IOException {
+        TickBook book = new TickBook(512);
+        try (BinaryCaptureWriter writer = new BinaryCaptureWriter(root, "ES", book, 4096,
+                MILLISECOND, 10 * MILLISECOND)) {
+            assertEquals(0, writer.getRecordCount());
+            writer.onTimestamp(START);
+            writer.onTimestamp(START); // Same time, nothing written
+            List<String> events = writeRandom(writer, book, new SplittableRandom(9), new long[] {START}, 10_000);
+
+            assertTrue(Files.exists(BinaryCapture.segmentPath(writer.getSessionDirectory(), 5)));
+            assertEquals(1 + events.size(), writer.getRecordCount());
+        }
+    }
+
+    @Test
+    void followingAcrossSegmentsDropsNoRecords() throws Exception {
+        List<String> expected = new ArrayList<>();
+        Recorder recorder = new Recorder();
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        try (BinaryCaptureWriter writer = new BinaryCaptureWriter(root, "ES", null, 512,
+                10 * MILLISECOND, 100 * MILLISECOND);
+             BinaryCaptureReader reader = new BinaryCaptureReader(writer.getSessionDirectory())) {
+            Thread follower = new Thread(() -> {
+                try {
+                    while (writing.get()) {
+                        if (!reader.next(recorder)) {
+                            Thread.onSpinWait();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            follower.start();
+            SplittableRandom random = new SplittableRandom(10);
+            long[] clock = {START};
+            for (int batch = 0; batch < 500; batch++) {
+                expected.addAll(writeRandom(writer, null, random, clock, 100));
+                Thread.yield();
+            }
+            writing.set(false);
+            follower.join(TimeUnit.SECONDS.toMillis(30));
+            assertNull(failure.get());
+            while (reader.next(recorder)) {
+                // Whatever the follower had not reached yet
+            }
+        }
+
+        assertEquals(expected.size(), recorder.events.size());
+        assertEquals(expected, recorder.events);
+    }
+}
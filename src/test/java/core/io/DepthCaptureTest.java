@@ -0,0 +1,105 @@
+package core.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import core.book.TickBook;
+
+class DepthCaptureTest {
+
+    private static final long START = 1_700_000_000_000_000_000L;
+    private static final long STEP = 1_000_000;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rebuildsTheBookAtAnyTimestampFromTheNearestCheckpoint() throws IOException {
+        Path capture = directory.resolve("capture.csv");
+        SplittableRandom random = new SplittableRandom(6);
+        TickBook live = new TickBook(256);
+        int updates = 2_000;
+        // Expected sizes after each update, for prices 980..1019
+        int[][] bids = new int[updates][40];
+        int[][] asks = new int[updates][40];
+
+        AsyncCsvWriter writer = new AsyncCsvWriter(1024, 10);
+        DepthCaptureWriter capturer = new DepthCaptureWriter(writer, capture.toString(), live, 50 * STEP, 300);
+        for (int i = 0; i < updates; i++) {
+            long timestamp = START + i * STEP;
+            boolean isBid = random.nextBoolean();
+            int price = isBid ? 980 + random.nextInt(20) : 1000 + random.nextInt(20);
+            int size = random.nextInt(3) == 0 ? 0 : random.nextInt(1, 100);
+            capturer.onTimestamp(timestamp);
+            live.onDepth(isBid, price, size);
+            capturer.onDepth(isBid, price, size);
+            for (int level = 0; level < 40; level++) {
+                bids[i][level] = live.getSize(true, 980 + level);
+                asks[i][level] = live.getSize(false, 980 + level);
+            }
+        }
+        capturer.close();
+        writer.stop();
+
+        DepthCaptureReader.CheckpointIndex index = DepthCaptureReader.index(capture);
+        assertTrue(index.size() >= updates / 50, "checkpoints every 50 updates of exchange time");
+        TickBook rebuilt = new TickBook(256);
+        for (int i = 0; i < updates; i += 37) {
+            DepthCaptureReader.rebuildAt(capture, index, START + i * STEP, rebuilt);
+            for (int level = 0; level < 40; level++) {
+                assertEquals(bids[i][level], rebuilt.getSize(true, 980 + level), "bid at update " + i);
+                assertEquals(asks[i][level], rebuilt.getSize(false, 980 + level), "ask at update " + i);
+            }
+        }
+    }
+
+    @Test
+    void checkpointListsEveryLevelAfterItsHeader() throws IOException {
+        Path capture = directory.resolve("levels.csv");
+        TickBook book = new TickBook(64);
+        book.onDepth(true, 100, 12);
+        book.onDepth(false, 101, 9);
+
+        AsyncCsvWriter writer = new AsyncCsvWriter(64, 10);
+        DepthCaptureWriter capturer = new DepthCaptureWriter(writer, capture.toString(), book, Long.MAX_VALUE, 1_000);
+        capturer.onTimestamp(START);
+        book.onDepth(true, 100, 0);
+        capturer.onDepth(true, 100, 0);
+        capturer.close();
+        writer.stop();
+
+        assertEquals(List.of(
+                DepthCaptureWriter.HEADER,
+                "S,0,,,2",
+                "L,0,B,100,12",
+                "L,0,A,101,9",
+                "D," + START + ",B,100,0"), Files.readAllLines(capture, StandardCharsets.UTF_8));
+
+        try (DepthCaptureReader reader = new DepthCaptureReader(capture)) {
+            assertTrue(reader.next());
+            assertTrue(reader.isCheckpoint());
+            assertEquals(2, reader.getSize());
+            assertTrue(reader.next());
+            assertTrue(reader.isLevel() && reader.isBid());
+            assertTrue(reader.next());
+            assertTrue(reader.isLevel() && !reader.isBid());
+            assertEquals(101, reader.getPrice());
+            assertTrue(reader.next());
+            assertTrue(reader.isDelta());
+            assertEquals(START, reader.getTimestamp());
+            assertEquals(0, reader.getSize());
+            assertFalse(reader.next());
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package core.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import core.book.TickBook;
+
+class SharedBookTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void readerSeesTheBestLevelsOfEachSide() throws IOException {
+        Path file = SharedBook.path(root, "ES 12-24");
+        TickBook book = new TickBook(64);
+        for (int i = 0; i < 5; i++) {
+            book.onDepth(true, 100 - i, 10 + i);
+            book.onDepth(false, 101 + i, 20 + i);
+        }
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, "ES 12-24", 0.25, 3);
+             SharedBookReader reader = new SharedBookReader(file)) {
+            publisher.publish(book, 42);
+
+            SharedBookReader.Snapshot snapshot = reader.newSnapshot();
+            reader.read(snapshot);
+            assertEquals("ES 12-24", reader.getAlias());
+            assertEquals(0.25, reader.getPips());
+            assertEquals(3, reader.getLevels());
+            assertEquals(42, snapshot.getTimestamp());
+            assertEquals(100, snapshot.getBestBid());
+            assertEquals(10, snapshot.getBestBidSize());
+            assertEquals(101, snapshot.getBestAsk());
+            assertEquals(3, snapshot.getBidCount());
+            assertEquals(3, snapshot.getAskCount());
+            assertEquals(98, snapshot.getBidPrice(2));
+            assertEquals(12, snapshot.getBidSize(2));
+            assertEquals(103, snapshot.getAskPrice(2));
+            assertEquals(22, snapshot.getAskSize(2));
+            assertFalse(reader.isClosed());
+        }
+    }
+
+    @Test
+    void onlyUpdatesInsideTheLadderArePublished() throws IOException {
+        Path file = SharedBook.path(root, "ES");
+        TickBook book = new TickBook(64);
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, "ES", 0.25, 2)) {
+            for (int price = 100; price > 96; price--) {
+                book.onDepth(true, price, 1);
+                publisher.onDepth(book, true, price, 0);
+            }
+            assertEquals(2, publisher.getPublishCount());
+            assertEquals(4, publisher.getUpdateCount());
+
+            book.onDepth(true, 99, 5);
+            publisher.onDepth(book, true, 99, 0);
+            assertEquals(3, publisher.getPublishCount());
+        }
+    }
+
+    @Test
+    void concurrentReadsNeverSeeAHalfWrittenBook() throws Exception {
+        Path file = SharedBook.path(root, "ES");
+        int levels = 20;
+        AtomicBoolean publishing = new AtomicBoolean(true);
+        AtomicReference<String> torn = new AtomicReference<>();
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, "ES", 0.25, levels);
+             SharedBookReader reader = new SharedBookReader(file)) {
+            Thread writer = new Thread(() -> {
+                // Every publish sets all levels to the same size and the timestamp to that size
+                TickBook book = new TickBook(256);
+                for (int size = 1; size <= 200_000; size++) {
+                    for (int level = 0; level < levels; level++) {
+                        book.onDepth(true, 1_000 - level, size);
+                        book.onDepth(false, 1_001 + level, size);
+                    }
+                    publisher.publish(book, size);
+                }
+                publishing.set(false);
+            });
+            writer.start();
+
+            SharedBookReader.Snapshot snapshot = reader.newSnapshot();
+            long lastSequence = 0;
+            int reads = 0;
+            while (publishing.get() && torn.get() == null) {
+                long sequence = reader.read(snapshot);
+                reads++;
+                if ((sequence & 1) != 0 || sequence < lastSequence) {
+                    torn.set("sequence " + sequence + " after " + lastSequence);
+                }
+                lastSequence = sequence;
+                long size = snapshot.getTimestamp();
+                for (int level = 0; level < snapshot.getBidCount(); level++) {
+                    if (snapshot.getBidSize(level) != size || snapshot.getAskSize(level) != size) {
+                        torn.set("level " + level + " of publish " + size);
+                    }
+                }
+            }
+            writer.join();
+            assertEquals(null, torn.get());
+            assertTrue(reads > 0);
+        }
+    }
+
+    @Test
+    void closedFileIsMarkedAndARestartKeepsCountingTheSequence() throws IOException {
+        Path file = SharedBook.path(root, "ES");
+        TickBook book = new TickBook(64);
+        book.onDepth(true, 100, 1);
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, "ES", 0.25, 4)) {
+            publisher.publish(book, 1);
+        }
+        long sequence;
+        try (SharedBookReader reader = new SharedBookReader(file)) {
+            sequence = reader.getSequence();
+            assertTrue(reader.isClosed());
+        }
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, "ES", 0.25, 4);
+             SharedBookReader reader = new SharedBookReader(file)) {
+            assertTrue(reader.getSequence() > sequence);
+            assertEquals(0, reader.getSequence() & 1);
+            assertFalse(reader.isClosed());
+        }
+    }
+
+    @Test
+    void rejectsAnExistingFileWithAnotherLevelCount() throws IOException {
+        Path file = SharedBook.path(root, "ES");
+        try (SharedBookPublisher publisher = new SharedBookPublisher(file, "ES", 0.25, 4)) {
+            publisher.publish(new TickBook(64), 1);
+        }
+
+        assertThrows(IOException.class, () -> new SharedBookPublisher(file, "ES", 0.25, 8));
+        try (SharedBookReader reader = new SharedBookReader(file)) {
+            assertEquals(4, reader.getLevels());
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package core.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+class DepthDeltaBufferTest {
+
+    @Test
+    void conflatesALevelAndKeepsTheOrderOfFirstChanges() {
+        DepthDeltaBuffer buffer = new DepthDeltaBuffer(8);
+        buffer.put(true, 100, 5);
+        buffer.put(false, 101, 3);
+        buffer.put(true, 100, 7);
+        buffer.put(false, 100, 1);
+
+        assertEquals(3, buffer.size());
+        assertEquals(1, buffer.getConflatedCount());
+        ByteBuffer out = ByteBuffer.allocate(buffer.encodedSize());
+        buffer.encode(out);
+        out.flip();
+        assertEntry(out, 1, 100, 7);
+        assertEntry(out, 0, 101, 3);
+        assertEntry(out, 0, 100, 1);
+        assertFalse(out.hasRemaining());
+    }
+
+    @Test
+    void reportsANewLevelBeyondTheLimitInsteadOfGrowing() {
+        DepthDeltaBuffer buffer = new DepthDeltaBuffer(2);
+        assertTrue(buffer.put(true, 100, 1));
+        assertTrue(buffer.put(true, 99, 1));
+
+        assertFalse(buffer.put(true, 98, 1));
+        assertTrue(buffer.put(true, 100, 2), "a pending level still conflates");
+
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertTrue(buffer.put(true, 98, 1));
+        assertTrue(buffer.put(false, -5, 0));
+        assertEquals(2, buffer.size());
+    }
+
+    private static void assertEntry(ByteBuffer in, int side, int price, int size) {
+        assertEquals(side, in.get());
+        assertEquals(price, in.getInt());
+        assertEquals(size, in.getInt());
+    }
+}
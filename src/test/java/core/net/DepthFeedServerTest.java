@@ -0,0 +1,140 @@
+package core.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import core.book.TickBook;
+import core.io.BinaryCaptureReader;
+
+class DepthFeedServerTest {
+
+    private final TickBook book = new TickBook(256);
+    private DepthFeedServer server;
+
+    @AfterEach
+    void stop() {
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    private DepthFeedClient connect(int bufferSize) throws IOException, InterruptedException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = new DepthFeedServer(book, "ES 12-24", 0.25, port).withBufferSize(bufferSize).withFlushInterval(1);
+        server.start();
+        DepthFeedClient client = new DepthFeedClient("localhost", port);
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (server.getSubscriberCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, server.getSubscriberCount());
+        return client;
+    }
+
+    /**
+     * Counts snapshot frames and mirrors the book.
+     */
+    private static final class Mirror extends BinaryCaptureReader.BookListener {
+        final TickBook copy;
+        int snapshots = 0;
+        int lastSnapshotLevels = -1;
+
+        Mirror() {
+            this(new TickBook(256));
+        }
+
+        private Mirror(TickBook copy) {
+            super(copy);
+            this.copy = copy;
+        }
+
+        @Override
+        public void onSnapshot(int levels) {
+            super.onSnapshot(levels);
+            snapshots++;
+            lastSnapshotLevels = levels;
+        }
+    }
+
+    @Test
+    void sendsTheInstrumentAndASnapshotThenDeltas() throws Exception {
+        book.onDepth(true, 400, 10);
+        book.onDepth(false, 401, 12);
+        Mirror mirror = new Mirror();
+        try (DepthFeedClient client = connect(DepthFeedServer.DEFAULT_BUFFER_SIZE)) {
+            assertTrue(client.next(mirror));
+            assertEquals("ES 12-24", client.getAlias());
+            assertEquals(0.25, client.getPips());
+
+            assertTrue(client.next(mirror));
+            assertEquals(1, mirror.snapshots);
+            assertEquals(10, mirror.copy.getSize(true, 400));
+            assertEquals(12, mirror.copy.getSize(false, 401));
+
+            server.onDepth(true, 400, 0);
+            server.onDepth(true, 399, 4);
+            while (mirror.copy.getBestBid() != 399) {
+                assertTrue(client.next(mirror));
+            }
+            assertEquals(0, mirror.copy.getSize(true, 400));
+            assertEquals(4, mirror.copy.getBestBidSize());
+            assertEquals(1, server.getSnapshotsSent());
+        }
+    }
+
+    @Test
+    void updatesToAPendingLevelAreConflated() throws Exception {
+        Mirror mirror = new Mirror();
+        try (DepthFeedClient client = connect(DepthFeedServer.DEFAULT_BUFFER_SIZE)) {
+            client.next(mirror);
+            client.next(mirror);
+
+            // Holding the book's monitor keeps the selector thread from taking the pending updates
+            synchronized (book) {
+                for (int size = 1; size <= 100; size++) {
+                    server.onDepth(false, 500, size);
+                }
+                assertEquals(99, server.getConflatedCount());
+            }
+            assertTrue(client.next(mirror));
+            assertEquals(1, client.getEntryCount());
+            assertEquals(100, mirror.copy.getSize(false, 500));
+        }
+    }
+
+    @Test
+    void subscriberTooFarBehindGetsAFreshSnapshot() throws Exception {
+        // Room for 4 entries per frame
+        int bufferSize = DepthFeedServer.FRAME_HEADER_SIZE + 4 * DepthFeedServer.ENTRY_SIZE;
+        Mirror mirror = new Mirror();
+        try (DepthFeedClient client = connect(bufferSize)) {
+            client.next(mirror);
+            client.next(mirror);
+
+            synchronized (book) {
+                for (int price = 300; price < 306; price++) {
+                    server.onDepth(true, price, 1);
+                }
+                for (int price = 300; price < 304; price++) {
+                    server.onDepth(true, price, 0);
+                }
+            }
+            assertTrue(client.next(mirror));
+
+            assertEquals(2, mirror.snapshots);
+            assertEquals(2, mirror.lastSnapshotLevels);
+            assertEquals(305, mirror.copy.getBestBid());
+            assertEquals(304, mirror.copy.getLowestBid());
+            assertEquals(2, server.getSnapshotsSent());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package core.net;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+class MessageChannelTest {
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                throw new AssertionError("timed out");
+            }
+            Thread.sleep(1);
+        }
+    }
+
+    private static String readFrame(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        byte[] payload = new byte[in.readInt()];
+        in.readFully(payload);
+        return new String(payload, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void framesComeBackInOrderThroughAnEchoServer() throws Exception {
+        List<String> received = new CopyOnWriteArrayList<>();
+        try (EchoServer echo = new EchoServer(0);
+             MessageChannel channel = new MessageChannel("localhost", echo.getPort())
+                     .withListener(message -> {
+                         byte[] bytes = new byte[message.remaining()];
+                         message.get(bytes);
+                         received.add(new String(bytes, StandardCharsets.UTF_8));
+                     }).start()) {
+            for (int i = 0; i < 1_000; i++) {
+                assertTrue(channel.send("message " + i));
+            }
+            channel.send(new byte[70_000]); // Larger than one batch buffer
+            await(() -> received.size() == 1_001);
+
+            assertEquals("message 0", received.get(0));
+            assertEquals("message 999", received.get(999));
+            assertEquals(70_000, received.get(1_000).length());
+            assertEquals(1_001, channel.getSentCount());
+            assertTrue(channel.getBatchCount() <= channel.getSentCount());
+            assertEquals(1, channel.getConnectCount());
+        }
+    }
+
+    @Test
+    void messagesAreDroppedBeforeStartAndWhenTheQueueIsFull() {
+        MessageChannel channel = new MessageChannel("localhost", 1);
+        assertFalse(channel.send("early"));
+        assertEquals(1, channel.getDroppedCount());
+        assertThrows(IllegalArgumentException.class, () -> channel.send(new byte[MessageChannel.MAX_MESSAGE_BYTES + 1]));
+    }
+
+    @Test
+    void reconnectsAfterThePeerClosesTheConnection() throws Exception {
+        try (ServerSocket server = new ServerSocket(0);
+             MessageChannel channel = new MessageChannel("localhost", server.getLocalPort())
+                     .withReconnectDelay(10, 100)
+                     .withListener(message -> { }).start()) {
+            channel.send("first");
+            try (Socket peer = server.accept()) {
+                assertEquals("first", readFrame(peer));
+            }
+            // The reader thread sees the close and drops the connection
+            await(() -> !channel.isConnected());
+
+            channel.send("second");
+            try (Socket peer = server.accept()) {
+                assertEquals("second", readFrame(peer));
+            }
+            assertEquals(2, channel.getConnectCount());
+        }
+    }
+
+    @Test
+    void queuedMessagesWaitForAPeerThatIsNotListeningYet() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        try (MessageChannel channel = new MessageChannel("localhost", port).withReconnectDelay(10, 50).start()) {
+            channel.send("queued");
+            Thread.sleep(100);
+            assertEquals(0, channel.getConnectCount());
+
+            try (ServerSocket server = new ServerSocket(port);
+                 Socket peer = server.accept()) {
+                assertEquals("queued", readFrame(peer));
+            }
+            await(() -> channel.getSentCount() == 1);
+        }
+    }
+}
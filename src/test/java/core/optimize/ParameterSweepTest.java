@@ -0,0 +1,106 @@
+package core.optimize;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ParameterSweepTest {
+
+    @TempDir
+    Path directory;
+
+    /**
+     * One bar per close, each opening at the previous close with a one tick range around the close.
+     */
+    private BarHistory bars(double... closes) throws IOException {
+        StringBuilder csv = new StringBuilder("time,open,high,low,close,volume\n");
+        for (int i = 0; i < closes.length; i++) {
+            double open = i == 0 ? closes[0] : closes[i - 1];
+            csv.append(TimeUnit.MINUTES.toMillis(i)).append(',').append(open).append(',')
+                    .append(Math.max(open, closes[i] + 1)).append(',').append(Math.min(open, closes[i] - 1)).append(',')
+                    .append(closes[i]).append(",10\n");
+        }
+        Path file = directory.resolve("bars.csv");
+        Files.writeString(file, csv);
+        return BarHistory.fromCsv(file, 0.25);
+    }
+
+    @Test
+    void smaCrossReversesAtTheCloseOfEachCrossing() throws Exception {
+        // SMA(2): NaN, 100, 99, 101, 105, 103, 98; short 98, long 104, short 100, closed at 96 at the end
+        ParameterSweep sweep = new ParameterSweep(bars(100, 100, 98, 104, 106, 100, 96), ParameterSweep.Strategy.SMA_CROSS)
+                .withPeriods(2).withCommission(0.5);
+
+        sweep.run();
+
+        assertEquals(1, sweep.getCombinationCount());
+        assertEquals(-6 - 4 + 4 - 3 * 2 * 0.5, sweep.getPnl(0), 1e-9);
+        assertEquals(3, sweep.getTradeCount(0));
+        assertEquals(1, sweep.getWinCount(0));
+        assertEquals(12, sweep.getMaxDrawdown(0), 1e-9);
+    }
+
+    @Test
+    void stopLossExitsAtTheStopBeforeTheSignalIsTaken() throws Exception {
+        // SMA(2): NaN, 100, 99, 101, 102, 100. With a 3 tick stop the short from 98 is stopped at 101 by the
+        // bar that then signals long at 104, and that long is stopped at 101 before the short at 100
+        ParameterSweep sweep = new ParameterSweep(bars(100, 100, 98, 104, 100, 100), ParameterSweep.Strategy.SMA_CROSS)
+                .withPeriods(2).withStopLosses(3, 10);
+
+        sweep.run();
+
+        assertEquals(3, sweep.getStopLoss(0));
+        assertEquals(-3 - 3 + 0, sweep.getPnl(0), 1e-9);
+        assertEquals(3, sweep.getTradeCount(0));
+        assertEquals(0, sweep.getWinCount(0));
+        assertEquals(10, sweep.getStopLoss(1));
+        assertEquals(-6 - 4 + 0, sweep.getPnl(1), 1e-9);
+    }
+
+    @Test
+    void everyCombinationMatchesARunOfItsOwn() throws Exception {
+        BarHistory history = BarHistory.synthetic(3, 7);
+        int[] periods = {5, 12, 30};
+        double[] multipliers = {0.5, 2};
+        int[] stopLosses = {0, 8};
+        int[] takeProfits = {0, 16, 40};
+        for (ParameterSweep.Strategy strategy : ParameterSweep.Strategy.values()) {
+            ParameterSweep sweep = new ParameterSweep(history, strategy).withPeriods(periods).withMultipliers(multipliers)
+                    .withStopLosses(stopLosses).withTakeProfits(takeProfits).withParallelism(4);
+            sweep.run();
+
+            int expected = periods.length * stopLosses.length * takeProfits.length
+                    * (strategy == ParameterSweep.Strategy.VWAP_ATR ? multipliers.length : 1);
+            assertEquals(expected, sweep.getCombinationCount());
+            for (int i = 0; i < sweep.getCombinationCount(); i++) {
+                ParameterSweep single = new ParameterSweep(history, strategy).withPeriods(sweep.getPeriod(i))
+                        .withMultipliers(sweep.getMultiplier(i)).withStopLosses(sweep.getStopLoss(i))
+                        .withTakeProfits(sweep.getTakeProfit(i)).withParallelism(1);
+                single.run();
+                String combination = strategy + " combination " + i;
+                assertEquals(single.getPnl(0), sweep.getPnl(i), 1e-9, combination);
+                assertEquals(single.getMaxDrawdown(0), sweep.getMaxDrawdown(i), 1e-9, combination);
+                assertEquals(single.getTradeCount(0), sweep.getTradeCount(i), combination);
+                assertEquals(single.getWinCount(0), sweep.getWinCount(i), combination);
+            }
+            int[] ranked = sweep.rank();
+            for (int rank = 1; rank < ranked.length; rank++) {
+                assertTrue(sweep.getPnl(ranked[rank - 1]) >= sweep.getPnl(ranked[rank]));
+            }
+        }
+    }
+
+    @Test
+    void parsesRangesAndLists() {
+        assertArrayEquals(new double[]{0, 10, 20, 30, 5}, ParameterSweep.parseValues("0:30:10,5"), 1e-9);
+        assertArrayEquals(new double[]{0.5, 1.0, 1.5}, ParameterSweep.parseValues("0.5:1.5:0.5"), 1e-9);
+    }
+}
@@ -0,0 +1,70 @@
+package core.orders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+
+class OrderIdMapTest {
+
+    @Test
+    void putGetAndRemove() {
+        OrderIdMap map = new OrderIdMap(4);
+        map.put("order-1", 10);
+        map.put("order-2", 20);
+        map.put("order-1", 11);
+
+        assertEquals(2, map.size());
+        assertEquals(11, map.get("order-1"));
+        assertEquals(20, map.get("order-2"));
+        assertEquals(OrderIdMap.NO_SLOT, map.get("order-3"));
+
+        assertEquals(11, map.remove("order-1"));
+        assertEquals(OrderIdMap.NO_SLOT, map.remove("order-1"));
+        assertEquals(OrderIdMap.NO_SLOT, map.get("order-1"));
+        assertEquals(1, map.size());
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(OrderIdMap.NO_SLOT, map.get("order-2"));
+    }
+
+    @Test
+    void keepsKeysWithEqualHashCodesApart() {
+        // "Aa" and "BB" have the same String.hashCode()
+        OrderIdMap map = new OrderIdMap(4);
+        map.put("Aa", 1);
+        map.put("BB", 2);
+
+        assertEquals(1, map.get("Aa"));
+        assertEquals(2, map.get("BB"));
+        assertEquals(1, map.remove("Aa"));
+        assertEquals(2, map.get("BB"));
+    }
+
+    @Test
+    void matchesAHashMapThroughGrowthAndRemovals() {
+        SplittableRandom random = new SplittableRandom(3);
+        OrderIdMap map = new OrderIdMap(2);
+        Map<String, Integer> expected = new HashMap<>();
+        for (int step = 0; step < 20_000; step++) {
+            String key = "replay-" + random.nextInt(300);
+            if (random.nextInt(3) == 0) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? OrderIdMap.NO_SLOT : removed, map.remove(key));
+            } else {
+                map.put(key, step);
+                expected.put(key, step);
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int i = 0; i < 300; i++) {
+            String key = "replay-" + i;
+            int slot = expected.getOrDefault(key, OrderIdMap.NO_SLOT);
+            assertEquals(slot, map.get(key), key);
+        }
+    }
+}
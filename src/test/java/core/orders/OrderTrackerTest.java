@@ -0,0 +1,169 @@
+package core.orders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import core.book.TickBook;
+import core.replay.MatchingEngine;
+import velox.api.layer1.data.ExecutionInfo;
+import velox.api.layer1.data.OrderDuration;
+import velox.api.layer1.data.OrderInfoUpdate;
+import velox.api.layer1.data.OrderStatus;
+import velox.api.layer1.data.SimpleOrderSendParameters;
+import velox.api.layer1.data.SimpleOrderSendParametersBuilder;
+import velox.api.layer1.simplified.OrdersListener;
+
+class OrderTrackerTest {
+
+    private static final double PIPS = 0.25;
+
+    private final TickBook book = new TickBook(64);
+    private final MatchingEngine engine = new MatchingEngine("TEST", PIPS, book);
+    private final OrderTracker orders = new OrderTracker(PIPS);
+    private int bid;
+    private int ask;
+
+    OrderTrackerTest() {
+        engine.setOrdersListener(new OrdersListener() {
+            @Override
+            public void onOrderUpdated(OrderInfoUpdate update) {
+                orders.onOrderUpdated(update);
+            }
+
+            @Override
+            public void onOrderExecuted(ExecutionInfo execution) {
+                orders.onOrderExecuted(execution);
+            }
+        });
+        quote(100, 101);
+    }
+
+    private void quote(int bid, int ask) {
+        if (this.bid != 0) {
+            depth(true, this.bid, 0);
+            depth(false, this.ask, 0);
+        }
+        this.bid = bid;
+        this.ask = ask;
+        depth(true, bid, 10);
+        depth(false, ask, 10);
+        orders.onBbo(bid, 10, ask, 10);
+    }
+
+    private void depth(boolean isBid, int price, int size) {
+        book.onDepth(isBid, price, size);
+        engine.onDepth(isBid, price, size);
+    }
+
+    private String send(SimpleOrderSendParametersBuilder builder) {
+        SimpleOrderSendParameters order = builder.build();
+        orders.onOrderSent(order);
+        return engine.send(order);
+    }
+
+    private static SimpleOrderSendParametersBuilder market(boolean isBuy, int size) {
+        SimpleOrderSendParametersBuilder builder = new SimpleOrderSendParametersBuilder("TEST", isBuy, size);
+        builder.setDuration(OrderDuration.IOC);
+        return builder;
+    }
+
+    @Test
+    void pnlFollowsTheExecutionsAndTheBestPrices() {
+        send(market(true, 2));
+        assertEquals(2, orders.getPosition());
+        assertEquals(101 * PIPS, orders.getAveragePrice(), 1e-12);
+        // A long is marked at the bid
+        assertEquals(2 * -PIPS, orders.getUnrealizedPnl(), 1e-12);
+
+        quote(104, 105);
+        assertEquals(2 * 3 * PIPS, orders.getUnrealizedPnl(), 1e-12);
+
+        // Reversing books the long and opens a short at the same price
+        send(market(false, 3));
+        assertEquals(-1, orders.getPosition());
+        assertEquals(2 * 3 * PIPS, orders.getRealizedPnl(), 1e-12);
+        assertEquals(104 * PIPS, orders.getAveragePrice(), 1e-12);
+        assertEquals(-PIPS, orders.getUnrealizedPnl(), 1e-12);
+
+        send(market(true, 1));
+        assertEquals(0, orders.getPosition());
+        assertTrue(Double.isNaN(orders.getAveragePrice()));
+        assertEquals(2 * 3 * PIPS - PIPS, orders.getTotalPnl(), 1e-12);
+        assertEquals(6, orders.getVolume());
+        assertEquals(3, orders.getExecutionCount());
+    }
+
+    @Test
+    void restingEntryOrdersArePending() {
+        SimpleOrderSendParametersBuilder builder = new SimpleOrderSendParametersBuilder("TEST", true, 2);
+        builder.setDuration(OrderDuration.GTC);
+        builder.setLimitPrice(99 * PIPS);
+        String id = send(builder);
+
+        assertEquals(0, orders.getPosition());
+        assertEquals(2, orders.getPendingPosition());
+        assertTrue(orders.isWorking(id));
+        assertEquals(1, orders.getWorkingOrderCount());
+
+        engine.onTrade(98, 1, false);
+
+        assertEquals(2, orders.getPosition());
+        assertEquals(2, orders.getPendingPosition());
+        assertEquals(OrderStatus.FILLED, orders.getStatus(id));
+        assertEquals(0, orders.getWorkingOrderCount());
+    }
+
+    @Test
+    void bracketOrdersAreLinkedToTheirParentAndAreNotPending() {
+        SimpleOrderSendParametersBuilder builder = market(true, 1);
+        builder.setStopLossOffset(4);
+        builder.setTakeProfitOffset(8);
+        String parent = send(builder);
+
+        String stopLoss = orders.getStopLossOrderId(parent);
+        String takeProfit = orders.getTakeProfitOrderId(parent);
+        assertEquals("replay-2", stopLoss);
+        assertEquals("replay-3", takeProfit);
+        assertEquals(parent, orders.getParentOrderId(stopLoss));
+        assertEquals(parent, orders.getParentOrderId(takeProfit));
+        assertNull(orders.getParentOrderId(parent));
+        assertEquals(1, orders.getPosition());
+        assertEquals(1, orders.getPendingPosition());
+        assertEquals(2, orders.getWorkingOrderCount());
+    }
+
+    @Test
+    void doneOrdersAreRemovedOnceTheirBracketIsDone() {
+        SimpleOrderSendParametersBuilder builder = market(true, 1);
+        builder.setStopLossOffset(4);
+        builder.setTakeProfitOffset(8);
+        String parent = send(builder);
+
+        // The parent is filled but its bracket still works
+        assertEquals(0, orders.removeDone());
+        assertEquals(3, orders.getOrderCount());
+
+        // The stop loss four ticks under the 101 entry fills and the take profit is cancelled with it
+        quote(97, 98);
+        engine.onTrade(97, 1, false);
+
+        assertEquals(0, orders.getPosition());
+        assertEquals(-4 * PIPS, orders.getRealizedPnl(), 1e-12);
+        assertEquals(3, orders.removeDone());
+        assertEquals(0, orders.getOrderCount());
+        assertFalse(orders.isKnown(parent));
+        assertNull(orders.getStatus(parent));
+    }
+
+    @Test
+    void executionsOfUnknownOrdersAreCountedButIgnored() {
+        orders.onOrderExecuted(new ExecutionInfo("elsewhere", 1, 25, "1", 0));
+
+        assertEquals(1, orders.getUnknownExecutionCount());
+        assertEquals(0, orders.getPosition());
+    }
+}
@@ -0,0 +1,198 @@
+package core.replay;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import core.book.TickBook;
+import velox.api.layer1.data.ExecutionInfo;
+import velox.api.layer1.data.OrderDuration;
+import velox.api.layer1.data.OrderInfoUpdate;
+import velox.api.layer1.data.SimpleOrderSendParametersBuilder;
+import velox.api.layer1.simplified.OrdersListener;
+
+class MatchingEngineTest {
+
+    private static final double PIPS = 0.25;
+
+    private final TickBook book = new TickBook(64);
+    private final MatchingEngine engine = new MatchingEngine("TEST", PIPS, book);
+    // Callbacks in order, as "<id> <status> <filled>" and "<id> exec <size>@<price>"
+    private final List<String> events = new ArrayList<>();
+
+    MatchingEngineTest() {
+        engine.setOrdersListener(new OrdersListener() {
+            @Override
+            public void onOrderUpdated(OrderInfoUpdate update) {
+                events.add(update.orderId + " " + update.status + " " + update.filled);
+            }
+
+            @Override
+            public void onOrderExecuted(ExecutionInfo execution) {
+                events.add(execution.orderId + " exec " + execution.size + "@" + execution.price);
+            }
+        });
+    }
+
+    private void depth(boolean isBid, int price, int size) {
+        book.onDepth(isBid, price, size);
+        engine.onDepth(isBid, price, size);
+    }
+
+    private static SimpleOrderSendParametersBuilder order(boolean isBuy, int size, OrderDuration duration) {
+        SimpleOrderSendParametersBuilder builder = new SimpleOrderSendParametersBuilder("TEST", isBuy, size);
+        builder.setDuration(duration);
+        return builder;
+    }
+
+    @Test
+    void marketOrderSweepsTheDisplayedLevels() {
+        depth(false, 101, 2);
+        depth(false, 102, 3);
+
+        String id = engine.send(order(true, 4, OrderDuration.GTC).build());
+
+        assertEquals("replay-1", id);
+        assertEquals(List.of(
+                "replay-1 WORKING 0",
+                "replay-1 exec 2@25.25", "replay-1 WORKING 2",
+                "replay-1 exec 2@25.5", "replay-1 FILLED 4"), events);
+        assertEquals(1, engine.getOrdersFilled());
+        assertEquals(0, engine.getWorkingCount());
+    }
+
+    @Test
+    void iocLimitCancelsWhatDoesNotFillAtOnce() {
+        depth(false, 101, 2);
+        depth(false, 102, 3);
+
+        SimpleOrderSendParametersBuilder builder = order(true, 5, OrderDuration.IOC);
+        builder.setLimitPrice(101 * PIPS);
+        engine.send(builder.build());
+
+        assertEquals(List.of(
+                "replay-1 WORKING 0",
+                "replay-1 exec 2@25.25", "replay-1 WORKING 2",
+                "replay-1 CANCELLED 2"), events);
+        assertEquals(1, engine.getOrdersCancelled());
+    }
+
+    @Test
+    void fokWithoutEnoughLiquidityDoesNotFill() {
+        depth(false, 101, 2);
+        depth(false, 102, 3);
+
+        SimpleOrderSendParametersBuilder builder = order(true, 6, OrderDuration.FOK);
+        builder.setLimitPrice(102 * PIPS);
+        engine.send(builder.build());
+
+        assertEquals(List.of("replay-1 WORKING 0", "replay-1 CANCELLED 0"), events);
+        assertEquals(0, engine.getExecutions());
+    }
+
+    @Test
+    void restingOrderFillsOnceTheQueueAheadIsTraded() {
+        depth(true, 100, 10);
+        depth(false, 101, 10);
+        SimpleOrderSendParametersBuilder builder = order(true, 2, OrderDuration.GTC);
+        builder.setLimitPrice(100 * PIPS);
+        String id = engine.send(builder.build());
+        assertEquals(10, engine.getQueueAhead(id), 1e-9);
+
+        // Sellers trade 6 ahead of the order, and the level shrinks by the same amount
+        engine.onTrade(100, 6, false);
+        depth(true, 100, 4);
+        assertEquals(4, engine.getQueueAhead(id), 1e-9);
+        assertEquals(1, engine.getWorkingCount());
+
+        engine.onTrade(100, 5, false);
+        assertEquals(0, engine.getQueueAhead(id), 1e-9);
+        assertEquals("replay-1 exec 1@25.0", events.get(events.size() - 2));
+
+        // A trade through the price fills the rest
+        engine.onTrade(99, 1, false);
+        assertEquals("replay-1 FILLED 2", events.get(events.size() - 1));
+        assertEquals(0, engine.getWorkingCount());
+    }
+
+    @Test
+    void cancelsAheadOfTheOrderShortenTheQueueProRata() {
+        depth(true, 100, 10);
+        SimpleOrderSendParametersBuilder builder = order(true, 1, OrderDuration.GTC);
+        builder.setLimitPrice(100 * PIPS);
+        String id = engine.send(builder.build());
+        depth(true, 100, 15);
+
+        // 5 of the 15 cancel without a trade; 10 of the 15 were ahead of the order
+        depth(true, 100, 10);
+
+        assertEquals(10 - 10 * 5 / 15.0, engine.getQueueAhead(id), 1e-9);
+    }
+
+    @Test
+    void stopTriggersOnATradeAtItsPrice() {
+        depth(false, 101, 5);
+        SimpleOrderSendParametersBuilder builder = order(true, 1, OrderDuration.GTC);
+        builder.setStopPrice(102 * PIPS);
+        engine.send(builder.build());
+        engine.onTrade(101, 1, true);
+        assertEquals(1, engine.getWorkingCount());
+
+        engine.onTrade(102, 1, true);
+
+        assertEquals(List.of("replay-1 WORKING 0", "replay-1 exec 1@25.25", "replay-1 FILLED 1"), events);
+        assertEquals(0, engine.getWorkingCount());
+    }
+
+    @Test
+    void bracketChildrenAreReportedWorkingBeforeEitherMatches() {
+        depth(true, 100, 10);
+        depth(false, 101, 10);
+        // The stop loss one tick below the entry is already through the last trade and fills at once
+        engine.onTrade(99, 1, false);
+        SimpleOrderSendParametersBuilder builder = order(true, 1, OrderDuration.IOC);
+        builder.setStopLossOffset(1);
+        builder.setTakeProfitOffset(5);
+
+        engine.send(builder.build());
+
+        assertEquals(List.of(
+                "replay-1 WORKING 0", "replay-1 exec 1@25.25", "replay-1 FILLED 1",
+                "replay-2 WORKING 0", "replay-3 WORKING 0",
+                "replay-2 exec 1@25.0", "replay-3 CANCELLED 0", "replay-2 FILLED 1"), events);
+        assertEquals(3, engine.getOrdersSent());
+        assertEquals(2, engine.getOrdersFilled());
+        assertEquals(1, engine.getOrdersCancelled());
+    }
+
+    @Test
+    void cancellingOneBracketChildLeavesTheOtherWorking() {
+        depth(true, 100, 10);
+        depth(false, 101, 10);
+        SimpleOrderSendParametersBuilder builder = order(true, 1, OrderDuration.IOC);
+        builder.setStopLossOffset(4);
+        builder.setTakeProfitOffset(8);
+        engine.send(builder.build());
+        assertEquals(2, engine.getWorkingCount());
+
+        engine.cancel("replay-2");
+        engine.cancel("replay-2");
+        engine.cancel("unknown");
+
+        assertEquals("replay-2 CANCELLED 0", events.get(events.size() - 1));
+        assertEquals(1, engine.getWorkingCount());
+        assertTrue(engine.getQueueAhead("replay-3") >= 0);
+    }
+
+    @Test
+    void rejectsOrdersWithoutSize() {
+        engine.send(order(true, 0, OrderDuration.GTC).build());
+
+        assertEquals(List.of("replay-1 REJECTED 0"), events);
+        assertEquals(1, engine.getOrdersRejected());
+    }
+}